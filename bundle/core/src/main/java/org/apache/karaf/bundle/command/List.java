@@ -86,7 +86,11 @@ public class List extends BundlesCommand {
         if (!noEllipsis && showLocation && terminal != null && terminal.getWidth() > 0) {
             table.size(terminal.getWidth());
         }
-        table.column("ID").alignRight();
+        long maxId = 0;
+        for (Bundle bundle : bundles) {
+            maxId = Math.max(maxId, bundle.getBundleId());
+        }
+        table.column("ID").alignRight().minSize(Long.toString(maxId).length());
         table.column("State");
         table.column("Lvl").alignRight();
         table.column("Version");
@@ -111,6 +115,7 @@ public class List extends BundlesCommand {
                 }
             }
         });
+        table.stream(System.out, !noFormat);
 
         for (Bundle bundle : bundles) {
             BundleInfo info = this.bundleService.getInfo(bundle);
@@ -35,7 +35,7 @@ public class Watch implements Action {
     @Argument(index = 0, name = "urls", description = "The bundle IDs or URLs", required = false, multiValued = true)
     List<String> urls;
 
-    @Option(name = "-i", aliases = {}, description = "Watch interval", required = false, multiValued = false)
+    @Option(name = "-i", aliases = {}, description = "Watch interval in milliseconds, also the quiet period waited for before updating the changed bundles", required = false, multiValued = false)
     private long interval;
 
     @Option(name = "--start", description = "Starts watching the selected bundles", required = false, multiValued = false)
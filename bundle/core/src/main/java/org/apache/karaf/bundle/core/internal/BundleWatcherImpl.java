@@ -18,14 +18,17 @@ package org.apache.karaf.bundle.core.internal;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -45,6 +48,12 @@ import org.slf4j.LoggerFactory;
 /**
  * A Runnable singleton which watches at the defined location for bundle
  * updates.
+ *
+ * The directories of the watched artifacts in the local repository are
+ * watched with a {@link DirectoryWatcher}, so that only the bundles of the
+ * changed directories are checked. The changes are coalesced until nothing
+ * changes during the interval, and all the changed bundles are then updated
+ * and refreshed at once.
  */
 public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatcher {
 
@@ -79,69 +88,141 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
     public void run() {
         logger.debug("Bundle watcher thread started");
         int oldCounter = -1;
-        Set<Bundle> watchedBundles = new HashSet<Bundle>();
-        while (running.get() && watchURLs.size() > 0) {
-            if (oldCounter != counter.get()) {
-                oldCounter = counter.get();
-                watchedBundles.clear();
-                for (String bundleURL : watchURLs) {
-                    // Transform into regexp
-                    bundleURL = bundleURL.replaceAll("\\*", ".*");
-                    for (Bundle bundle : bundleService.selectBundles(Collections.singletonList(bundleURL), false)) {
-                        if (isMavenSnapshotUrl(getLocation(bundle))) {
-                            watchedBundles.add(bundle);
-                        }
-                    }
-                }
-            }
-            if (watchedBundles.size() > 0) {
-                // Get the wiring before any in case of a refresh of a dependency
-                FrameworkWiring wiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
+        File oldLocalRepository = null;
+        Map<Path, Set<Bundle>> watchedDirectories = new HashMap<Path, Set<Bundle>>();
+        try (DirectoryWatcher watcher = DirectoryWatcher.create(interval)) {
+            while (running.get() && watchURLs.size() > 0) {
+                Set<Bundle> changed = new HashSet<Bundle>();
                 File localRepository = this.localRepoDetector.getLocalRepository();
-                List<Bundle> updated = new ArrayList<Bundle>();
-                for (Bundle bundle : watchedBundles) {
-                    try {
-                        updateBundleIfNecessary(localRepository, updated, bundle);
-                    } catch (IOException ex) {
-                        logger.error("Error watching bundle.", ex);
-                    } catch (BundleException ex) {
-                        logger.error("Error updating bundle.", ex);
+                if (oldCounter != counter.get() || !localRepository.equals(oldLocalRepository)) {
+                    oldCounter = counter.get();
+                    oldLocalRepository = localRepository;
+                    watchedDirectories = getWatchedDirectories(localRepository);
+                    // the bundles may have changed while they were not watched
+                    for (Set<Bundle> bundles : watchedDirectories.values()) {
+                        changed.addAll(bundles);
                     }
                 }
-                if (!updated.isEmpty()) {
-                    try {
-                        final CountDownLatch latch = new CountDownLatch(1);
-                        wiring.refreshBundles(updated, new FrameworkListener() {
-                            public void frameworkEvent(FrameworkEvent event) {
-                                latch.countDown();
-                            }
-                        });
-                        latch.await();
-                    } catch (InterruptedException e) {
-                        running.set(false);
+                for (Path directory : watcher.watch(watchedDirectories.keySet())) {
+                    // the artifact may have been written before the directory was watched
+                    changed.addAll(watchedDirectories.get(directory));
+                }
+                for (Path directory : watcher.awaitChanges()) {
+                    Set<Bundle> bundles = watchedDirectories.get(directory);
+                    if (bundles != null) {
+                        changed.addAll(bundles);
                     }
-                    for (Bundle bundle : updated) {
-                        try {
-                            if (bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null) {
-                                logger.info("[Watch] Bundle {} is a fragment, so it's not started", bundle.getSymbolicName());
-                            } else {
-                                bundle.start(Bundle.START_TRANSIENT);
-                            }
-                        } catch (BundleException ex) {
-                            logger.warn("[Watch] Error starting bundle", ex);
+                }
+
+                if (!changed.isEmpty() && running.get()) {
+                    updateBundles(localRepository, changed);
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Error watching the local repository.", ex);
+        } catch (InterruptedException ex) {
+            running.set(false);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Bundle watcher thread stopped");
+        }
+    }
+
+    /**
+     * Get the watched snapshot bundles, by directory of their artifact in the local repository.
+     */
+    private Map<Path, Set<Bundle>> getWatchedDirectories(File localRepository) {
+        Map<Path, Set<Bundle>> directories = new HashMap<Path, Set<Bundle>>();
+        for (String bundleURL : watchURLs) {
+            // Transform into regexp
+            bundleURL = bundleURL.replaceAll("\\*", ".*");
+            for (Bundle bundle : bundleService.selectBundles(Collections.singletonList(bundleURL), false)) {
+                if (isMavenSnapshotUrl(getLocation(bundle))) {
+                    File location = getBundleExternalLocation(localRepository, bundle);
+                    if (location != null) {
+                        Path directory = location.getParentFile().toPath();
+                        Set<Bundle> bundles = directories.get(directory);
+                        if (bundles == null) {
+                            bundles = new HashSet<Bundle>();
+                            directories.put(directory, bundles);
                         }
+                        bundles.add(bundle);
                     }
                 }
             }
+        }
+        return directories;
+    }
+
+    /**
+     * Update the given bundles if their artifact is newer, and refresh them all at once.
+     */
+    private void updateBundles(File localRepository, Set<Bundle> bundles) {
+        Map<Bundle, File> changed = new LinkedHashMap<Bundle, File>();
+        for (Bundle bundle : bundles) {
+            File location = getBundleExternalLocation(localRepository, bundle);
+            if (location != null && location.exists() && location.lastModified() > bundle.getLastModified()) {
+                changed.put(bundle, location);
+            }
+        }
+        if (!changed.isEmpty()) {
+            updateBundles(changed);
+        }
+    }
+
+    /**
+     * Stop all the given bundles, update them, refresh them at once and start them again.
+     */
+    void updateBundles(Map<Bundle, File> changed) {
+        // Get the wiring before any in case of a refresh of a dependency
+        FrameworkWiring wiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
+        // stop all the bundles first, so that none of them runs with the others partially updated
+        for (Bundle bundle : changed.keySet()) {
+            if (bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null) {
+                logger.info("[Watch] Bundle {} is a fragment, so it's not stopped", bundle.getSymbolicName());
+            } else {
+                try {
+                    bundle.stop(Bundle.STOP_TRANSIENT);
+                } catch (BundleException ex) {
+                    logger.warn("[Watch] Error stopping bundle", ex);
+                }
+            }
+        }
+        List<Bundle> updated = new ArrayList<Bundle>();
+        for (Map.Entry<Bundle, File> entry : changed.entrySet()) {
+            try {
+                updateBundle(entry.getKey(), entry.getValue());
+                updated.add(entry.getKey());
+            } catch (IOException ex) {
+                logger.error("Error watching bundle.", ex);
+            } catch (BundleException ex) {
+                logger.error("Error updating bundle.", ex);
+            }
+        }
+        if (!updated.isEmpty()) {
             try {
-                Thread.sleep(interval);
-            } catch (InterruptedException ex) {
+                final CountDownLatch latch = new CountDownLatch(1);
+                wiring.refreshBundles(updated, new FrameworkListener() {
+                    public void frameworkEvent(FrameworkEvent event) {
+                        latch.countDown();
+                    }
+                });
+                latch.await();
+            } catch (InterruptedException e) {
                 running.set(false);
             }
         }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("Bundle watcher thread stopped");
+        for (Bundle bundle : changed.keySet()) {
+            try {
+                if (bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null) {
+                    logger.info("[Watch] Bundle {} is a fragment, so it's not started", bundle.getSymbolicName());
+                } else {
+                    bundle.start(Bundle.START_TRANSIENT);
+                }
+            } catch (BundleException ex) {
+                logger.warn("[Watch] Error starting bundle", ex);
+            }
         }
     }
 
@@ -154,32 +235,19 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
         return url.startsWith("mvn:") && url.contains("SNAPSHOT");
     }
 
-    private void updateBundleIfNecessary(File localRepository, List<Bundle> updated, Bundle bundle)
-        throws BundleException, IOException {
-        File location = getBundleExternalLocation(localRepository, bundle);
-        if (location != null && location.exists() && location.lastModified() > bundle.getLastModified()) {
-            InputStream is = new FileInputStream(location);
-            try {
-                logger.info("[Watch] Updating watched bundle: {} ({})", bundle.getSymbolicName(), bundle.getVersion());
-                if (bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null) {
-                    logger.info("[Watch] Bundle {} is a fragment, so it's not stopped", bundle.getSymbolicName());
-                } else {
-                    bundle.stop(Bundle.STOP_TRANSIENT);
-                }
-                // We don't really want to loose the update-location
-                String updateLocation = getLocation(bundle);
-                if (!updateLocation.equals(bundle.getLocation())) {
-                    File file = BundleUtils.fixBundleWithUpdateLocation(is, updateLocation);
-                    try (FileInputStream fis = new FileInputStream(file)) {
-                        bundle.update(fis);
-                    }
-                    file.delete();
-                } else {
-                    bundle.update(is);
+    private void updateBundle(Bundle bundle, File location) throws BundleException, IOException {
+        try (InputStream is = new FileInputStream(location)) {
+            logger.info("[Watch] Updating watched bundle: {} ({})", bundle.getSymbolicName(), bundle.getVersion());
+            // We don't really want to loose the update-location
+            String updateLocation = getLocation(bundle);
+            if (!updateLocation.equals(bundle.getLocation())) {
+                File file = BundleUtils.fixBundleWithUpdateLocation(is, updateLocation);
+                try (FileInputStream fis = new FileInputStream(file)) {
+                    bundle.update(fis);
                 }
-                updated.add(bundle);
-            } finally {
-                is.close();
+                file.delete();
+            } else {
+                bundle.update(is);
             }
         }
     }
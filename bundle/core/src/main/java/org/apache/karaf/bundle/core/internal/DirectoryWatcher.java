@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a set of directories and coalesces their changes.
+ *
+ * A rebuild writes several files, so the changes are collected until nothing changes
+ * during the interval, but for at most {@link #MAX_DEBOUNCE} intervals.
+ */
+abstract class DirectoryWatcher implements Closeable {
+
+    /**
+     * Maximum number of intervals the changes are coalesced while the directories keep changing.
+     */
+    static final int MAX_DEBOUNCE = 10;
+
+    protected final long interval;
+    private final Set<Path> watched = new HashSet<Path>();
+
+    protected DirectoryWatcher(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Create a watcher using the native file watching of the platform.
+     *
+     * When the platform has none (e.g. on Mac OS X), the {@link WatchService} of the JDK
+     * only polls the directories every 10 seconds, so the timestamps of the files are
+     * checked at each interval instead.
+     */
+    static DirectoryWatcher create(long interval) throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        if ("sun.nio.fs.PollingWatchService".equals(watchService.getClass().getName())) {
+            watchService.close();
+            return new Polling(interval);
+        }
+        return new Native(watchService, interval);
+    }
+
+    /**
+     * Watch the given directories only. A directory which does not exist is watched
+     * once it has been created.
+     *
+     * @param directories the directories to watch.
+     * @return the directories which were not watched yet, their content may have changed unnoticed.
+     */
+    Set<Path> watch(Set<Path> directories) throws IOException {
+        for (Iterator<Path> it = watched.iterator(); it.hasNext();) {
+            Path directory = it.next();
+            if (!directories.contains(directory)) {
+                cancel(directory);
+                it.remove();
+            }
+        }
+        Set<Path> added = new HashSet<Path>();
+        for (Path directory : directories) {
+            if (!watched.contains(directory) && Files.isDirectory(directory)) {
+                register(directory);
+                watched.add(directory);
+                added.add(directory);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Wait during the interval for a change, then until nothing changes during the interval.
+     *
+     * @return the changed directories, empty if nothing changed during the first interval.
+     */
+    Set<Path> awaitChanges() throws InterruptedException {
+        Set<Path> changed = new HashSet<Path>();
+        long deadline = currentTimeMillis() + MAX_DEBOUNCE * interval;
+        Set<Path> directories = poll();
+        while (!directories.isEmpty()) {
+            changed.addAll(directories);
+            if (currentTimeMillis() >= deadline) {
+                break;
+            }
+            directories = poll();
+        }
+        return changed;
+    }
+
+    /**
+     * Forget a deleted directory, so that it is watched again once it has been created.
+     */
+    protected void deleted(Path directory) {
+        watched.remove(directory);
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    protected abstract void register(Path directory) throws IOException;
+
+    protected abstract void cancel(Path directory);
+
+    /**
+     * Wait at most the interval for changes.
+     *
+     * @return the changed directories, empty if none changed.
+     */
+    protected abstract Set<Path> poll() throws InterruptedException;
+
+    /**
+     * Watcher using a {@link WatchService}.
+     */
+    static class Native extends DirectoryWatcher {
+
+        private final WatchService watchService;
+        private final Map<Path, WatchKey> keys = new HashMap<Path, WatchKey>();
+
+        Native(WatchService watchService, long interval) {
+            super(interval);
+            this.watchService = watchService;
+        }
+
+        @Override
+        protected void register(Path directory) throws IOException {
+            keys.put(directory, directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+
+        @Override
+        protected void cancel(Path directory) {
+            WatchKey key = keys.remove(directory);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+
+        @Override
+        protected Set<Path> poll() throws InterruptedException {
+            Set<Path> changed = new HashSet<Path>();
+            WatchKey key = watchService.poll(interval, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                Path directory = (Path) key.watchable();
+                key.pollEvents();
+                if (!key.reset() && keys.get(directory) == key) {
+                    // the directory has been deleted
+                    keys.remove(directory);
+                    deleted(directory);
+                }
+                changed.add(directory);
+                key = watchService.poll();
+            }
+            return changed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Watcher checking the last modification time of the files at each interval.
+     */
+    static class Polling extends DirectoryWatcher {
+
+        private final Map<Path, Long> timestamps = new HashMap<Path, Long>();
+
+        Polling(long interval) {
+            super(interval);
+        }
+
+        @Override
+        protected void register(Path directory) {
+            timestamps.put(directory, getLastModified(directory));
+        }
+
+        @Override
+        protected void cancel(Path directory) {
+            timestamps.remove(directory);
+        }
+
+        @Override
+        protected Set<Path> poll() throws InterruptedException {
+            Thread.sleep(interval);
+            Set<Path> changed = new HashSet<Path>();
+            for (Iterator<Map.Entry<Path, Long>> it = timestamps.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Path, Long> entry = it.next();
+                if (!Files.isDirectory(entry.getKey())) {
+                    it.remove();
+                    deleted(entry.getKey());
+                    changed.add(entry.getKey());
+                } else {
+                    long lastModified = getLastModified(entry.getKey());
+                    if (lastModified != entry.getValue()) {
+                        entry.setValue(lastModified);
+                        changed.add(entry.getKey());
+                    }
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * The last modification of the directory or of one of its files.
+         */
+        private static long getLastModified(Path directory) {
+            File dir = directory.toFile();
+            long lastModified = dir.lastModified();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    lastModified = Math.max(lastModified, file.lastModified());
+                }
+            }
+            return lastModified;
+        }
+
+        @Override
+        public void close() {
+            timestamps.clear();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.easymock.IMocksControl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+
+public class BundleWatcherImplTest {
+
+    private File artifact;
+
+    @Before
+    public void setUp() throws IOException {
+        artifact = File.createTempFile("artifact", ".jar");
+    }
+
+    @After
+    public void tearDown() {
+        artifact.delete();
+    }
+
+    @Test
+    public void testBatchedUpdate() throws Exception {
+        IMocksControl control = EasyMock.createStrictControl();
+        BundleContext bundleContext = control.createMock(BundleContext.class);
+        Bundle system = control.createMock(Bundle.class);
+        final FrameworkWiring wiring = control.createMock(FrameworkWiring.class);
+        Bundle bundle1 = createBundle(control, "bundle1", false);
+        Bundle bundle2 = createBundle(control, "bundle2", false);
+        Bundle fragment = createBundle(control, "fragment", true);
+        expect(bundleContext.getBundle(0)).andStubReturn(system);
+        expect(system.adapt(FrameworkWiring.class)).andStubReturn(wiring);
+
+        // all the bundles are stopped before any update, the fragment is not stopped
+        bundle1.stop(Bundle.STOP_TRANSIENT);
+        bundle2.stop(Bundle.STOP_TRANSIENT);
+        bundle1.update(anyObject(InputStream.class));
+        bundle2.update(anyObject(InputStream.class));
+        expectLastCall().andThrow(new BundleException("failure"));
+        fragment.update(anyObject(InputStream.class));
+        // the updated bundles are refreshed at once
+        wiring.refreshBundles(eq(Arrays.asList(bundle1, fragment)), anyObject(FrameworkListener.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() {
+                ((FrameworkListener) EasyMock.getCurrentArguments()[1]).frameworkEvent(null);
+                return null;
+            }
+        });
+        // all the bundles are started again, even the ones which could not be updated
+        bundle1.start(Bundle.START_TRANSIENT);
+        bundle2.start(Bundle.START_TRANSIENT);
+        control.replay();
+
+        Map<Bundle, File> changed = new LinkedHashMap<Bundle, File>();
+        changed.put(bundle1, artifact);
+        changed.put(bundle2, artifact);
+        changed.put(fragment, artifact);
+        new BundleWatcherImpl(bundleContext, null, null).updateBundles(changed);
+        control.verify();
+    }
+
+    private Bundle createBundle(IMocksControl control, String name, boolean fragment) {
+        Bundle bundle = control.createMock(name, Bundle.class);
+        Dictionary<String, String> headers = new Hashtable<String, String>();
+        if (fragment) {
+            headers.put(Constants.FRAGMENT_HOST, "host");
+        }
+        expect(bundle.getHeaders()).andStubReturn(headers);
+        expect(bundle.getLocation()).andStubReturn("mvn:org.apache.karaf/" + name + "/1.0-SNAPSHOT");
+        expect(bundle.getSymbolicName()).andStubReturn(name);
+        expect(bundle.getVersion()).andStubReturn(new Version("1.0.0.SNAPSHOT"));
+        return bundle;
+    }
+
+}
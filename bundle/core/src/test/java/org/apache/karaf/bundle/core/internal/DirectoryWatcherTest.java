@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryWatcherTest {
+
+    private File base;
+    private Path a;
+    private Path b;
+
+    @Before
+    public void setUp() throws IOException {
+        base = Files.createTempDirectory("watcher").toFile();
+        a = new File(base, "a").toPath();
+        b = new File(base, "b").toPath();
+        Files.createDirectory(a);
+        Files.createDirectory(b);
+    }
+
+    @After
+    public void tearDown() {
+        delete(base);
+    }
+
+    @Test
+    public void testNoChange() throws Exception {
+        ScriptedWatcher watcher = new ScriptedWatcher();
+        assertTrue(watcher.awaitChanges().isEmpty());
+        assertEquals(1, watcher.polls);
+    }
+
+    @Test
+    public void testDebounce() throws Exception {
+        ScriptedWatcher watcher = new ScriptedWatcher(set(a), set(b), set(a), set());
+        assertEquals(set(a, b), watcher.awaitChanges());
+        // the changes are coalesced until nothing changes during an interval
+        assertEquals(4, watcher.polls);
+        assertEquals(4 * watcher.interval, watcher.time);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxDebounce() throws Exception {
+        Set<Path>[] script = new Set[DirectoryWatcher.MAX_DEBOUNCE + 5];
+        for (int i = 0; i < script.length; i++) {
+            script[i] = i < DirectoryWatcher.MAX_DEBOUNCE ? set(a) : set(b);
+        }
+        ScriptedWatcher watcher = new ScriptedWatcher(script);
+        // the directories keep changing, the changes are returned after MAX_DEBOUNCE intervals
+        assertEquals(set(a), watcher.awaitChanges());
+        assertEquals(DirectoryWatcher.MAX_DEBOUNCE, watcher.polls);
+        assertEquals(set(b), watcher.awaitChanges());
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        ScriptedWatcher watcher = new ScriptedWatcher();
+        Path missing = new File(base, "missing").toPath();
+        assertEquals(set(a, b), watcher.watch(set(a, b, missing)));
+        assertEquals(set(a, b), watcher.registered);
+        // already watched
+        assertEquals(set(), watcher.watch(set(a, b, missing)));
+        // no longer watched
+        assertEquals(set(), watcher.watch(set(a, missing)));
+        assertEquals(set(a), watcher.registered);
+        // created
+        Files.createDirectory(missing);
+        assertEquals(set(missing), watcher.watch(set(a, missing)));
+        assertEquals(set(a, missing), watcher.registered);
+    }
+
+    @Test
+    public void testNative() throws Exception {
+        try (DirectoryWatcher watcher = DirectoryWatcher.create(200)) {
+            testWatcher(watcher);
+        }
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        try (DirectoryWatcher watcher = new DirectoryWatcher.Polling(200)) {
+            testWatcher(watcher);
+        }
+    }
+
+    private void testWatcher(DirectoryWatcher watcher) throws Exception {
+        assertEquals(set(a, b), watcher.watch(set(a, b)));
+        assertEquals(set(), watcher.awaitChanges());
+
+        File artifact = new File(a.toFile(), "artifact.jar");
+        Files.write(artifact.toPath(), new byte[] { 1 });
+        // make sure the timestamp changes, whatever the resolution of the file system
+        artifact.setLastModified(System.currentTimeMillis() + 10000);
+        assertEquals(set(a), watcher.awaitChanges());
+        assertEquals(set(), watcher.awaitChanges());
+
+        // a deleted directory is watched again once it has been created
+        delete(a.toFile());
+        assertTrue(watcher.awaitChanges().contains(a));
+        assertEquals(set(), watcher.watch(set(a, b)));
+        Files.createDirectory(a);
+        assertEquals(set(a), watcher.watch(set(a, b)));
+        Files.write(artifact.toPath(), new byte[] { 2 });
+        artifact.setLastModified(System.currentTimeMillis() + 20000);
+        assertEquals(set(a), watcher.awaitChanges());
+    }
+
+    private static Set<Path> set(Path... paths) {
+        return new HashSet<Path>(Arrays.asList(paths));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A watcher returning the given changes, one interval at a time.
+     */
+    private static class ScriptedWatcher extends DirectoryWatcher {
+
+        final Deque<Set<Path>> script = new ArrayDeque<Set<Path>>();
+        final Set<Path> registered = new HashSet<Path>();
+        int polls;
+        long time;
+
+        @SafeVarargs
+        ScriptedWatcher(Set<Path>... changes) {
+            super(1000);
+            Collections.addAll(script, changes);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return time;
+        }
+
+        @Override
+        protected void register(Path directory) {
+            registered.add(directory);
+        }
+
+        @Override
+        protected void cancel(Path directory) {
+            registered.remove(directory);
+        }
+
+        @Override
+        protected Set<Path> poll() {
+            polls++;
+            time += interval;
+            Set<Path> changes = script.poll();
+            return changes != null ? changes : Collections.<Path>emptySet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -17,8 +17,17 @@
 package org.apache.karaf.diagnostic.core;
 
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
 import org.apache.karaf.diagnostic.core.common.ZipDumpDestination;
@@ -36,6 +45,13 @@ import org.osgi.framework.ServiceReference;
  */
 public final class Dump {
 
+    /**
+     * Name of the entry listing the providers and the time they took.
+     */
+    public static final String MANIFEST = "manifest.txt";
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
     public static DumpDestination directory(File file) {
         return new DirectoryDumpDestination(file);
     }
@@ -44,32 +60,71 @@ public final class Dump {
         return new ZipDumpDestination(file);
     }
 
+    /**
+     * @param file The zip archive.
+     * @param compressionLevel The compression level, from 0 (no compression) to 9, or -1 for the default level.
+     */
+    public static DumpDestination zip(File file, int compressionLevel) {
+        return new ZipDumpDestination(file, compressionLevel);
+    }
+
+    /**
+     * Create the dump. The providers run concurrently with the destinations created by this class,
+     * and one at a time with the other destinations, which may not support concurrent entries.
+     */
     public static void dump(BundleContext bundleContext, DumpDestination destination, boolean noThreadDump, boolean noHeapDump) {
-        List<DumpProvider> providers = new ArrayList<DumpProvider>();
-        providers.add(new EnvironmentDumpProvider(bundleContext));
-        providers.add(new MemoryDumpProvider());
-        if (!noThreadDump) providers.add(new ThreadDumpProvider());
-        if (!noHeapDump) providers.add(new HeapDumpProvider());
-        providers.add(new BundleDumpProvider(bundleContext));
-        for (DumpProvider provider : providers) {
-            try {
-                provider.createDump(destination);
-            } catch (Throwable t) {
-                // Ignore
+        List<Callable<String>> tasks = new ArrayList<>();
+        tasks.add(task(new EnvironmentDumpProvider(bundleContext), destination));
+        tasks.add(task(new MemoryDumpProvider(), destination));
+        if (!noThreadDump) tasks.add(task(new ThreadDumpProvider(), destination));
+        if (!noHeapDump) tasks.add(task(new HeapDumpProvider(), destination));
+        tasks.add(task(new BundleDumpProvider(bundleContext), destination));
+        try {
+            for (ServiceReference<DumpProvider> ref : bundleContext.getServiceReferences(DumpProvider.class, null)) {
+                tasks.add(task(bundleContext, ref, destination));
             }
+        } catch (InvalidSyntaxException e) {
+            // Ignore
         }
+        dump(destination, tasks);
+    }
+
+    /**
+     * Run the tasks of the providers, then add the manifest and save the destination.
+     */
+    static void dump(DumpDestination destination, List<Callable<String>> tasks) {
+        long start = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        // the providers mostly wait for the JVM or the disk, so two of them can run even on a single processor
+        int threads = isConcurrent(destination)
+                ? Math.max(1, Math.min(tasks.size(), Math.max(2, Runtime.getRuntime().availableProcessors())))
+                : 1;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Karaf Dump " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            for (ServiceReference<DumpProvider> ref : bundleContext.getServiceReferences(DumpProvider.class, null)) {
-                DumpProvider provider = bundleContext.getService(ref);
+            for (Future<String> future : executor.invokeAll(tasks)) {
                 try {
-                    provider.createDump(destination);
-                } catch (Throwable t) {
+                    lines.add(future.get());
+                } catch (ExecutionException e) {
                     // Ignore
-                } finally {
-                    bundleContext.ungetService(ref);
                 }
             }
-        } catch (InvalidSyntaxException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(destination.add(MANIFEST)))) {
+            writer.println("Dump created on " + new Date(start) + " in " + (System.currentTimeMillis() - start) + " ms");
+            writer.println();
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } catch (Throwable t) {
             // Ignore
         }
         try {
@@ -79,6 +134,44 @@ public final class Dump {
         }
     }
 
+    private static boolean isConcurrent(DumpDestination destination) {
+        return destination instanceof ZipDumpDestination || destination instanceof DirectoryDumpDestination;
+    }
+
+    static Callable<String> task(DumpProvider provider, DumpDestination destination) {
+        return () -> run(provider.getClass().getName(), provider, destination);
+    }
+
+    private static Callable<String> task(BundleContext bundleContext, ServiceReference<DumpProvider> ref, DumpDestination destination) {
+        return () -> {
+            DumpProvider provider = bundleContext.getService(ref);
+            if (provider == null) {
+                return String.format("%-70s %s", ref, "unavailable");
+            }
+            try {
+                return run(provider.getClass().getName(), provider, destination);
+            } finally {
+                bundleContext.ungetService(ref);
+            }
+        };
+    }
+
+    /**
+     * Run the provider, and describe the outcome for the manifest.
+     */
+    private static String run(String name, DumpProvider provider, DumpDestination destination) {
+        long start = System.nanoTime();
+        String status;
+        try {
+            provider.createDump(destination);
+            status = "ok";
+        } catch (Throwable t) {
+            status = "failed: " + t;
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        return String.format("%-70s %8d ms  %s", name, time, status);
+    }
+
     // Private constructor
     private Dump() { }
 }
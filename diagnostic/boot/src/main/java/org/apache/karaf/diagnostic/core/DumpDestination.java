@@ -15,10 +15,16 @@
  */
 package org.apache.karaf.diagnostic.core;
 
+import java.io.File;
 import java.io.OutputStream;
+import java.nio.file.Files;
 
 /**
  * Destination for created dumps.
+ *
+ * {@link Dump#dump} runs the dump providers concurrently only with the destinations
+ * created by {@link Dump}, which accept entries written by several threads at once.
+ * The providers write to any other destination one at a time, as before.
  */
 public interface DumpDestination {
 
@@ -34,6 +40,23 @@ public interface DumpDestination {
      */
     OutputStream add(String name) throws Exception;
 
+    /**
+     * Add an existing file in dump destination.
+     *
+     * The destination may copy the file more efficiently than through
+     * {@link #add(String)}: the directory destination lets the operating system
+     * copy it, the zip destination stores large files without compressing them.
+     *
+     * @param name Name of file in destination.
+     * @param file The file to add, only its current length is copied.
+     * @throws Exception When entry cannot be added.
+     */
+    default void add(String name, File file) throws Exception {
+        try (OutputStream outputStream = add(name)) {
+            Files.copy(file.toPath(), outputStream);
+        }
+    }
+
     /**
      * Complete creation of the dump.
      *
@@ -1,75 +0,0 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- */
-package org.apache.karaf.diagnostic.core.common;
-
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.zip.ZipOutputStream;
-
-/**
- * Output stream which closes entry instead closing whole stream.
- */
-public class ClosingEntryOutputStreamWrapper extends OutputStream {
-
-    /**
-     * Wrapped ZIP output stream. 
-     */
-    private ZipOutputStream outputStream;
-
-    /**
-     * Creates new OutputStream.
-     * 
-     * @param outputStream Wrapped output stream.
-     */
-    public ClosingEntryOutputStreamWrapper(ZipOutputStream outputStream) {
-        this.outputStream = outputStream;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void write(int b) throws IOException {
-        outputStream.write(b);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void write(byte[] b) throws IOException {
-        outputStream.write(b);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void write(byte[] b, int off, int len)
-        throws IOException {
-        outputStream.write(b, off, len);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void close() throws IOException {
-        // close entry instead of closing zip stream.
-        outputStream.closeEntry();
-    }
-
-}
@@ -17,7 +17,10 @@ package org.apache.karaf.diagnostic.core.common;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.karaf.diagnostic.core.DumpDestination;
 
@@ -40,12 +43,33 @@ public class DirectoryDumpDestination implements DumpDestination {
 	}
 
 	public OutputStream add(String name) throws Exception {
+		return new FileOutputStream(file(name));
+	}
+
+	public void add(String name, File file) throws Exception {
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(file(name).toPath(), StandardOpenOption.CREATE,
+					 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			// copied by the kernel when possible, the file may still grow (logs)
+			long length = in.size();
+			long position = 0;
+			while (position < length) {
+				long transferred = in.transferTo(position, length - position, out);
+				if (transferred <= 0) {
+					throw new IOException("File truncated while being added to the dump");
+				}
+				position += transferred;
+			}
+		}
+	}
+
+	private File file(String name) {
 		File destination = new File(directory, name);
 		if (name.contains("/") || name.contains("\\")) {
 			// if name contains slashes we need to create sub directory
 			destination.getParentFile().mkdirs();
 		}
-		return new FileOutputStream(destination);
+		return destination;
 	}
 
 	public void save() throws Exception {
@@ -15,10 +15,23 @@
  */
 package org.apache.karaf.diagnostic.core.common;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -26,14 +39,34 @@ import org.apache.karaf.diagnostic.core.DumpDestination;
 
 /**
  * Class which packages dumps to ZIP archive.
+ *
+ * The entries can be written concurrently: each entry is buffered (in memory, or in a
+ * temporary file when it grows large) until its stream is closed, and then appended to
+ * the archive. The entries still open when the dump is saved are appended by {@link #save()}.
  */
 public class ZipDumpDestination implements DumpDestination {
 
+    /**
+     * Size above which an entry is buffered in a temporary file instead of memory.
+     */
+    static final int SPOOL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Size above which a file is stored without compression.
+     */
+    static final long STORED_THRESHOLD = 32 * 1024 * 1024;
+
     /**
      * Destination streem.
      */
     private ZipOutputStream outputStream;
     private File file;
+    private final int compressionLevel;
+
+    /**
+     * The entries not closed yet.
+     */
+    private final Set<EntryOutputStream> openEntries = new LinkedHashSet<>();
 
     /**
      * Creates new dump in given directory.
@@ -51,10 +84,25 @@ public class ZipDumpDestination implements DumpDestination {
      * @param file Destination file.
      */
     public ZipDumpDestination(File file) {
+        this(file, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates new dump in given file (zip archive).
+     *
+     * @param file Destination file.
+     * @param compressionLevel The compression level, from 0 (no compression) to 9, or -1 for the default level.
+     */
+    public ZipDumpDestination(File file, int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
         try {
             this.file = file;
-            outputStream = new ZipOutputStream(new FileOutputStream(
-                file));
+            this.compressionLevel = compressionLevel;
+            outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(
+                file), 64 * 1024));
+            outputStream.setLevel(compressionLevel);
         } catch (FileNotFoundException e) {
             // sometimes this can occur, but we simply re throw and let 
             // caller handle exception
@@ -66,20 +114,176 @@ public class ZipDumpDestination implements DumpDestination {
      * {@inheritDoc}
      */
     public OutputStream add(String name) throws Exception {
-        ZipEntry zipEntry = new ZipEntry(name);
-        outputStream.putNextEntry(zipEntry);
-        return new ClosingEntryOutputStreamWrapper(outputStream);
+        EntryOutputStream entry = new EntryOutputStream(name);
+        synchronized (this) {
+            openEntries.add(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void add(String name, File file) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the file may still grow (logs), only its current content is added
+            long length = channel.size();
+            ZipEntry zipEntry = new ZipEntry(name);
+            zipEntry.setTime(file.lastModified());
+            if (length >= STORED_THRESHOLD || compressionLevel == Deflater.NO_COMPRESSION) {
+                // compressing large files takes most of the dump time
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(length);
+                zipEntry.setCompressedSize(length);
+                CRC32 crc = new CRC32();
+                copy(channel, length, crc, null);
+                zipEntry.setCrc(crc.getValue());
+            }
+            synchronized (this) {
+                outputStream.putNextEntry(zipEntry);
+                // the zip stream needs the content in the heap to compute its checksum and compress it
+                copy(channel, length, null, outputStream);
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Read the given length of the file, to compute its checksum and/or write it.
+     */
+    private static void copy(FileChannel channel, long length, Checksum checksum, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            if (length - position < buffer.capacity()) {
+                buffer.limit((int) (length - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File truncated while being added to the dump");
+            }
+            if (checksum != null) {
+                checksum.update(buffer.array(), 0, read);
+            }
+            if (out != null) {
+                out.write(buffer.array(), 0, read);
+            }
+            position += read;
+        }
+    }
+
+    private synchronized void writeEntry(String name, byte[] data, int length) throws IOException {
+        outputStream.putNextEntry(new ZipEntry(name));
+        outputStream.write(data, 0, length);
+        outputStream.closeEntry();
     }
 
     /**
      * Closes archive handle.
      */
     public void save() throws Exception {
-        outputStream.close();
+        // do not lose the entries of the providers which did not close their stream
+        List<EntryOutputStream> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(openEntries);
+        }
+        for (EntryOutputStream entry : entries) {
+            entry.close();
+        }
+        synchronized (this) {
+            outputStream.close();
+        }
     }
 
     @Override
     public String toString() {
         return "zip: " + file;
     }
+
+    /**
+     * Buffer of an entry, exposing its internal array.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(8 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Output stream of an entry, added to the archive when closed.
+     */
+    private class EntryOutputStream extends OutputStream {
+
+        private final String name;
+        private Buffer buffer = new Buffer();
+        private File spool;
+        private OutputStream spoolStream;
+        private boolean closed;
+
+        EntryOutputStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            target(1).write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            target(len).write(b, off, len);
+        }
+
+        private OutputStream target(int len) throws IOException {
+            if (closed) {
+                throw new IOException("Entry " + name + " is closed");
+            }
+            if (spoolStream == null && buffer.size() + len > SPOOL_THRESHOLD) {
+                spool = File.createTempFile("dump", ".tmp");
+                spoolStream = new BufferedOutputStream(new FileOutputStream(spool), 64 * 1024);
+                buffer.writeTo(spoolStream);
+                buffer = null;
+            }
+            return spoolStream != null ? spoolStream : buffer;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (spoolStream != null) {
+                spoolStream.flush();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (ZipDumpDestination.this) {
+                openEntries.remove(this);
+            }
+            if (spoolStream == null) {
+                writeEntry(name, buffer.array(), buffer.size());
+                buffer = null;
+                return;
+            }
+            try {
+                spoolStream.close();
+                add(name, spool);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                spool.delete();
+            }
+        }
+    }
 }
@@ -21,8 +21,6 @@ import org.apache.karaf.diagnostic.core.DumpProvider;
 
 import javax.management.MBeanServer;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 
@@ -33,36 +31,22 @@ public class HeapDumpProvider implements DumpProvider {
 
     public void createDump(DumpDestination destination) throws Exception {
         File heapDumpFile = null;
-        FileInputStream in = null;
-        OutputStream out = null;
         try {
             MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
             Class<?> diagnosticMXBeanClass = Class.forName("com.sun.management.HotSpotDiagnosticMXBean");
             Object diagnosticMXBean = ManagementFactory.newPlatformMXBeanProxy(mBeanServer,
                 "com.sun.management:type=HotSpotDiagnostic", diagnosticMXBeanClass);
 
-            heapDumpFile = File.createTempFile("heapdump", ".txt");
+            // recent JVMs require the .hprof extension
+            heapDumpFile = File.createTempFile("heapdump", ".hprof");
             heapDumpFile.delete();
             
             Method method = diagnosticMXBeanClass.getMethod("dumpHeap", String.class, boolean.class);
             method.invoke(diagnosticMXBean, heapDumpFile.getAbsolutePath(), false);
 
-            // copy the dump in the destination
-            in = new FileInputStream(heapDumpFile);
-            out = destination.add("heapdump.txt");
-            byte[] buffer = new byte[2048];
-            int l;
-            while (((l = in.read(buffer)) != -1)) {
-                out.write(buffer, 0, l);
-            }
+            // let the destination add the file, a large dump is stored without compression
+            destination.add("heapdump.txt", heapDumpFile);
         } finally {
-            if (in != null) {
-                in.close();
-            }
-            if (out != null) {
-                out.flush();
-                out.close();
-            }
             // remove the original dump
             if (heapDumpFile != null && heapDumpFile.exists()) {
                 heapDumpFile.delete();
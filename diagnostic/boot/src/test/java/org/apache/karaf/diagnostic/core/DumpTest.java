@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DumpTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("dump", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testProvidersRunConcurrently() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        DumpProvider first = destination -> {
+            // each provider waits for the other one, which only works if they run concurrently
+            barrier.await(10, TimeUnit.SECONDS);
+            write(destination, "first.txt", "first");
+        };
+        DumpProvider second = destination -> {
+            barrier.await(10, TimeUnit.SECONDS);
+            write(destination, "second.txt", "second");
+        };
+        DumpProvider failing = destination -> {
+            throw new IllegalStateException("boom");
+        };
+        DumpDestination destination = Dump.zip(file);
+        Dump.dump(destination, Arrays.asList(Dump.task(first, destination), Dump.task(second, destination),
+                Dump.task(failing, destination)));
+
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals("first", read(zip, "first.txt"));
+            assertEquals("second", read(zip, "second.txt"));
+            String manifest = read(zip, Dump.MANIFEST);
+            assertTrue(manifest, manifest.startsWith("Dump created on "));
+            List<String> lines = Arrays.asList(manifest.split("\\r?\\n"));
+            assertEquals(manifest, 5, lines.size());
+            assertTrue(manifest, lines.get(2).trim().endsWith("ok"));
+            assertTrue(manifest, lines.get(3).trim().endsWith("ok"));
+            assertTrue(manifest, lines.get(4).trim().endsWith("failed: java.lang.IllegalStateException: boom"));
+        }
+    }
+
+    @Test
+    public void testOtherDestinationOneProviderAtATime() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<String>> tasks = new ArrayList<>();
+        MemoryDestination destination = new MemoryDestination();
+        for (int i = 0; i < 4; i++) {
+            String name = "entry" + i;
+            tasks.add(Dump.task(dest -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                write(dest, name, name);
+                running.decrementAndGet();
+            }, destination));
+        }
+        Dump.dump(destination, tasks);
+
+        assertEquals(1, maxRunning.get());
+        assertTrue(destination.saved);
+        assertEquals(Arrays.asList("entry0", "entry1", "entry2", "entry3", Dump.MANIFEST),
+                new ArrayList<>(destination.entries.keySet()));
+        assertEquals("entry2", destination.entries.get("entry2").toString());
+    }
+
+    private static void write(DumpDestination destination, String name, String content) throws Exception {
+        try (OutputStream out = destination.add(name)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static String read(ZipFile zip, String name) throws Exception {
+        assertNotNull(name, zip.getEntry(name));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * A destination which does not support concurrent entries.
+     */
+    private static class MemoryDestination implements DumpDestination {
+
+        final Map<String, ByteArrayOutputStream> entries = Collections.synchronizedMap(new TreeMap<>());
+        boolean saved;
+
+        @Override
+        public OutputStream add(String name) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entries.put(name, out);
+            return out;
+        }
+
+        @Override
+        public void save() {
+            saved = true;
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZipDumpDestinationTest {
+
+    private File file;
+    private File input;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("dump", ".zip");
+        input = File.createTempFile("dump", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        input.delete();
+    }
+
+    @Test
+    public void testCompressionLevel() throws Exception {
+        byte[] content = content(200 * 1024);
+
+        ZipDumpDestination destination = new ZipDumpDestination(file, Deflater.NO_COMPRESSION);
+        write(destination, "entry.txt", content);
+        destination.save();
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry entry = zip.getEntry("entry.txt");
+            assertTrue(entry.getCompressedSize() >= content.length);
+            assertArrayEquals(content, read(zip, "entry.txt"));
+        }
+
+        destination = new ZipDumpDestination(file, Deflater.BEST_COMPRESSION);
+        write(destination, "entry.txt", content);
+        destination.save();
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry entry = zip.getEntry("entry.txt");
+            assertTrue(entry.getCompressedSize() < content.length / 10);
+            assertArrayEquals(content, read(zip, "entry.txt"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCompressionLevel() {
+        new ZipDumpDestination(file, 10);
+    }
+
+    @Test
+    public void testAddFile() throws Exception {
+        byte[] content = content(10000);
+        try (OutputStream out = new FileOutputStream(input)) {
+            out.write(content);
+        }
+
+        ZipDumpDestination destination = new ZipDumpDestination(file, Deflater.NO_COMPRESSION);
+        destination.add("stored.txt", input);
+        destination.save();
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(ZipEntry.STORED, zip.getEntry("stored.txt").getMethod());
+            assertArrayEquals(content, read(zip, "stored.txt"));
+        }
+
+        destination = new ZipDumpDestination(file);
+        destination.add("deflated.txt", input);
+        destination.save();
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("deflated.txt").getMethod());
+            assertArrayEquals(content, read(zip, "deflated.txt"));
+        }
+    }
+
+    @Test
+    public void testUnclosedEntry() throws Exception {
+        ZipDumpDestination destination = new ZipDumpDestination(file);
+        OutputStream out = destination.add("unclosed.txt");
+        out.write("not closed".getBytes("UTF-8"));
+        destination.save();
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals("not closed", new String(read(zip, "unclosed.txt"), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testConcurrentEntries() throws Exception {
+        ZipDumpDestination destination = new ZipDumpDestination(file);
+        // one of the entries is large enough to be spooled to a temporary file
+        byte[] small = content(1000);
+        byte[] large = content(ZipDumpDestination.SPOOL_THRESHOLD + 1000);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String name = "entry" + i;
+            byte[] content = i == 0 ? large : small;
+            Thread thread = new Thread(() -> {
+                try (OutputStream out = destination.add(name)) {
+                    // several writes, interleaved with the other threads
+                    for (int off = 0; off < content.length; off += 100) {
+                        out.write(content, off, Math.min(100, content.length - off));
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        destination.save();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(8, zip.size());
+            assertArrayEquals(large, read(zip, "entry0"));
+            for (int i = 1; i < 8; i++) {
+                assertArrayEquals(small, read(zip, "entry" + i));
+            }
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + (i / 7) % 26);
+        }
+        return content;
+    }
+
+    private static void write(ZipDumpDestination destination, String name, byte[] content) throws Exception {
+        try (OutputStream out = destination.add(name)) {
+            out.write(content);
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws Exception {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(name, entry);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = zip.getInputStream(entry)) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -20,8 +20,10 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.apache.karaf.diagnostic.core.Dump;
+import org.apache.karaf.diagnostic.common.SamplingProfiler;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Argument;
@@ -54,6 +56,12 @@ public class DumpCommand implements Action {
     
     @Option(name = "--no-heap-dump", description = "Include or not the heap dump in ZIP archive")
     boolean noHeapDump = false;
+
+    @Option(name = "-l", aliases = "--compression-level", description = "Compression level of the ZIP archive, from 0 (faster, no compression) to 9 (smaller), -1 for the default")
+    int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    @Option(name = "-p", aliases = "--profile", description = "Samples the running threads during the given number of seconds before creating the dump")
+    int profile;
     
     /**
      * Name of created directory or archive.
@@ -64,6 +72,9 @@ public class DumpCommand implements Action {
     @Reference
     BundleContext bundleContext;
 
+    @Reference(optional = true)
+    SamplingProfiler profiler;
+
     @Override
     public Object execute() throws Exception {
         DumpDestination destination;
@@ -81,7 +92,17 @@ public class DumpCommand implements Action {
         if (directory) {
             destination = Dump.directory(target);
         } else {
-            destination = Dump.zip(target);
+            destination = Dump.zip(target, compressionLevel);
+        }
+
+        if (profile > 0 && profiler != null && !profiler.isRunning()) {
+            System.out.println("Profiling during " + profile + " seconds");
+            profiler.start(SamplingProfiler.DEFAULT_INTERVAL, SamplingProfiler.DEFAULT_MAX_DEPTH, 0);
+            try {
+                Thread.sleep(profile * 1000L);
+            } finally {
+                profiler.stop();
+            }
         }
 
         Dump.dump(bundleContext, destination, noThreadDump, noHeapDump);
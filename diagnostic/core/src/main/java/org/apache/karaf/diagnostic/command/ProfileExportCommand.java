@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import org.apache.karaf.diagnostic.common.SamplingProfiler;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+/**
+ * Command to export the samples of the profiler.
+ */
+@Command(scope = "dev", name = "profile-export", description = "Exports the sampled stacks in the folded format used by flame graph tools.")
+@Service
+public class ProfileExportCommand implements Action {
+
+    @Argument(name = "file", description = "File to write, the stacks are displayed if not set", required = false)
+    String fileName;
+
+    @Reference
+    SamplingProfiler profiler;
+
+    @Override
+    public Object execute() throws Exception {
+        if (fileName == null) {
+            Writer writer = new PrintWriter(System.out);
+            profiler.writeFolded(writer);
+        } else {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(fileName))) {
+                profiler.writeFolded(writer);
+            }
+            System.out.println(profiler.getStatus());
+            System.out.println("Exported profile to " + fileName);
+        }
+        return null;
+    }
+
+}
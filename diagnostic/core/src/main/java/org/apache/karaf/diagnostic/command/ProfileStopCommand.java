@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import org.apache.karaf.diagnostic.common.SamplingProfiler;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+/**
+ * Command to stop the sampling profiler.
+ */
+@Command(scope = "dev", name = "profile-stop", description = "Stops sampling the stacks of the running threads, the samples are kept until the next start.")
+@Service
+public class ProfileStopCommand implements Action {
+
+    @Reference
+    SamplingProfiler profiler;
+
+    @Override
+    public Object execute() throws Exception {
+        profiler.stop();
+        System.out.println(profiler.getStatus());
+        return null;
+    }
+
+}
@@ -16,14 +16,11 @@
 package org.apache.karaf.diagnostic.common;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.OutputStream;
 import java.util.Dictionary;
 import java.util.Enumeration;
 
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
-import org.apache.karaf.util.StreamUtils;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
@@ -65,9 +62,7 @@ public class LogDumpProvider implements DumpProvider {
                     String location = (String) dictionary.get(property);
                     File file = new File(location);
                     if (file.exists()) {
-                        FileInputStream inputStream = new FileInputStream(file);
-                        OutputStream outputStream = destination.add("log/" + file.getName());
-                        StreamUtils.copy(inputStream, outputStream);
+                        destination.add("log/" + file.getName(), file);
                     }
                 }
             }
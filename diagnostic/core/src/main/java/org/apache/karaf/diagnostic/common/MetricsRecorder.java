@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically records JVM and Karaf metrics in a fixed size ring, so that the history
+ * leading to an incident is available in the diagnostic dumps (as metrics.csv).
+ *
+ * The ring is a memory mapped file when a file is given: the samples are kept across
+ * restarts, and are still readable after a crash of the JVM.
+ */
+public class MetricsRecorder implements DumpProvider {
+
+    public static final int DEFAULT_INTERVAL = 10;
+    public static final int DEFAULT_SIZE = 8640;
+
+    /**
+     * Names of the recorded metrics, the value of a metric is -1 when it is not available.
+     */
+    public static final String[] METRICS = {
+        "heap.used", "heap.committed", "nonheap.used", "gc.count", "gc.time",
+        "threads.live", "threads.daemon", "classes.loaded", "cpu.process", "cpu.systemLoad",
+        "bundles.total", "bundles.active", "services.total",
+        "features.deployments", "features.lastDeploymentDuration",
+        "eventadmin.queues.depth", "eventadmin.queues.maxDepth", "eventadmin.queues.dropped"
+    };
+
+    private static final int MAGIC = 0x4b4d4554;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 8 * (1 + METRICS.length);
+
+    /**
+     * The maximum number of samples, so that the ring fits in a single buffer.
+     */
+    public static final int MAX_SIZE = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final Logger logger = LoggerFactory.getLogger(MetricsRecorder.class);
+
+    private final BundleContext bundleContext;
+    private final int size;
+    private final ByteBuffer ring;
+    private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    private ScheduledExecutorService executor;
+    private boolean failureLogged;
+
+    /**
+     * @param bundleContext The context used to count the bundles and services.
+     * @param file The file holding the ring, or {@code null} to keep it in memory.
+     * @param size The number of samples kept, between 1 and {@link #MAX_SIZE}.
+     */
+    public MetricsRecorder(BundleContext bundleContext, File file, int size) throws IOException {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid number of samples: " + size);
+        }
+        this.bundleContext = bundleContext;
+        this.size = size;
+        this.ring = file != null ? map(file, size) : ByteBuffer.allocate(HEADER_SIZE + size * RECORD_SIZE);
+        if (ring.getInt(0) != MAGIC || ring.getInt(4) != METRICS.length || ring.getInt(8) != size) {
+            // new ring, or different layout
+            ring.putInt(0, MAGIC);
+            ring.putInt(4, METRICS.length);
+            ring.putInt(8, size);
+            ring.putLong(16, 0);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) size * RECORD_SIZE);
+        }
+    }
+
+    /**
+     * Start recording.
+     *
+     * @param interval The time between two samples, in seconds.
+     */
+    public synchronized void start(int interval) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Karaf Metrics Recorder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::record, 0, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (ring instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) ring).force();
+        }
+    }
+
+    void record() {
+        try {
+            record(System.currentTimeMillis(), sample());
+        } catch (Throwable t) {
+            // only the first failure is logged as a warning, as it would be repeated at each interval
+            if (!failureLogged) {
+                failureLogged = true;
+                logger.warn("Unable to record the metrics", t);
+            } else {
+                logger.debug("Unable to record the metrics", t);
+            }
+        }
+    }
+
+    synchronized void record(long time, long[] values) {
+        long next = ring.getLong(16);
+        int position = HEADER_SIZE + (int) (next % size) * RECORD_SIZE;
+        ring.putLong(position, time);
+        for (int i = 0; i < values.length; i++) {
+            ring.putLong(position + 8 * (i + 1), values[i]);
+        }
+        ring.putLong(16, next + 1);
+    }
+
+    long[] sample() {
+        long[] values = new long[METRICS.length];
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        values[0] = memory.getHeapMemoryUsage().getUsed();
+        values[1] = memory.getHeapMemoryUsage().getCommitted();
+        values[2] = memory.getNonHeapMemoryUsage().getUsed();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            values[3] += Math.max(0, gc.getCollectionCount());
+            values[4] += Math.max(0, gc.getCollectionTime());
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        values[5] = threads.getThreadCount();
+        values[6] = threads.getDaemonThreadCount();
+        values[7] = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        // in percent
+        Object cpu = getAttribute("java.lang:type=OperatingSystem", "ProcessCpuLoad");
+        values[8] = cpu instanceof Double && (Double) cpu >= 0 ? Math.round((Double) cpu * 100) : -1;
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        values[9] = load >= 0 ? Math.round(load * 100) : -1;
+
+        Bundle[] bundles = bundleContext.getBundles();
+        values[10] = bundles.length;
+        for (Bundle bundle : bundles) {
+            if (bundle.getState() == Bundle.ACTIVE) {
+                values[11]++;
+            }
+        }
+        try {
+            ServiceReference<?>[] references = bundleContext.getAllServiceReferences(null, null);
+            values[12] = references != null ? references.length : 0;
+        } catch (InvalidSyntaxException e) {
+            values[12] = -1;
+        }
+
+        values[13] = toLong(getAttribute("org.apache.karaf:type=feature,*", "Deployments"));
+        values[14] = toLong(getAttribute("org.apache.karaf:type=feature,*", "LastDeploymentDuration"));
+
+        values[15] = -1;
+        values[16] = -1;
+        values[17] = -1;
+        Object queues = getAttribute("org.apache.karaf:type=eventadmin,*", "HandlerQueues");
+        if (queues instanceof TabularData) {
+            values[15] = 0;
+            values[16] = 0;
+            values[17] = 0;
+            for (Object row : ((TabularData) queues).values()) {
+                CompositeData queue = (CompositeData) row;
+                values[15] += toLong(queue.get("Depth"));
+                values[16] = Math.max(values[16], toLong(queue.get("MaxDepth")));
+                values[17] += toLong(queue.get("Dropped"));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get an attribute of the first MBean matching the given name.
+     */
+    private Object getAttribute(String name, String attribute) {
+        try {
+            for (ObjectName objectName : mbeanServer.queryNames(new ObjectName(name), null)) {
+                return mbeanServer.getAttribute(objectName, attribute);
+            }
+        } catch (Exception e) {
+            // not available
+        }
+        return null;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : -1;
+    }
+
+    /**
+     * Get the recorded samples, the oldest first.
+     *
+     * @param since The time of the oldest sample to return, in milliseconds.
+     * @return The samples, each one starting with its time followed by the values of the {@link #METRICS}.
+     */
+    public synchronized List<long[]> getSamples(long since) {
+        List<long[]> samples = new ArrayList<>();
+        long next = ring.getLong(16);
+        for (long seq = Math.max(0, next - size); seq < next; seq++) {
+            int position = HEADER_SIZE + (int) (seq % size) * RECORD_SIZE;
+            long time = ring.getLong(position);
+            if (time < since) {
+                continue;
+            }
+            long[] sample = new long[1 + METRICS.length];
+            for (int i = 0; i < sample.length; i++) {
+                sample[i] = ring.getLong(position + 8 * i);
+            }
+            samples.add(sample);
+        }
+        return samples;
+    }
+
+    /**
+     * Write the samples as CSV, the oldest first.
+     */
+    public void writeCsv(Writer writer, long since) throws IOException {
+        writer.write("time");
+        for (String metric : METRICS) {
+            writer.write(',');
+            writer.write(metric);
+        }
+        writer.write('\n');
+        for (long[] sample : getSamples(since)) {
+            for (int i = 0; i < sample.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(Long.toString(sample[i]));
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createDump(DumpDestination destination) throws Exception {
+        try (Writer writer = new OutputStreamWriter(destination.add("metrics.csv"))) {
+            writeCsv(writer, 0);
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+
+/**
+ * Sampling profiler which periodically captures the stack traces of the running threads,
+ * and aggregates them in the folded stacks format used by flame graph tools: one line
+ * per distinct stack, the frames from the root separated by semicolons, followed by the
+ * number of samples.
+ *
+ * The stacks are aggregated in a call tree, so that the frames shared by several stacks are
+ * only kept once, and the number of nodes of the tree is bounded.
+ *
+ * No thread is used when the profiler is stopped. The collected samples are kept until
+ * the next start, and added to the diagnostic dumps as profile.txt.
+ */
+public class SamplingProfiler implements DumpProvider {
+
+    public static final int DEFAULT_INTERVAL = 20;
+    public static final int DEFAULT_MAX_DEPTH = 128;
+    public static final int DEFAULT_MAX_NODES = 100000;
+
+    /**
+     * Stack under which the samples are counted once the maximum number of nodes is reached.
+     */
+    static final String OTHER_STACKS = "[other stacks]";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final int maxNodes;
+
+    private ScheduledExecutorService executor;
+    private int interval;
+    private int maxDepth;
+    private long startTime;
+    private long stopTime;
+    private long samples;
+    private Node root = new Node(null);
+    private int nodes;
+    private int stacks;
+    /** The names of the frames, shared by the nodes of the different stacks. */
+    private final Map<String, String> frames = new HashMap<>();
+
+    public SamplingProfiler() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param maxNodes The maximum number of nodes of the call tree, to bound the memory used.
+     */
+    public SamplingProfiler(int maxNodes) {
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("The maximum number of nodes must be positive");
+        }
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Start sampling, the samples of the previous run are discarded.
+     *
+     * @param interval The time between two samples, in milliseconds.
+     * @param maxDepth The maximum number of frames of a stack.
+     * @param duration The time after which the profiler stops, in milliseconds, or 0 to run until stopped.
+     */
+    public synchronized void start(int interval, int maxDepth, long duration) {
+        if (executor != null) {
+            throw new IllegalStateException("The profiler is already running");
+        }
+        if (interval <= 0 || maxDepth <= 0) {
+            throw new IllegalArgumentException("The interval and the maximum depth must be positive");
+        }
+        this.interval = interval;
+        this.maxDepth = maxDepth;
+        this.startTime = System.currentTimeMillis();
+        this.stopTime = 0;
+        this.samples = 0;
+        this.root = new Node(null);
+        this.nodes = 0;
+        this.stacks = 0;
+        this.frames.clear();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Karaf Profiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sample, 0, interval, TimeUnit.MILLISECONDS);
+        if (duration > 0) {
+            executor.schedule(this::stop, duration, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            stopTime = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    void sample() {
+        long self = Thread.currentThread().getId();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), maxDepth);
+        synchronized (this) {
+            samples++;
+            for (ThreadInfo info : infos) {
+                // only the threads using the CPU matter for the hotspots
+                if (info == null || info.getThreadId() == self || info.getThreadState() != Thread.State.RUNNABLE) {
+                    continue;
+                }
+                add(info.getStackTrace());
+            }
+        }
+    }
+
+    /**
+     * Count a sample of the given stack, the top frame first.
+     */
+    synchronized void add(StackTraceElement[] stackTrace) {
+        if (stackTrace.length == 0) {
+            return;
+        }
+        // follow the frames already in the tree, from the root
+        Node node = root;
+        int i = stackTrace.length - 1;
+        String frame = null;
+        for (; i >= 0; i--) {
+            frame = stackTrace[i].getClassName() + '.' + stackTrace[i].getMethodName();
+            Node child = node.children != null ? node.children.get(frame) : null;
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        if (i >= 0) {
+            if (nodes + i + 1 > maxNodes) {
+                node = root.child(OTHER_STACKS);
+            } else {
+                for (; i >= 0; i--) {
+                    if (frame == null) {
+                        frame = stackTrace[i].getClassName() + '.' + stackTrace[i].getMethodName();
+                    }
+                    node = node.child(frames.computeIfAbsent(frame, f -> f));
+                    nodes++;
+                    frame = null;
+                }
+            }
+        }
+        if (node.count++ == 0) {
+            stacks++;
+        }
+    }
+
+    /**
+     * @return A summary of the current or last profiling run.
+     */
+    public synchronized String getStatus() {
+        if (startTime == 0) {
+            return "Profiler not started";
+        }
+        long end = executor != null ? System.currentTimeMillis() : stopTime;
+        return "Profiler " + (executor != null ? "running" : "stopped") + ": " + samples + " samples every "
+                + interval + " ms during " + (end - startTime) + " ms, " + stacks + " distinct stacks";
+    }
+
+    /**
+     * Write the samples in the folded stacks format, the most frequent stacks first.
+     */
+    public void writeFolded(Writer writer) throws Exception {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        synchronized (this) {
+            fold(root, new StringBuilder(), entries);
+        }
+        entries.sort((e1, e2) -> e1.getValue().equals(e2.getValue())
+                ? e1.getKey().compareTo(e2.getKey()) : Long.compare(e2.getValue(), e1.getValue()));
+        for (Map.Entry<String, Long> entry : entries) {
+            writer.write(entry.getKey());
+            writer.write(' ');
+            writer.write(Long.toString(entry.getValue()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Collect the stacks of the samples counted in the given node and its descendants.
+     */
+    private static void fold(Node node, StringBuilder path, List<Map.Entry<String, Long>> entries) {
+        if (node.count > 0) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(path.toString(), node.count));
+        }
+        if (node.children != null) {
+            int length = path.length();
+            for (Node child : node.children.values()) {
+                if (length > 0) {
+                    path.append(';');
+                }
+                fold(child, path.append(child.frame), entries);
+                path.setLength(length);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createDump(DumpDestination destination) throws Exception {
+        if (getSamples() == 0) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(destination.add("profile.txt"))) {
+            writeFolded(writer);
+        }
+    }
+
+    /**
+     * A frame of the call tree.
+     */
+    private static final class Node {
+
+        final String frame;
+        /** The samples of the stack ending with this frame. */
+        long count;
+        Map<String, Node> children;
+
+        Node(String frame) {
+            this.frame = frame;
+        }
+
+        Node child(String frame) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(frame, Node::new);
+        }
+    }
+
+}
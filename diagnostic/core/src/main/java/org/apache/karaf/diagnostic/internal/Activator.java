@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.diagnostic.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
@@ -24,18 +26,27 @@ import org.apache.karaf.diagnostic.core.DumpProvider;
 import org.apache.karaf.diagnostic.management.internal.DiagnosticDumpMBeanImpl;
 import org.apache.karaf.diagnostic.common.FeaturesDumpProvider;
 import org.apache.karaf.diagnostic.common.LogDumpProvider;
+import org.apache.karaf.diagnostic.common.MetricsRecorder;
+import org.apache.karaf.diagnostic.common.SamplingProfiler;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.util.tracker.SingleServiceTracker;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Activator implements BundleActivator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(Activator.class);
+
     private List<ServiceRegistration<DumpProvider>> registrations;
     private ServiceRegistration<DumpProvider> featuresProviderRegistration;
     private ServiceRegistration mbeanRegistration;
+    private ServiceRegistration profilerRegistration;
+    private SamplingProfiler profiler;
+    private MetricsRecorder metricsRecorder;
     private SingleServiceTracker<FeaturesService> featuresServiceTracker;
     private ServiceTracker<DumpProvider, DumpProvider> providersTracker;
 
@@ -44,6 +55,27 @@ public class Activator implements BundleActivator {
         registrations = new ArrayList<ServiceRegistration<DumpProvider>>();
         registrations.add(context.registerService(DumpProvider.class, new LogDumpProvider(context), null));
 
+        profiler = new SamplingProfiler();
+        profilerRegistration = context.registerService(
+                new String[] { DumpProvider.class.getName(), SamplingProfiler.class.getName() },
+                profiler,
+                null);
+
+        int metricsInterval = getInt(context, "karaf.diagnostic.metrics.interval", MetricsRecorder.DEFAULT_INTERVAL, 0, Integer.MAX_VALUE);
+        if (metricsInterval > 0) {
+            int metricsSize = getInt(context, "karaf.diagnostic.metrics.size", MetricsRecorder.DEFAULT_SIZE, 1, MetricsRecorder.MAX_SIZE);
+            String data = context.getProperty("karaf.data");
+            try {
+                metricsRecorder = new MetricsRecorder(context,
+                        data != null ? new File(data, "diagnostic/metrics.dat") : null, metricsSize);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to map the metrics file, the metrics are kept in memory", e);
+                metricsRecorder = new MetricsRecorder(context, null, metricsSize);
+            }
+            metricsRecorder.start(metricsInterval);
+            registrations.add(context.registerService(DumpProvider.class, metricsRecorder, null));
+        }
+
         featuresServiceTracker = new SingleServiceTracker<FeaturesService>(context, FeaturesService.class, new SingleServiceTracker.SingleServiceListener() {
             @Override
             public void serviceFound() {
@@ -65,6 +97,8 @@ public class Activator implements BundleActivator {
 
         final DiagnosticDumpMBeanImpl diagnostic = new DiagnosticDumpMBeanImpl();
         diagnostic.setBundleContext(context);
+        diagnostic.setProfiler(profiler);
+        diagnostic.setMetricsRecorder(metricsRecorder);
 
         Hashtable<String, Object> props = new Hashtable<String, Object>();
         props.put("jmx.objectname", "org.apache.karaf:type=diagnostic,name=" + System.getProperty("karaf.name"));
@@ -79,9 +113,30 @@ public class Activator implements BundleActivator {
     public void stop(BundleContext context) throws Exception {
         mbeanRegistration.unregister();
         featuresServiceTracker.close();
+        profilerRegistration.unregister();
+        profiler.stop();
         for (ServiceRegistration<DumpProvider> reg : registrations) {
             reg.unregister();
         }
+        if (metricsRecorder != null) {
+            metricsRecorder.stop();
+        }
+    }
+
+    private int getInt(BundleContext context, String key, int def, int min, int max) {
+        String value = context.getProperty(key);
+        if (value != null) {
+            try {
+                int i = Integer.parseInt(value.trim());
+                if (i >= min && i <= max) {
+                    return i;
+                }
+            } catch (NumberFormatException e) {
+                // invalid value
+            }
+            LOGGER.warn("Invalid value for " + key + ": " + value + ", using " + def);
+        }
+        return def;
     }
 
     private String[] getInterfaceNames(Object object) {
@@ -16,6 +16,7 @@
 package org.apache.karaf.diagnostic.management;
 
 import javax.management.MBeanException;
+import javax.management.openmbean.TabularData;
 
 /**
  * Diagnostic MBean which allows to create dumps over JMX.
@@ -41,4 +42,43 @@ public interface DiagnosticDumpMBean {
      */
     void createDump(boolean directory, String name, boolean noThreadDump, boolean noHeapDump) throws MBeanException;
 
+    /**
+     * Start sampling the stacks of the running threads, the samples are added to the next dumps.
+     *
+     * @param interval Time between two samples in milliseconds.
+     * @param maxDepth Maximum number of frames of the sampled stacks.
+     * @param duration Number of seconds after which the profiler stops, 0 to run until stopped.
+     * @throws MBeanException In case of any problems.
+     */
+    void startProfiling(int interval, int maxDepth, int duration) throws MBeanException;
+
+    /**
+     * Stop sampling the stacks of the running threads.
+     */
+    void stopProfiling();
+
+    /**
+     * Get the state of the profiler.
+     *
+     * @return The number of samples, the interval and the duration of the current or last profiling.
+     */
+    String getProfilingStatus();
+
+    /**
+     * Get the sampled stacks, in the folded format used by flame graph tools.
+     *
+     * @return One line per stack, with the frames from the root separated by semicolons and the number of samples.
+     * @throws MBeanException In case of any problems.
+     */
+    String getProfile() throws MBeanException;
+
+    /**
+     * Get the JVM and Karaf metrics recorded periodically.
+     *
+     * @param minutes Number of minutes of history to return.
+     * @return One row per sample, with its time and the value of each metric (-1 when not available).
+     * @throws MBeanException In case of any problems.
+     */
+    TabularData getMetrics(int minutes) throws MBeanException;
+
 }
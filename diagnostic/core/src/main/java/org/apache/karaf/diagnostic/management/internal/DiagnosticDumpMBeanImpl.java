@@ -14,12 +14,23 @@
 package org.apache.karaf.diagnostic.management.internal;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import javax.management.MBeanException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 
+import org.apache.karaf.diagnostic.common.MetricsRecorder;
+import org.apache.karaf.diagnostic.common.SamplingProfiler;
 import org.apache.karaf.diagnostic.core.Dump;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.management.DiagnosticDumpMBean;
@@ -37,6 +48,10 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements Diagnostic
      */
     private BundleContext bundleContext;
 
+    private SamplingProfiler profiler;
+
+    private MetricsRecorder metricsRecorder;
+
     private SimpleDateFormat dumpFormat = new SimpleDateFormat("yyyy-MM-dd_HHmmss");
 
     private final static Logger LOGGER = LoggerFactory.getLogger(DiagnosticDumpMBeanImpl.class);
@@ -82,6 +97,62 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements Diagnostic
         LOGGER.info("Created dump " + destination.toString());
     }
 
+    public void startProfiling(int interval, int maxDepth, int duration) throws MBeanException {
+        try {
+            profiler.start(interval, maxDepth, duration * 1000L);
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public void stopProfiling() {
+        profiler.stop();
+    }
+
+    public String getProfilingStatus() {
+        return profiler.getStatus();
+    }
+
+    public String getProfile() throws MBeanException {
+        StringWriter writer = new StringWriter();
+        try {
+            profiler.writeFolded(writer);
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+        return writer.toString();
+    }
+
+    public TabularData getMetrics(int minutes) throws MBeanException {
+        try {
+            String[] names = new String[MetricsRecorder.METRICS.length + 1];
+            OpenType[] types = new OpenType[names.length];
+            names[0] = "time";
+            types[0] = SimpleType.DATE;
+            for (int i = 0; i < MetricsRecorder.METRICS.length; i++) {
+                names[i + 1] = MetricsRecorder.METRICS[i];
+                types[i + 1] = SimpleType.LONG;
+            }
+            CompositeType sampleType = new CompositeType("Metrics", "Metrics sample", names, names, types);
+            TabularType tableType = new TabularType("Metrics", "Metrics samples", sampleType, new String[] { "time" });
+            TabularData table = new TabularDataSupport(tableType);
+            if (metricsRecorder != null) {
+                long since = System.currentTimeMillis() - minutes * 60000L;
+                for (long[] sample : metricsRecorder.getSamples(since)) {
+                    Object[] values = new Object[names.length];
+                    values[0] = new Date(sample[0]);
+                    for (int i = 1; i < values.length; i++) {
+                        values[i] = sample[i];
+                    }
+                    table.put(new CompositeDataSupport(sampleType, names, values));
+                }
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
     /**
      * Set the bundle context.
      *
@@ -91,4 +162,22 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements Diagnostic
         this.bundleContext = bundleContext;
     }
 
+    /**
+     * Set the profiler.
+     *
+     * @param profiler The sampling profiler controlled by the MBean.
+     */
+    public void setProfiler(SamplingProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Set the metrics recorder.
+     *
+     * @param metricsRecorder The metrics recorder, or null if the metrics are not recorded.
+     */
+    public void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder;
+    }
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRecorderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("metrics", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder(null, null, 3);
+        for (int i = 1; i <= 5; i++) {
+            recorder.record(i * 1000, values(i));
+        }
+        List<long[]> samples = recorder.getSamples(0);
+        assertEquals(3, samples.size());
+        // the oldest samples are overwritten, the remaining ones are returned oldest first
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(sample((i + 3) * 1000, i + 3), samples.get(i));
+        }
+    }
+
+    @Test
+    public void testSince() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder(null, null, 10);
+        assertTrue(recorder.getSamples(0).isEmpty());
+        for (int i = 1; i <= 5; i++) {
+            recorder.record(i * 1000, values(i));
+        }
+        List<long[]> samples = recorder.getSamples(3000);
+        assertEquals(3, samples.size());
+        assertEquals(3000, samples.get(0)[0]);
+        assertEquals(5000, samples.get(2)[0]);
+        assertTrue(recorder.getSamples(6000).isEmpty());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder(null, file, 4);
+        recorder.record(1000, values(1));
+        recorder.record(2000, values(2));
+        recorder.stop();
+
+        // same layout, the samples are kept
+        recorder = new MetricsRecorder(null, file, 4);
+        assertEquals(2, recorder.getSamples(0).size());
+        recorder.record(3000, values(3));
+        List<long[]> samples = recorder.getSamples(0);
+        assertEquals(3, samples.size());
+        assertArrayEquals(sample(1000, 1), samples.get(0));
+        assertArrayEquals(sample(3000, 3), samples.get(2));
+        recorder.stop();
+
+        // different layout, the ring is reset
+        recorder = new MetricsRecorder(null, file, 2);
+        assertTrue(recorder.getSamples(0).isEmpty());
+        recorder.record(4000, values(4));
+        recorder.record(5000, values(5));
+        recorder.record(6000, values(6));
+        samples = recorder.getSamples(0);
+        assertEquals(2, samples.size());
+        assertArrayEquals(sample(5000, 5), samples.get(0));
+        assertArrayEquals(sample(6000, 6), samples.get(1));
+        recorder.stop();
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder(null, null, 10);
+        recorder.record(1000, values(1));
+        recorder.record(2000, values(2));
+        StringWriter writer = new StringWriter();
+        recorder.writeCsv(writer, 0);
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("time," + String.join(",", MetricsRecorder.METRICS), lines[0]);
+        assertEquals(csv(sample(1000, 1)), lines[1]);
+        assertEquals(csv(sample(2000, 2)), lines[2]);
+
+        writer = new StringWriter();
+        recorder.writeCsv(writer, 2000);
+        assertEquals(2, writer.toString().split("\n").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRing() throws Exception {
+        new MetricsRecorder(null, null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSize() throws Exception {
+        new MetricsRecorder(null, file, -1);
+    }
+
+    private static long[] values(long value) {
+        long[] values = new long[MetricsRecorder.METRICS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value * 100 + i;
+        }
+        return values;
+    }
+
+    private static long[] sample(long time, long value) {
+        long[] sample = new long[1 + MetricsRecorder.METRICS.length];
+        sample[0] = time;
+        System.arraycopy(values(value), 0, sample, 1, MetricsRecorder.METRICS.length);
+        return sample;
+    }
+
+    private static String csv(long[] sample) {
+        StringBuilder sb = new StringBuilder();
+        for (long value : sample) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingProfilerTest {
+
+    @Test
+    public void testAggregation() throws Exception {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.add(stack("Main.main", "Worker.run", "Worker.compute"));
+        profiler.add(stack("Main.main", "Worker.run", "Worker.compute"));
+        profiler.add(stack("Main.main", "Worker.run", "Worker.compute"));
+        profiler.add(stack("Main.main", "Worker.run", "Worker.io"));
+        profiler.add(stack("Main.main", "Worker.run", "Worker.io"));
+        // a stack which is the prefix of the other ones
+        profiler.add(stack("Main.main", "Worker.run"));
+        profiler.add(new StackTraceElement[0]);
+
+        assertEquals(Arrays.asList(
+                "Main.main;Worker.run;Worker.compute 3",
+                "Main.main;Worker.run;Worker.io 2",
+                "Main.main;Worker.run 1"), folded(profiler));
+    }
+
+    @Test
+    public void testOtherStacks() throws Exception {
+        SamplingProfiler profiler = new SamplingProfiler(4);
+        profiler.add(stack("Main.main", "Worker.run", "Worker.compute"));
+        profiler.add(stack("Main.main", "Worker.run", "Worker.io"));
+        // the tree is full, the new stacks are counted together
+        profiler.add(stack("Main.main", "Worker.run", "Worker.wait"));
+        profiler.add(stack("Other.main", "Other.run"));
+        profiler.add(stack("Other.main", "Other.run"));
+        // the known stacks are still counted
+        profiler.add(stack("Main.main", "Worker.run", "Worker.io"));
+        profiler.add(stack("Main.main", "Worker.run"));
+
+        assertEquals(Arrays.asList(
+                SamplingProfiler.OTHER_STACKS + " 3",
+                "Main.main;Worker.run;Worker.io 2",
+                "Main.main;Worker.run 1",
+                "Main.main;Worker.run;Worker.compute 1"), folded(profiler));
+    }
+
+    @Test
+    public void testStartStop() throws Exception {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.add(stack("Main.main"));
+        profiler.start(1, 16, 0);
+        try {
+            assertTrue(profiler.isRunning());
+            // the samples of the previous run are discarded
+            assertEquals(Arrays.<String>asList(), folded(profiler));
+            try {
+                profiler.start(1, 16, 0);
+                throw new AssertionError("The profiler should already be running");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            long timeout = System.currentTimeMillis() + 10000;
+            while (profiler.getSamples() == 0) {
+                assertTrue(System.currentTimeMillis() < timeout);
+                Thread.sleep(10);
+            }
+        } finally {
+            profiler.stop();
+        }
+        assertTrue(!profiler.isRunning());
+        assertTrue(profiler.getStatus(), profiler.getStatus().startsWith("Profiler stopped: "));
+    }
+
+    private static StackTraceElement[] stack(String... frames) {
+        // the top frame first, as in a thread dump
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            String frame = frames[frames.length - 1 - i];
+            int dot = frame.lastIndexOf('.');
+            stack[i] = new StackTraceElement(frame.substring(0, dot), frame.substring(dot + 1), null, -1);
+        }
+        return stack;
+    }
+
+    private static List<String> folded(SamplingProfiler profiler) throws Exception {
+        StringWriter writer = new StringWriter();
+        profiler.writeFolded(writer);
+        String output = writer.toString();
+        return output.isEmpty() ? Arrays.<String>asList() : Arrays.asList(output.split("\n"));
+    }
+
+}
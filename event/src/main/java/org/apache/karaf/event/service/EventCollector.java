@@ -16,47 +16,195 @@
  */
 package org.apache.karaf.event.service;
 
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
 
+/**
+ * Keeps the last events in a fixed size ring and forwards the new events to the consumers.
+ *
+ * The event admin thread never waits: the events are written in the ring without locking,
+ * and each consumer has its own bounded queue drained by its own thread. When a consumer
+ * can not keep up and its queue is full, the new events are not given to it.
+ */
 public class EventCollector implements EventHandler {
-    private Deque<Event> events;
-    private int maxSize;
-    private Set<Consumer<Event>> consumers;
-    
+
+    static final int DEFAULT_MAX_SIZE = 100;
+    static final int QUEUE_SIZE = 1000;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final int maxSize;
+    private final AtomicReferenceArray<Entry> events;
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
     public EventCollector() {
-        events = new ConcurrentLinkedDeque<>();
-        maxSize = 100;
-        consumers = new HashSet<>();
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public EventCollector(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The number of retained events must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.events = new AtomicReferenceArray<>(maxSize);
     }
 
     @Override
-    public synchronized void handleEvent(Event event) {
-        events.addLast(event);
-        if (events.size() > maxSize) {
-            events.removeFirst();
+    public void handleEvent(Event event) {
+        long seq = sequence.getAndIncrement();
+        Entry entry = new Entry(seq, event);
+        events.set(index(seq), entry);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(entry);
         }
-        consumers.forEach(c -> c.accept(event));
     }
 
     public Stream<Event> getEvents() {
-        return events.stream();
+        return getEvents(sequence.get(), false).stream();
     }
-    
-    public synchronized void addConsumer(Consumer<Event> eventConsumer) {
-        events.forEach(eventConsumer);
-        consumers.add(eventConsumer);
+
+    /**
+     * Get the retained events older than the given sequence number.
+     *
+     * @param end the sequence number of the first event to exclude
+     * @param wait wait for the events being written
+     */
+    private List<Event> getEvents(long end, boolean wait) {
+        List<Event> result = new ArrayList<>(maxSize);
+        for (long seq = Math.max(0, end - maxSize); seq < end; seq++) {
+            Entry entry = events.get(index(seq));
+            // the event may be in the middle of being written
+            while (wait && (entry == null || entry.seq < seq)) {
+                Thread.yield();
+                entry = events.get(index(seq));
+            }
+            // skip the events not written yet or already overwritten
+            if (entry != null && entry.seq == seq) {
+                result.add(entry.event);
+            }
+        }
+        return result;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % maxSize);
+    }
+
+    public void addConsumer(Consumer<Event> eventConsumer) {
+        addConsumer(eventConsumer, event -> true);
     }
-    
-    public synchronized void removeConsumer(Consumer<Event> eventConsumer) {
-        consumers.remove(eventConsumer);
+
+    /**
+     * Give the retained events and the new events matching the filter to the consumer.
+     * The consumer is called by a dedicated thread until it is removed.
+     *
+     * @param eventConsumer the consumer
+     * @param filter the events to give to the consumer, see {@link TopicPredicate}
+     */
+    public void addConsumer(Consumer<Event> eventConsumer, Predicate<Event> filter) {
+        Subscription subscription = new Subscription(eventConsumer, filter);
+        // register before reading the sequence, so that every event with a higher
+        // sequence number is offered to the subscription
+        subscriptions.add(subscription);
+        subscription.start(sequence.get());
+    }
+
+    public void removeConsumer(Consumer<Event> eventConsumer) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.consumer == eventConsumer) {
+                subscriptions.remove(subscription);
+                subscription.close();
+            }
+        }
+    }
+
+    private static class Entry {
+        final long seq;
+        final Event event;
+
+        Entry(long seq, Event event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+
+    private class Subscription implements Runnable {
+        final Consumer<Event> consumer;
+        final Predicate<Event> filter;
+        final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        final Thread thread;
+        long start;
+        volatile boolean closed;
+
+        Subscription(Consumer<Event> consumer, Predicate<Event> filter) {
+            this.consumer = consumer;
+            this.filter = filter;
+            this.thread = new Thread(this, "Karaf Event Consumer " + THREAD_COUNT.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * @param start the sequence number of the first event not replayed from the ring
+         */
+        void start(long start) {
+            this.start = start;
+            thread.start();
+        }
+
+        void offer(Entry entry) {
+            if (filter.test(entry.event)) {
+                queue.offer(entry);
+            }
+        }
+
+        void close() {
+            closed = true;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Event event : getEvents(start, true)) {
+                    if (closed) {
+                        return;
+                    }
+                    if (filter.test(event)) {
+                        deliver(event);
+                    }
+                }
+                while (!closed) {
+                    Entry entry = queue.take();
+                    // the older events have been replayed from the ring
+                    if (entry.seq >= start) {
+                        deliver(entry.event);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // removed
+            }
+        }
+
+        private void deliver(Event event) {
+            try {
+                consumer.accept(event);
+            } catch (RuntimeException e) {
+                // a failing consumer must not stop the delivery of the next events
+            }
+        }
     }
 
 }
@@ -16,11 +16,17 @@
  */
 package org.apache.karaf.event.service;
 
+import static org.apache.karaf.event.service.TopicPredicate.matchTopic;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
@@ -53,22 +59,100 @@ public class EventCollectorTest {
     }
 
     @Test
-    public void testAddRemoveConsumer() {
+    public void testAddRemoveConsumer() throws Exception {
         final AtomicInteger count = new AtomicInteger();
         Consumer<Event> countingConsumer = event -> count.incrementAndGet();
         EventCollector collector = new EventCollector();
         collector.handleEvent(event("myTopic"));
         collector.addConsumer(countingConsumer);
-        assertThat(count.get(), equalTo(1));
+        waitFor(count, 1);
 
         collector.handleEvent(event("another"));
-        assertThat(count.get(), equalTo(2));
+        waitFor(count, 2);
 
         collector.removeConsumer(countingConsumer);
         collector.handleEvent(event("and/another"));
+        Thread.sleep(100);
         assertThat(count.get(), equalTo(2));
     }
 
+    @Test
+    public void testFilteredConsumer() throws Exception {
+        final List<String> topics = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger count = new AtomicInteger();
+        Consumer<Event> consumer = event -> {
+            topics.add(event.getTopic());
+            count.incrementAndGet();
+        };
+        EventCollector collector = new EventCollector();
+        collector.handleEvent(event("org/apache/karaf/first"));
+        collector.handleEvent(event("other"));
+        collector.addConsumer(consumer, matchTopic("org/apache/karaf/*"));
+        collector.handleEvent(event("other"));
+        collector.handleEvent(event("org/apache/karaf/second"));
+        waitFor(count, 2);
+        collector.removeConsumer(consumer);
+        assertThat(topics, equalTo(Arrays.asList("org/apache/karaf/first", "org/apache/karaf/second")));
+    }
+
+    @Test
+    public void testRingOverwrite() {
+        EventCollector collector = new EventCollector(3);
+        IntStream.rangeClosed(1, 7).forEach(c -> collector.handleEvent(event("topic" + c)));
+        assertThat(collector.getEvents().map(Event::getTopic).toArray(),
+                equalTo(new Object[] { "topic5", "topic6", "topic7" }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new EventCollector(0);
+    }
+
+    @Test
+    public void testAddConsumerWhilePublishing() throws Exception {
+        for (int run = 0; run < 20; run++) {
+            final int total = 2000;
+            EventCollector collector = new EventCollector(total);
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < total; i++) {
+                    Map<String, Object> props = new HashMap<>();
+                    props.put("index", i);
+                    collector.handleEvent(new Event("topic", props));
+                    if (i % 50 == 0) {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            final AtomicInteger count = new AtomicInteger();
+            Consumer<Event> consumer = event -> {
+                received.add((Integer) event.getProperty("index"));
+                count.incrementAndGet();
+            };
+            publisher.start();
+            Thread.sleep(run % 5);
+            collector.addConsumer(consumer);
+            publisher.join();
+            waitFor(count, total);
+            collector.removeConsumer(consumer);
+            // each event is given once, in order, whether replayed or live
+            for (int i = 0; i < total; i++) {
+                assertThat(received.get(i), equalTo(i));
+            }
+        }
+    }
+
+    private void waitFor(AtomicInteger count, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && count.get() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(count.get(), equalTo(expected));
+    }
+
     private Event event(String topic) {
         return new Event(topic, new HashMap<>());
     }
@@ -35,6 +35,7 @@ import org.apache.karaf.features.FeaturesListener;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
 import org.apache.karaf.features.RepositoryEvent;
+import org.apache.karaf.features.internal.service.DeploymentStatistics;
 import org.apache.karaf.features.management.FeaturesServiceMBean;
 import org.apache.karaf.features.management.codec.JmxFeature;
 import org.apache.karaf.features.management.codec.JmxFeatureEvent;
@@ -58,6 +59,7 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
     private volatile long sequenceNumber;
 
     private FeaturesService featuresService;
+    private DeploymentStatistics deploymentStatistics;
 
     public FeaturesServiceMBeanImpl() throws NotCompliantMBeanException {
         super(FeaturesServiceMBean.class);
@@ -298,6 +300,10 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
         this.featuresService = featuresService;
     }
 
+    public void setDeploymentStatistics(DeploymentStatistics deploymentStatistics) {
+        this.deploymentStatistics = deploymentStatistics;
+    }
+
     public FeaturesListener getFeaturesListener() {
         return new FeaturesListener() {
             public void featureEvent(FeatureEvent event) {
@@ -319,6 +325,14 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
         };
     }
 
+    public long getDeployments() {
+        return deploymentStatistics != null ? deploymentStatistics.getDeployments() : 0;
+    }
+
+    public long getLastDeploymentDuration() {
+        return deploymentStatistics != null ? deploymentStatistics.getLastDeploymentDuration() : 0;
+    }
+
     public MBeanNotificationInfo[] getNotificationInfo() {
         return getBroadcastInfo();
     }
@@ -39,6 +39,7 @@ import org.apache.karaf.features.internal.repository.AggregateRepository;
 import org.apache.karaf.features.internal.repository.JsonRepository;
 import org.apache.karaf.features.internal.repository.XmlRepository;
 import org.apache.karaf.features.internal.service.BootFeaturesInstaller;
+import org.apache.karaf.features.internal.service.BootImage;
 import org.apache.karaf.features.internal.service.EventAdminListener;
 import org.apache.karaf.features.internal.service.FeatureFinder;
 import org.apache.karaf.features.internal.service.FeaturesServiceImpl;
@@ -251,14 +252,19 @@ public class Activator extends BaseActivator {
         String featuresRepositories = getString("featuresRepositories", "");
         String featuresBoot = getString("featuresBoot", "");
         boolean featuresBootAsynchronous = getBoolean("featuresBootAsynchronous", false);
+        File bootImage = getBoolean("featuresBootImage", true)
+                ? new File(System.getProperty("karaf.etc"), BootImage.BOOT_IMAGE_FILE) : null;
+        File home = System.getProperty("karaf.home") != null ? new File(System.getProperty("karaf.home")) : null;
         BootFeaturesInstaller bootFeaturesInstaller = new BootFeaturesInstaller(
                 bundleContext, featuresService,
-                featuresRepositories, featuresBoot, featuresBootAsynchronous);
+                featuresRepositories, featuresBoot, featuresBootAsynchronous,
+                bootImage, home);
         bootFeaturesInstaller.start();
 
         FeaturesServiceMBeanImpl featuresServiceMBean = new FeaturesServiceMBeanImpl();
         featuresServiceMBean.setBundleContext(bundleContext);
         featuresServiceMBean.setFeaturesService(featuresService);
+        featuresServiceMBean.setDeploymentStatistics(featuresService.getDeploymentStatistics());
         registerMBean(featuresServiceMBean, "type=feature");
     }
 
@@ -17,6 +17,7 @@
 package org.apache.karaf.features.internal.service;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,6 +44,8 @@ public class BootFeaturesInstaller {
     private final String repositories;
     private final String features;
     private final boolean asynchronous;
+    private final File bootImage;
+    private final File home;
     
     /**
      * The Unix separator character.
@@ -64,11 +67,23 @@ public class BootFeaturesInstaller {
                                  String repositories,
                                  String features,
                                  boolean asynchronous) {
+        this(bundleContext, featuresService, repositories, features, asynchronous, null, null);
+    }
+
+    public BootFeaturesInstaller(BundleContext bundleContext,
+                                 FeaturesServiceImpl featuresService,
+                                 String repositories,
+                                 String features,
+                                 boolean asynchronous,
+                                 File bootImage,
+                                 File home) {
         this.bundleContext = bundleContext;
         this.featuresService = featuresService;
         this.repositories = repositories;
         this.features = features;
         this.asynchronous = asynchronous;
+        this.bootImage = bootImage;
+        this.home = home;
     }
 
     /**
@@ -92,6 +107,10 @@ public class BootFeaturesInstaller {
 
     protected void installBootFeatures() {
         try {
+            if (applyBootImage()) {
+                publishBootFinished();
+                return;
+            }
             for (String repo : repositories.split(",")) {
                 repo = repo.trim();
                 if (!repo.isEmpty()) {
@@ -126,6 +145,34 @@ public class BootFeaturesInstaller {
         }
     }
 
+    /**
+     * Try to provision the boot features from the boot image
+     * generated at build time, if any and if it still matches
+     * the configured boot repositories and features.
+     */
+    protected boolean applyBootImage() {
+        if (bootImage == null || home == null || !bootImage.isFile()) {
+            return false;
+        }
+        if (parseBootFeatures(features).size() > 1) {
+            LOGGER.info("Boot image {} does not support staged boot features, ignoring it", bootImage);
+            return false;
+        }
+        BootImage image;
+        try {
+            image = BootImage.load(bootImage);
+        } catch (IOException e) {
+            LOGGER.warn("Error loading boot image " + bootImage, e);
+            return false;
+        }
+        if (!image.isValid(home, repositories, features)) {
+            LOGGER.info("Boot image {} does not match the current configuration, ignoring it", bootImage);
+            return false;
+        }
+        LOGGER.info("Provisioning boot features from boot image {}", bootImage);
+        return featuresService.applyBootImage(image, home);
+    }
+
     protected List<Set<String>> parseBootFeatures(String bootFeatures) {
         Pattern pattern = Pattern.compile("(\\s*\\(([^)]+))\\s*\\)\\s*,\\s*|.+");
         Matcher matcher = pattern.matcher(bootFeatures);
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.karaf.features.internal.util.JsonReader;
+import org.apache.karaf.features.internal.util.JsonWriter;
+
+import static org.apache.karaf.features.internal.service.StateStorage.toLong;
+import static org.apache.karaf.features.internal.service.StateStorage.toStringSet;
+import static org.apache.karaf.features.internal.service.StateStorage.toStringStringSetMap;
+import static org.apache.karaf.features.internal.service.StateStorage.toStringStringStringMapMap;
+
+/**
+ * A precomputed boot image generated by the assembly builder.
+ *
+ * The image contains the outcome of the resolution of the boot features
+ * (bundles per region, region digraph policies and the features service state)
+ * along with a cache of the features repositories, so that the first boot of
+ * an assembly does not need to download, parse and resolve anything.
+ *
+ * All paths are relative to the karaf home directory.  The image is only
+ * trusted if its fingerprint, computed over the boot configuration and the
+ * size and modification time of the cached repositories and the bundles,
+ * still matches.
+ *
+ * Staged boot features (such as <code>(a,b),c</code>) are not supported, as the
+ * image records the outcome of a single deployment.
+ */
+public class BootImage {
+
+    public static final String BOOT_IMAGE_FILE = "features-boot-image.json";
+
+    private static final int VERSION = 1;
+
+    public static class BundleEntry {
+        public String location;
+        public String path;
+        public int startLevel;
+        public boolean start;
+    }
+
+    public String fingerprint;
+    public String featuresRepositories;
+    public String featuresBoot;
+    // Repository uri -> cached repository path
+    public final Map<String, String> repositories = new TreeMap<>();
+    // Bundles to install by region, in installation order
+    public final Map<String, List<BundleEntry>> bundles = new TreeMap<>();
+    // Region digraph policies: region -> region -> namespace -> filters
+    public final Map<String, Map<String, Map<String, Set<String>>>> digraph = new TreeMap<>();
+    // Features service state (repositories, requirements, installed features and their state)
+    public final State state = new State();
+
+    public static BootImage load(File file) throws IOException {
+        try (
+                InputStream is = new FileInputStream(file)
+        ) {
+            Map json = (Map) JsonReader.read(is);
+            if (json == null || toLong(json.get("version")) != VERSION) {
+                throw new IOException("Unsupported boot image version in " + file);
+            }
+            BootImage image = new BootImage();
+            image.fingerprint = (String) json.get("fingerprint");
+            image.featuresRepositories = (String) json.get("featuresRepositories");
+            image.featuresBoot = (String) json.get("featuresBoot");
+            for (Map.Entry entry : ((Map<?, ?>) json.get("repositories")).entrySet()) {
+                image.repositories.put(entry.getKey().toString(), entry.getValue().toString());
+            }
+            for (Map.Entry entry : ((Map<?, ?>) json.get("bundles")).entrySet()) {
+                List<BundleEntry> entries = new ArrayList<>();
+                for (Object o : (Collection) entry.getValue()) {
+                    Map bundle = (Map) o;
+                    BundleEntry be = new BundleEntry();
+                    be.location = (String) bundle.get("location");
+                    be.path = (String) bundle.get("path");
+                    be.startLevel = (int) toLong(bundle.get("startLevel"));
+                    be.start = (Boolean) bundle.get("start");
+                    entries.add(be);
+                }
+                image.bundles.put(entry.getKey().toString(), entries);
+            }
+            for (Map.Entry entry1 : ((Map<?, ?>) json.get("digraph")).entrySet()) {
+                Map<String, Map<String, Set<String>>> edges = new HashMap<>();
+                for (Map.Entry entry2 : ((Map<?, ?>) entry1.getValue()).entrySet()) {
+                    edges.put(entry2.getKey().toString(), toStringStringSetMap((Map) entry2.getValue()));
+                }
+                image.digraph.put(entry1.getKey().toString(), edges);
+            }
+            Map state = (Map) json.get("state");
+            image.state.repositories.addAll(toStringSet((Collection) state.get("repositories")));
+            image.state.requirements.putAll(toStringStringSetMap((Map) state.get("features")));
+            image.state.installedFeatures.putAll(toStringStringSetMap((Map) state.get("installed")));
+            image.state.stateFeatures.putAll(toStringStringStringMapMap((Map) state.get("state")));
+            return image;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("version", VERSION);
+        json.put("fingerprint", fingerprint);
+        json.put("featuresRepositories", featuresRepositories);
+        json.put("featuresBoot", featuresBoot);
+        json.put("repositories", repositories);
+        Map<String, Object> bundlesJson = new TreeMap<>();
+        for (Map.Entry<String, List<BundleEntry>> entry : bundles.entrySet()) {
+            List<Object> entries = new ArrayList<>();
+            for (BundleEntry be : entry.getValue()) {
+                Map<String, Object> bundle = new LinkedHashMap<>();
+                bundle.put("location", be.location);
+                bundle.put("path", be.path);
+                bundle.put("startLevel", be.startLevel);
+                bundle.put("start", be.start);
+                entries.add(bundle);
+            }
+            bundlesJson.put(entry.getKey(), entries);
+        }
+        json.put("bundles", bundlesJson);
+        json.put("digraph", digraph);
+        Map<String, Object> stateJson = new LinkedHashMap<>();
+        stateJson.put("repositories", state.repositories);
+        stateJson.put("features", state.requirements);
+        stateJson.put("installed", state.installedFeatures);
+        stateJson.put("state", state.stateFeatures);
+        json.put("state", stateJson);
+        try (
+                OutputStream os = new FileOutputStream(file)
+        ) {
+            JsonWriter.write(os, json);
+        }
+    }
+
+    /**
+     * Check if this image can be trusted for the given boot configuration.
+     *
+     * @param home the karaf home directory.
+     * @param featuresRepositories the configured boot repositories.
+     * @param featuresBoot the configured boot features.
+     * @return <code>true</code> if the image matches the configuration and the content on disk.
+     */
+    public boolean isValid(File home, String featuresRepositories, String featuresBoot) {
+        if (fingerprint == null
+                || !normalize(featuresRepositories).equals(normalize(this.featuresRepositories))
+                || !normalize(featuresBoot).equals(normalize(this.featuresBoot))) {
+            return false;
+        }
+        try {
+            return fingerprint.equals(computeFingerprint(home));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compute the fingerprint of this image.
+     * The fingerprint covers the boot configuration, and the path, size and
+     * modification time of the cached repositories and of each bundle, so that
+     * a rebuilt snapshot invalidates the image without reading the files.
+     *
+     * @param home the karaf home directory.
+     * @return the fingerprint.
+     * @throws IOException if a cached file is missing or can not be read.
+     */
+    public String computeFingerprint(File home) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        update(digest, Integer.toString(VERSION));
+        update(digest, normalize(featuresRepositories));
+        update(digest, normalize(featuresBoot));
+        for (Map.Entry<String, String> entry : repositories.entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue(), new File(home, entry.getValue()));
+        }
+        for (Map.Entry<String, List<BundleEntry>> entry : bundles.entrySet()) {
+            update(digest, entry.getKey());
+            for (BundleEntry be : entry.getValue()) {
+                update(digest, be.location);
+                update(digest, be.path, new File(home, be.path));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest digest, String path, File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("Missing file " + file);
+        }
+        update(digest, path);
+        update(digest, Long.toString(file.length()));
+        // archives and some file systems only keep the seconds
+        update(digest, Long.toString(file.lastModified() / 1000));
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value != null ? value : "").getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Normalize a comma separated configuration value, ignoring
+     * whitespaces and empty items so that reformatted values match.
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replaceAll("\\s+", "").replaceAll(",+", ",").replaceAll("^,|,$", "");
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the deployments done by the features service and keeps the duration of the last one.
+ */
+public class DeploymentStatistics {
+
+    private final AtomicLong deployments = new AtomicLong();
+    private volatile long lastDeploymentDuration;
+
+    void deployed(long duration) {
+        lastDeploymentDuration = duration;
+        deployments.incrementAndGet();
+    }
+
+    /**
+     * @return the number of deployments since the start
+     */
+    public long getDeployments() {
+        return deployments.get();
+    }
+
+    /**
+     * @return the duration of the last deployment in milliseconds
+     */
+    public long getLastDeploymentDuration() {
+        return lastDeploymentDuration;
+    }
+
+}
@@ -180,6 +180,8 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
     private final Map<String, Repository> repositoryCache = new HashMap<>();
     private Map<String, Map<String, Feature>> featureCache;
 
+    private final DeploymentStatistics deploymentStatistics = new DeploymentStatistics();
+
 
     public FeaturesServiceImpl(Bundle bundle,
                                BundleContext systemBundleContext,
@@ -318,6 +320,121 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
         }
     }
 
+    /**
+     * Apply a precomputed boot image.
+     * The cached repositories are loaded from disk and the bundles are installed
+     * as resolved when the assembly was built, without running the resolver.
+     * On failure, installed bundles are removed so that the regular boot
+     * provisioning can take place.
+     *
+     * @param image the boot image.
+     * @param home the karaf home directory the image paths are relative to.
+     * @return <code>true</code> if the image has been applied.
+     */
+    boolean applyBootImage(BootImage image, File home) {
+        List<Bundle> installed = new ArrayList<>();
+        try {
+            // Prime the repository cache
+            Map<String, Repository> repos = new HashMap<>();
+            for (Map.Entry<String, String> entry : image.repositories.entrySet()) {
+                RepositoryImpl repo = new RepositoryImpl(URI.create(entry.getKey()), blacklisted);
+                repo.load(new File(home, entry.getValue()));
+                repos.put(entry.getKey(), repo);
+            }
+            synchronized (lock) {
+                repositoryCache.putAll(repos);
+                featureCache = null;
+            }
+            // Create regions, keeping existing bundles and policies
+            Deployer.DeploymentState dstate = getDeploymentState(copyState());
+            Map<String, Map<String, Map<String, Set<String>>>> policies = dstate.filtersPerRegion;
+            for (Map.Entry<String, Map<String, Map<String, Set<String>>>> entry : image.digraph.entrySet()) {
+                if (policies.containsKey(entry.getKey())) {
+                    policies.get(entry.getKey()).putAll(entry.getValue());
+                } else {
+                    policies.put(entry.getKey(), new HashMap<>(entry.getValue()));
+                }
+            }
+            for (String region : image.bundles.keySet()) {
+                if (!policies.containsKey(region)) {
+                    policies.put(region, new HashMap<String, Map<String, Set<String>>>());
+                }
+            }
+            replaceDigraph(policies, dstate.bundlesPerRegion);
+            // Install bundles
+            Map<String, Set<Long>> managed = new HashMap<>();
+            List<Bundle> toStart = new ArrayList<>();
+            for (Map.Entry<String, List<BootImage.BundleEntry>> entry : image.bundles.entrySet()) {
+                for (BootImage.BundleEntry be : entry.getValue()) {
+                    Bundle bundle;
+                    try (
+                            InputStream is = new FileInputStream(new File(home, be.path))
+                    ) {
+                        bundle = installBundle(entry.getKey(), be.location, is);
+                    }
+                    installed.add(bundle);
+                    addToMapSet(managed, entry.getKey(), bundle.getBundleId());
+                    if (be.startLevel > 0) {
+                        setBundleStartLevel(bundle, be.startLevel);
+                    }
+                    if (be.start) {
+                        toStart.add(bundle);
+                    }
+                }
+            }
+            // Install features configurations
+            Map<String, Map<String, Feature>> features = getFeatures();
+            List<FeatureEvent> events = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> entry : image.state.installedFeatures.entrySet()) {
+                for (String id : entry.getValue()) {
+                    String[] parts = id.split("/");
+                    Map<String, Feature> versions = features.get(parts[0]);
+                    Feature feature = versions != null && parts.length > 1 ? versions.get(parts[1]) : null;
+                    if (feature == null) {
+                        throw new IllegalStateException("Feature " + id + " not found in boot image repositories");
+                    }
+                    installFeature(feature);
+                    events.add(new FeatureEvent(FeatureEvent.EventType.FeatureInstalled, feature, entry.getKey(), false));
+                }
+            }
+            // Start bundles
+            for (Bundle bundle : toStart) {
+                startBundle(bundle);
+            }
+            // Save state
+            State newState = image.state.copy();
+            newState.managedBundles.putAll(managed);
+            newState.bootDone.set(true);
+            synchronized (lock) {
+                state.replace(newState);
+                featureCache = null;
+                saveState();
+            }
+            for (String uri : newState.repositories) {
+                callListeners(new RepositoryEvent(repos.get(uri) != null ? repos.get(uri) : new RepositoryImpl(URI.create(uri), blacklisted),
+                        RepositoryEvent.EventType.RepositoryAdded, false));
+            }
+            for (FeatureEvent event : events) {
+                callListeners(event);
+            }
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Unable to apply boot image, falling back to regular provisioning", e);
+            for (Bundle bundle : installed) {
+                try {
+                    uninstall(bundle);
+                } catch (Exception e2) {
+                    LOGGER.debug("Error uninstalling bundle " + bundle.getSymbolicName(), e2);
+                }
+            }
+            synchronized (lock) {
+                repositoryCache.keySet().removeAll(image.repositories.keySet());
+                featureCache = null;
+            }
+            return false;
+        }
+    }
+
     //
     // Listeners support
     //
@@ -1105,6 +1222,7 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
         ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(downloadThreads);
         executor.setMaximumPoolSize(downloadThreads);
         DownloadManager manager = DownloadManagers.createDownloadManager(resolver, executor, scheduleDelay, scheduleMaxRun);
+        long start = System.currentTimeMillis();
         try {
             Set<String> prereqs = new HashSet<>();
             while (true) {
@@ -1124,9 +1242,14 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
             }
         } finally {
             executor.shutdown();
+            deploymentStatistics.deployed(System.currentTimeMillis() - start);
         }
     }
 
+    public DeploymentStatistics getDeploymentStatistics() {
+        return deploymentStatistics;
+    }
+
     private Dictionary<String, String> getMavenConfig() throws IOException {
         Hashtable<String, String> props = new Hashtable<>();
         if (configurationAdmin != null) {
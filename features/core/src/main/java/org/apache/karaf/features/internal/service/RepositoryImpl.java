@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.features.internal.service;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -98,6 +100,26 @@ public class RepositoryImpl implements Repository {
         }
     }
 
+    /**
+     * Load this repository from a local copy of its content
+     * instead of its uri, such as the one cached in a boot image.
+     *
+     * @param cache the local copy of the repository.
+     * @throws IOException in case of loading failure.
+     */
+    public void load(File cache) throws IOException {
+        if (features == null) {
+            try (
+                    InputStream inputStream = new FileInputStream(cache)
+            ) {
+                features = JaxbUtil.unmarshal(uri.toASCIIString(), inputStream, false);
+                Blacklist.blacklist(features, blacklisted);
+            } catch (Exception e) {
+                throw (IOException) new IOException(e.getMessage() + " : " + uri).initCause(e);
+            }
+        }
+    }
+
     static class InterruptibleInputStream extends FilterInputStream {
         InterruptibleInputStream(InputStream in) {
             super(in);
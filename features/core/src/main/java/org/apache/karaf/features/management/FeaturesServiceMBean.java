@@ -144,4 +144,14 @@ public interface FeaturesServiceMBean {
 
     void uninstallFeature(String name, String version, boolean noRefresh) throws Exception;
 
+    /**
+     * @return the number of deployments (resolution and installation of the features) since the start
+     */
+    long getDeployments();
+
+    /**
+     * @return the duration of the last deployment in milliseconds
+     */
+    long getLastDeploymentDuration();
+
 }
@@ -21,7 +21,10 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.EnumSet;
 
 import org.apache.karaf.features.Feature;
@@ -76,6 +79,30 @@ public class BootFeaturesInstallerTest extends TestBase {
         EasyMock.verify(impl);        
     }
 
+    @Test
+    public void testStagedBootIgnoresBootImage() throws Exception  {
+        File home = Files.createTempDirectory("boot-image").toFile();
+        File image = new File(home, BootImage.BOOT_IMAGE_FILE);
+        Files.write(image.toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        FeaturesServiceImpl impl = EasyMock.createStrictMock(FeaturesServiceImpl.class);
+
+        // the image is not loaded, the stages are installed one after the other
+        impl.installFeatures(setOf("transaction"), EnumSet.of(Option.NoFailOnFeatureNotFound));
+        EasyMock.expectLastCall();
+        impl.installFeatures(setOf("ssh"), EnumSet.of(Option.NoFailOnFeatureNotFound));
+        EasyMock.expectLastCall();
+
+        impl.bootDone();
+        EasyMock.expectLastCall();
+
+        replay(impl);
+        BootFeaturesInstaller bootFeatures = new BootFeaturesInstaller(null, impl , "", "(transaction), ssh", false, image, home);
+        bootFeatures.installBootFeatures();
+        EasyMock.verify(impl);
+        image.delete();
+        home.delete();
+    }
+
     @Test
     public void testStartDoesNotFailWithOneInvalidUri() throws Exception {
         FeaturesServiceImpl impl = EasyMock.createStrictMock(FeaturesServiceImpl.class);
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BootImageTest {
+
+    @Test
+    public void testStoreLoadAndValidate() throws Exception {
+        File home = Files.createTempDirectory("boot-image").toFile();
+        File repo = new File(home, "system/repo.xml");
+        File bundle = new File(home, "system/bundle.jar");
+        repo.getParentFile().mkdirs();
+        Files.write(repo.toPath(), "<features/>".getBytes(StandardCharsets.UTF_8));
+        Files.write(bundle.toPath(), new byte[] { 1, 2, 3 });
+
+        BootImage image = new BootImage();
+        image.featuresRepositories = "mvn:foo/bar/1.0/xml/features";
+        image.featuresBoot = "(a, b), c";
+        image.repositories.put("mvn:foo/bar/1.0/xml/features", "system/repo.xml");
+        BootImage.BundleEntry entry = new BootImage.BundleEntry();
+        entry.location = "mvn:foo/bundle/1.0";
+        entry.path = "system/bundle.jar";
+        entry.startLevel = 30;
+        entry.start = true;
+        image.bundles.put("root", Collections.singletonList(entry));
+        image.state.repositories.add("mvn:foo/bar/1.0/xml/features");
+        image.state.requirements.put("root", Collections.singleton("feature:c/[1.0,1.0]"));
+        image.state.installedFeatures.put("root", Collections.singleton("c/1.0"));
+        image.fingerprint = image.computeFingerprint(home);
+
+        File file = new File(home, "image.json");
+        image.save(file);
+        BootImage loaded = BootImage.load(file);
+
+        assertEquals(image.fingerprint, loaded.fingerprint);
+        assertEquals(image.repositories, loaded.repositories);
+        assertEquals(image.state.requirements, loaded.state.requirements);
+        assertEquals(image.state.installedFeatures, loaded.state.installedFeatures);
+        assertEquals(30, loaded.bundles.get("root").get(0).startLevel);
+        assertTrue(loaded.bundles.get("root").get(0).start);
+
+        // Reformatted configuration still matches
+        assertTrue(loaded.isValid(home, " mvn:foo/bar/1.0/xml/features, ", "(a,b),\n    c"));
+        assertFalse(loaded.isValid(home, "mvn:foo/bar/1.0/xml/features", "(a,b),c,d"));
+
+        // Changed repository content invalidates the image
+        Files.write(repo.toPath(), "<features name='x'/>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(loaded.isValid(home, "mvn:foo/bar/1.0/xml/features", "(a,b),c"));
+    }
+
+    @Test
+    public void testRebuiltBundleWithSameSize() throws Exception {
+        File home = Files.createTempDirectory("boot-image").toFile();
+        File bundle = new File(home, "system/bundle.jar");
+        bundle.getParentFile().mkdirs();
+        Files.write(bundle.toPath(), new byte[] { 1, 2, 3 });
+
+        BootImage image = new BootImage();
+        BootImage.BundleEntry entry = new BootImage.BundleEntry();
+        entry.location = "mvn:foo/bundle/1.0-SNAPSHOT";
+        entry.path = "system/bundle.jar";
+        image.bundles.put("root", Collections.singletonList(entry));
+        String fingerprint = image.computeFingerprint(home);
+
+        Files.write(bundle.toPath(), new byte[] { 3, 2, 1 });
+        bundle.setLastModified(bundle.lastModified() + 2000);
+        assertNotEquals(fingerprint, image.computeFingerprint(home));
+    }
+
+}
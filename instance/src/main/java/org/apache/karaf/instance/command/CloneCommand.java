@@ -50,6 +50,9 @@ public class CloneCommand extends InstanceCommandSupport {
     @Option(name = "-o", aliases = {"--java-opts"}, description = "JVM options to use when launching the cloned instance", required = false, multiValued = false)
     String javaOpts;
 
+    @Option(name = "--link", description = "Hard link the system repository and bundle cache jars instead of copying them", required = false, multiValued = false)
+    boolean link = false;
+
     @Option(name = "-v", aliases = {"--verbose"}, description = "Display actions performed by the command (disabled by default)", required = false, multiValued = false)
     boolean verbose = false;
 
@@ -71,7 +74,7 @@ public class CloneCommand extends InstanceCommandSupport {
     protected Object doExecute() throws Exception {
         Map<String, URL> textResources = getResources(textResourceLocation);
         Map<String, URL> binaryResources = getResources(binaryResourceLocations);
-        InstanceSettings settings = new InstanceSettings(sshPort, rmiRegistryPort, rmiServerPort, location, javaOpts, null, null, null, textResources, binaryResources);
+        InstanceSettings settings = new InstanceSettings(sshPort, rmiRegistryPort, rmiServerPort, location, javaOpts, null, null, null, textResources, binaryResources, null, link);
         getInstanceService().cloneInstance(name, cloneName, settings, verbose);
         return null;
     }
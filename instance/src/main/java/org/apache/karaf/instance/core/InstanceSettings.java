@@ -36,6 +36,7 @@ public class InstanceSettings {
     private final Map<String, URL> textResources;
     private final Map<String, URL> binaryResources;
     private final List<String> profiles;
+    private final boolean linked;
 
     public InstanceSettings(int sshPort, int rmiRegistryPort, int rmiServerPort, String location, String javaOpts, List<String> featureURLs, List<String> features) {
         this(sshPort, rmiRegistryPort, rmiServerPort, location, javaOpts, featureURLs, features, "0.0.0.0");
@@ -50,6 +51,10 @@ public class InstanceSettings {
     }
 
     public InstanceSettings(int sshPort, int rmiRegistryPort, int rmiServerPort, String location, String javaOpts, List<String> featureURLs, List<String> features, String address, Map<String, URL> textResources, Map<String, URL> binaryResources, List<String> profiles) {
+        this(sshPort, rmiRegistryPort, rmiServerPort, location, javaOpts, featureURLs, features, address, textResources, binaryResources, profiles, false);
+    }
+
+    public InstanceSettings(int sshPort, int rmiRegistryPort, int rmiServerPort, String location, String javaOpts, List<String> featureURLs, List<String> features, String address, Map<String, URL> textResources, Map<String, URL> binaryResources, List<String> profiles, boolean linked) {
         this.sshPort = sshPort;
         this.rmiRegistryPort = rmiRegistryPort;
         this.rmiServerPort = rmiServerPort;
@@ -61,6 +66,7 @@ public class InstanceSettings {
         this.textResources = textResources != null ? textResources : new HashMap<String, URL>();
         this.binaryResources = binaryResources != null ? binaryResources : new HashMap<String, URL>();
         this.profiles = profiles != null ? profiles : new ArrayList<String>();
+        this.linked = linked;
     }
 
 
@@ -108,6 +114,14 @@ public class InstanceSettings {
         return profiles;
     }
 
+    /**
+     * When cloning an instance, hard link the immutable content (system repository
+     * and bundle cache jars) instead of copying it.
+     */
+    public boolean isLinked() {
+        return linked;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) {
@@ -125,7 +139,8 @@ public class InstanceSettings {
                (featureURLs == null ? is.featureURLs == null : featureURLs.equals(is.featureURLs)) &&
                (features == null ? is.features == null : features.equals(is.features)) &&
                (address == null ? is.address == null : address.equals(is.address)) &&
-               (profiles == null ? is.profiles == null : profiles.equals(is.profiles));
+               (profiles == null ? is.profiles == null : profiles.equals(is.profiles)) &&
+               is.linked == linked;
     }
 
     @Override
@@ -137,6 +152,7 @@ public class InstanceSettings {
         result = 31 * result + (features != null ? features.hashCode() : 0);
         result = 31 * result + (address != null ? address.hashCode() : 0);
         result = 31 * result + (profiles != null ? profiles.hashCode() : 0);
+        result = 31 * result + (linked ? 1 : 0);
         return result;
     }
 
@@ -33,6 +33,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -67,6 +69,17 @@ public class InstanceServiceImpl implements InstanceService {
     public static final String STORAGE_FILE = "instance.properties";
     public static final String BACKUP_EXTENSION = ".bak";
     private static final String FEATURES_CFG = "etc/org.apache.karaf.features.cfg";
+    private static final List<String> CLONE_FILTERED_RESOURCES = Arrays.asList(
+            "etc/custom.properties",
+            "etc/org.apache.karaf.management.cfg",
+            "etc/org.apache.karaf.shell.cfg",
+            "etc/system.properties",
+            "bin/karaf",
+            "bin/start",
+            "bin/stop",
+            "bin/karaf.bat",
+            "bin/start.bat",
+            "bin/stop.bat");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(InstanceServiceImpl.class);
 
@@ -84,10 +97,16 @@ public class InstanceServiceImpl implements InstanceService {
 
     private static final String DEFAULT_SHUTDOWN_COMMAND = "SHUTDOWN";
 
+    private static final long MODIFICATION_GRANULARITY = 2000;
+
     public static final String DEFAULT_JAVA_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote -XX:+UnlockDiagnosticVMOptions -XX:+UnsyncloadClass";
 
+    // Guarded by this
     private LinkedHashMap<String, InstanceImpl> proxies = new LinkedHashMap<String, InstanceImpl>();
 
+    // In-memory snapshot of the registry, discarded on writes or when the storage file changes
+    private volatile Registry registry;
+
     private File storageLocation;
 
     private long stopTimeout = 30000;
@@ -98,6 +117,16 @@ public class InstanceServiceImpl implements InstanceService {
         String opts;
         int pid;
         boolean root;
+
+        InstanceState copy() {
+            InstanceState copy = new InstanceState();
+            copy.name = name;
+            copy.loc = loc;
+            copy.opts = opts;
+            copy.pid = pid;
+            copy.root = root;
+            return copy;
+        }
     }
 
     static class State {
@@ -105,6 +134,42 @@ public class InstanceServiceImpl implements InstanceService {
         int defaultRmiRegistryPortStart = 1099;
         int defaultRmiServerPortStart = 44444;
         Map<String, InstanceState> instances;
+
+        State copy() {
+            State copy = new State();
+            copy.defaultSshPortStart = defaultSshPortStart;
+            copy.defaultRmiRegistryPortStart = defaultRmiRegistryPortStart;
+            copy.defaultRmiServerPortStart = defaultRmiServerPortStart;
+            copy.instances = new LinkedHashMap<String, InstanceState>();
+            for (InstanceState instance : instances.values()) {
+                copy.instances.put(instance.name, instance.copy());
+            }
+            return copy;
+        }
+    }
+
+    static class Registry {
+        final State state;
+        final Map<String, InstanceImpl> proxies;
+        final long lastModified;
+        final long length;
+        final long loaded;
+
+        Registry(State state, Map<String, InstanceImpl> proxies, long lastModified, long length, long loaded) {
+            this.state = state;
+            this.proxies = proxies;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.loaded = loaded;
+        }
+
+        boolean isUpToDate(long lastModified, long length) {
+            // File modification times may have a one second granularity, so a file
+            // that was modified right before being loaded can not be trusted
+            return this.lastModified == lastModified
+                    && this.length == length
+                    && loaded - lastModified > MODIFICATION_GRANULARITY;
+        }
     }
 
     public InstanceServiceImpl() {
@@ -213,34 +278,85 @@ public class InstanceServiceImpl implements InstanceService {
         T call(State state) throws IOException;
     }
 
-    synchronized <T> T execute(final Task<T> callback, final boolean writeToFile) {
-        final File storageFile = new File(storageLocation, STORAGE_FILE);
-        if (!storageFile.exists()) {
-            storageFile.getParentFile().mkdirs();
+    <T> T execute(final Task<T> callback, final boolean writeToFile) {
+        if (!writeToFile) {
+            // Read-only tasks work on a private copy of the cached registry
             try {
-                storageFile.createNewFile();
+                return callback.call(getRegistry().state.copy());
             } catch (IOException e) {
-                // Ignore
+                throw new RuntimeException(e);
             }
         }
-        if (storageFile.exists()) {
-            if (!storageFile.isFile()) {
-                throw new IllegalStateException("Instance storage location should be a file: " + storageFile);
-            }
+        synchronized (this) {
+            File storageFile = getStorageFile();
             try {
                 return FileLockUtils.execute(storageFile, new FileLockUtils.CallableWithProperties<T>() {
                     public T call(org.apache.felix.utils.properties.Properties properties) throws IOException {
                         State state = loadData(properties);
                         T t = callback.call(state);
-                        if (writeToFile) {
-                            saveData(state, properties);
-                        }
+                        saveData(state, properties);
                         return t;
                     }
-                }, writeToFile);
+                }, true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                registry = null;
+            }
+        }
+    }
+
+    /**
+     * Get the registry, reloading it from the storage file if the file has been
+     * modified since it was last loaded.
+     */
+    Registry getRegistry() {
+        File storageFile = getStorageFile();
+        long lastModified = storageFile.lastModified();
+        long length = storageFile.length();
+        Registry registry = this.registry;
+        if (registry != null && registry.isUpToDate(lastModified, length)) {
+            return registry;
+        }
+        synchronized (this) {
+            registry = this.registry;
+            if (registry != null && registry.isUpToDate(lastModified, length)) {
+                return registry;
+            }
+            long loaded = System.currentTimeMillis();
+            State state;
+            try {
+                state = FileLockUtils.execute(storageFile, new FileLockUtils.CallableWithProperties<State>() {
+                    public State call(org.apache.felix.utils.properties.Properties properties) throws IOException {
+                        return loadData(properties);
+                    }
+                }, false);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+            registry = new Registry(state,
+                    Collections.unmodifiableMap(new LinkedHashMap<String, InstanceImpl>(proxies)),
+                    lastModified, length, loaded);
+            this.registry = registry;
+            return registry;
+        }
+    }
+
+    private File getStorageFile() {
+        final File storageFile = new File(storageLocation, STORAGE_FILE);
+        if (!storageFile.exists()) {
+            storageFile.getParentFile().mkdirs();
+            try {
+                storageFile.createNewFile();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        if (storageFile.exists()) {
+            if (!storageFile.isFile()) {
+                throw new IllegalStateException("Instance storage location should be a file: " + storageFile);
+            }
+            return storageFile;
         } else {
             throw new IllegalStateException("Instance storage location does not exist: " + storageFile);
         }
@@ -429,19 +545,12 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public Instance[] getInstances() {
-        return execute(new Task<Instance[]>() {
-            public Instance[] call(State state) throws IOException {
-                return proxies.values().toArray(new Instance[proxies.size()]);
-            }
-        }, false);
+        Map<String, InstanceImpl> proxies = getRegistry().proxies;
+        return proxies.values().toArray(new Instance[proxies.size()]);
     }
 
     public Instance getInstance(final String name) {
-        return execute(new Task<Instance>() {
-            public Instance call(State state) throws IOException {
-                return proxies.get(name);
-            }
-        }, false);
+        return getRegistry().proxies.get(name);
     }
 
     public void startInstance(final String name, final String javaOpts) {
@@ -743,10 +852,8 @@ public class InstanceServiceImpl implements InstanceService {
                 if (!cloneLocation.isAbsolute()) {
                     cloneLocation = new File(storageLocation, cloneLocationPath);
                 }
-                // copy instance directory
                 String locationPath = instance.loc;
                 File location = new File(locationPath);
-                copy(location, cloneLocation);
                 // create the properties map including the instance name, location, ssh and rmi port numbers
                 // TODO: replacing stuff anywhere is not really good, we might end up replacing unwanted stuff
                 // TODO: if no ports are overriden, shouldn't we choose new ports ?
@@ -760,17 +867,11 @@ public class InstanceServiceImpl implements InstanceService {
                 if (settings.getRmiServerPort() > 0)
                     props.put(Integer.toString(instanceRmiServerPort), Integer.toString(settings.getRmiServerPort()));
 
-                // filtering clone files
-                filterResource(cloneLocation, "etc/custom.properties", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.management.cfg", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.shell.cfg", props);
-                filterResource(cloneLocation, "etc/system.properties", props);
-                filterResource(cloneLocation, "bin/karaf", props);
-                filterResource(cloneLocation, "bin/start", props);
-                filterResource(cloneLocation, "bin/stop", props);
-                filterResource(cloneLocation, "bin/karaf.bat", props);
-                filterResource(cloneLocation, "bin/start.bat", props);
-                filterResource(cloneLocation, "bin/stop.bat", props);
+                // copy instance directory, filtering the clone files on the fly
+                InstanceCopier copier = new InstanceCopier(settings.isLinked(), props);
+                copier.copy(location, cloneLocation, "");
+                logInfo("Cloned instance %s to %s: %d bytes copied, %d files (%d bytes) linked", printOutput,
+                        name, cloneName, copier.copied, copier.linkedFiles, copier.linked);
                 // create and add the clone instance in the registry
                 String javaOpts = settings.getJavaOpts();
                 if (javaOpts == null || javaOpts.length() == 0) {
@@ -1230,37 +1331,91 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     private void copy(File source, File destination) throws IOException {
-        if (source.getName().equals("cache.lock")) {
-            // ignore cache.lock file
-            return;
-        }
-        if (source.getName().equals("lock")) {
-            // ignore lock file
-            return;
-        }
-        if (source.getName().matches("transaction_\\d+\\.log")) {
-            // ignore active txlog files
-            return;
-        }
-        if (source.getName().endsWith(".instance")) {
-            // ignore instance bundles cache
-            return;
+        new InstanceCopier(false, null).copy(source, destination, "");
+    }
+
+    /**
+     * Copy an instance directory.
+     *
+     * Files listed in {@link #CLONE_FILTERED_RESOURCES} are filtered with the given
+     * properties while being copied.  In linked mode, immutable content (the system
+     * repository and the bundle cache jars) is hard linked instead of being copied,
+     * falling back to a copy if the file system does not support it.
+     */
+    private class InstanceCopier {
+
+        private final boolean link;
+        private final Map<String, String> props;
+        long copied;
+        long linked;
+        int linkedFiles;
+
+        InstanceCopier(boolean link, Map<String, String> props) {
+            this.link = link;
+            this.props = props;
         }
-        if (source.isDirectory()) {
-            if (!destination.exists()) {
-                destination.mkdirs();
+
+        void copy(File source, File destination, String path) throws IOException {
+            if (source.getName().equals("cache.lock")) {
+                // ignore cache.lock file
+                return;
             }
-            String[] children = source.list();
-            for (String child : children) {
-                if (!child.contains("instances") && !child.contains("lib"))
-                    copy(new File(source, child), new File(destination, child));
+            if (source.getName().equals("lock")) {
+                // ignore lock file
+                return;
             }
-        } else {
-            try(
-                InputStream in = new FileInputStream(source);
-                OutputStream out = new FileOutputStream(destination)
-            ) {
-                StreamUtils.copy(in, out);
+            if (source.getName().matches("transaction_\\d+\\.log")) {
+                // ignore active txlog files
+                return;
+            }
+            if (source.getName().endsWith(".instance")) {
+                // ignore instance bundles cache
+                return;
+            }
+            if (source.isDirectory()) {
+                if (!destination.exists()) {
+                    destination.mkdirs();
+                }
+                String[] children = source.list();
+                for (String child : children) {
+                    if (!child.contains("instances") && !child.contains("lib"))
+                        copy(new File(source, child), new File(destination, child), path.isEmpty() ? child : path + "/" + child);
+                }
+            } else if (props != null && CLONE_FILTERED_RESOURCES.contains(path)) {
+                try (
+                    InputStream in = new FileInputStream(source);
+                    OutputStream out = new FileOutputStream(destination)
+                ) {
+                    copyAndFilterResource(in, out, props);
+                }
+                copied += destination.length();
+            } else if (link && isImmutable(path) && link(source, destination)) {
+                linked += source.length();
+                linkedFiles++;
+            } else {
+                try (
+                    InputStream in = new FileInputStream(source);
+                    OutputStream out = new FileOutputStream(destination)
+                ) {
+                    StreamUtils.copy(in, out);
+                }
+                copied += source.length();
+            }
+        }
+
+        private boolean isImmutable(String path) {
+            return path.startsWith("system/")
+                    || (path.startsWith("data/cache/") && path.endsWith(".jar"));
+        }
+
+        private boolean link(File source, File destination) {
+            try {
+                Files.deleteIfExists(destination.toPath());
+                Files.createLink(destination.toPath(), source.toPath());
+                return true;
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                LOGGER.debug("Unable to link " + source + ", copying it instead", e);
+                return false;
             }
         }
     }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -38,6 +39,7 @@ import org.junit.rules.TestName;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class InstanceServiceImplTest {
@@ -164,6 +166,46 @@ public class InstanceServiceImplTest {
         assertNotNull(service.getInstance(getName() + "b"));
     }
 
+    @Test
+    public void testRegistryReloadedOnExternalChange() throws Exception {
+        InstanceServiceImpl service = new InstanceServiceImpl();
+        File storageLocation = tempFolder.newFolder("instances");
+        service.setStorageLocation(storageLocation);
+
+        InstanceSettings settings = new InstanceSettings(8122, 1122, 44444, getName(), null, null, null);
+        service.createInstance(getName(), settings, true);
+        assertNotNull(service.getInstance(getName()));
+        assertEquals(1, service.getInstances().length);
+
+        File storageFile = new File(storageLocation, InstanceServiceImpl.STORAGE_FILE);
+        Properties storage = loadStorage(storageFile);
+        storage.setProperty("item.0.name", getName() + "b");
+        saveStorage(storage, storageFile, "testRegistryReloadedOnExternalChange");
+
+        assertNotNull(service.getInstance(getName() + "b"));
+        assertNull(service.getInstance(getName()));
+    }
+
+    @Test
+    public void testLinkedCloneInstance() throws Exception {
+        InstanceServiceImpl service = new InstanceServiceImpl();
+        service.setStorageLocation(tempFolder.newFolder("instances"));
+
+        InstanceSettings settings = new InstanceSettings(8122, 1122, 44444, getName(), null, null, null);
+        Instance instance = service.createInstance(getName(), settings, false);
+        File jar = new File(instance.getLocation(), "system/org/foo/foo/1.0/foo-1.0.jar");
+        jar.getParentFile().mkdirs();
+        Files.write(jar.toPath(), new byte[] { 1, 2, 3 });
+
+        InstanceSettings cloneSettings = new InstanceSettings(8123, 1123, 44445, null, null, null, null, null, null, null, null, true);
+        Instance clone = service.cloneInstance(getName(), getName() + "b", cloneSettings, false);
+
+        File clonedJar = new File(clone.getLocation(), "system/org/foo/foo/1.0/foo-1.0.jar");
+        assertTrue(Files.isSameFile(jar.toPath(), clonedJar.toPath()));
+        String shellCfg = new String(Files.readAllBytes(new File(clone.getLocation(), "etc/org.apache.karaf.shell.cfg").toPath()));
+        assertTrue(shellCfg.contains("8123"));
+    }
+
     private String getName() {
         return name.getMethodName();
     }
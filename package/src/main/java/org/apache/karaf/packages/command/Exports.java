@@ -81,6 +81,7 @@ public class Exports implements Action {
             table.column("ID");
             table.column("Bundle Name");
         }
+        table.stream(System.out, !noFormat);
         for (PackageVersion pVer : exports) {
             for (Bundle bundle : pVer.getBundles()) {
                 if (matchesFilter(pVer, bundle)) {
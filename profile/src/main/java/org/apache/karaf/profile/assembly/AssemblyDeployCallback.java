@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,7 @@ import org.apache.karaf.features.internal.model.ConfigFile;
 import org.apache.karaf.features.internal.model.Feature;
 import org.apache.karaf.features.internal.model.Features;
 import org.apache.karaf.features.internal.service.Blacklist;
+import org.apache.karaf.features.internal.service.BootImage;
 import org.apache.karaf.features.internal.service.Deployer;
 import org.apache.karaf.features.internal.service.State;
 import org.apache.karaf.features.internal.util.MapUtils;
@@ -75,6 +77,14 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
 
     private final Map<String, Bundle> bundles = new HashMap<>();
 
+    // Boot image recording
+    private boolean bootImage;
+    private final Map<Long, String> bootLocations = new LinkedHashMap<>();
+    private final Map<Long, String> bootRegions = new HashMap<>();
+    private final Map<Long, String> bootPaths = new HashMap<>();
+    private final List<Long> bootStarted = new ArrayList<>();
+    private Map<String, Map<String, Map<String, Set<String>>>> bootPolicies;
+
     public AssemblyDeployCallback(DownloadManager manager, Builder builder, BundleRevision systemBundle, Collection<Features> repositories) throws Exception {
         this.manager = manager;
         this.builder = builder;
@@ -114,6 +124,59 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
         return dstate;
     }
 
+    /**
+     * Prepare a deployment of the boot features on top of the bundles
+     * installed so far.  Those bundles are considered unmanaged, the same
+     * way the features service sees the startup bundles at runtime, and
+     * the outcome of the deployment is recorded instead of being applied
+     * to the assembly.
+     *
+     * @param repositories the boot features repositories.
+     */
+    public void prepareBootImage(Collection<Features> repositories) {
+        bootImage = true;
+        dstate.state = new State();
+        for (Features repo : repositories) {
+            for (Feature f : repo.getFeature()) {
+                dstate.features.put(f.getId(), f);
+            }
+        }
+    }
+
+    /**
+     * Fill the given boot image with the outcome of the boot deployment.
+     *
+     * @param image the boot image to fill.
+     */
+    public void fillBootImage(BootImage image) {
+        image.state.requirements.putAll(dstate.state.requirements);
+        image.state.installedFeatures.putAll(dstate.state.installedFeatures);
+        image.state.stateFeatures.putAll(dstate.state.stateFeatures);
+        if (bootPolicies != null) {
+            image.digraph.putAll(bootPolicies);
+        }
+        // Started bundles first, in start order, then the others
+        List<Long> ids = new ArrayList<>(bootStarted);
+        for (Long id : bootLocations.keySet()) {
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        for (Long id : ids) {
+            BootImage.BundleEntry entry = new BootImage.BundleEntry();
+            entry.location = bootLocations.get(id);
+            entry.path = bootPaths.get(id);
+            entry.startLevel = dstate.bundles.get(id).adapt(BundleStartLevel.class).getStartLevel();
+            entry.start = bootStarted.contains(id);
+            List<BootImage.BundleEntry> entries = image.bundles.get(bootRegions.get(id));
+            if (entries == null) {
+                entries = new ArrayList<>();
+                image.bundles.put(bootRegions.get(id), entries);
+            }
+            entries.add(entry);
+        }
+    }
+
     @Override
     public void print(String message, boolean verbose) {
     }
@@ -129,6 +192,10 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
 
     @Override
     public void installFeature(org.apache.karaf.features.Feature feature) throws IOException, InvalidSyntaxException {
+        if (bootImage) {
+            // Configurations are installed by the features service when the image is applied
+            return;
+        }
         // Check blacklist
         if (Blacklist.isFeatureBlacklisted(builder.getBlacklistedFeatures(), feature.getName(), feature.getVersion())) {
             if (builder.getBlacklistPolicy() == Builder.BlacklistPolicy.Fail) {
@@ -195,6 +262,7 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
         // Install
         LOGGER.info("Installing bundle " + uri);
         try {
+            String location = uri;
             String regUri;
             String path;
             if (uri.startsWith("mvn:")) {
@@ -225,7 +293,13 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
             MapUtils.addToMapSet(dstate.bundlesPerRegion, region, bundle.getBundleId());
             dstate.bundles.put(bundle.getBundleId(), bundle);
 
-            bundles.put(regUri, bundle);
+            if (bootImage) {
+                bootLocations.put(bundle.getBundleId(), location);
+                bootRegions.put(bundle.getBundleId(), region);
+                bootPaths.put(bundle.getBundleId(), homeDirectory.relativize(bundleSystemFile).toString().replace('\\', '/'));
+            } else {
+                bundles.put(regUri, bundle);
+            }
             return bundle;
         } catch (IOException e) {
             throw new BundleException("Unable to install bundle", e);
@@ -244,6 +318,9 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
 
     @Override
     public void startBundle(Bundle bundle) throws BundleException {
+        if (bootImage && bundle != null && bootLocations.containsKey(bundle.getBundleId())) {
+            bootStarted.add(bundle.getBundleId());
+        }
     }
 
     @Override
@@ -265,5 +342,8 @@ public class AssemblyDeployCallback implements Deployer.DeployCallback {
 
     @Override
     public void replaceDigraph(Map<String, Map<String, Map<String, Set<String>>>> policies, Map<String, Set<Long>> bundles) throws BundleException, InvalidSyntaxException {
+        if (bootImage) {
+            bootPolicies = policies;
+        }
     }
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
@@ -52,6 +53,8 @@ import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.utils.manifest.Clause;
 import org.apache.felix.utils.properties.InterpolationHelper;
 import org.apache.felix.utils.properties.Properties;
+import org.apache.felix.utils.version.VersionRange;
+import org.apache.felix.utils.version.VersionTable;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Library;
 import org.apache.karaf.features.internal.download.DownloadCallback;
@@ -69,6 +72,7 @@ import org.apache.karaf.features.internal.model.JaxbUtil;
 import org.apache.karaf.features.internal.repository.BaseRepository;
 import org.apache.karaf.features.internal.resolver.ResourceBuilder;
 import org.apache.karaf.features.internal.service.Blacklist;
+import org.apache.karaf.features.internal.service.BootImage;
 import org.apache.karaf.features.internal.service.Deployer;
 import org.apache.karaf.features.internal.util.MapUtils;
 import org.apache.karaf.kar.internal.Kar;
@@ -152,6 +156,10 @@ public class Builder {
     boolean offline;
     String localRepository;
     String mavenRepositories;
+    boolean generateBootImage;
+    boolean pipelined;
+    boolean hardLinks;
+    int downloadThreads = 8;
 
     private ScheduledExecutorService executor;
     private DownloadManager manager;
@@ -161,6 +169,9 @@ public class Builder {
     private Map<String, Profile> allProfiles;
     private KarafPropertyEdits propertyEdits;
     private Map<String, String> translatedUrls;
+    private AssemblyDeployCallback startupCallback;
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private long stageStart;
 
     public static Builder newInstance() {
         return new Builder();
@@ -323,6 +334,58 @@ public class Builder {
         return this;
     }
 
+    /**
+     * Generate a boot image containing the resolution of the boot features,
+     * so that the features service does not have to resolve them on first boot.
+     * @return this.
+     */
+    public Builder bootImage() {
+        return bootImage(true);
+    }
+
+    public Builder bootImage(boolean generateBootImage) {
+        this.generateBootImage = generateBootImage;
+        return this;
+    }
+
+    /**
+     * Use a pipelined assembly: the artifacts of all stages are prefetched
+     * concurrently before the stages are processed, and artifacts are copied
+     * using zero-copy transfers.
+     * @return this.
+     */
+    public Builder pipelined() {
+        return pipelined(true);
+    }
+
+    public Builder pipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * Hard link the artifacts of the local repository into the assembly instead of copying them.
+     * The linked files share their content with the local repository: a file of the assembly
+     * must not be modified in place, or the artifact of the local repository is modified too.
+     * @return this.
+     */
+    public Builder hardLinks() {
+        return hardLinks(true);
+    }
+
+    public Builder hardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+        return this;
+    }
+
+    public Builder downloadThreads(int downloadThreads) {
+        if (downloadThreads <= 0) {
+            throw new IllegalArgumentException("downloadThreads must be positive");
+        }
+        this.downloadThreads = downloadThreads;
+        return this;
+    }
+
     public Builder staticFramework() {
         // TODO: load this from resources
         return staticFramework("4.0.0-SNAPSHOT");
@@ -390,6 +453,14 @@ public class Builder {
         return blacklistPolicy;
     }
 
+    /**
+     * Get the time spent in each stage of the last assembly generation.
+     * @return the duration in milliseconds of each stage, in execution order.
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
     public void generateAssembly() throws Exception {
         if (javase == null) {
             throw new IllegalArgumentException("javase is not set");
@@ -426,7 +497,9 @@ public class Builder {
             props.put(Builder.ORG_OPS4J_PAX_URL_MVN_PID + ".repositories", mavenRepositories);
         }
         MavenResolver resolver = MavenResolvers.createMavenResolver(props, ORG_OPS4J_PAX_URL_MVN_PID);
-        executor = Executors.newScheduledThreadPool(8);
+        timings.clear();
+        stageStart = System.nanoTime();
+        executor = Executors.newScheduledThreadPool(downloadThreads);
         manager = new CustomDownloadManager(resolver, executor, null, translatedUrls);
         this.resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
 
@@ -452,6 +525,7 @@ public class Builder {
         //
         // Propagate feature installation from repositories
         //
+        stageDone("kars");
         Map<String, Stage> features = new LinkedHashMap<>(this.features);
         Map<String, Features> karRepositories = loadRepositories(manager, repositories.keySet(), false);
         for (String repo : repositories.keySet()) {
@@ -504,6 +578,8 @@ public class Builder {
             }
         }
 
+        stageDone("profiles");
+
         // Generate profiles
         Profile startupProfile = generateProfile(Stage.Startup, profiles, repositories, features, bundles);
         Profile bootProfile = generateProfile(Stage.Boot, profiles, repositories, features, bundles);
@@ -520,6 +596,14 @@ public class Builder {
 
         manager = new CustomDownloadManager(resolver, executor, overallEffective, translatedUrls);
 
+        //
+        // Prefetch artifacts of all stages
+        //
+        if (pipelined) {
+            prefetch(startupProfile, bootProfile, installedProfile);
+            stageDone("prefetch");
+        }
+
         Hashtable<String, String> agentProps = new Hashtable<>(overallEffective.getConfiguration(ORG_OPS4J_PAX_URL_MVN_PID));
         final Map<String, String> properties = new HashMap<>();
         properties.put("karaf.default.repository", "system");
@@ -615,17 +699,145 @@ public class Builder {
         //
         // Startup stage
         //
+        stageDone("configuration");
         Profile startupEffective = startupStage(startupProfile);
+        stageDone("startup");
 
         //
         // Boot stage
         //
         Set<Feature> allBootFeatures = bootStage(bootProfile, startupEffective);
+        stageDone("boot");
 
         //
         // Installed stage
         //
         installStage(installedProfile, allBootFeatures);
+        stageDone("installed");
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : timings.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append(" ms");
+        }
+        LOGGER.info("Assembly generated (" + sb + ")");
+    }
+
+    private void stageDone(String stage) {
+        long now = System.nanoTime();
+        timings.put(stage, (now - stageStart) / 1000000);
+        stageStart = now;
+    }
+
+    /**
+     * Download the artifacts of all stages concurrently so that the stages
+     * themselves only hit the download manager cache.  Failures are ignored
+     * here and reported by the stage needing the artifact.
+     */
+    private void prefetch(Profile... profiles) throws Exception {
+        LOGGER.info("Prefetching artifacts");
+        Set<String> locations = new LinkedHashSet<>();
+        for (Profile profile : profiles) {
+            Profile overlay = Profiles.getOverlay(profile, allProfiles, environment);
+            Profile effective = Profiles.getEffective(overlay, false);
+            Map<String, Features> repositories;
+            try {
+                repositories = loadRepositories(manager, effective.getRepositories(), false);
+            } catch (Exception e) {
+                LOGGER.debug("Error prefetching repositories", e);
+                continue;
+            }
+            Set<Feature> allFeatures = new HashSet<>();
+            for (Features repo : repositories.values()) {
+                allFeatures.addAll(repo.getFeature());
+            }
+            Set<Feature> features = new LinkedHashSet<>();
+            for (String feature : effective.getFeatures()) {
+                try {
+                    addFeatures(features, allFeatures, feature);
+                } catch (IllegalStateException e) {
+                    LOGGER.debug("Error prefetching feature " + feature, e);
+                }
+            }
+            for (Feature feature : features) {
+                for (Bundle bundle : feature.getBundle()) {
+                    if (!ignoreDependencyFlag || !bundle.isDependency()) {
+                        locations.add(bundle.getLocation().trim());
+                    }
+                }
+                for (ConfigFile configFile : feature.getConfigfile()) {
+                    locations.add(configFile.getLocation().trim());
+                }
+                for (Conditional cond : feature.getConditional()) {
+                    for (Bundle bundle : cond.getBundle()) {
+                        if (!ignoreDependencyFlag || !bundle.isDependency()) {
+                            locations.add(bundle.getLocation().trim());
+                        }
+                    }
+                    for (ConfigFile configFile : cond.getConfigfile()) {
+                        locations.add(configFile.getLocation().trim());
+                    }
+                }
+            }
+            for (String bundle : effective.getBundles()) {
+                if (!bundle.startsWith("profile:")) {
+                    locations.add(bundle);
+                }
+            }
+        }
+        Downloader downloader = manager.createDownloader();
+        for (String location : locations) {
+            downloader.download(location, null);
+        }
+        try {
+            downloader.await();
+        } catch (Exception e) {
+            LOGGER.debug("Error prefetching artifacts", e);
+        }
+        LOGGER.info("Prefetched " + locations.size() + " artifacts");
+    }
+
+    /**
+     * Copy a downloaded artifact into the assembly.
+     * If enabled, artifacts from the local repository are hard linked when possible.
+     * In pipelined mode, the files are copied using zero-copy transfers.
+     */
+    void copyArtifact(Path input, Path output) throws IOException {
+        if (!pipelined && !hardLinks) {
+            Files.copy(input, output, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        Files.deleteIfExists(output);
+        if (hardLinks && isInLocalRepository(input)) {
+            try {
+                Files.createLink(output, input);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different file stores or no hard link support, fall back to copy
+            }
+        }
+        try (
+                FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+        ) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    private boolean isInLocalRepository(Path path) {
+        String local = localRepository != null
+                ? localRepository : System.getProperty("user.home") + "/.m2/repository";
+        try {
+            return path.toRealPath().startsWith(Paths.get(local).toRealPath());
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     private void reformatClauses(Properties config, String key) {
@@ -680,16 +892,16 @@ public class Builder {
                         String name = filename != null ? filename : input.getFileName().toString();
                         if (provider.getUrl().startsWith("mvn:")) {
                             Path libOutput = homeDirectory.resolve(path).resolve(name);
-                            Files.copy(input, libOutput, StandardCopyOption.REPLACE_EXISTING);
+                            copyArtifact(input, libOutput);
                             // copy boot library in system repository
                             if (type.equals(Library.TYPE_BOOT)) {
                                 String mvnPath = Parser.pathFromMaven(provider.getUrl());
                                 Path sysOutput = systemDirectory.resolve(mvnPath);
                                 Files.createDirectories(sysOutput.getParent());
-                                Files.copy(input, sysOutput, StandardCopyOption.REPLACE_EXISTING);
+                                copyArtifact(input, sysOutput);
                                 libOutput = homeDirectory.resolve(path).resolve(name);
                                 // copy the file
-                                Files.copy(input, libOutput, StandardCopyOption.REPLACE_EXISTING);
+                                copyArtifact(input, libOutput);
                                 /* a symlink could be used instead
 
                                 if (Files.notExists(libOutput, LinkOption.NOFOLLOW_LINKS)) {
@@ -703,7 +915,7 @@ public class Builder {
                             }
                         } else {
                             Path output = homeDirectory.resolve(path).resolve(name);
-                            Files.copy(input, output, StandardCopyOption.REPLACE_EXISTING);
+                            copyArtifact(input, output);
                         }
                     }
                     boolean export = Boolean.parseBoolean(clause.getDirective(LIBRARY_CLAUSE_EXPORT));
@@ -940,11 +1152,85 @@ public class Builder {
             reformatClauses(featuresProperties, FEATURES_REPOSITORIES);
             reformatClauses(featuresProperties, FEATURES_BOOT);
             featuresProperties.save();
+
+            if (generateBootImage) {
+                downloader.await();
+                generateBootImage(bootRepositories, bootEffective.getFeatures(), repos, boot);
+            }
         }
         downloader.await();
         return allBootFeatures;
     }
 
+    private void generateBootImage(Map<String, Features> bootRepositories, Collection<String> bootFeatures,
+                                   String featuresRepositories, String featuresBoot) throws Exception {
+        if (karafVersion != KarafVersion.v4x || startupCallback == null) {
+            LOGGER.warn("Boot image generation is only supported for karaf 4.x assemblies with startup features");
+            return;
+        }
+        if (featuresBoot.contains("(")) {
+            // the prerequisites have to be installed and started before the other features
+            LOGGER.warn("Boot image generation is not supported with staged boot features");
+            return;
+        }
+        LOGGER.info("Generating boot image");
+        BootImage image = new BootImage();
+        image.featuresRepositories = featuresRepositories;
+        image.featuresBoot = featuresBoot;
+        for (String repository : featuresRepositories.split(",")) {
+            if (!repository.trim().isEmpty()) {
+                image.state.repositories.add(repository.trim());
+            }
+        }
+        // Cache repositories
+        for (String uri : bootRepositories.keySet()) {
+            Path path = pathFromProviderUrl(uri);
+            if (!path.startsWith(homeDirectory)) {
+                StreamProvider provider = manager.getProviders().get(uri);
+                if (provider == null) {
+                    LOGGER.warn("Unable to generate boot image: repository " + uri + " is not available");
+                    return;
+                }
+                path = systemDirectory.resolve("boot-image").resolve(uri.replaceAll("[^0-9a-zA-Z.\\-_]+", "_"));
+                Files.createDirectories(path.getParent());
+                copyArtifact(provider.getFile().toPath(), path);
+            }
+            image.repositories.put(uri, homeDirectory.relativize(path).toString().replace('\\', '/'));
+        }
+        // Resolve boot features on top of the startup bundles
+        Set<String> requirements = new LinkedHashSet<>();
+        for (String feature : bootFeatures) {
+            Dependency dep = createDependency(feature);
+            Feature best = null;
+            for (Features repo : bootRepositories.values()) {
+                for (Feature f : repo.getFeature()) {
+                    if (matches(f, dep) && (best == null
+                            || VersionTable.getVersion(f.getVersion()).compareTo(VersionTable.getVersion(best.getVersion())) > 0)) {
+                        best = f;
+                    }
+                }
+            }
+            if (best == null) {
+                LOGGER.warn("Unable to generate boot image: could not find feature " + feature);
+                return;
+            }
+            requirements.add("feature:" + best.getName() + "/" + new VersionRange(best.getVersion(), true));
+        }
+        AssemblyDeployCallback callback = startupCallback;
+        callback.prepareBootImage(bootRepositories.values());
+        Deployer.DeploymentRequest request = createDeploymentRequest();
+        request.requirements.put(FeaturesService.ROOT_REGION, requirements);
+        try {
+            deploy(new Deployer(manager, resolver, callback), callback, request);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to generate boot image: " + e.getMessage(), e);
+            return;
+        }
+        callback.fillBootImage(image);
+        image.fingerprint = image.computeFingerprint(homeDirectory.toFile());
+        image.save(etcDirectory.resolve(BootImage.BOOT_IMAGE_FILE).toFile());
+    }
+
     private boolean isConditionalMet(Conditional cond, Set<Feature> bootFeatures) {
         for (String condition : cond.getCondition()) {
             for (Feature feature : bootFeatures) {
@@ -1082,7 +1368,7 @@ public class Builder {
                     Path path = pathFromProviderUrl(uri);
                     synchronized (provider) {
                         Files.createDirectories(path.getParent());
-                        Files.copy(provider.getFile().toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+                        copyArtifact(provider.getFile().toPath(), path);
                     }
                 }
             });
@@ -1165,7 +1451,7 @@ public class Builder {
                         synchronized (provider) {
                             Path path = systemDirectory.resolve(pathFromProviderUrl(provider.getUrl()));
                             Files.createDirectories(path.getParent());
-                            Files.copy(provider.getFile().toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+                            copyArtifact(provider.getFile().toPath(), path);
                         }
                     }
                     try (InputStream is = provider.open()) {
@@ -1237,6 +1523,13 @@ public class Builder {
         for (String bundle : bundles) {
             MapUtils.addToMapSet(request.requirements, FeaturesService.ROOT_REGION, "bundle:" + bundle);
         }
+        deploy(deployer, callback, request);
+        startupCallback = callback;
+
+        return callback.getStartupBundles();
+    }
+
+    private void deploy(Deployer deployer, AssemblyDeployCallback callback, Deployer.DeploymentRequest request) throws Exception {
         Set<String> prereqs = new HashSet<>();
         while (true) {
             try {
@@ -1250,8 +1543,6 @@ public class Builder {
                 }
             }
         }
-
-        return callback.getStartupBundles();
     }
 
     private Deployer.DeploymentRequest createDeploymentRequest() {
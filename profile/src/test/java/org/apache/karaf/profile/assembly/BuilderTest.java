@@ -25,6 +25,10 @@ import java.nio.file.Paths;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class BuilderTest {
 
     @Test
@@ -54,6 +58,57 @@ public class BuilderTest {
         }
     }
 
+    @Test
+    public void testCopyArtifact() throws Exception {
+        Path repo = Files.createTempDirectory("repo");
+        Path input = repo.resolve("bundle.jar");
+        Files.write(input, new byte[] { 1, 2, 3 });
+        Path output = Files.createTempDirectory("assembly").resolve("bundle.jar");
+
+        // Copies by default, even from the local repository
+        Builder builder = Builder.newInstance().localRepository(repo.toString()).pipelined();
+        builder.copyArtifact(input, output);
+        assertFalse(Files.isSameFile(input, output));
+        Files.write(output, new byte[] { 4 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(input));
+
+        // Hard links only when enabled
+        builder.hardLinks().copyArtifact(input, output);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(output));
+        if (supportsHardLinks(repo, output.getParent())) {
+            assertTrue(Files.isSameFile(input, output));
+        } else {
+            // Falls back to a copy
+            assertFalse(Files.isSameFile(input, output));
+        }
+
+        // Artifacts outside of the local repository are always copied
+        Path other = Files.createTempDirectory("other").resolve("bundle.jar");
+        Files.write(other, new byte[] { 5, 6 });
+        builder.copyArtifact(other, output);
+        assertFalse(Files.isSameFile(other, output));
+        assertArrayEquals(new byte[] { 5, 6 }, Files.readAllBytes(output));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(input));
+
+        recursiveDelete(repo);
+        recursiveDelete(other.getParent());
+        recursiveDelete(output.getParent());
+    }
+
+    private static boolean supportsHardLinks(Path source, Path target) throws IOException {
+        Path file = Files.createTempFile(source, "link", ".tmp");
+        Path link = target.resolve(file.getFileName());
+        try {
+            Files.createLink(link, file);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(link);
+            Files.delete(file);
+        }
+    }
+
     private static void recursiveDelete(Path path) throws IOException {
         if (Files.exists(path)) {
             if (Files.isDirectory(path)) {
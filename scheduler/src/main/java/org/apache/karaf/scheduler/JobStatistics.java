@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler;
+
+/**
+ * Execution statistics of a scheduled job.
+ * The durations are expressed in milliseconds.
+ */
+public interface JobStatistics {
+
+    /**
+     * @return The number of times the job has been executed.
+     */
+    long getRunCount();
+
+    /**
+     * @return The duration of the last execution.
+     */
+    long getLastDuration();
+
+    /**
+     * @return The average duration of the executions.
+     */
+    long getAverageDuration();
+
+    /**
+     * @return The maximum duration of the executions.
+     */
+    long getMaxDuration();
+
+    /**
+     * @return The number of times the job could not be fired on time.
+     */
+    long getMisfireCount();
+
+    /**
+     * @return The delay between the scheduled time and the start of the last execution,
+     *         i.e. the time spent waiting for a thread.
+     */
+    long getLastQueueDelay();
+
+    /**
+     * @return The maximum delay between the scheduled time and the start of an execution.
+     */
+    long getMaxQueueDelay();
+
+}
@@ -54,10 +54,51 @@ public interface ScheduleOptions {
      */
     ScheduleOptions canRunConcurrently(final boolean flag);
 
+    /**
+     * Sets the group of the job.
+     * If a thread pool is configured for the group, the job is run by this pool instead of the default one,
+     * so that the jobs of the group can not starve the other jobs.
+     * The group is only a hint: an implementation without group thread pools ignores it.
+     *
+     * @param group The job group.
+     * @return The {@code ScheduleOptions}.
+     */
+    default ScheduleOptions group(final String group) {
+        return this;
+    }
+
+    /**
+     * Flag indicating whether the job is shared by the instances of a cluster.
+     * With a job store shared by the cluster, a named clustered job runs on a single instance at a time,
+     * so it must be scheduled with the same name and schedule by every instance of the cluster.
+     * The other jobs only run on the instance which scheduled them.
+     * This defaults to false, and is only a hint: an implementation without a shared job store ignores it.
+     *
+     * @param flag Whether the job is shared by the instances of a cluster.
+     * @return The {@code ScheduleOptions}.
+     */
+    default ScheduleOptions clustered(final boolean flag) {
+        return this;
+    }
+
     String name();
 
+    /**
+     * @return The job group, or {@code null} if the job has no group or the group is not supported.
+     */
+    default String group() {
+        return null;
+    }
+
     boolean canRunConcurrently();
 
+    /**
+     * @return Whether the job is shared by the instances of a cluster.
+     */
+    default boolean clustered() {
+        return false;
+    }
+
     String schedule();
 
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.scheduler;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +63,20 @@ public interface Scheduler {
     /** Name of the configuration property to define the job name. */
     String PROPERTY_SCHEDULER_NAME = "scheduler.name";
 
+    /**
+     * Name of the configuration property to define the group of the job.
+     * The jobs of a group with a dedicated thread pool are run by this pool.
+     */
+    String PROPERTY_SCHEDULER_GROUP = "scheduler.group";
+
+    /**
+     * Name of the configuration property to define if the job is shared by the instances of a cluster.
+     * The job then also needs the {@link #PROPERTY_SCHEDULER_NAME} property, used as is to identify the job in the cluster.
+     * This property needs to be of type Boolean.
+     * @see ScheduleOptions#clustered(boolean)
+     */
+    String PROPERTY_SCHEDULER_CLUSTERED = "scheduler.clustered";
+
 
     /**
      * Schedule a job based on the options.
@@ -94,6 +109,17 @@ public interface Scheduler {
 
     Map<Object, ScheduleOptions> getJobs() throws SchedulerException;
 
+    /**
+     * Get the execution statistics of the scheduled jobs.
+     *
+     * An implementation not recording statistics returns an empty map.
+     *
+     * @return The statistics, by job name.
+     */
+    default Map<String, JobStatistics> getStatistics() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Create a schedule options to fire a job immediately and only once.
      *
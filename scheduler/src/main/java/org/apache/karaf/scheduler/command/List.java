@@ -18,6 +18,7 @@ package org.apache.karaf.scheduler.command;
 
 import java.util.Map;
 
+import org.apache.karaf.scheduler.JobStatistics;
 import org.apache.karaf.scheduler.ScheduleOptions;
 import org.apache.karaf.scheduler.Scheduler;
 import org.apache.karaf.shell.api.action.Action;
@@ -38,9 +39,28 @@ public class List implements Action {
         ShellTable table = new ShellTable();
         table.column("Name");
         table.column("Schedule");
+        table.column("Group");
+        table.column("Runs").alignRight();
+        table.column("Last (ms)").alignRight();
+        table.column("Avg (ms)").alignRight();
+        table.column("Max (ms)").alignRight();
+        table.column("Misfires").alignRight();
+        table.column("Delay (ms)").alignRight();
         Map<Object, ScheduleOptions> jobs = scheduler.getJobs();
+        Map<String, JobStatistics> statistics = scheduler.getStatistics();
         for (Map.Entry<Object, ScheduleOptions> entry : jobs.entrySet()) {
-            table.addRow().addContent(entry.getValue().name(), entry.getValue().schedule());
+            ScheduleOptions options = entry.getValue();
+            JobStatistics stats = statistics.get(options.name());
+            if (stats != null) {
+                table.addRow().addContent(options.name(), options.schedule(),
+                        options.group() != null ? options.group() : "",
+                        stats.getRunCount(), stats.getLastDuration(), stats.getAverageDuration(),
+                        stats.getMaxDuration(), stats.getMisfireCount(), stats.getLastQueueDelay());
+            } else {
+                table.addRow().addContent(options.name(), options.schedule(),
+                        options.group() != null ? options.group() : "",
+                        0, 0, 0, 0, 0, 0);
+            }
         }
         table.print(System.out);
         return null;
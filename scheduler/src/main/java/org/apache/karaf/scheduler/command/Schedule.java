@@ -39,6 +39,9 @@ public class Schedule implements Action {
     @Option(name = "--name", description = "Name of this job")
     String name;
 
+    @Option(name = "--group", description = "Group of this job, run by the thread pool of the group if configured")
+    String group;
+
     @Option(name = "--concurrent", description = "Should jobs run concurrently or not (defaults to false)")
     boolean concurrent;
 
@@ -87,6 +90,9 @@ public class Schedule implements Action {
         if (name != null) {
             options.name(name);
         }
+        if (group != null) {
+            options.group(group);
+        }
         if (concurrent) {
             options.canRunConcurrently(concurrent);
         }
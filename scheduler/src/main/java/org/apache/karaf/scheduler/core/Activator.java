@@ -16,26 +16,113 @@
  */
 package org.apache.karaf.scheduler.core;
 
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.karaf.scheduler.Scheduler;
 import org.apache.karaf.util.tracker.BaseActivator;
+import org.apache.karaf.util.tracker.annotation.Managed;
 import org.apache.karaf.util.tracker.annotation.ProvideService;
 import org.apache.karaf.util.tracker.annotation.Services;
-import org.quartz.simpl.SimpleThreadPool;
+import org.osgi.service.cm.ManagedService;
+import org.quartz.impl.jdbcjobstore.InvalidConfigurationException;
+import org.quartz.spi.JobStore;
 import org.quartz.spi.ThreadPool;
 
 @Services(provides = @ProvideService(Scheduler.class))
-public class Activator extends BaseActivator {
+@Managed("org.apache.karaf.scheduler")
+public class Activator extends BaseActivator implements ManagedService {
+
+    /** Prefix of the configuration properties defining the size of the thread pool of a job group. */
+    static final String GROUP_POOL_PREFIX = "threadPoolSize.";
+
+    /** Name of the data source of the jdbc job store. */
+    static final String DATA_SOURCE = "karaf.scheduler";
 
     private ThreadPool threadPool;
     private QuartzScheduler scheduler;
     private WhiteboardHandler whiteboardHandler;
+    private volatile boolean closed;
 
     @Override
     protected void doStart() throws Exception {
-        threadPool = new SimpleThreadPool(4, Thread.NORM_PRIORITY);
-        scheduler = new QuartzScheduler(threadPool);
+        int threadPoolSize = getInt("threadPoolSize", 4);
+        boolean virtualThreads = getBoolean("virtualThreads", false);
+
+        threadPool = new ExecutorThreadPool("Karaf Scheduler", threadPoolSize, virtualThreads);
+        Map<String, ThreadPool> groupThreadPools = new HashMap<>();
+        Dictionary<String, ?> config = getConfiguration();
+        if (config != null) {
+            for (Enumeration<String> keys = config.keys(); keys.hasMoreElements();) {
+                String key = keys.nextElement();
+                if (key.startsWith(GROUP_POOL_PREFIX)) {
+                    String group = key.substring(GROUP_POOL_PREFIX.length());
+                    groupThreadPools.put(group, new ExecutorThreadPool("Karaf Scheduler " + group,
+                            getInt(key, threadPoolSize), virtualThreads));
+                }
+            }
+        }
+        int batchSize = getInt("jobStore.batchSize", threadPoolSize);
+        JobStore clusterJobStore = createClusterJobStore();
+        ThreadPool clusterThreadPool = clusterJobStore != null
+                ? new ExecutorThreadPool("Karaf Scheduler cluster", getInt("jobStore.threadPoolSize", threadPoolSize), virtualThreads)
+                : null;
+        if (scheduler == null) {
+            scheduler = new QuartzScheduler(threadPool, groupThreadPools, clusterThreadPool, clusterJobStore, batchSize);
+        } else {
+            // restarted with a new configuration, the jobs scheduled through the service are kept
+            scheduler.start(threadPool, groupThreadPools, clusterThreadPool, clusterJobStore, batchSize);
+        }
         whiteboardHandler = new WhiteboardHandler(bundleContext, scheduler);
         register(Scheduler.class, scheduler);
+        registerMBean(new SchedulerMBeanImpl(scheduler), "type=scheduler");
+    }
+
+    /**
+     * Create the persistent job store of the clustered jobs, the other jobs are always kept in memory.
+     */
+    private JobStore createClusterJobStore() {
+        String jobStore = getString("jobStore", "ram");
+        if ("ram".equals(jobStore)) {
+            return null;
+        }
+        if (!"jdbc".equals(jobStore)) {
+            throw new IllegalArgumentException("Unknown job store: " + jobStore);
+        }
+        // by default, use the database of the jdbc lock
+        String url = getString("jobStore.url", bundleContext.getProperty("karaf.lock.jdbc.url"));
+        if (url == null) {
+            throw new IllegalArgumentException("The jobStore.url property is required for the jdbc job store");
+        }
+        JdbcJobStore.registerDataSource(DATA_SOURCE,
+                getString("jobStore.driver", bundleContext.getProperty("karaf.lock.jdbc.driver")),
+                url,
+                getString("jobStore.user", bundleContext.getProperty("karaf.lock.jdbc.user")),
+                getString("jobStore.password", bundleContext.getProperty("karaf.lock.jdbc.password")));
+        String tablePrefix = getString("jobStore.tablePrefix", "QRTZ_");
+        boolean clustered = getBoolean("jobStore.clustered", true);
+        long clusterCheckinInterval = getLong("jobStore.clusterCheckinInterval", 7500);
+        long misfireThreshold = getLong("jobStore.misfireThreshold", 60000);
+        boolean createTables = getBoolean("jobStore.createTables", true);
+        String driverDelegateClass = getString("jobStore.driverDelegateClass", null);
+        JdbcJobStore store = new JdbcJobStore(DATA_SOURCE, tablePrefix, clustered,
+                clusterCheckinInterval, misfireThreshold, createTables);
+        if (driverDelegateClass != null) {
+            try {
+                store.setDriverDelegateClass(driverDelegateClass);
+            } catch (InvalidConfigurationException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+        return store;
+    }
+
+    @Override
+    protected void doClose() {
+        closed = true;
+        super.doClose();
     }
 
     @Override
@@ -45,8 +132,13 @@ public class Activator extends BaseActivator {
             whiteboardHandler = null;
         }
         if (scheduler != null) {
-            scheduler.deactivate();
-            scheduler = null;
+            if (closed) {
+                scheduler.deactivate();
+                scheduler = null;
+            } else {
+                // the whiteboard jobs are scheduled again by the next handler, the others by the scheduler
+                scheduler.stop();
+            }
         }
         super.doStop();
     }
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.quartz.spi.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A quartz thread pool backed by an executor, running at most a given number of jobs at the same time.
+ * The jobs can be run by virtual threads when the JVM supports them.
+ */
+public class ExecutorThreadPool implements ThreadPool {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final String name;
+    private final int size;
+    private final boolean virtual;
+    private final Semaphore available;
+    private ExecutorService executor;
+
+    public ExecutorThreadPool(String name, int size, boolean virtual) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Thread pool size must be higher than 0");
+        }
+        this.name = name;
+        this.size = size;
+        this.virtual = virtual;
+        this.available = new Semaphore(size);
+    }
+
+    @Override
+    public void initialize() {
+        ThreadFactory factory = virtual ? createVirtualThreadFactory() : null;
+        if (factory != null) {
+            // virtual threads are cheap, the semaphore is enough to bound the concurrent jobs
+            executor = Executors.newCachedThreadPool(factory);
+        } else {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(size, r -> {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Create a factory of virtual threads using reflection, as they are not available on all supported JVMs.
+     */
+    private ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            logger.info("Virtual threads are not available, using platform threads for {}", name);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean runInThread(final Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    available.release();
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            available.release();
+            logger.warn("Unable to run job in thread pool " + name, e);
+            return false;
+        }
+    }
+
+    @Override
+    public int blockForAvailableThreads() {
+        try {
+            available.acquire();
+            available.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return available.availablePermits();
+    }
+
+    @Override
+    public void shutdown(boolean waitForJobsToComplete) {
+        if (executor != null) {
+            executor.shutdown();
+            if (waitForJobsToComplete) {
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return size;
+    }
+
+    @Override
+    public void setInstanceId(String schedInstId) {
+    }
+
+    @Override
+    public void setInstanceName(String schedName) {
+    }
+
+}
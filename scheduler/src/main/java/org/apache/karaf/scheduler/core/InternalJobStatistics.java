@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.scheduler.JobStatistics;
+
+/**
+ * Execution statistics of a job, updated by the job executor and the misfire listener.
+ */
+public class InternalJobStatistics implements JobStatistics {
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong totalDuration = new AtomicLong();
+    private final AtomicLong maxDuration = new AtomicLong();
+    private final AtomicLong misfireCount = new AtomicLong();
+    private final AtomicLong maxQueueDelay = new AtomicLong();
+    private volatile long lastDuration;
+    private volatile long lastQueueDelay;
+
+    void started(long queueDelay) {
+        lastQueueDelay = queueDelay;
+        max(maxQueueDelay, queueDelay);
+    }
+
+    void completed(long duration) {
+        lastDuration = duration;
+        runCount.incrementAndGet();
+        totalDuration.addAndGet(duration);
+        max(maxDuration, duration);
+    }
+
+    void misfired() {
+        misfireCount.incrementAndGet();
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    @Override
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    @Override
+    public long getAverageDuration() {
+        long count = runCount.get();
+        return count > 0 ? totalDuration.get() / count : 0;
+    }
+
+    @Override
+    public long getMaxDuration() {
+        return maxDuration.get();
+    }
+
+    @Override
+    public long getMisfireCount() {
+        return misfireCount.get();
+    }
+
+    @Override
+    public long getLastQueueDelay() {
+        return lastQueueDelay;
+    }
+
+    @Override
+    public long getMaxQueueDelay() {
+        return maxQueueDelay.get();
+    }
+
+}
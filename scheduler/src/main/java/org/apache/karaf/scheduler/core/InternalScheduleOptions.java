@@ -39,8 +39,12 @@ public class InternalScheduleOptions implements ScheduleOptions {
 
     public String name;
 
+    public String group;
+
     public boolean canRunConcurrently = false;
 
+    public boolean clustered = false;
+
     public Map<String, Serializable> configuration;
 
     public final String schedule;
@@ -134,16 +138,42 @@ public class InternalScheduleOptions implements ScheduleOptions {
         return this;
     }
 
+    /**
+     * @see org.apache.karaf.scheduler.ScheduleOptions#group(java.lang.String)
+     */
+    public ScheduleOptions group(final String group) {
+        this.group = group;
+        return this;
+    }
+
+    /**
+     * @see org.apache.karaf.scheduler.ScheduleOptions#clustered(boolean)
+     */
+    public ScheduleOptions clustered(final boolean flag) {
+        this.clustered = flag;
+        return this;
+    }
+
     @Override
     public String name() {
         return this.name;
     }
 
+    @Override
+    public String group() {
+        return this.group;
+    }
+
     @Override
     public boolean canRunConcurrently() {
         return this.canRunConcurrently;
     }
 
+    @Override
+    public boolean clustered() {
+        return this.clustered;
+    }
+
     @Override
     public String schedule() {
         return schedule;
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.quartz.SchedulerConfigException;
+import org.quartz.impl.jdbcjobstore.JobStoreTX;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.utils.ConnectionProvider;
+import org.quartz.utils.DBConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A quartz job store persisting the jobs in a database, shared by the Karaf instances of a cluster.
+ *
+ * The connection is configured like the JDBC lock (url, driver, user and password). The tables are
+ * created when they do not exist yet.
+ */
+public class JdbcJobStore extends JobStoreTX {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final boolean createTables;
+
+    /**
+     * @param dataSource The name of the data source, registered with {@link #registerDataSource}.
+     * @param tablePrefix The prefix of the quartz tables.
+     * @param clustered Whether the jobs are shared with other schedulers.
+     * @param clusterCheckinInterval How often the scheduler checks in with the other schedulers, in ms.
+     * @param misfireThreshold The delay after which a trigger is considered as misfired, in ms.
+     * @param createTables Whether the tables are created if they do not exist.
+     */
+    public JdbcJobStore(String dataSource, String tablePrefix, boolean clustered,
+                        long clusterCheckinInterval, long misfireThreshold, boolean createTables) {
+        setDataSource(dataSource);
+        setTablePrefix(tablePrefix);
+        setIsClustered(clustered);
+        setClusterCheckinInterval(clusterCheckinInterval);
+        setMisfireThreshold(misfireThreshold);
+        // required to acquire several triggers at once safely
+        setAcquireTriggersWithinLock(true);
+        this.createTables = createTables;
+    }
+
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException {
+        if (createTables) {
+            try {
+                createTables();
+            } catch (SQLException e) {
+                throw new SchedulerConfigException("Unable to create the scheduler tables: " + e.getMessage(), e);
+            }
+        }
+        super.initialize(loadHelper, signaler);
+    }
+
+    /**
+     * Register a data source connecting to the database with the given driver.
+     *
+     * @param name The name of the data source.
+     * @param driver The class name of the JDBC driver.
+     * @param url The JDBC url.
+     * @param user The database user.
+     * @param password The database password.
+     */
+    public static void registerDataSource(String name, String driver, String url, String user, String password) {
+        DBConnectionManager.getInstance().addConnectionProvider(name, new DriverConnectionProvider(driver, url, user, password));
+    }
+
+    private void createTables() throws SQLException {
+        Connection connection = DBConnectionManager.getInstance().getConnection(getDataSource());
+        try {
+            if (tableExists(connection.getMetaData(), getTablePrefix() + "LOCKS")) {
+                return;
+            }
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : getCreateStatements(getTablePrefix())) {
+                    logger.debug("Executing statement: {}", sql);
+                    statement.execute(sql);
+                }
+                connection.commit();
+                logger.info("Created the scheduler tables with prefix {}", getTablePrefix());
+            } catch (SQLException e) {
+                connection.rollback();
+                // another instance of the cluster may have created them in the meantime
+                if (!tableExists(connection.getMetaData(), getTablePrefix() + "LOCKS")) {
+                    throw e;
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData metadata, String table) throws SQLException {
+        for (String name : new String[] { table, table.toUpperCase(), table.toLowerCase() }) {
+            try (ResultSet rs = metadata.getTables(null, null, name, new String[] { "TABLE" })) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The statements creating the quartz tables, using types supported by Derby and most databases.
+     */
+    static String[] getCreateStatements(String p) {
+        String trigger = "SCHED_NAME VARCHAR(120) NOT NULL, TRIGGER_NAME VARCHAR(200) NOT NULL, TRIGGER_GROUP VARCHAR(200) NOT NULL, ";
+        String triggerKey = "PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP), "
+                + "FOREIGN KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) REFERENCES " + p + "TRIGGERS (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP)";
+        return new String[] {
+            "CREATE TABLE " + p + "JOB_DETAILS (SCHED_NAME VARCHAR(120) NOT NULL, JOB_NAME VARCHAR(200) NOT NULL, "
+                    + "JOB_GROUP VARCHAR(200) NOT NULL, DESCRIPTION VARCHAR(250), JOB_CLASS_NAME VARCHAR(250) NOT NULL, "
+                    + "IS_DURABLE VARCHAR(5) NOT NULL, IS_NONCONCURRENT VARCHAR(5) NOT NULL, IS_UPDATE_DATA VARCHAR(5) NOT NULL, "
+                    + "REQUESTS_RECOVERY VARCHAR(5) NOT NULL, JOB_DATA BLOB, PRIMARY KEY (SCHED_NAME, JOB_NAME, JOB_GROUP))",
+            "CREATE TABLE " + p + "TRIGGERS (" + trigger + "JOB_NAME VARCHAR(200) NOT NULL, JOB_GROUP VARCHAR(200) NOT NULL, "
+                    + "DESCRIPTION VARCHAR(250), NEXT_FIRE_TIME BIGINT, PREV_FIRE_TIME BIGINT, PRIORITY INTEGER, "
+                    + "TRIGGER_STATE VARCHAR(16) NOT NULL, TRIGGER_TYPE VARCHAR(8) NOT NULL, START_TIME BIGINT NOT NULL, "
+                    + "END_TIME BIGINT, CALENDAR_NAME VARCHAR(200), MISFIRE_INSTR SMALLINT, JOB_DATA BLOB, "
+                    + "PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP), "
+                    + "FOREIGN KEY (SCHED_NAME, JOB_NAME, JOB_GROUP) REFERENCES " + p + "JOB_DETAILS (SCHED_NAME, JOB_NAME, JOB_GROUP))",
+            "CREATE TABLE " + p + "SIMPLE_TRIGGERS (" + trigger + "REPEAT_COUNT BIGINT NOT NULL, "
+                    + "REPEAT_INTERVAL BIGINT NOT NULL, TIMES_TRIGGERED BIGINT NOT NULL, " + triggerKey + ")",
+            "CREATE TABLE " + p + "CRON_TRIGGERS (" + trigger + "CRON_EXPRESSION VARCHAR(120) NOT NULL, "
+                    + "TIME_ZONE_ID VARCHAR(80), " + triggerKey + ")",
+            "CREATE TABLE " + p + "SIMPROP_TRIGGERS (" + trigger + "STR_PROP_1 VARCHAR(512), STR_PROP_2 VARCHAR(512), "
+                    + "STR_PROP_3 VARCHAR(512), INT_PROP_1 INTEGER, INT_PROP_2 INTEGER, LONG_PROP_1 BIGINT, LONG_PROP_2 BIGINT, "
+                    + "DEC_PROP_1 NUMERIC(13,4), DEC_PROP_2 NUMERIC(13,4), BOOL_PROP_1 VARCHAR(5), BOOL_PROP_2 VARCHAR(5), "
+                    + triggerKey + ")",
+            "CREATE TABLE " + p + "BLOB_TRIGGERS (" + trigger + "BLOB_DATA BLOB, " + triggerKey + ")",
+            "CREATE TABLE " + p + "CALENDARS (SCHED_NAME VARCHAR(120) NOT NULL, CALENDAR_NAME VARCHAR(200) NOT NULL, "
+                    + "CALENDAR BLOB NOT NULL, PRIMARY KEY (SCHED_NAME, CALENDAR_NAME))",
+            "CREATE TABLE " + p + "PAUSED_TRIGGER_GRPS (SCHED_NAME VARCHAR(120) NOT NULL, TRIGGER_GROUP VARCHAR(200) NOT NULL, "
+                    + "PRIMARY KEY (SCHED_NAME, TRIGGER_GROUP))",
+            "CREATE TABLE " + p + "FIRED_TRIGGERS (SCHED_NAME VARCHAR(120) NOT NULL, ENTRY_ID VARCHAR(95) NOT NULL, "
+                    + "TRIGGER_NAME VARCHAR(200) NOT NULL, TRIGGER_GROUP VARCHAR(200) NOT NULL, INSTANCE_NAME VARCHAR(200) NOT NULL, "
+                    + "FIRED_TIME BIGINT NOT NULL, SCHED_TIME BIGINT NOT NULL, PRIORITY INTEGER NOT NULL, STATE VARCHAR(16) NOT NULL, "
+                    + "JOB_NAME VARCHAR(200), JOB_GROUP VARCHAR(200), IS_NONCONCURRENT VARCHAR(5), REQUESTS_RECOVERY VARCHAR(5), "
+                    + "PRIMARY KEY (SCHED_NAME, ENTRY_ID))",
+            "CREATE TABLE " + p + "SCHEDULER_STATE (SCHED_NAME VARCHAR(120) NOT NULL, INSTANCE_NAME VARCHAR(200) NOT NULL, "
+                    + "LAST_CHECKIN_TIME BIGINT NOT NULL, CHECKIN_INTERVAL BIGINT NOT NULL, PRIMARY KEY (SCHED_NAME, INSTANCE_NAME))",
+            "CREATE TABLE " + p + "LOCKS (SCHED_NAME VARCHAR(120) NOT NULL, LOCK_NAME VARCHAR(40) NOT NULL, "
+                    + "PRIMARY KEY (SCHED_NAME, LOCK_NAME))",
+            "CREATE INDEX IDX_" + p + "T_NEXT_FIRE_TIME ON " + p + "TRIGGERS (SCHED_NAME, NEXT_FIRE_TIME)",
+            "CREATE INDEX IDX_" + p + "T_NFT_ST ON " + p + "TRIGGERS (SCHED_NAME, TRIGGER_STATE, NEXT_FIRE_TIME)",
+            "CREATE INDEX IDX_" + p + "T_NFT_MISFIRE ON " + p + "TRIGGERS (SCHED_NAME, MISFIRE_INSTR, NEXT_FIRE_TIME)",
+            "CREATE INDEX IDX_" + p + "FT_INST_NAME ON " + p + "FIRED_TRIGGERS (SCHED_NAME, INSTANCE_NAME)"
+        };
+    }
+
+    /**
+     * Create the connections with the JDBC driver, the driver being loaded from the system
+     * class loader when the bundle can not see it, as for the JDBC lock.
+     */
+    static class DriverConnectionProvider implements ConnectionProvider {
+
+        private final String driverName;
+        private final String url;
+        private final Properties info = new Properties();
+        private volatile Driver driver;
+
+        DriverConnectionProvider(String driverName, String url, String user, String password) {
+            this.driverName = driverName;
+            // same as the JDBC lock: create the embedded derby database if needed
+            if (url.toLowerCase().startsWith("jdbc:derby") && !url.toLowerCase().contains("create=true")) {
+                url = url + ";create=true";
+            }
+            this.url = url;
+            if (user != null) {
+                info.put("user", user);
+            }
+            if (password != null) {
+                info.put("password", password);
+            }
+        }
+
+        public Connection getConnection() throws SQLException {
+            if (driverName == null) {
+                return DriverManager.getConnection(url, info);
+            }
+            Connection connection = getDriver().connect(url, info);
+            if (connection == null) {
+                throw new SQLException("Driver " + driverName + " does not accept url " + url);
+            }
+            return connection;
+        }
+
+        private Driver getDriver() throws SQLException {
+            if (driver == null) {
+                Class<?> clazz;
+                try {
+                    clazz = getClass().getClassLoader().loadClass(driverName);
+                } catch (ClassNotFoundException e) {
+                    try {
+                        clazz = ClassLoader.getSystemClassLoader().loadClass(driverName);
+                    } catch (ClassNotFoundException e2) {
+                        throw new SQLException("JDBC driver " + driverName + " not found", e2);
+                    }
+                }
+                try {
+                    driver = (Driver) clazz.newInstance();
+                } catch (Exception e) {
+                    throw new SQLException("Unable to create JDBC driver " + driverName, e);
+                }
+            }
+            return driver;
+        }
+
+        public void shutdown() throws SQLException {
+        }
+
+        public void initialize() throws SQLException {
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 
 /**
@@ -39,16 +40,37 @@ public class QuartzJobExecutor implements Job {
     public void execute(final JobExecutionContext context) throws JobExecutionException {
 
         final JobDataMap data = context.getJobDetail().getJobDataMap();
-        final Object job = data.get(QuartzScheduler.DATA_MAP_OBJECT);
-        final Logger logger = (Logger)data.get(QuartzScheduler.DATA_MAP_LOGGER);
+        final String name = (String) data.get(QuartzScheduler.DATA_MAP_NAME);
+        final Object job;
+        final InternalScheduleOptions options;
+        final Logger logger;
+        final InternalJobStatistics statistics;
+        if (data.containsKey(QuartzScheduler.DATA_MAP_OBJECT)) {
+            job = data.get(QuartzScheduler.DATA_MAP_OBJECT);
+            options = (InternalScheduleOptions) data.get(QuartzScheduler.DATA_MAP_OPTIONS);
+            logger = (Logger) data.get(QuartzScheduler.DATA_MAP_LOGGER);
+            statistics = (InternalJobStatistics) data.get(QuartzScheduler.DATA_MAP_STATISTICS);
+        } else {
+            // clustered job, the job object only lives in the instances which scheduled it
+            final QuartzScheduler scheduler = getScheduler(context);
+            final QuartzScheduler.LocalJob local = scheduler.getLocalJob(name);
+            if (local == null) {
+                scheduler.getLogger().warn("Job {} is not known by this instance, skipping it", name);
+                return;
+            }
+            job = local.job;
+            options = local.options;
+            logger = scheduler.getLogger();
+            statistics = scheduler.getStatistics(name);
+        }
 
+        final long start = System.currentTimeMillis();
+        if (statistics != null && context.getScheduledFireTime() != null) {
+            statistics.started(Math.max(0, start - context.getScheduledFireTime().getTime()));
+        }
         try {
-            logger.debug("Executing job {} with name {}", job, data.get(QuartzScheduler.DATA_MAP_NAME));
+            logger.debug("Executing job {} with name {}", job, name);
             if (job instanceof org.apache.karaf.scheduler.Job) {
-                @SuppressWarnings("unchecked")
-                final InternalScheduleOptions options = (InternalScheduleOptions) data.get(QuartzScheduler.DATA_MAP_OPTIONS);
-                final String name = (String) data.get(QuartzScheduler.DATA_MAP_NAME);
-
                 final JobContext jobCtx = new JobContextImpl(name, options.configuration);
                 ((org.apache.karaf.scheduler.Job) job).execute(jobCtx);
             } else if (job instanceof Runnable) {
@@ -59,6 +81,18 @@ public class QuartzJobExecutor implements Job {
         } catch (final Throwable t) {
             // there is nothing we can do here, so we just log
             logger.error("Exception during job execution of " + job + " : " + t.getMessage(), t);
+        } finally {
+            if (statistics != null) {
+                statistics.completed(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private static QuartzScheduler getScheduler(final JobExecutionContext context) throws JobExecutionException {
+        try {
+            return (QuartzScheduler) context.getScheduler().getContext().get(QuartzScheduler.CONTEXT_SCHEDULER);
+        } catch (final SchedulerException e) {
+            throw new JobExecutionException(e);
         }
     }
 
@@ -16,24 +16,36 @@
  */
 package org.apache.karaf.scheduler.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.karaf.scheduler.Job;
+import org.apache.karaf.scheduler.JobStatistics;
 import org.apache.karaf.scheduler.ScheduleOptions;
 import org.apache.karaf.scheduler.Scheduler;
 import org.quartz.JobBuilder;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
 import org.quartz.JobKey;
 import org.quartz.SchedulerException;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.SimpleTrigger;
 import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
 import org.quartz.impl.DirectSchedulerFactory;
 import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.TriggerListenerSupport;
 import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.JobStore;
 import org.quartz.spi.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,44 +75,296 @@ public class QuartzScheduler implements Scheduler {
     /** Map key for the logger. */
     static final String DATA_MAP_LOGGER = "QuartzJobScheduler.Logger";
 
+    /** Map key for the job statistics. */
+    static final String DATA_MAP_STATISTICS = "QuartzJobScheduler.Statistics";
+
+    /** Map key for the schedule, kept with the job in a persistent job store. */
+    static final String DATA_MAP_SCHEDULE = "QuartzJobScheduler.Schedule";
+
+    /** Name of the quartz scheduler of the clustered jobs, shared by the instances of the cluster. */
+    private static final String QUARTZ_CLUSTER_SCHEDULER_NAME = QUARTZ_SCHEDULER_NAME + "-cluster";
+
+    /** Scheduler context key for this scheduler, used to find the jobs not kept in the job data. */
+    static final String CONTEXT_SCHEDULER = "QuartzJobScheduler.Scheduler";
+
     /** The quartz scheduler. */
     private volatile org.quartz.Scheduler scheduler;
 
+    /** The quartz schedulers of the job groups having their own thread pool. */
+    private volatile Map<String, org.quartz.Scheduler> groupSchedulers = Collections.emptyMap();
+
+    /** The quartz scheduler of the clustered jobs, using a persistent job store, if any. */
+    private volatile org.quartz.Scheduler clusterScheduler;
+
+    /** The statistics of the jobs, by job name. */
+    private final ConcurrentMap<String, InternalJobStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * The jobs scheduled by this instance, by job name. The job data of a clustered job only contains the
+     * name of the job, and the job is fired by any instance of the cluster knowing it.
+     */
+    private final ConcurrentMap<String, LocalJob> localJobs = new ConcurrentHashMap<>();
+
+    /**
+     * The triggers of the jobs of {@link #localJobs} when the quartz schedulers were stopped,
+     * to schedule the jobs again when they are started.
+     */
+    private final Map<String, Trigger> stoppedTriggers = new HashMap<>();
+
     public QuartzScheduler(ThreadPool threadPool) throws SchedulerException {
+        this(threadPool, Collections.<String, ThreadPool>emptyMap());
+    }
+
+    /**
+     * @param threadPool The thread pool running the jobs.
+     * @param groupThreadPools The thread pools running the jobs of the given groups.
+     */
+    public QuartzScheduler(ThreadPool threadPool, Map<String, ThreadPool> groupThreadPools) throws SchedulerException {
+        this(threadPool, groupThreadPools, null, null, 1);
+    }
+
+    /**
+     * @param threadPool The thread pool running the jobs.
+     * @param groupThreadPools The thread pools running the jobs of the given groups.
+     * @param clusterThreadPool The thread pool running the clustered jobs, if any.
+     * @param clusterJobStore The persistent job store of the clustered jobs, if any.
+     * @param maxBatchSize The maximum number of triggers acquired at once.
+     */
+    public QuartzScheduler(ThreadPool threadPool, Map<String, ThreadPool> groupThreadPools,
+                           ThreadPool clusterThreadPool, JobStore clusterJobStore, int maxBatchSize) throws SchedulerException {
         // SLING-2261 Prevent Quartz from checking for updates
         System.setProperty("org.terracotta.quartz.skipUpdateCheck", Boolean.TRUE.toString());
 
+        start(threadPool, groupThreadPools, clusterThreadPool, clusterJobStore, maxBatchSize);
+    }
+
+    /**
+     * Start the quartz schedulers. The jobs scheduled before {@link #stop()} are scheduled again,
+     * from their next fire time, so that the thread pools can be reconfigured without losing the jobs
+     * scheduled through the service.
+     *
+     * @param threadPool The thread pool running the jobs.
+     * @param groupThreadPools The thread pools running the jobs of the given groups.
+     * @param clusterThreadPool The thread pool running the clustered jobs, if any.
+     * @param clusterJobStore The persistent job store of the clustered jobs, if any.
+     * @param maxBatchSize The maximum number of triggers acquired at once.
+     */
+    synchronized void start(ThreadPool threadPool, Map<String, ThreadPool> groupThreadPools,
+                            ThreadPool clusterThreadPool, JobStore clusterJobStore, int maxBatchSize) throws SchedulerException {
+        if ( this.scheduler != null ) {
+            throw new IllegalStateException("Scheduler is already started.");
+        }
+        final org.quartz.Scheduler defaultScheduler = createScheduler(QUARTZ_SCHEDULER_NAME, threadPool, new RAMJobStore(), maxBatchSize);
+        final Map<String, org.quartz.Scheduler> schedulers = new HashMap<>();
+        org.quartz.Scheduler cluster = null;
+        try {
+            for (Map.Entry<String, ThreadPool> entry : groupThreadPools.entrySet()) {
+                schedulers.put(entry.getKey(), createScheduler(QUARTZ_SCHEDULER_NAME + "-" + entry.getKey(),
+                        entry.getValue(), new RAMJobStore(), maxBatchSize));
+            }
+            if ( clusterJobStore != null ) {
+                cluster = createScheduler(QUARTZ_CLUSTER_SCHEDULER_NAME, clusterThreadPool, clusterJobStore, maxBatchSize);
+            }
+        } catch (SchedulerException e) {
+            dispose(defaultScheduler);
+            for (org.quartz.Scheduler s : schedulers.values()) {
+                dispose(s);
+            }
+            throw e;
+        }
+        groupSchedulers = schedulers;
+        clusterScheduler = cluster;
+        scheduler = defaultScheduler;
+
+        if ( this.logger.isDebugEnabled() ) {
+            this.logger.debug(PREFIX + "started.");
+        }
+
+        for (Map.Entry<String, LocalJob> entry : this.localJobs.entrySet()) {
+            final Trigger trigger = this.stoppedTriggers.get(entry.getKey());
+            if ( trigger == null ) {
+                // the job was done when the schedulers were stopped
+                this.localJobs.remove(entry.getKey());
+                this.statistics.remove(entry.getKey());
+                continue;
+            }
+            try {
+                this.reschedule(entry.getKey(), entry.getValue(), trigger);
+            } catch (final SchedulerException | RuntimeException e) {
+                this.logger.warn("Unable to schedule job {} again", entry.getKey(), e);
+                this.localJobs.remove(entry.getKey());
+            }
+        }
+        this.stoppedTriggers.clear();
+    }
+
+    /**
+     * Stop the quartz schedulers, keeping the jobs scheduled on this instance so that {@link #start} schedules them again.
+     */
+    synchronized void stop() {
+        final org.quartz.Scheduler s = this.scheduler;
+        if ( s == null ) {
+            return;
+        }
+        this.stoppedTriggers.clear();
+        for (String jobName : this.localJobs.keySet()) {
+            final Trigger trigger = this.getTrigger(jobName);
+            if ( trigger != null && trigger.getNextFireTime() != null ) {
+                this.stoppedTriggers.put(jobName, trigger);
+            }
+        }
+        final Map<String, org.quartz.Scheduler> groups = this.groupSchedulers;
+        final org.quartz.Scheduler cluster = this.clusterScheduler;
+        this.scheduler = null;
+        this.groupSchedulers = Collections.emptyMap();
+        this.clusterScheduler = null;
+        this.dispose(s);
+        for (org.quartz.Scheduler group : groups.values()) {
+            this.dispose(group);
+        }
+        this.dispose(cluster);
+    }
+
+    /**
+     * Get the trigger of the job with the given name, whatever the thread pool running it.
+     */
+    private Trigger getTrigger(final String jobName) {
+        final JobKey key = JobKey.jobKey(jobName);
+        for (org.quartz.Scheduler s : this.getSchedulers()) {
+            try {
+                final List<? extends Trigger> triggers = s.getTriggersOfJob(key);
+                if ( !triggers.isEmpty() ) {
+                    return triggers.get(0);
+                }
+            } catch (final SchedulerException ignored) {
+                // ignore
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedule again a job of a stopped scheduler, from the next fire time of its previous trigger.
+     */
+    private void reschedule(final String name, final LocalJob local, final Trigger previous) throws SchedulerException {
+        final org.quartz.Scheduler s = this.getScheduler(local.options);
+        final boolean clustered = s == this.clusterScheduler;
+        if ( clustered && s.checkExists(JobKey.jobKey(name)) ) {
+            // still in the job store
+            return;
+        }
+        TriggerBuilder<? extends Trigger> builder = previous.getTriggerBuilder().startAt(previous.getNextFireTime());
+        if ( previous instanceof SimpleTrigger ) {
+            final SimpleTrigger simple = (SimpleTrigger) previous;
+            if ( simple.getRepeatCount() != SimpleTrigger.REPEAT_INDEFINITELY ) {
+                // only the remaining executions
+                builder = builder.withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                        .withIntervalInMilliseconds(simple.getRepeatInterval())
+                        .withRepeatCount(Math.max(0, simple.getRepeatCount() - simple.getTimesTriggered())));
+            }
+        }
+        final JobDataMap jobDataMap = this.initDataMap(name, local.job, local.options, clustered);
+        final JobDetail detail = this.createJobDetail(name, jobDataMap, local.options.canRunConcurrently, clustered);
+        this.logger.debug("Scheduling job {} with name {} again", local.job, name);
+        s.scheduleJob(detail, builder.build());
+    }
+
+    private org.quartz.Scheduler createScheduler(final String schedulerName, final ThreadPool threadPool,
+                                                 final JobStore jobStore, final int maxBatchSize) throws SchedulerException {
         final DirectSchedulerFactory factory = DirectSchedulerFactory.getInstance();
-        // unique run id
-        final String runID = new Date().toString().replace(' ', '_');
-        factory.createScheduler(QUARTZ_SCHEDULER_NAME, runID, threadPool, new RAMJobStore());
+        // unique run id, also among the instances of a cluster sharing a job store, whatever their name
+        final String runID = System.getProperty("karaf.name", "karaf") + "_" + UUID.randomUUID();
+        factory.createScheduler(schedulerName, runID, threadPool, jobStore, null, null, 0, -1, -1, false, null,
+                maxBatchSize, 0);
         // quartz does not provide a way to get the scheduler by name AND runID, so we have to iterate!
+        org.quartz.Scheduler scheduler = null;
         final Iterator<org.quartz.Scheduler> allSchedulersIter = factory.getAllSchedulers().iterator();
         while ( scheduler == null && allSchedulersIter.hasNext() ) {
             final org.quartz.Scheduler current = allSchedulersIter.next();
-            if ( QUARTZ_SCHEDULER_NAME.equals(current.getSchedulerName())
+            if ( schedulerName.equals(current.getSchedulerName())
                     && runID.equals(current.getSchedulerInstanceId()) ) {
                 scheduler = current;
             }
         }
         if ( scheduler == null ) {
-            throw new SchedulerException("Unable to find new scheduler with name " + QUARTZ_SCHEDULER_NAME + " and run ID " + runID);
+            throw new SchedulerException("Unable to find new scheduler with name " + schedulerName + " and run ID " + runID);
         }
 
+        // count the jobs fired too late, usually because no thread was available
+        scheduler.getListenerManager().addTriggerListener(new TriggerListenerSupport() {
+            @Override
+            public String getName() {
+                return PREFIX + "misfire listener";
+            }
+
+            @Override
+            public void triggerMisfired(Trigger trigger) {
+                final InternalJobStatistics stats = statistics.get(trigger.getJobKey().getName());
+                if ( stats != null ) {
+                    stats.misfired();
+                }
+            }
+
+            @Override
+            public void triggerComplete(Trigger trigger, JobExecutionContext context,
+                                        Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+                // the job is removed by quartz once its trigger is done
+                if ( trigger.getNextFireTime() == null ) {
+                    statistics.remove(trigger.getJobKey().getName());
+                    localJobs.remove(trigger.getJobKey().getName());
+                }
+            }
+        });
+        scheduler.getContext().put(CONTEXT_SCHEDULER, this);
         scheduler.start();
-        if ( this.logger.isDebugEnabled() ) {
-            this.logger.debug(PREFIX + "started.");
-        }
+        return scheduler;
     }
 
     /**
      * Deactivate this component.
      * Stop the scheduler.
      */
-    public void deactivate() {
+    public synchronized void deactivate() {
+        this.stop();
+        this.stoppedTriggers.clear();
+        this.statistics.clear();
+        this.localJobs.clear();
+    }
+
+    /**
+     * Get all the quartz schedulers, the default one first.
+     */
+    private List<org.quartz.Scheduler> getSchedulers() {
+        final List<org.quartz.Scheduler> schedulers = new ArrayList<>();
         final org.quartz.Scheduler s = this.scheduler;
-        this.scheduler = null;
-        this.dispose(s);
+        if ( s != null ) {
+            schedulers.add(s);
+            schedulers.addAll(this.groupSchedulers.values());
+            final org.quartz.Scheduler cluster = this.clusterScheduler;
+            if ( cluster != null ) {
+                schedulers.add(cluster);
+            }
+        }
+        return schedulers;
+    }
+
+    /**
+     * Get the quartz scheduler running the job with the given options: the clustered jobs need a name to be
+     * found by each instance of the cluster, the other jobs are kept in memory by the scheduler of their group.
+     *
+     * @return The quartz scheduler, or {@code null} if the scheduler is stopped.
+     */
+    private org.quartz.Scheduler getScheduler(final InternalScheduleOptions options) {
+        final org.quartz.Scheduler s = this.scheduler;
+        if ( s == null ) {
+            return null;
+        }
+        final org.quartz.Scheduler cluster = this.clusterScheduler;
+        if ( cluster != null && options.clustered && options.name != null ) {
+            return cluster;
+        }
+        final org.quartz.Scheduler group = options.group != null ? this.groupSchedulers.get(options.group) : null;
+        return group != null ? group : s;
     }
 
     /**
@@ -125,14 +389,21 @@ public class QuartzScheduler implements Scheduler {
      */
     private JobDataMap initDataMap(final String  jobName,
                                    final Object  job,
-                                   final InternalScheduleOptions options) {
+                                   final InternalScheduleOptions options,
+                                   final boolean clustered) {
         final JobDataMap jobDataMap = new JobDataMap();
 
-        jobDataMap.put(DATA_MAP_OBJECT, job);
-
         jobDataMap.put(DATA_MAP_NAME, jobName);
+        if ( clustered ) {
+            // only serializable data, the job is found by name when it is fired
+            jobDataMap.put(DATA_MAP_SCHEDULE, options.schedule);
+            return jobDataMap;
+        }
+
+        jobDataMap.put(DATA_MAP_OBJECT, job);
         jobDataMap.put(DATA_MAP_LOGGER, this.logger);
         jobDataMap.put(DATA_MAP_OPTIONS, options);
+        jobDataMap.put(DATA_MAP_STATISTICS, this.getJobStatistics(jobName));
 
         return jobDataMap;
     }
@@ -142,10 +413,13 @@ public class QuartzScheduler implements Scheduler {
      */
     private JobDetail createJobDetail(final String name,
                                       final JobDataMap jobDataMap,
-                                      final boolean concurrent) {
+                                      final boolean concurrent,
+                                      final boolean clustered) {
         return JobBuilder.newJob((concurrent ? QuartzJobExecutor.class : NonParallelQuartzJobExecutor.class))
                 .withIdentity(name)
                 .usingJobData(jobDataMap)
+                // run again by another instance of the cluster if this one dies while running the job
+                .requestRecovery(clustered)
                 .build();
     }
 
@@ -219,24 +493,22 @@ public class QuartzScheduler implements Scheduler {
 
         // as this method might be called from unbind and during
         // unbind a deactivate could happen, we check the scheduler first
-        final org.quartz.Scheduler s = this.scheduler;
+        final org.quartz.Scheduler s = this.getScheduler(opts);
         if ( s == null ) {
             throw new IllegalStateException("Scheduler is not available anymore.");
         }
+        final boolean clustered = s == this.clusterScheduler;
 
         final String name;
         if ( opts.name != null ) {
-            // if there is already a job with the name, remove it first
-            try {
-                final JobKey key = JobKey.jobKey(opts.name);
-                final JobDetail jobdetail = s.getJobDetail(key);
-                if (jobdetail != null) {
-                    s.deleteJob(key);
-                    this.logger.debug("Unscheduling job with name {}", opts.name);
-                }
-            } catch (final SchedulerException ignored) {
-                // ignore
+            if ( clustered && this.isStored(s, opts) ) {
+                // already scheduled by another instance of the cluster (or before a restart)
+                this.localJobs.put(opts.name, new LocalJob(job, opts));
+                this.logger.debug("Job {} with name {} is already scheduled", job, opts.name);
+                return;
             }
+            // if there is already a job with the name, remove it first
+            this.deleteJob(opts.name);
             name = opts.name;
         } else {
             name = job.getClass().getName() + ':' + UUID.randomUUID();
@@ -246,9 +518,11 @@ public class QuartzScheduler implements Scheduler {
         final Trigger trigger = opts.trigger.withIdentity(name).build();
 
         // create the data map
-        final JobDataMap jobDataMap = this.initDataMap(name, job, opts);
+        final JobDataMap jobDataMap = this.initDataMap(name, job, opts, clustered);
 
-        final JobDetail detail = this.createJobDetail(name, jobDataMap, opts.canRunConcurrently);
+        final JobDetail detail = this.createJobDetail(name, jobDataMap, opts.canRunConcurrently, clustered);
+
+        this.localJobs.put(name, new LocalJob(job, opts));
 
         this.logger.debug("Scheduling job {} with name {} and trigger {}", job, name, trigger);
         s.scheduleJob(detail, trigger);
@@ -258,34 +532,124 @@ public class QuartzScheduler implements Scheduler {
      * @see org.apache.karaf.scheduler.Scheduler#unschedule(java.lang.String)
      */
     public boolean unschedule(final String jobName) {
-        final org.quartz.Scheduler s = this.scheduler;
-        if ( jobName != null && s != null ) {
+        if ( jobName != null ) {
+            this.localJobs.remove(jobName);
+            if ( this.deleteJob(jobName) ) {
+                this.statistics.remove(jobName);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop running the job on this instance, for instance because its service is unregistered. A clustered
+     * job stays scheduled for the other instances of the cluster, the other jobs are unscheduled.
+     *
+     * @param jobName The name of the job.
+     */
+    void release(final String jobName) {
+        final LocalJob local = this.localJobs.remove(jobName);
+        if ( local != null && this.getScheduler(local.options) != this.clusterScheduler ) {
+            this.unschedule(jobName);
+        }
+    }
+
+    /**
+     * Check whether the job is already in the job store with the same schedule.
+     */
+    private boolean isStored(final org.quartz.Scheduler s, final InternalScheduleOptions opts) {
+        try {
+            final JobDetail detail = s.getJobDetail(JobKey.jobKey(opts.name));
+            return detail != null && opts.schedule.equals(detail.getJobDataMap().get(DATA_MAP_SCHEDULE));
+        } catch (final SchedulerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the job scheduled by this instance with the given name.
+     *
+     * @return The job and its options, or {@code null} if this instance does not know the job.
+     */
+    LocalJob getLocalJob(final String jobName) {
+        return this.localJobs.get(jobName);
+    }
+
+    /** Used by the job executor when the job data does not contain the statistics. */
+    InternalJobStatistics getStatistics(final String jobName) {
+        return this.getJobStatistics(jobName);
+    }
+
+    Logger getLogger() {
+        return this.logger;
+    }
+
+    /**
+     * Delete the job with the given name, whatever the thread pool running it.
+     */
+    private boolean deleteJob(final String jobName) {
+        boolean deleted = false;
+        final JobKey key = JobKey.jobKey(jobName);
+        for (org.quartz.Scheduler s : this.getSchedulers()) {
             try {
-                final JobKey key = JobKey.jobKey(jobName);
                 final JobDetail jobdetail = s.getJobDetail(key);
                 if (jobdetail != null) {
                     s.deleteJob(key);
                     this.logger.debug("Unscheduling job with name {}", jobName);
-                    return true;
+                    deleted = true;
                 }
             } catch (final SchedulerException ignored) {
                 // ignore
             }
         }
-        return false;
+        return deleted;
+    }
+
+    private InternalJobStatistics getJobStatistics(final String jobName) {
+        return this.statistics.computeIfAbsent(jobName, n -> new InternalJobStatistics());
+    }
+
+    @Override
+    public Map<String, JobStatistics> getStatistics() {
+        return Collections.<String, JobStatistics>unmodifiableMap(this.statistics);
+    }
+
+    /**
+     * @return The number of threads of the default thread pool.
+     */
+    int getThreadPoolSize() {
+        final org.quartz.Scheduler s = this.scheduler;
+        try {
+            return s != null ? s.getMetaData().getThreadPoolSize() : 0;
+        } catch (final SchedulerException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A job scheduled by this instance.
+     */
+    static final class LocalJob {
+        final Object job;
+        final InternalScheduleOptions options;
+
+        LocalJob(final Object job, final InternalScheduleOptions options) {
+            this.job = job;
+            this.options = options;
+        }
     }
 
     @Override
     public Map<Object, ScheduleOptions> getJobs() throws SchedulerException {
         Map<Object, ScheduleOptions> jobs = new HashMap<>();
-        org.quartz.Scheduler s = this.scheduler;
-        if (s != null) {
+        for (org.quartz.Scheduler s : this.getSchedulers()) {
             for (String group : s.getJobGroupNames()) {
                 for (JobKey key : s.getJobKeys(GroupMatcher.jobGroupEquals(group))) {
-                    JobDetail detail = s.getJobDetail(key);
-                    ScheduleOptions options = (ScheduleOptions) detail.getJobDataMap().get(DATA_MAP_OPTIONS);
-                    Object job = detail.getJobDataMap().get(DATA_MAP_OBJECT);
-                    jobs.put(job, options);
+                    LocalJob local = this.localJobs.get(key.getName());
+                    if (local != null) {
+                        jobs.put(local.job, local.options);
+                    }
                 }
             }
         }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.Map;
+
+import javax.management.MBeanException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.karaf.scheduler.JobStatistics;
+import org.apache.karaf.scheduler.ScheduleOptions;
+import org.apache.karaf.scheduler.SchedulerMBean;
+
+/**
+ * Implementation of the SchedulerMBean.
+ */
+public class SchedulerMBeanImpl extends StandardMBean implements SchedulerMBean {
+
+    private static final String[] COLUMNS = {
+            "Name", "Schedule", "Group", "Runs", "LastDuration", "AverageDuration", "MaxDuration",
+            "Misfires", "LastQueueDelay", "MaxQueueDelay" };
+
+    private final QuartzScheduler scheduler;
+
+    public SchedulerMBeanImpl(QuartzScheduler scheduler) throws NotCompliantMBeanException {
+        super(SchedulerMBean.class);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public TabularData getJobs() throws MBeanException {
+        try {
+            CompositeType jobType = new CompositeType("Job", "Scheduled job", COLUMNS,
+                    new String[]{"Name of the job", "Schedule of the job", "Group of the job",
+                            "Number of executions", "Duration of the last execution in ms",
+                            "Average duration of the executions in ms", "Maximum duration of the executions in ms",
+                            "Number of misfires", "Delay before the start of the last execution in ms",
+                            "Maximum delay before the start of an execution in ms"},
+                    new OpenType[]{SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+            TabularType tableType = new TabularType("Jobs", "Tables of all scheduled jobs", jobType, new String[]{"Name"});
+            TabularData table = new TabularDataSupport(tableType);
+            Map<String, JobStatistics> statistics = scheduler.getStatistics();
+            for (ScheduleOptions options : scheduler.getJobs().values()) {
+                JobStatistics stats = statistics.get(options.name());
+                if (stats == null) {
+                    stats = new InternalJobStatistics();
+                }
+                CompositeData data = new CompositeDataSupport(jobType, COLUMNS,
+                        new Object[]{options.name(), options.schedule(), options.group(),
+                                stats.getRunCount(), stats.getLastDuration(), stats.getAverageDuration(),
+                                stats.getMaxDuration(), stats.getMisfireCount(), stats.getLastQueueDelay(),
+                                stats.getMaxQueueDelay()});
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    @Override
+    public int getThreadPoolSize() {
+        return scheduler.getThreadPoolSize();
+    }
+
+}
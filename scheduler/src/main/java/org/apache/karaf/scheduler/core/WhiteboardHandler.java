@@ -38,11 +38,11 @@ public class WhiteboardHandler {
     /** Default logger. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private Scheduler scheduler;
+    private QuartzScheduler scheduler;
 
     private ServiceTracker<?,?> serviceTracker;
 
-    public WhiteboardHandler(final BundleContext context, Scheduler scheduler) throws InvalidSyntaxException {
+    public WhiteboardHandler(final BundleContext context, QuartzScheduler scheduler) throws InvalidSyntaxException {
         this.scheduler = scheduler;
         this.serviceTracker = new ServiceTracker<>(context,
                 context.createFilter("(|(" + Constants.OBJECTCLASS + "=" + Runnable.class.getName() + ")" +
@@ -83,6 +83,10 @@ public class WhiteboardHandler {
      */
     private String getServiceIdentifier(final ServiceReference ref) {
         String name = (String)ref.getProperty(Scheduler.PROPERTY_SCHEDULER_NAME);
+        if ( name != null && isClustered(ref) ) {
+            // the same name on each instance of the cluster
+            return name;
+        }
         if ( name == null ) {
             name = (String)ref.getProperty(Constants.SERVICE_PID);
             if ( name == null ) {
@@ -94,6 +98,14 @@ public class WhiteboardHandler {
         return name;
     }
 
+    /**
+     * A clustered job needs a name shared by the instances of the cluster.
+     */
+    private static boolean isClustered(final ServiceReference ref) {
+        return Boolean.TRUE.equals(ref.getProperty(Scheduler.PROPERTY_SCHEDULER_CLUSTERED))
+                && ref.getProperty(Scheduler.PROPERTY_SCHEDULER_NAME) != null;
+    }
+
     /**
      * Register a job or task
      */
@@ -101,10 +113,14 @@ public class WhiteboardHandler {
         final String name = getServiceIdentifier(ref);
         final Boolean concurrent = (Boolean) ref.getProperty(Scheduler.PROPERTY_SCHEDULER_CONCURRENT);
         final String expression = (String) ref.getProperty(Scheduler.PROPERTY_SCHEDULER_EXPRESSION);
+        final String group = (String) ref.getProperty(Scheduler.PROPERTY_SCHEDULER_GROUP);
+        final boolean clustered = isClustered(ref);
         try {
             if (expression != null) {
                 this.scheduler.schedule(job, this.scheduler.EXPR(expression)
                         .name(name)
+                        .group(group)
+                        .clustered(clustered)
                         .canRunConcurrently((concurrent != null ? concurrent : true)));
             } else {
                 final Long period = (Long) ref.getProperty(Scheduler.PROPERTY_SCHEDULER_PERIOD);
@@ -122,6 +138,8 @@ public class WhiteboardHandler {
                         }
                         this.scheduler.schedule(job, this.scheduler.AT(date, -1, period)
                                 .name(name)
+                                .group(group)
+                                .clustered(clustered)
                                 .canRunConcurrently((concurrent != null ? concurrent : true)));
                     }
                 } else {
@@ -134,10 +152,9 @@ public class WhiteboardHandler {
     }
 
     /**
-     * Unregister a service.
+     * Unregister a service. A clustered job stays in the job store for the other instances of the cluster.
      */
     private void unregister(final ServiceReference reference, final Object service) {
-        final String name = getServiceIdentifier(reference);
-        this.scheduler.unschedule(name);
+        this.scheduler.release(getServiceIdentifier(reference));
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.spi.ThreadPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcJobStoreTest {
+
+    private static final String DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+    private static final String URL = "jdbc:derby:memory:scheduler";
+
+    private QuartzScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcJobStore.registerDataSource("test", DRIVER, URL, null, null);
+        JdbcJobStore store = new JdbcJobStore("test", "QRTZ_", true, 1000, 60000, true);
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("local", 1, false), Collections.<String, ThreadPool>emptyMap(),
+                new ExecutorThreadPool("cluster", 1, false), store, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.deactivate();
+        try (Connection connection = DriverManager.getConnection(URL);
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM QRTZ_SCHEDULER_STATE")) {
+            statement.executeUpdate();
+        }
+    }
+
+    @Test
+    public void testScheduleFireUnschedule() throws Exception {
+        AtomicReference<String> thread = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        scheduler.schedule(threadName(thread, latch), scheduler.NOW(-1, 1).name("clustered").clustered(true));
+        assertEquals(1, countStoredJobs("clustered"));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(thread.get(), thread.get().startsWith("cluster-"));
+
+        assertTrue(scheduler.unschedule("clustered"));
+        assertEquals(0, countStoredJobs("clustered"));
+    }
+
+    @Test
+    public void testLocalJobsNotStored() throws Exception {
+        AtomicReference<String> named = new AtomicReference<>();
+        AtomicReference<String> unnamed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        scheduler.schedule(threadName(named, latch), scheduler.NOW().name("local"));
+        // a clustered job needs a name known by the other instances
+        scheduler.schedule(threadName(unnamed, latch), scheduler.NOW().clustered(true));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(named.get(), named.get().startsWith("local-"));
+        assertTrue(unnamed.get(), unnamed.get().startsWith("local-"));
+        assertEquals(0, countStoredJobs(null));
+    }
+
+    @Test
+    public void testReleaseKeepsStoredJob() throws Exception {
+        scheduler.schedule((Runnable) () -> { }, scheduler.EXPR("0 0 0 * * ?").name("released").clustered(true));
+        scheduler.release("released");
+        // still scheduled for the other instances of the cluster
+        assertEquals(1, countStoredJobs("released"));
+        assertTrue(scheduler.getJobs().isEmpty());
+
+        // scheduled again with the same schedule, the stored job is kept
+        scheduler.schedule((Runnable) () -> { }, scheduler.EXPR("0 0 0 * * ?").name("released").clustered(true));
+        assertEquals(1, scheduler.getJobs().size());
+        assertTrue(scheduler.unschedule("released"));
+        assertEquals(0, countStoredJobs("released"));
+    }
+
+    private static Runnable threadName(AtomicReference<String> name, CountDownLatch latch) {
+        return () -> {
+            name.set(Thread.currentThread().getName());
+            latch.countDown();
+        };
+    }
+
+    private static int countStoredJobs(String name) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM QRTZ_JOB_DETAILS" + (name != null ? " WHERE JOB_NAME = ?" : "");
+        try (Connection connection = DriverManager.getConnection(URL);
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (name != null) {
+                statement.setString(1, name);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.karaf.scheduler.JobStatistics;
+import org.apache.karaf.scheduler.ScheduleOptions;
+import org.junit.After;
+import org.junit.Test;
+import org.quartz.spi.ThreadPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QuartzSchedulerTest {
+
+    private QuartzScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.deactivate();
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("test", 1, false));
+        CountDownLatch latch = new CountDownLatch(2);
+        scheduler.schedule((Runnable) latch::countDown, scheduler.NOW(-1, 1).name("stats"));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        JobStatistics stats = waitForRuns("stats", 2);
+        assertEquals(0, stats.getMisfireCount());
+        assertTrue(stats.getMaxDuration() >= stats.getLastDuration());
+
+        assertTrue(scheduler.unschedule("stats"));
+        assertNull(scheduler.getStatistics().get("stats"));
+    }
+
+    @Test
+    public void testGroupThreadPool() throws Exception {
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("default", 1, false),
+                Collections.<String, ThreadPool>singletonMap("reports", new ExecutorThreadPool("reports", 1, false)));
+        AtomicReference<String> grouped = new AtomicReference<>();
+        AtomicReference<String> other = new AtomicReference<>();
+        AtomicReference<String> unknown = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        scheduler.schedule(threadName(grouped, latch), scheduler.NOW().name("grouped").group("reports"));
+        scheduler.schedule(threadName(other, latch), scheduler.NOW().name("other"));
+        scheduler.schedule(threadName(unknown, latch), scheduler.NOW().name("unknown").group("unknown"));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(grouped.get(), grouped.get().startsWith("reports-"));
+        assertTrue(other.get(), other.get().startsWith("default-"));
+        // a group without thread pool is run by the default one
+        assertTrue(unknown.get(), unknown.get().startsWith("default-"));
+    }
+
+    @Test
+    public void testJobsKeptOnRestart() throws Exception {
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("before", 1, false));
+        AtomicReference<String> thread = new AtomicReference<>();
+        Runnable periodic = () -> thread.set(Thread.currentThread().getName());
+        scheduler.schedule(periodic, scheduler.NOW(-1, 1).name("periodic"));
+        Runnable later = () -> { };
+        ScheduleOptions laterOptions = scheduler.AT(new Date(System.currentTimeMillis() + 3600000)).name("later");
+        scheduler.schedule(later, laterOptions);
+        waitForRuns("periodic", 1);
+
+        scheduler.stop();
+        assertTrue(scheduler.getJobs().isEmpty());
+
+        scheduler.start(new ExecutorThreadPool("after", 2, false), Collections.<String, ThreadPool>emptyMap(),
+                null, null, 1);
+        Map<Object, ScheduleOptions> jobs = scheduler.getJobs();
+        assertEquals(2, jobs.size());
+        assertNotNull(jobs.get(periodic));
+        assertEquals("later", jobs.get(later).name());
+
+        // the statistics are kept, and the job is run by the new thread pool
+        long before = scheduler.getStatistics().get("periodic").getRunCount();
+        waitForRuns("periodic", before + 1);
+        assertTrue(thread.get(), thread.get().startsWith("after-"));
+    }
+
+    @Test
+    public void testDoneJobReleased() throws Exception {
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("test", 1, false));
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule((Runnable) latch::countDown, scheduler.NOW().name("once"));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        long timeout = System.currentTimeMillis() + 10000;
+        while (scheduler.getLocalJob("once") != null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertNull(scheduler.getLocalJob("once"));
+        assertNull(scheduler.getStatistics().get("once"));
+    }
+
+    @Test
+    public void testDeactivate() throws Exception {
+        scheduler = new QuartzScheduler(new ExecutorThreadPool("test", 1, false));
+        scheduler.schedule((Runnable) () -> { }, scheduler.EXPR("0 0 0 * * ?").name("cron"));
+        scheduler.deactivate();
+        assertTrue(scheduler.getJobs().isEmpty());
+        assertFalse(scheduler.unschedule("cron"));
+    }
+
+    private static Runnable threadName(AtomicReference<String> name, CountDownLatch latch) {
+        return () -> {
+            name.set(Thread.currentThread().getName());
+            latch.countDown();
+        };
+    }
+
+    private JobStatistics waitForRuns(String jobName, long runs) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (true) {
+            JobStatistics stats = scheduler.getStatistics().get(jobName);
+            if (stats != null && stats.getRunCount() >= runs) {
+                return stats;
+            }
+            assertTrue("Job " + jobName + " did not run " + runs + " times", System.currentTimeMillis() < timeout);
+            Thread.sleep(50);
+        }
+    }
+
+}
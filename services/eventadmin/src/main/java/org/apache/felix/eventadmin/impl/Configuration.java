@@ -28,8 +28,11 @@ import org.apache.felix.eventadmin.impl.adapter.FrameworkEventAdapter;
 import org.apache.felix.eventadmin.impl.adapter.LogEventAdapter;
 import org.apache.felix.eventadmin.impl.adapter.ServiceEventAdapter;
 import org.apache.felix.eventadmin.impl.handler.EventAdminImpl;
+import org.apache.felix.eventadmin.impl.management.EventAdminMBean;
+import org.apache.felix.eventadmin.impl.management.EventAdminMBeanImpl;
 import org.apache.felix.eventadmin.impl.security.SecureEventAdminFactory;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks;
 import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -90,6 +93,34 @@ import org.osgi.service.metatype.MetaTypeProvider;
  * all handlers in this package and all subpackages are ignored. If the string neither
  * ends with a dot nor with a start, this is assumed to define an exact class name.</p>
  *
+ * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncDelivery</tt> - How the asynchronous
+ *          events are delivered.
+ * </p>
+ *
+ * <p>The default is <tt>pool</tt>: the events are delivered by the asynchronous
+ * thread pool. With <tt>partitioned</tt>, each <tt>EventHandler</tt> gets its own
+ * bounded queue of events, delivered in order by a shared set of threads (as many as
+ * the asynchronous thread pool), so that a slow handler does not delay the events of
+ * the other handlers. The black-listing timeout does not apply to these deliveries.</p>
+ *
+ * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncQueueSize</tt> - The maximum number of
+ *          pending events per handler with the partitioned delivery.
+ * </p>
+ *
+ * <p>The default value is 1000.</p>
+ *
+ * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncQueuePolicy</tt> - What to do when the
+ *          queue of a handler is full with the partitioned delivery.
+ * </p>
+ *
+ * <p>The default is <tt>block</tt>: the poster waits for the handler to process an
+ * event. With <tt>drop-oldest</tt> the oldest pending event is discarded, with
+ * <tt>drop-newest</tt> the new event is discarded. The discarded events are counted
+ * in the statistics of the queue.</p>
+ *
  * <p>These properties are read at startup and serve as a default configuration.
  * If a configuration admin is configured, the event admin can be configured
  * through the config admin.</p>
@@ -110,6 +141,12 @@ public class Configuration
     static final String PROP_LOG_LEVEL = "org.apache.felix.eventadmin.LogLevel";
     static final String PROP_ADD_TIMESTAMP = "org.apache.felix.eventadmin.AddTimestamp";
     static final String PROP_ADD_SUBJECT = "org.apache.felix.eventadmin.AddSubject";
+    static final String PROP_ASYNC_DELIVERY = "org.apache.felix.eventadmin.AsyncDelivery";
+    static final String PROP_ASYNC_QUEUE_SIZE = "org.apache.felix.eventadmin.AsyncQueueSize";
+    static final String PROP_ASYNC_QUEUE_POLICY = "org.apache.felix.eventadmin.AsyncQueuePolicy";
+
+    static final String ASYNC_DELIVERY_POOL = "pool";
+    static final String ASYNC_DELIVERY_PARTITIONED = "partitioned";
 
     /** The bundle context. */
     private final BundleContext m_bundleContext;
@@ -134,11 +171,20 @@ public class Configuration
 
     private boolean m_addSubject;
 
+    private boolean m_partitioned;
+
+    private int m_asyncQueueSize;
+
+    private PartitionedDeliverTasks.Overflow m_asyncQueuePolicy;
+
     // The thread pool used - this is a member because we need to close it on stop
     private volatile DefaultThreadPool m_sync_pool;
 
     private volatile DefaultThreadPool m_async_pool;
 
+    // The queues per handler, only used with the partitioned asynchronous delivery
+    private volatile PartitionedDeliverTasks m_partitioned_tasks;
+
     // The actual implementation of the service - this is a member because we need to
     // close it on stop. Note, security is not part of this implementation but is
     // added via a decorator in the start method (this is the wrapped object without
@@ -153,6 +199,9 @@ public class Configuration
 
     private ServiceRegistration m_managedServiceReg;
 
+    // The registration of the statistics MBean
+    private ServiceRegistration m_mbeanRegistration;
+
     public Configuration( BundleContext bundleContext )
     {
         m_bundleContext = bundleContext;
@@ -286,6 +335,15 @@ public class Configuration
                     m_bundleContext.getProperty(PROP_ADD_TIMESTAMP), false);
             m_addSubject = getBooleanProperty(
                     m_bundleContext.getProperty(PROP_ADD_SUBJECT), false);
+
+            // The partitioned delivery gives each handler its own bounded queue
+            // instead of sharing the asynchronous thread pool.
+            m_partitioned = getAsyncDeliveryProperty(
+                    m_bundleContext.getProperty(PROP_ASYNC_DELIVERY));
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE,
+                    m_bundleContext.getProperty(PROP_ASYNC_QUEUE_SIZE), 1000, 1);
+            m_asyncQueuePolicy = getOverflowProperty(
+                    m_bundleContext.getProperty(PROP_ASYNC_QUEUE_POLICY));
         }
         else
         {
@@ -332,6 +390,10 @@ public class Configuration
                     config.get(PROP_ADD_TIMESTAMP), false);
             m_addSubject = getBooleanProperty(
                     config.get(PROP_ADD_SUBJECT), false);
+            m_partitioned = getAsyncDeliveryProperty(config.get(PROP_ASYNC_DELIVERY));
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE,
+                    config.get(PROP_ASYNC_QUEUE_SIZE), 1000, 1);
+            m_asyncQueuePolicy = getOverflowProperty(config.get(PROP_ASYNC_QUEUE_POLICY));
         }
         // a timeout less or equals to 100 means : disable timeout
         if ( m_timeout <= 100 )
@@ -356,6 +418,8 @@ public class Configuration
                 PROP_TIMEOUT + "=" + m_timeout);
         LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
                 PROP_REQUIRE_TOPIC + "=" + m_requireTopic);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+                PROP_ASYNC_DELIVERY + "=" + (m_partitioned ? ASYNC_DELIVERY_PARTITIONED : ASYNC_DELIVERY_POOL));
 
         // Note that this uses a lazy thread pool that will create new threads on
         // demand - in case none of its cached threads is free - until threadPoolSize
@@ -378,6 +442,27 @@ public class Configuration
         {
             m_async_pool.configure(asyncThreadPoolSize);
         }
+        if ( m_partitioned )
+        {
+            LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+                    PROP_ASYNC_QUEUE_SIZE + "=" + m_asyncQueueSize);
+            LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+                    PROP_ASYNC_QUEUE_POLICY + "=" + m_asyncQueuePolicy);
+            if ( m_partitioned_tasks == null )
+            {
+                m_partitioned_tasks = new PartitionedDeliverTasks(asyncThreadPoolSize,
+                        m_asyncQueueSize, m_asyncQueuePolicy);
+            }
+            else
+            {
+                m_partitioned_tasks.update(asyncThreadPoolSize, m_asyncQueueSize, m_asyncQueuePolicy);
+            }
+        }
+        final PartitionedDeliverTasks oldPartitionedTasks = m_partitioned ? null : m_partitioned_tasks;
+        if ( !m_partitioned )
+        {
+            m_partitioned_tasks = null;
+        }
 
         if ( m_admin == null )
         {
@@ -389,7 +474,8 @@ public class Configuration
                     m_requireTopic,
                     m_ignoreTopics,
                     m_addTimestamp,
-                    m_addSubject);
+                    m_addSubject,
+                    m_partitioned_tasks);
 
             // Finally, adapt the outside events to our kind of events as per spec
             adaptEvents(m_admin);
@@ -399,10 +485,19 @@ public class Configuration
             // appropriated permissions of each calling bundle
             m_registration = m_bundleContext.registerService(EventAdmin.class.getName(),
                     new SecureEventAdminFactory(m_admin), null);
+
+            registerMBean(m_admin);
         }
         else
         {
-            m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics, m_addTimestamp, m_addSubject);
+            m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics, m_addTimestamp, m_addSubject,
+                    m_partitioned_tasks);
+        }
+
+        // switched back to the thread pool, the pending events are delivered before the queue threads stop
+        if ( oldPartitionedTasks != null )
+        {
+            oldPartitionedTasks.close();
         }
 
     }
@@ -431,6 +526,11 @@ public class Configuration
                 m_managedServiceReg.unregister();
                 m_managedServiceReg = null;
             }
+            if ( m_mbeanRegistration != null )
+            {
+                m_mbeanRegistration.unregister();
+                m_mbeanRegistration = null;
+            }
             // We need to unregister manually
             if ( m_registration != null )
             {
@@ -442,6 +542,11 @@ public class Configuration
                 m_admin.stop();
                 m_admin = null;
             }
+            if ( m_partitioned_tasks != null )
+            {
+                m_partitioned_tasks.close();
+                m_partitioned_tasks = null;
+            }
             if (m_async_pool != null )
             {
                 m_async_pool.close();
@@ -467,6 +572,25 @@ public class Configuration
         m_adapters[3] = new LogEventAdapter(m_bundleContext, admin);
     }
 
+    /**
+     * Register the MBean exposing the statistics of the event admin, it is
+     * picked up by the JMX whiteboard using the <tt>jmx.objectname</tt> property.
+     */
+    private void registerMBean(final EventAdminImpl admin)
+    {
+        try
+        {
+            final Dictionary<String, Object> props = new Hashtable<String, Object>();
+            props.put("jmx.objectname", "org.apache.karaf:type=eventadmin,name=" + System.getProperty("karaf.name"));
+            m_mbeanRegistration = m_bundleContext.registerService(EventAdminMBean.class.getName(),
+                    new EventAdminMBeanImpl(admin), props);
+        }
+        catch ( Exception e )
+        {
+            LogWrapper.getLogger().log(LogWrapper.LOG_WARNING, "Unable to register the event admin MBean", e);
+        }
+    }
+
     private Object tryToCreateMetaTypeProvider(final Object managedService)
     {
         try
@@ -584,6 +708,48 @@ public class Configuration
         return defaultValue;
     }
 
+    /**
+     * Returns true if the value of the property is <tt>partitioned</tt>, false if it is
+     * not set or is <tt>pool</tt>. Additionally, a warning is generated in case the
+     * value is erroneous.
+     */
+    private boolean getAsyncDeliveryProperty(final Object obj)
+    {
+        if ( null != obj )
+        {
+            final String value = obj.toString().trim();
+            if ( ASYNC_DELIVERY_PARTITIONED.equalsIgnoreCase(value) )
+            {
+                return true;
+            }
+            if ( !ASYNC_DELIVERY_POOL.equalsIgnoreCase(value) )
+            {
+                LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                        "Unknown value for property: " + PROP_ASYNC_DELIVERY + " - Using default");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the policy named by the value of the property or <tt>block</tt> if it
+     * is not set. Additionally, a warning is generated in case the value is erroneous.
+     */
+    private PartitionedDeliverTasks.Overflow getOverflowProperty(final Object obj)
+    {
+        if ( null != obj )
+        {
+            final PartitionedDeliverTasks.Overflow result = PartitionedDeliverTasks.Overflow.fromString(obj.toString());
+            if ( result != null )
+            {
+                return result;
+            }
+            LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                    "Unknown value for property: " + PROP_ASYNC_QUEUE_POLICY + " - Using default");
+        }
+        return PartitionedDeliverTasks.Overflow.BLOCK;
+    }
+
     /**
      * Returns true if the value of the property is set and is either 1, true, or yes
      * Returns false if the value of the property is set and is either 0, false, or no
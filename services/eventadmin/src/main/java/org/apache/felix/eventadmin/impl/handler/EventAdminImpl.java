@@ -19,15 +19,22 @@
 package org.apache.felix.eventadmin.impl.handler;
 
 import java.security.AccessController;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.security.auth.Subject;
 
-import org.apache.felix.eventadmin.impl.handler.EventHandlerTracker.Matcher;
 import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks.HandlerQueue;
 import org.apache.felix.eventadmin.impl.tasks.SyncDeliverTasks;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.osgi.service.event.EventConstants;
@@ -56,8 +63,13 @@ public class EventAdminImpl implements EventAdmin
     // The synchronous event dispatcher
     private final SyncDeliverTasks m_sendManager;
 
-    // matchers for ignore topics
-    private Matcher[] m_ignoreTopics;
+    // The asynchronous event dispatcher with a queue per handler, if configured
+    private volatile PartitionedDeliverTasks m_partitionedManager;
+
+    // matchers for ignore topics, with their result per topic
+    private volatile IgnoredTopics m_ignoreTopics;
+
+    private final EventStatistics m_statistics = new EventStatistics();
 
     private boolean addTimestamp;
     private boolean addSubject;
@@ -74,6 +86,8 @@ public class EventAdminImpl implements EventAdmin
      * @param ignoreTopics The array of topics to ignore.
      * @param addTimestamp True to add timestamp to the event, false else.
      * @param addSubject True to add subject to the event, false else.
+     * @param partitionedManager The dispatcher to use for asynchronous events, or
+     *        <code>null</code> to use the asynchronous thread pool.
      */
     public EventAdminImpl(
             final BundleContext bundleContext,
@@ -84,7 +98,8 @@ public class EventAdminImpl implements EventAdmin
             final boolean requireTopic,
             final String[] ignoreTopics,
             final boolean addTimestamp,
-            final boolean addSubject)
+            final boolean addSubject,
+            final PartitionedDeliverTasks partitionedManager)
     {
         checkNull(syncPool, "syncPool");
         checkNull(asyncPool, "asyncPool");
@@ -96,7 +111,8 @@ public class EventAdminImpl implements EventAdmin
         this.tracker.open();
         m_sendManager = new SyncDeliverTasks(syncPool, timeout);
         m_postManager = new AsyncDeliverTasks(asyncPool, m_sendManager);
-        m_ignoreTopics = EventHandlerTracker.createMatchers(ignoreTopics);
+        m_partitionedManager = partitionedManager;
+        m_ignoreTopics = new IgnoredTopics(ignoreTopics);
     }
 
     /**
@@ -121,19 +137,7 @@ public class EventAdminImpl implements EventAdmin
      */
     private boolean checkTopic( final Event event )
     {
-        boolean result = true;
-        if ( this.m_ignoreTopics != null )
-        {
-            for(final Matcher m : this.m_ignoreTopics)
-            {
-                if ( m.match(event.getTopic()) )
-                {
-                    result = false;
-                    break;
-                }
-            }
-        }
-        return result;
+        return !this.m_ignoreTopics.isIgnored(event.getTopic());
     }
 
     static final String SUBJECT = "subject";
@@ -147,20 +151,12 @@ public class EventAdminImpl implements EventAdmin
             needSubject = (subject != null);
         }
         if (needTimeStamp || needSubject) {
-            String[] names = event.getPropertyNames();
-            HashMap<String, Object> map = new HashMap<String, Object>(names.length + 1);
-            for (int i = 0; i < names.length; i++) {
-                if (!EventConstants.EVENT_TOPIC.equals(names[i])) {
-                    map.put(names[i], event.getProperty(names[i]));
-                }
-            }
-            if (needTimeStamp) {
-                map.put(EventConstants.TIMESTAMP, System.currentTimeMillis());
-            }
-            if (needSubject) {
-                map.put(SUBJECT, subject);
-            }
-            event = new Event(event.getTopic(), map);
+            // the new event copies the properties directly from the original event
+            event = new Event(event.getTopic(), new OverlayProperties(event,
+                    needTimeStamp ? EventConstants.TIMESTAMP : null,
+                    needTimeStamp ? System.currentTimeMillis() : null,
+                    needSubject ? SUBJECT : null,
+                    subject));
         }
         return event;
     }
@@ -177,7 +173,25 @@ public class EventAdminImpl implements EventAdmin
     {
         if ( checkTopic( event ) )
         {
-            m_postManager.execute(this.getTracker().getHandlers(event), prepareEvent(event));
+            final Collection<EventHandlerProxy> handlers = this.getTracker().getHandlers(event);
+            m_statistics.getTopic(event.getTopic()).posted(handlers.size());
+            // no need to prepare the event if nobody is interested in it
+            if ( !handlers.isEmpty() )
+            {
+                final PartitionedDeliverTasks partitionedManager = m_partitionedManager;
+                if ( partitionedManager != null )
+                {
+                    partitionedManager.execute(handlers, prepareEvent(event));
+                }
+                else
+                {
+                    m_postManager.execute(handlers, prepareEvent(event));
+                }
+            }
+        }
+        else
+        {
+            m_statistics.getTopic(event.getTopic()).ignored();
         }
     }
 
@@ -193,7 +207,17 @@ public class EventAdminImpl implements EventAdmin
     {
         if ( checkTopic( event ) )
         {
-            m_sendManager.execute(this.getTracker().getHandlers(event), prepareEvent(event), false);
+            final Collection<EventHandlerProxy> handlers = this.getTracker().getHandlers(event);
+            final long start = System.nanoTime();
+            if ( !handlers.isEmpty() )
+            {
+                m_sendManager.execute(handlers, prepareEvent(event), false);
+            }
+            m_statistics.getTopic(event.getTopic()).sent(handlers.size(), System.nanoTime() - start);
+        }
+        else
+        {
+            m_statistics.getTopic(event.getTopic()).ignored();
         }
     }
 
@@ -215,13 +239,16 @@ public class EventAdminImpl implements EventAdmin
      * @param ignoreTopics The array of topic to ignore.
      * @param addTimestamp True to add timestamp to the event, false else.
      * @param addSubject True to add subject to the event, false else.
+     * @param partitionedManager The dispatcher to use for asynchronous events, or
+     *        <code>null</code> to use the asynchronous thread pool.
      */
     public void update(final int timeout,
                        final String[] ignoreTimeout,
                        final boolean requireTopic,
                        final String[] ignoreTopics,
                        final boolean addTimestamp,
-                       final boolean addSubject)
+                       final boolean addSubject,
+                       final PartitionedDeliverTasks partitionedManager)
     {
         this.addTimestamp = addTimestamp;
         this.addSubject = addSubject;
@@ -229,7 +256,59 @@ public class EventAdminImpl implements EventAdmin
         this.tracker.update(ignoreTimeout, requireTopic);
         this.m_sendManager.update(timeout);
         this.tracker.open();
-        this.m_ignoreTopics = EventHandlerTracker.createMatchers(ignoreTopics);
+        this.m_ignoreTopics = new IgnoredTopics(ignoreTopics);
+        this.m_partitionedManager = partitionedManager;
+    }
+
+    /**
+     * Get the statistics of the events dispatched by this event admin.
+     *
+     * @return The statistics.
+     */
+    public EventStatistics getStatistics()
+    {
+        return m_statistics;
+    }
+
+    /**
+     * Get the queues of the handlers currently registered, if the partitioned
+     * asynchronous delivery is used.
+     *
+     * @return The queues, by handler description.
+     */
+    public Map<String, HandlerQueue> getHandlerQueues()
+    {
+        final Map<String, HandlerQueue> result = new LinkedHashMap<String, HandlerQueue>();
+        final PartitionedDeliverTasks partitionedManager = m_partitionedManager;
+        final EventHandlerTracker localTracker = tracker;
+        if ( partitionedManager == null || localTracker == null )
+        {
+            return result;
+        }
+        final Map<Object, String> names = new IdentityHashMap<Object, String>();
+        final ServiceReference[] refs = localTracker.getServiceReferences();
+        if ( refs != null )
+        {
+            for (final ServiceReference ref : refs)
+            {
+                final Object proxy = localTracker.getService(ref);
+                final Bundle bundle = ref.getBundle();
+                if ( proxy != null && bundle != null )
+                {
+                    names.put(proxy, ref.getProperty(Constants.SERVICE_ID)
+                            + " (" + bundle.getSymbolicName() + ")");
+                }
+            }
+        }
+        for (final HandlerQueue queue : partitionedManager.getQueues())
+        {
+            final String name = names.get(queue.getHandler());
+            if ( name != null )
+            {
+                result.put(name, queue);
+            }
+        }
+        return result;
     }
 
     /**
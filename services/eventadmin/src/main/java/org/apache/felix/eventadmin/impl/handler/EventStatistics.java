@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the events dispatched by the event admin, per topic.
+ *
+ * At most {@link #MAX_TOPICS} topics are tracked, the events of other
+ * topics are accounted for under the {@link #OTHER_TOPICS} topic.
+ */
+public class EventStatistics
+{
+    public static final int MAX_TOPICS = 1024;
+
+    public static final String OTHER_TOPICS = "*";
+
+    private final ConcurrentMap<String, TopicStatistics> m_topics = new ConcurrentHashMap<String, TopicStatistics>();
+
+    TopicStatistics getTopic(final String topic)
+    {
+        TopicStatistics stats = m_topics.get(topic);
+        if ( stats == null )
+        {
+            final String key = m_topics.size() < MAX_TOPICS ? topic : OTHER_TOPICS;
+            stats = new TopicStatistics(key);
+            final TopicStatistics old = m_topics.putIfAbsent(key, stats);
+            if ( old != null )
+            {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the statistics of all the topics that have been used.
+     */
+    public Collection<TopicStatistics> getTopics()
+    {
+        return m_topics.values();
+    }
+
+    public void reset()
+    {
+        m_topics.clear();
+    }
+
+    /**
+     * Counters of a single topic.
+     */
+    public static class TopicStatistics
+    {
+        private final String m_topic;
+        private final LongAdder m_posted = new LongAdder();
+        private final LongAdder m_sent = new LongAdder();
+        private final LongAdder m_ignored = new LongAdder();
+        private final LongAdder m_undelivered = new LongAdder();
+        private final LongAdder m_deliveries = new LongAdder();
+        private final LongAdder m_sendTime = new LongAdder();
+        private final AtomicLong m_maxSendTime = new AtomicLong();
+
+        TopicStatistics(final String topic)
+        {
+            m_topic = topic;
+        }
+
+        void posted(final int handlers)
+        {
+            m_posted.increment();
+            delivered(handlers);
+        }
+
+        void sent(final int handlers, final long nanos)
+        {
+            m_sent.increment();
+            delivered(handlers);
+            m_sendTime.add(nanos);
+            long max;
+            while ( nanos > (max = m_maxSendTime.get()) )
+            {
+                if ( m_maxSendTime.compareAndSet(max, nanos) )
+                {
+                    break;
+                }
+            }
+        }
+
+        void ignored()
+        {
+            m_ignored.increment();
+        }
+
+        private void delivered(final int handlers)
+        {
+            if ( handlers == 0 )
+            {
+                m_undelivered.increment();
+            }
+            else
+            {
+                m_deliveries.add(handlers);
+            }
+        }
+
+        public String getTopic()
+        {
+            return m_topic;
+        }
+
+        /**
+         * @return the number of events posted asynchronously.
+         */
+        public long getPosted()
+        {
+            return m_posted.sum();
+        }
+
+        /**
+         * @return the number of events sent synchronously.
+         */
+        public long getSent()
+        {
+            return m_sent.sum();
+        }
+
+        /**
+         * @return the number of events discarded because of the ignored topics configuration.
+         */
+        public long getIgnored()
+        {
+            return m_ignored.sum();
+        }
+
+        /**
+         * @return the number of events no handler was interested in.
+         */
+        public long getUndelivered()
+        {
+            return m_undelivered.sum();
+        }
+
+        /**
+         * @return the number of times an event was given to a handler.
+         */
+        public long getDeliveries()
+        {
+            return m_deliveries.sum();
+        }
+
+        /**
+         * @return the average time spent delivering the events sent synchronously, in microseconds.
+         */
+        public long getAverageSendTime()
+        {
+            final long sent = m_sent.sum();
+            return sent > 0 ? m_sendTime.sum() / sent / 1000 : 0;
+        }
+
+        /**
+         * @return the maximum time spent delivering an event sent synchronously, in microseconds.
+         */
+        public long getMaxSendTime()
+        {
+            return m_maxSendTime.get() / 1000;
+        }
+    }
+}
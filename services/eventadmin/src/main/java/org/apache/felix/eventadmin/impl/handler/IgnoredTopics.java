@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerTracker.Matcher;
+
+/**
+ * The topics to ignore, along with the result of their matchers per topic.
+ *
+ * The matchers and the results are replaced together when the configuration
+ * changes, so that a result is never read with the matchers of another
+ * configuration.
+ */
+final class IgnoredTopics
+{
+    // the maximum number of topics for which the result of the matchers is kept
+    static final int MAX_CHECKED_TOPICS = 1024;
+
+    private final Matcher[] m_matchers;
+
+    private final ConcurrentMap<String, Boolean> m_checked = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param ignoreTopics The topics to ignore, or <code>null</code>.
+     */
+    IgnoredTopics(final String[] ignoreTopics)
+    {
+        m_matchers = EventHandlerTracker.createMatchers(ignoreTopics);
+    }
+
+    /**
+     * Check whether the events of the given topic are ignored.
+     *
+     * @param topic The topic.
+     * @return True if the topic is ignored, false else.
+     */
+    boolean isIgnored(final String topic)
+    {
+        if ( m_matchers == null )
+        {
+            return false;
+        }
+        // the same topics are used over and over, so remember the result of the matchers
+        final Boolean checked = m_checked.get(topic);
+        if ( checked != null )
+        {
+            return checked;
+        }
+        boolean result = false;
+        for(final Matcher m : m_matchers)
+        {
+            if ( m.match(topic) )
+            {
+                result = true;
+                break;
+            }
+        }
+        if ( m_checked.size() < MAX_CHECKED_TOPICS )
+        {
+            m_checked.put(topic, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of topics for which the result is kept.
+     */
+    int getCheckedTopics()
+    {
+        return m_checked.size();
+    }
+}
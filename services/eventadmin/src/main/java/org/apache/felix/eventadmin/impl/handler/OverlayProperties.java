@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * A read-only view of the properties of an event, with one or two
+ * additional properties overlayed on top of them.
+ *
+ * The view is given to the constructor of the new <tt>Event</tt>, which
+ * copies the properties once, instead of copying them into an intermediate
+ * map first.
+ */
+final class OverlayProperties extends AbstractMap<String, Object>
+{
+    private final Event m_event;
+
+    private final String[] m_names;
+
+    private final String m_key1;
+    private final Object m_value1;
+
+    private final String m_key2;
+    private final Object m_value2;
+
+    OverlayProperties(final Event event,
+            final String key1, final Object value1,
+            final String key2, final Object value2)
+    {
+        m_event = event;
+        m_key1 = key1;
+        m_value1 = value1;
+        m_key2 = key2;
+        m_value2 = value2;
+        final String[] names = event.getPropertyNames();
+        final String[] all = new String[names.length + 2];
+        int count = 0;
+        for (final String name : names)
+        {
+            // the topic is given separately to the event
+            if ( !EventConstants.EVENT_TOPIC.equals(name) )
+            {
+                all[count++] = name;
+            }
+        }
+        if ( key1 != null && !event.containsProperty(key1) )
+        {
+            all[count++] = key1;
+        }
+        if ( key2 != null && !event.containsProperty(key2) )
+        {
+            all[count++] = key2;
+        }
+        m_names = count == all.length ? all : Arrays.copyOf(all, count);
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        if ( key != null && key.equals(m_key1) )
+        {
+            return m_value1;
+        }
+        if ( key != null && key.equals(m_key2) )
+        {
+            return m_value2;
+        }
+        return key instanceof String && !EventConstants.EVENT_TOPIC.equals(key) ? m_event.getProperty((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return key != null && (key.equals(m_key1) || key.equals(m_key2)
+                || (key instanceof String && !EventConstants.EVENT_TOPIC.equals(key)
+                        && m_event.containsProperty((String) key)));
+    }
+
+    @Override
+    public int size()
+    {
+        return m_names.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Entry<String, Object>>()
+        {
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                return new Iterator<Entry<String, Object>>()
+                {
+                    private int m_index;
+
+                    public boolean hasNext()
+                    {
+                        return m_index < m_names.length;
+                    }
+
+                    public Entry<String, Object> next()
+                    {
+                        if ( m_index >= m_names.length )
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        final String name = m_names[m_index++];
+                        return new SimpleImmutableEntry<String, Object>(name, get(name));
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return m_names.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.management;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean exposing the statistics of the event admin.
+ */
+public interface EventAdminMBean
+{
+    /**
+     * Get the statistics of the events, per topic.
+     *
+     * @return A table with the number of events posted, sent, ignored and undelivered,
+     *         the number of deliveries to handlers and the time spent delivering the
+     *         events sent synchronously for each topic.
+     * @throws MBeanException In case of failure.
+     */
+    TabularData getTopics() throws MBeanException;
+
+    /**
+     * Get the queues of the handlers, when the partitioned asynchronous delivery is used.
+     *
+     * @return A table with the number of pending events, the number of events delivered
+     *         and discarded, and the delivery latency for each handler.
+     * @throws MBeanException In case of failure.
+     */
+    TabularData getHandlerQueues() throws MBeanException;
+
+    /**
+     * @return The total number of events posted asynchronously.
+     */
+    long getPostedEvents();
+
+    /**
+     * @return The total number of events sent synchronously.
+     */
+    long getSentEvents();
+
+    /**
+     * @return The total number of events discarded because their topic is ignored.
+     */
+    long getIgnoredEvents();
+
+    /**
+     * @return The total number of events no handler was interested in.
+     */
+    long getUndeliveredEvents();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.management;
+
+import java.util.Map;
+
+import javax.management.MBeanException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.felix.eventadmin.impl.handler.EventAdminImpl;
+import org.apache.felix.eventadmin.impl.handler.EventStatistics;
+import org.apache.felix.eventadmin.impl.handler.EventStatistics.TopicStatistics;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks.HandlerQueue;
+
+/**
+ * Implementation of the event admin MBean.
+ */
+public class EventAdminMBeanImpl extends StandardMBean implements EventAdminMBean
+{
+    private static final String[] COLUMNS = {
+            "Topic", "Posted", "Sent", "Ignored", "Undelivered", "Deliveries", "AverageSendTime", "MaxSendTime" };
+
+    private static final String[] QUEUE_COLUMNS = {
+            "Handler", "Depth", "MaxDepth", "Delivered", "Dropped", "AverageLatency", "MaxLatency" };
+
+    private final EventAdminImpl m_admin;
+
+    private final EventStatistics m_statistics;
+
+    public EventAdminMBeanImpl(final EventAdminImpl admin) throws NotCompliantMBeanException
+    {
+        super(EventAdminMBean.class);
+        m_admin = admin;
+        m_statistics = admin.getStatistics();
+    }
+
+    public TabularData getTopics() throws MBeanException
+    {
+        try
+        {
+            CompositeType topicType = new CompositeType("Topic", "Statistics of an event topic",
+                    COLUMNS,
+                    new String[] { "Topic of the events",
+                            "Number of events posted asynchronously",
+                            "Number of events sent synchronously",
+                            "Number of events discarded because the topic is ignored",
+                            "Number of events without any interested handler",
+                            "Number of times an event was given to a handler",
+                            "Average time to deliver an event sent synchronously, in microseconds",
+                            "Maximum time to deliver an event sent synchronously, in microseconds" },
+                    new OpenType[] { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG });
+            TabularType tableType = new TabularType("Topics", "Statistics of the event topics", topicType,
+                    new String[] { "Topic" });
+            TabularData table = new TabularDataSupport(tableType);
+            for (TopicStatistics topic : m_statistics.getTopics())
+            {
+                CompositeData data = new CompositeDataSupport(topicType, COLUMNS,
+                        new Object[] { topic.getTopic(),
+                                topic.getPosted(),
+                                topic.getSent(),
+                                topic.getIgnored(),
+                                topic.getUndelivered(),
+                                topic.getDeliveries(),
+                                topic.getAverageSendTime(),
+                                topic.getMaxSendTime() });
+                table.put(data);
+            }
+            return table;
+        }
+        catch (Exception e)
+        {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public TabularData getHandlerQueues() throws MBeanException
+    {
+        try
+        {
+            CompositeType queueType = new CompositeType("HandlerQueue", "Queue of events of a handler",
+                    QUEUE_COLUMNS,
+                    new String[] { "Service id and bundle of the handler",
+                            "Number of pending events",
+                            "Maximum number of pending events",
+                            "Number of events delivered",
+                            "Number of events discarded",
+                            "Average time between the post and the end of the delivery of an event, in microseconds",
+                            "Maximum time between the post and the end of the delivery of an event, in microseconds" },
+                    new OpenType[] { SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG });
+            TabularType tableType = new TabularType("HandlerQueues", "Queues of events of the handlers", queueType,
+                    new String[] { "Handler" });
+            TabularData table = new TabularDataSupport(tableType);
+            for (Map.Entry<String, HandlerQueue> entry : m_admin.getHandlerQueues().entrySet())
+            {
+                HandlerQueue queue = entry.getValue();
+                CompositeData data = new CompositeDataSupport(queueType, QUEUE_COLUMNS,
+                        new Object[] { entry.getKey(),
+                                queue.getDepth(),
+                                queue.getMaxDepth(),
+                                queue.getDelivered(),
+                                queue.getDropped(),
+                                queue.getAverageLatency(),
+                                queue.getMaxLatency() });
+                table.put(data);
+            }
+            return table;
+        }
+        catch (Exception e)
+        {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public long getPostedEvents()
+    {
+        long count = 0;
+        for (TopicStatistics topic : m_statistics.getTopics())
+        {
+            count += topic.getPosted();
+        }
+        return count;
+    }
+
+    public long getSentEvents()
+    {
+        long count = 0;
+        for (TopicStatistics topic : m_statistics.getTopics())
+        {
+            count += topic.getSent();
+        }
+        return count;
+    }
+
+    public long getIgnoredEvents()
+    {
+        long count = 0;
+        for (TopicStatistics topic : m_statistics.getTopics())
+        {
+            count += topic.getIgnored();
+        }
+        return count;
+    }
+
+    public long getUndeliveredEvents()
+    {
+        long count = 0;
+        for (TopicStatistics topic : m_statistics.getTopics())
+        {
+            count += topic.getUndelivered();
+        }
+        return count;
+    }
+
+    public void resetStatistics()
+    {
+        m_statistics.reset();
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.util.LogWrapper;
+import org.osgi.service.event.Event;
+
+/**
+ * This class does the actual work of the asynchronous event dispatch when the
+ * partitioned delivery is configured.
+ *
+ * Each handler has its own bounded queue of events, processed in order by
+ * a shared pool of threads, so that a slow handler only delays its own events.
+ * When the queue of a handler is full, the event is handled according to the
+ * configured {@link Overflow} policy.
+ *
+ * A delivery thread posting to a full queue with the {@link Overflow#BLOCK}
+ * policy waits at most {@link #MAX_BLOCK_TIME} milliseconds, and not at all
+ * if all the other delivery threads are waiting too, since nobody would
+ * make room in the queue.  The event is discarded when it can not wait.
+ */
+public class PartitionedDeliverTasks
+{
+    /**
+     * What to do with an event when the queue of a handler is full.
+     */
+    public enum Overflow
+    {
+        /** Wait for the handler to process an event. */
+        BLOCK,
+        /** Discard the oldest event of the queue. */
+        DROP_OLDEST,
+        /** Discard the new event. */
+        DROP_NEWEST;
+
+        /**
+         * Parse a policy from its configuration value (<tt>block</tt>,
+         * <tt>drop-oldest</tt> or <tt>drop-newest</tt>).
+         *
+         * @param value The configuration value.
+         * @return The policy, or <code>null</code> if the value is unknown.
+         */
+        public static Overflow fromString(final String value)
+        {
+            for (final Overflow overflow : values())
+            {
+                if ( overflow.name().replace('_', '-').equalsIgnoreCase(value.trim()) )
+                {
+                    return overflow;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** The maximum number of events delivered before giving the thread to another handler. */
+    static final int BATCH_SIZE = 64;
+
+    /** The maximum time a delivery thread waits for room in a full queue, in milliseconds. */
+    static final long MAX_BLOCK_TIME = 1000;
+
+    /** The maximum time to deliver the pending events when closing, in milliseconds. */
+    static final long CLOSE_TIMEOUT = 5000;
+
+    /** The queue being processed by the current thread. */
+    private static final ThreadLocal<HandlerQueue> CURRENT = new ThreadLocal<HandlerQueue>();
+
+    private final ThreadPoolExecutor m_executor;
+
+    private final Map<EventHandlerProxy, HandlerQueue> m_queues = new WeakHashMap<EventHandlerProxy, HandlerQueue>();
+
+    private volatile int m_queueSize;
+
+    private volatile Overflow m_overflow;
+
+    private volatile boolean m_closed;
+
+    // the number of delivery threads waiting for room in a full queue
+    private final AtomicInteger m_blockedThreads = new AtomicInteger();
+
+    /**
+     * @param threads The number of threads delivering the events.
+     * @param queueSize The maximum number of pending events per handler.
+     * @param overflow The policy to apply when the queue of a handler is full.
+     */
+    public PartitionedDeliverTasks(final int threads, final int queueSize, final Overflow overflow)
+    {
+        m_executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    private final AtomicInteger m_count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r)
+                    {
+                        final Thread thread = new Thread(r, "EventAdminQueueThread #" + m_count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        m_executor.allowCoreThreadTimeOut(true);
+        update(threads, queueSize, overflow);
+    }
+
+    /**
+     * Update the configuration, the new queue size applies to the queues
+     * of the handlers as soon as they have room for new events.
+     */
+    public void update(final int threads, final int queueSize, final Overflow overflow)
+    {
+        if ( threads > m_executor.getMaximumPoolSize() )
+        {
+            m_executor.setMaximumPoolSize(threads);
+            m_executor.setCorePoolSize(threads);
+        }
+        else
+        {
+            m_executor.setCorePoolSize(threads);
+            m_executor.setMaximumPoolSize(threads);
+        }
+        m_queueSize = queueSize;
+        m_overflow = overflow;
+    }
+
+    /**
+     * Queue the event for each of the given handlers.
+     *
+     * @param tasks The event handlers.
+     * @param event The event to deliver.
+     */
+    public void execute(final Collection<EventHandlerProxy> tasks, final Event event)
+    {
+        for (final EventHandlerProxy task : tasks)
+        {
+            getQueue(task).offer(event);
+        }
+    }
+
+    private HandlerQueue getQueue(final EventHandlerProxy handler)
+    {
+        synchronized ( m_queues )
+        {
+            HandlerQueue queue = m_queues.get(handler);
+            if ( queue == null )
+            {
+                queue = new HandlerQueue(handler);
+                m_queues.put(handler, queue);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * @return The queues of the handlers which received events.
+     */
+    public Collection<HandlerQueue> getQueues()
+    {
+        synchronized ( m_queues )
+        {
+            return new ArrayList<HandlerQueue>(m_queues.values());
+        }
+    }
+
+    /**
+     * Stop accepting events and deliver the pending events, for at most
+     * {@link #CLOSE_TIMEOUT} milliseconds.  The delivery threads are then
+     * stopped and the remaining events are discarded.
+     */
+    public void close()
+    {
+        close(CLOSE_TIMEOUT);
+    }
+
+    void close(final long timeout)
+    {
+        m_closed = true;
+        // wake up the threads waiting for room in a queue, they now give up
+        for (final HandlerQueue queue : getQueues())
+        {
+            synchronized ( queue )
+            {
+                queue.notifyAll();
+            }
+        }
+        m_executor.shutdown();
+        try
+        {
+            if ( m_executor.awaitTermination(timeout, TimeUnit.MILLISECONDS) )
+            {
+                return;
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        for (final Runnable task : m_executor.shutdownNow())
+        {
+            ((HandlerQueue) task).discard();
+        }
+    }
+
+    private static final class Pending
+    {
+        final Event event;
+        final long time;
+
+        Pending(final Event event, final long time)
+        {
+            this.event = event;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The queue of events of a handler, along with its statistics.
+     */
+    public final class HandlerQueue implements Runnable
+    {
+        // the queue is the value of a weak map, it must not keep its key alive
+        private final WeakReference<EventHandlerProxy> m_handler;
+
+        private final ArrayDeque<Pending> m_pending = new ArrayDeque<Pending>();
+
+        private boolean m_scheduled;
+
+        private int m_maxDepth;
+
+        private final AtomicLong m_delivered = new AtomicLong();
+        private final AtomicLong m_dropped = new AtomicLong();
+        private final AtomicLong m_totalLatency = new AtomicLong();
+        private final AtomicLong m_maxLatency = new AtomicLong();
+
+        HandlerQueue(final EventHandlerProxy handler)
+        {
+            m_handler = new WeakReference<EventHandlerProxy>(handler);
+        }
+
+        void offer(final Event event)
+        {
+            synchronized ( this )
+            {
+                // a handler posting to itself must not wait for itself
+                while ( !m_closed && m_pending.size() >= m_queueSize && CURRENT.get() != this )
+                {
+                    final Overflow overflow = m_overflow;
+                    if ( overflow == Overflow.DROP_NEWEST )
+                    {
+                        m_dropped.incrementAndGet();
+                        return;
+                    }
+                    else if ( overflow == Overflow.DROP_OLDEST )
+                    {
+                        m_pending.pollFirst();
+                        m_dropped.incrementAndGet();
+                    }
+                    else if ( !await() )
+                    {
+                        m_dropped.incrementAndGet();
+                        return;
+                    }
+                }
+                if ( m_closed )
+                {
+                    m_dropped.incrementAndGet();
+                    return;
+                }
+                m_pending.addLast(new Pending(event, System.nanoTime()));
+                m_maxDepth = Math.max(m_maxDepth, m_pending.size());
+                if ( m_scheduled )
+                {
+                    return;
+                }
+                m_scheduled = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Wait for room in the queue.
+         *
+         * @return <code>false</code> if the event must be discarded instead.
+         */
+        private boolean await()
+        {
+            if ( CURRENT.get() == null )
+            {
+                try
+                {
+                    wait();
+                    return true;
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            // a delivery thread, the other delivery threads must be able to make room
+            if ( m_blockedThreads.incrementAndGet() >= m_executor.getPoolSize() )
+            {
+                m_blockedThreads.decrementAndGet();
+                return false;
+            }
+            try
+            {
+                final long deadline = System.currentTimeMillis() + MAX_BLOCK_TIME;
+                long delay = MAX_BLOCK_TIME;
+                while ( !m_closed && m_pending.size() >= m_queueSize && delay > 0 )
+                {
+                    wait(delay);
+                    delay = deadline - System.currentTimeMillis();
+                }
+                return m_closed || m_pending.size() < m_queueSize;
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            finally
+            {
+                m_blockedThreads.decrementAndGet();
+            }
+        }
+
+        private synchronized void discard()
+        {
+            m_dropped.addAndGet(m_pending.size());
+            m_pending.clear();
+            m_scheduled = false;
+            notifyAll();
+        }
+
+        private void schedule()
+        {
+            try
+            {
+                m_executor.execute(this);
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                // the event admin is stopping
+                discard();
+            }
+        }
+
+        public void run()
+        {
+            CURRENT.set(this);
+            try
+            {
+                // when closing, the pending events are delivered without giving the thread back
+                for (int i = 0; i < BATCH_SIZE || m_closed; i++)
+                {
+                    if ( m_closed && Thread.currentThread().isInterrupted() )
+                    {
+                        // the close timeout elapsed, the remaining events are discarded
+                        break;
+                    }
+                    final Pending pending;
+                    synchronized ( this )
+                    {
+                        pending = m_pending.pollFirst();
+                        if ( pending == null )
+                        {
+                            m_scheduled = false;
+                            return;
+                        }
+                        notifyAll();
+                    }
+                    deliver(pending);
+                }
+            }
+            finally
+            {
+                CURRENT.remove();
+            }
+            // give the thread to the other handlers before processing the next events
+            schedule();
+        }
+
+        private void deliver(final Pending pending)
+        {
+            final EventHandlerProxy handler = m_handler.get();
+            if ( handler == null )
+            {
+                // the handler is gone
+                m_dropped.incrementAndGet();
+                return;
+            }
+            try
+            {
+                handler.sendEvent(pending.event);
+            }
+            catch ( final Throwable t )
+            {
+                LogWrapper.getLogger().log(LogWrapper.LOG_WARNING, "Exception during event dispatch", t);
+            }
+            final long latency = System.nanoTime() - pending.time;
+            m_delivered.incrementAndGet();
+            m_totalLatency.addAndGet(latency);
+            long max;
+            while ( latency > (max = m_maxLatency.get()) )
+            {
+                if ( m_maxLatency.compareAndSet(max, latency) )
+                {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @return The handler, or <code>null</code> if it is not used anymore.
+         */
+        public EventHandlerProxy getHandler()
+        {
+            return m_handler.get();
+        }
+
+        /**
+         * @return The number of pending events.
+         */
+        public synchronized int getDepth()
+        {
+            return m_pending.size();
+        }
+
+        /**
+         * @return The maximum number of pending events.
+         */
+        public synchronized int getMaxDepth()
+        {
+            return m_maxDepth;
+        }
+
+        public long getDelivered()
+        {
+            return m_delivered.get();
+        }
+
+        public long getDropped()
+        {
+            return m_dropped.get();
+        }
+
+        /**
+         * @return The average time between the post of an event and the end of its delivery, in microseconds.
+         */
+        public long getAverageLatency()
+        {
+            final long delivered = m_delivered.get();
+            return delivered > 0 ? m_totalLatency.get() / delivered / 1000 : 0;
+        }
+
+        /**
+         * @return The maximum time between the post of an event and the end of its delivery, in microseconds.
+         */
+        public long getMaxLatency()
+        {
+            return m_maxLatency.get() / 1000;
+        }
+    }
+}
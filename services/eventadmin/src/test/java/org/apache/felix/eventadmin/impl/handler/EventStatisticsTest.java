@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import org.apache.felix.eventadmin.impl.handler.EventStatistics.TopicStatistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EventStatisticsTest
+{
+    @Test
+    public void testCounters()
+    {
+        final EventStatistics statistics = new EventStatistics();
+        final TopicStatistics topic = statistics.getTopic("my/topic");
+        assertSame(topic, statistics.getTopic("my/topic"));
+        topic.posted(2);
+        topic.posted(0);
+        topic.sent(3, 2000000);
+        topic.sent(1, 4000000);
+        topic.ignored();
+        assertEquals("my/topic", topic.getTopic());
+        assertEquals(2, topic.getPosted());
+        assertEquals(2, topic.getSent());
+        assertEquals(1, topic.getIgnored());
+        assertEquals(1, topic.getUndelivered());
+        assertEquals(6, topic.getDeliveries());
+        assertEquals(3000, topic.getAverageSendTime());
+        assertEquals(4000, topic.getMaxSendTime());
+    }
+
+    @Test
+    public void testOtherTopics()
+    {
+        final EventStatistics statistics = new EventStatistics();
+        for (int i = 0; i < EventStatistics.MAX_TOPICS; i++)
+        {
+            statistics.getTopic("topic/" + i).posted(1);
+        }
+        statistics.getTopic("topic/new").posted(1);
+        statistics.getTopic("topic/newer").posted(1);
+        assertEquals(EventStatistics.MAX_TOPICS + 1, statistics.getTopics().size());
+        assertEquals(2, statistics.getTopic(EventStatistics.OTHER_TOPICS).getPosted());
+
+        statistics.reset();
+        assertEquals(0, statistics.getTopics().size());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IgnoredTopicsTest
+{
+    @Test
+    public void testNoIgnoredTopics()
+    {
+        final IgnoredTopics topics = new IgnoredTopics(null);
+        assertFalse(topics.isIgnored("org/osgi/framework/BundleEvent/STARTED"));
+        assertEquals(0, topics.getCheckedTopics());
+    }
+
+    @Test
+    public void testIgnoredTopics()
+    {
+        final IgnoredTopics topics = new IgnoredTopics(new String[] { "org/osgi/framework/*", "my/topic" });
+        assertTrue(topics.isIgnored("org/osgi/framework/BundleEvent/STARTED"));
+        assertTrue(topics.isIgnored("my/topic"));
+        assertFalse(topics.isIgnored("my/topic/other"));
+        assertEquals(3, topics.getCheckedTopics());
+        // the remembered results are the same
+        assertTrue(topics.isIgnored("org/osgi/framework/BundleEvent/STARTED"));
+        assertFalse(topics.isIgnored("my/topic/other"));
+        assertEquals(3, topics.getCheckedTopics());
+    }
+
+    @Test
+    public void testCheckedTopicsBounded()
+    {
+        final IgnoredTopics topics = new IgnoredTopics(new String[] { "ignored/*" });
+        for (int i = 0; i < IgnoredTopics.MAX_CHECKED_TOPICS + 10; i++)
+        {
+            assertTrue(topics.isIgnored("ignored/" + i));
+        }
+        assertEquals(IgnoredTopics.MAX_CHECKED_TOPICS, topics.getCheckedTopics());
+        // the topics which are not remembered are still matched
+        assertTrue(topics.isIgnored("ignored/other"));
+        assertFalse(topics.isIgnored("other"));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OverlayPropertiesTest
+{
+    @Test
+    public void testOverlay()
+    {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("a", "1");
+        props.put(EventConstants.TIMESTAMP, 10L);
+        final Event event = new Event("my/topic", props);
+
+        final Map<String, Object> overlay = new OverlayProperties(event, EventConstants.TIMESTAMP, 20L, "subject", "me");
+        assertEquals(3, overlay.size());
+        assertEquals("1", overlay.get("a"));
+        assertEquals(20L, overlay.get(EventConstants.TIMESTAMP));
+        assertEquals("me", overlay.get("subject"));
+        assertTrue(overlay.containsKey("subject"));
+        assertFalse(overlay.containsKey(EventConstants.EVENT_TOPIC));
+        assertFalse(overlay.containsKey("b"));
+
+        final Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("a", "1");
+        expected.put(EventConstants.TIMESTAMP, 20L);
+        expected.put("subject", "me");
+        assertEquals(expected, new HashMap<String, Object>(overlay));
+
+        final Event copy = new Event(event.getTopic(), overlay);
+        assertEquals("my/topic", copy.getTopic());
+        assertEquals("me", copy.getProperty("subject"));
+    }
+
+    @Test
+    public void testSingleProperty()
+    {
+        final Event event = new Event("my/topic", (Map<String, Object>) null);
+        final Map<String, Object> overlay = new OverlayProperties(event, EventConstants.TIMESTAMP, 20L, null, null);
+        assertEquals(1, overlay.size());
+        assertEquals(20L, overlay.get(EventConstants.TIMESTAMP));
+        assertFalse(overlay.containsKey(null));
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks.HandlerQueue;
+import org.apache.felix.eventadmin.impl.tasks.PartitionedDeliverTasks.Overflow;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedDeliverTasksTest
+{
+    @Test
+    public void testOrderPerHandler() throws Exception
+    {
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(4, 1000, Overflow.BLOCK);
+        final RecordingHandler h1 = new RecordingHandler(null);
+        final RecordingHandler h2 = new RecordingHandler(null);
+        for (int i = 0; i < 500; i++)
+        {
+            tasks.execute(handlers(h1, h2), event(i));
+        }
+        tasks.close();
+        assertEquals(range(0, 500), h1.received());
+        assertEquals(range(0, 500), h2.received());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingHandler handler = new RecordingHandler(release);
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 2, Overflow.DROP_NEWEST);
+        tasks.execute(handlers(handler), event(0));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++)
+        {
+            tasks.execute(handlers(handler), event(i));
+        }
+        assertEquals(2, getQueue(tasks, handler).getDepth());
+        assertEquals(2, getQueue(tasks, handler).getDropped());
+        release.countDown();
+        tasks.close();
+        assertEquals(range(0, 3), handler.received());
+        assertEquals(3, getQueue(tasks, handler).getDelivered());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingHandler handler = new RecordingHandler(release);
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 2, Overflow.DROP_OLDEST);
+        tasks.execute(handlers(handler), event(0));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++)
+        {
+            tasks.execute(handlers(handler), event(i));
+        }
+        assertEquals(2, getQueue(tasks, handler).getDropped());
+        release.countDown();
+        tasks.close();
+        assertEquals(java.util.Arrays.asList(0, 3, 4), handler.received());
+    }
+
+    @Test
+    public void testBlock() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingHandler handler = new RecordingHandler(release);
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 2, Overflow.BLOCK);
+        tasks.execute(handlers(handler), event(0));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        final Thread poster = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 1; i < 5; i++)
+                {
+                    tasks.execute(handlers(handler), event(i));
+                }
+            }
+        };
+        poster.start();
+        poster.join(200);
+        // the poster waits for room in the queue
+        assertTrue(poster.isAlive());
+        release.countDown();
+        poster.join(5000);
+        assertFalse(poster.isAlive());
+        tasks.close();
+        assertEquals(range(0, 5), handler.received());
+        assertEquals(0, getQueue(tasks, handler).getDropped());
+    }
+
+    @Test
+    public void testDeliveryThreadDoesNotWaitForItself() throws Exception
+    {
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 1, Overflow.BLOCK);
+        final RecordingHandler target = new RecordingHandler(null);
+        final CountDownLatch done = new CountDownLatch(1);
+        final EventHandlerProxy source = new EventHandlerProxy(null, null)
+        {
+            @Override
+            public void sendEvent(final Event event)
+            {
+                // the only delivery thread can not wait for room in the queue of the target
+                for (int i = 0; i < 3; i++)
+                {
+                    tasks.execute(handlers(target), event(i));
+                }
+                done.countDown();
+            }
+        };
+        tasks.execute(handlers(source), event(0));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        tasks.close();
+        assertEquals(range(0, 1), target.received());
+        assertEquals(2, getQueue(tasks, target).getDropped());
+    }
+
+    @Test
+    public void testClose() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingHandler handler = new RecordingHandler(release);
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 2, Overflow.BLOCK);
+        tasks.execute(handlers(handler), event(0));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        tasks.execute(handlers(handler), event(1));
+        tasks.execute(handlers(handler), event(2));
+        final Thread poster = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                tasks.execute(handlers(handler), event(3));
+            }
+        };
+        poster.start();
+        poster.join(200);
+        assertTrue(poster.isAlive());
+
+        // the blocked poster gives up, and the pending events are delivered
+        final Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                tasks.close();
+            }
+        };
+        closer.start();
+        poster.join(5000);
+        assertFalse(poster.isAlive());
+        release.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+        assertEquals(range(0, 3), handler.received());
+
+        // new events are discarded at once
+        tasks.execute(handlers(handler), event(4));
+        assertEquals(range(0, 3), handler.received());
+        assertEquals(2, getQueue(tasks, handler).getDropped());
+    }
+
+    @Test
+    public void testCloseTimeout() throws Exception
+    {
+        final RecordingHandler handler = new RecordingHandler(new CountDownLatch(1));
+        final PartitionedDeliverTasks tasks = new PartitionedDeliverTasks(1, 10, Overflow.BLOCK);
+        tasks.execute(handlers(handler), event(0));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        tasks.execute(handlers(handler), event(1));
+        tasks.execute(handlers(handler), event(2));
+        // the handler never returns by itself, it is interrupted
+        tasks.close(100);
+        // the pending events are discarded by the interrupted delivery thread
+        final HandlerQueue queue = getQueue(tasks, handler);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( queue.getDropped() < 2 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(2, queue.getDropped());
+        assertEquals(range(0, 1), handler.received());
+    }
+
+    private static Event event(final int index)
+    {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("index", index);
+        return new Event("test/topic", props);
+    }
+
+    private static List<EventHandlerProxy> handlers(final EventHandlerProxy... handlers)
+    {
+        return java.util.Arrays.asList(handlers);
+    }
+
+    private static List<Integer> range(final int from, final int to)
+    {
+        final List<Integer> result = new ArrayList<Integer>();
+        for (int i = from; i < to; i++)
+        {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private static HandlerQueue getQueue(final PartitionedDeliverTasks tasks, final EventHandlerProxy handler)
+    {
+        for (final HandlerQueue queue : tasks.getQueues())
+        {
+            if ( queue.getHandler() == handler )
+            {
+                return queue;
+            }
+        }
+        throw new AssertionError("No queue for the handler");
+    }
+
+    /**
+     * A handler recording the index of the events, which waits for the
+     * given latch when receiving its first event.
+     */
+    private static class RecordingHandler extends EventHandlerProxy
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+
+        RecordingHandler(final CountDownLatch release)
+        {
+            super(null, null);
+            this.release = release;
+        }
+
+        @Override
+        public void sendEvent(final Event event)
+        {
+            received.add((Integer) event.getProperty("index"));
+            started.countDown();
+            if ( release != null && received.size() == 1 )
+            {
+                try
+                {
+                    release.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        List<Integer> received()
+        {
+            synchronized ( received )
+            {
+                return new ArrayList<Integer>(received);
+            }
+        }
+    }
+}
@@ -21,8 +21,19 @@ package org.apache.karaf.shell.commands.impl;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,6 +49,12 @@ import org.fusesource.jansi.Ansi;
 @Service
 public class GrepAction implements Action {
 
+    private static final Pattern ESCAPE_PATTERN = Pattern.compile("(\\\u001B\\[[0-9;]*[0-9]+m)+");
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    static final long CHUNK_SIZE = 4 * 1024 * 1024;
+
     public static enum ColorOption {
         never,
         always,
@@ -47,6 +64,9 @@ public class GrepAction implements Action {
     @Argument(index = 0, name = "pattern", description = "Regular expression", required = true, multiValued = false)
     private String regex;
 
+    @Argument(index = 1, name = "files", description = "Files to search (glob patterns are allowed in file names), the standard input is used if none is given", required = false, multiValued = true)
+    private List<String> files;
+
     @Option(name = "-n", aliases = { "--line-number" }, description = "Prefixes each line of output with the line number within its input file.", required = false, multiValued = false)
     private boolean lineNumber;
 
@@ -110,6 +130,10 @@ public class GrepAction implements Action {
             p = Pattern.compile(regexp);
             p2 = Pattern.compile(regex);
         }
+        if (files != null && !files.isEmpty()) {
+            grep(files, p, p2);
+            return null;
+        }
         try {
             boolean firstPrint = true;
             int nb = 0;
@@ -122,26 +146,8 @@ public class GrepAction implements Action {
                     break;
                 }
                 if (p.matcher(line).matches() ^ invertMatch) {
-                    Matcher matcher2 = p2.matcher(line);
                     StringBuffer sb = new StringBuffer();
-                    while (matcher2.find()) {
-                        if (!invertMatch && color != ColorOption.never) {
-                            int index = matcher2.start(0);
-                            String prefix = line.substring(0,index);
-                            matcher2.appendReplacement(sb, Ansi.ansi()
-                                .bg(Ansi.Color.YELLOW)
-                                .fg(Ansi.Color.BLACK)
-                                .a(matcher2.group())
-                                 .reset()
-                                .a(lastEscapeSequence(prefix))
-                                .toString());
-                        } else {
-                            matcher2.appendReplacement(sb, matcher2.group());
-                        }
-                        nb++;
-                    }
-                    matcher2.appendTail(sb);
-                    sb.append(Ansi.ansi().reset().toString());
+                    nb += highlight(p2, line, sb);
                     if (!count && lineNumber) {
                         lines.add(String.format("%6d  ", lineno) + sb.toString());
                     } else {
@@ -191,6 +197,312 @@ public class GrepAction implements Action {
     }
 
 
+    /**
+     * Highlights the matches of the pattern in the line.
+     *
+     * @return the number of matches.
+     */
+    private int highlight(Pattern p2, String line, StringBuffer sb) {
+        int nb = 0;
+        Matcher matcher2 = p2.matcher(line);
+        while (matcher2.find()) {
+            if (!invertMatch && color != ColorOption.never) {
+                int index = matcher2.start(0);
+                String prefix = line.substring(0,index);
+                matcher2.appendReplacement(sb, Ansi.ansi()
+                    .bg(Ansi.Color.YELLOW)
+                    .fg(Ansi.Color.BLACK)
+                    .a(matcher2.group())
+                     .reset()
+                    .a(lastEscapeSequence(prefix))
+                    .toString());
+            } else {
+                matcher2.appendReplacement(sb, matcher2.group());
+            }
+            nb++;
+        }
+        matcher2.appendTail(sb);
+        sb.append(Ansi.ansi().reset().toString());
+        return nb;
+    }
+
+    /**
+     * Searches files.
+     *
+     * Each file is memory mapped and split in chunks of {@link #CHUNK_SIZE} bytes,
+     * which are matched in parallel.  The results are then printed in order,
+     * file by file, with their context lines read from the mapping.
+     */
+    private void grep(List<String> names, Pattern p, Pattern p2) throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (String name : names) {
+            paths.addAll(expand(name));
+        }
+        boolean printName = paths.size() > 1;
+        byte[] literal = null;
+        Charset charset = Charset.defaultCharset();
+        if (isLiteral(regex) && !ignoreCase && !wordRegexp && !lineRegexp && !invertMatch && !regex.isEmpty()) {
+            literal = regex.getBytes(charset);
+        }
+        List<MappedFileLines> mappings = new ArrayList<>();
+        List<List<Future<ChunkResult>>> results = new ArrayList<>();
+        try {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            for (Path path : paths) {
+                final MappedFileLines file = new MappedFileLines(path, charset);
+                mappings.add(file);
+                List<Future<ChunkResult>> futures = new ArrayList<>();
+                for (long start = 0; start < file.size(); start += CHUNK_SIZE) {
+                    final long from = start;
+                    final long to = Math.min(file.size(), start + CHUNK_SIZE);
+                    final Pattern pattern = p;
+                    final byte[] needle = literal;
+                    futures.add(pool.submit(new Callable<ChunkResult>() {
+                        @Override
+                        public ChunkResult call() {
+                            return needle != null ? scan(file, from, to, needle) : scan(file, from, to, pattern);
+                        }
+                    }));
+                }
+                results.add(futures);
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                print(printName ? paths.get(i).toString() : null, mappings.get(i), results.get(i), p2);
+            }
+        } finally {
+            for (List<Future<ChunkResult>> futures : results) {
+                for (Future<ChunkResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            for (MappedFileLines file : mappings) {
+                file.close();
+            }
+        }
+    }
+
+    private List<Path> expand(String name) throws IOException {
+        Path path = Paths.get(name);
+        Path fileName = path.getFileName();
+        if (fileName == null || !isGlob(fileName.toString())) {
+            if (!Files.isRegularFile(path)) {
+                System.err.println("grep: " + name + ": No such file");
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(path);
+        }
+        Path dir = path.getParent() != null ? path.getParent() : Paths.get(".");
+        final PathMatcher matcher = dir.getFileSystem().getPathMatcher("glob:" + fileName);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, new DirectoryStream.Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) {
+                return matcher.matches(entry.getFileName()) && Files.isRegularFile(entry);
+            }
+        })) {
+            for (Path entry : stream) {
+                paths.add(path.getParent() != null ? entry : entry.getFileName());
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static boolean isGlob(String name) {
+        for (char c : "*?[{".toCharArray()) {
+            if (name.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The matching lines of a chunk.  A chunk contains the lines starting
+     * in its range of bytes.
+     */
+    static class ChunkResult {
+        int lines;
+        int matches;
+        int[] matchLines = new int[16];
+        long[] matchOffsets = new long[16];
+
+        void add(int line, long offset) {
+            if (matches == matchLines.length) {
+                int[] newLines = new int[matches * 2];
+                long[] newOffsets = new long[matches * 2];
+                System.arraycopy(matchLines, 0, newLines, 0, matches);
+                System.arraycopy(matchOffsets, 0, newOffsets, 0, matches);
+                matchLines = newLines;
+                matchOffsets = newOffsets;
+            }
+            matchLines[matches] = line;
+            matchOffsets[matches] = offset;
+            matches++;
+        }
+    }
+
+    /**
+     * @return the position of the first line starting in the chunk.
+     */
+    private static long firstLine(MappedFileLines file, long from) {
+        if (from == 0 || file.get(from - 1) == '\n') {
+            return from;
+        }
+        return file.getLineEnd(from) + 1;
+    }
+
+    /**
+     * @return the position after the last line starting in the chunk.
+     */
+    private static long lastLine(MappedFileLines file, long to) {
+        if (to >= file.size()) {
+            return file.size();
+        }
+        return Math.min(file.size(), file.getLineEnd(to - 1) + 1);
+    }
+
+    private ChunkResult scan(MappedFileLines file, long from, long to, Pattern pattern) {
+        ChunkResult result = new ChunkResult();
+        long limit = lastLine(file, to);
+        Matcher matcher = pattern.matcher("");
+        for (long pos = firstLine(file, from); pos < limit; ) {
+            long end = file.getLineEnd(pos);
+            if (matcher.reset(file.decode(pos, end)).matches() ^ invertMatch) {
+                result.add(result.lines, pos);
+            }
+            result.lines++;
+            pos = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Fast path for patterns without any regular expression metacharacter:
+     * the bytes of the pattern are searched, and only the matching lines are decoded.
+     */
+    private static ChunkResult scan(MappedFileLines file, long from, long to, byte[] needle) {
+        ChunkResult result = new ChunkResult();
+        long limit = lastLine(file, to);
+        long pos = firstLine(file, from);
+        long lineStart = pos;
+        byte first = needle[0];
+        byte[] buffer = new byte[MappedFileLines.SCAN_BUFFER_SIZE + needle.length - 1];
+        while (pos <= limit - needle.length) {
+            int read = file.read(pos, buffer, (int) Math.min(buffer.length, limit - pos));
+            // The positions where the whole pattern is in the buffer
+            int candidates = read - needle.length + 1;
+            long next = pos + candidates;
+            for (int i = 0; i < candidates; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    result.lines++;
+                    lineStart = pos + i + 1;
+                } else if (b == first && matches(buffer, i, needle)) {
+                    result.add(result.lines, lineStart);
+                    result.lines++;
+                    long end = file.getLineEnd(pos + i);
+                    lineStart = end + 1;
+                    if (end - pos >= candidates) {
+                        next = end + 1;
+                        break;
+                    }
+                    i = (int) (end - pos);
+                }
+            }
+            pos = next;
+        }
+        // Count the remaining lines
+        for (pos = lineStart; pos < limit; pos = file.getLineEnd(pos) + 1) {
+            result.lines++;
+        }
+        return result;
+    }
+
+    private static boolean matches(byte[] buffer, int pos, byte[] needle) {
+        for (int i = 1; i < needle.length; i++) {
+            if (buffer[pos + i] != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void print(String name, MappedFileLines file, List<Future<ChunkResult>> futures, Pattern p2) throws Exception {
+        String prefix = name != null ? name + ":" : "";
+        int nb = 0;
+        int base = 0;
+        int lastPrinted = -1;
+        long next = 0;
+        int afterUntil = -1;
+        boolean firstPrint = true;
+        for (Future<ChunkResult> future : futures) {
+            ChunkResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            nb += result.matches;
+            for (int i = 0; i < result.matches && !count; i++) {
+                int line = base + result.matchLines[i];
+                long offset = result.matchOffsets[i];
+                // Trailing context of the previous match
+                while (lastPrinted < afterUntil && lastPrinted < line - 1 && next < file.size()) {
+                    next = printLine(prefix, file, ++lastPrinted, next);
+                }
+                int start = Math.max(line - before, lastPrinted + 1);
+                if (!firstPrint && start > lastPrinted + 1 && before + after > 0) {
+                    System.out.println("--");
+                }
+                firstPrint = false;
+                long pos = offset;
+                for (int l = line; l > start; l--) {
+                    pos = file.getPreviousLineStart(pos);
+                }
+                for (int l = start; l < line; l++) {
+                    pos = printLine(prefix, file, l, pos);
+                }
+                long end = file.getLineEnd(offset);
+                StringBuffer sb = new StringBuffer();
+                highlight(p2, file.decode(offset, end), sb);
+                System.out.println(prefix + (lineNumber ? String.format("%6d  ", line + 1) : "") + sb);
+                lastPrinted = line;
+                next = end + 1;
+                afterUntil = line + after;
+            }
+            base += result.lines;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        while (lastPrinted < afterUntil && next < file.size()) {
+            next = printLine(prefix, file, ++lastPrinted, next);
+        }
+        if (count) {
+            System.out.println(prefix + nb);
+        }
+    }
+
+    private long printLine(String prefix, MappedFileLines file, int line, long pos) {
+        long end = file.getLineEnd(pos);
+        System.out.println(prefix + (lineNumber ? String.format("%6d  ", line + 1) : "") + file.decode(pos, end));
+        return end + 1;
+    }
+
     /**
      * Returns the last escape pattern found inside the String.
      * This method is used to restore the formating after highliting the grep pattern.
@@ -200,9 +512,7 @@ public class GrepAction implements Action {
      */
     private String lastEscapeSequence(String str) {
         String escapeSequence=Ansi.ansi().reset().toString();
-        String escapePattern = "(\\\u001B\\[[0-9;]*[0-9]+m)+";
-        Pattern pattern =  Pattern.compile(escapePattern);
-        Matcher matcher = pattern.matcher(str);
+        Matcher matcher = ESCAPE_PATTERN.matcher(str);
         while(matcher.find()) {
             escapeSequence = matcher.group();
         }
@@ -41,6 +41,7 @@ import org.apache.karaf.shell.commands.info.InfoProvider;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
 import org.fusesource.jansi.Ansi;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -97,6 +98,17 @@ public class InfoAction implements Action {
         printValue("Daemon threads", maxNameLen, Integer.toString(threads.getDaemonThreadCount()));
         printValue("Peak", maxNameLen, Integer.toString(threads.getPeakThreadCount()));
         printValue("Total started", maxNameLen, Long.toString(threads.getTotalStartedThreadCount()));
+        SessionExecutor executor = SessionExecutor.getInstance();
+        System.out.println("Shell sessions");
+        printValue("Execution model", maxNameLen, executor.getMode());
+        printValue("Active sessions", maxNameLen, Integer.toString(executor.getActiveSessions()));
+        printValue("Total started", maxNameLen, printLong(executor.getStartedSessions()));
+        if (executor.getPoolSize() >= 0) {
+            printValue("Pooled threads", maxNameLen, Integer.toString(executor.getPoolSize()));
+            printValue("Overflow threads", maxNameLen, printLong(executor.getOverflowThreads()));
+        }
+        printValue("Average start delay", maxNameLen, printLong(executor.getAverageQueueingDelay()) + " us");
+        printValue("Maximum start delay", maxNameLen, printLong(executor.getMaxQueueingDelay()) + " us");
 
         System.out.println("Memory");
         printValue("Current heap size", maxNameLen, printSizeInKb(mem.getHeapMemoryUsage().getUsed()));
@@ -28,6 +28,7 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -101,6 +102,8 @@ public class LessAction implements Action, SignalListener {
 
     BufferedReader reader;
 
+    MappedFileLines mapped;
+
     NonBlockingInputStream consoleInput;
     Reader consoleReader;
 
@@ -152,6 +155,11 @@ public class LessAction implements Action, SignalListener {
                 terminal.setEchoEnabled(false);
                 terminal.addSignalListener(this, Signal.WINCH);
                 try {
+                    if (files != null && !files.isEmpty() && files.get(0).isFile()) {
+                        // Page regular files from a memory mapping instead of buffering their lines
+                        mapped = new MappedFileLines(files.get(0).toPath(), Charset.defaultCharset());
+                        mapped.startIndexing();
+                    }
                     window = terminal.getHeight() - 1;
                     halfWindow = window / 2;
                     keys = new KeyMap("less", false);
@@ -308,13 +316,18 @@ public class LessAction implements Action, SignalListener {
                                 moveBackward(halfWindow);
                                 break;
                             case GO_TO_FIRST_LINE_OR_N:
-                                // TODO: handle number
-                                firstLineToDisplay = firstLineInMemory;
-                                offsetInLine = 0;
+                                moveTo(getStrictPositiveNumberInBuffer(1) - 1);
                                 break;
                             case GO_TO_LAST_LINE_OR_N:
-                                // TODO: handle number
-                                moveForward(Integer.MAX_VALUE);
+                                int lineNum = getStrictPositiveNumberInBuffer(0) - 1;
+                                if (lineNum < 0) {
+                                    moveToEnd();
+                                } else {
+                                    moveTo(lineNum);
+                                }
+                                break;
+                            case GO_TO_PERCENT_OR_N:
+                                moveToPercent(Math.min(100, getStrictPositiveNumberInBuffer(0)));
                                 break;
                             case LEFT_ONE_HALF_SCREEN:
                                 firstColumnToDisplay = Math.max(0, firstColumnToDisplay - terminal.getWidth() / 2);
@@ -391,13 +404,23 @@ public class LessAction implements Action, SignalListener {
             }
         } finally {
             reader.close();
+            if (mapped != null) {
+                mapped.close();
+            }
         }
         return null;
     }
 
     private void moveToNextMatch() throws IOException {
         Pattern compiled = getPattern();
-        if (compiled != null) {
+        if (compiled != null && mapped != null) {
+            int lineNumber = mapped.find(compiled, firstLineToDisplay + 1, true);
+            if (lineNumber >= 0) {
+                firstLineToDisplay = lineNumber;
+                offsetInLine = 0;
+                return;
+            }
+        } else if (compiled != null) {
             for (int lineNumber = firstLineToDisplay + 1; ; lineNumber++) {
                 String line = getLine(lineNumber);
                 if (line == null) {
@@ -414,7 +437,14 @@ public class LessAction implements Action, SignalListener {
 
     private void moveToPreviousMatch() throws IOException {
         Pattern compiled = getPattern();
-        if (compiled != null) {
+        if (compiled != null && mapped != null) {
+            int lineNumber = mapped.find(compiled, firstLineToDisplay - 1, false);
+            if (lineNumber >= 0) {
+                firstLineToDisplay = lineNumber;
+                offsetInLine = 0;
+                return;
+            }
+        } else if (compiled != null) {
             for (int lineNumber = firstLineToDisplay - 1; lineNumber >= firstLineInMemory; lineNumber--) {
                 String line = getLine(lineNumber);
                 if (line == null) {
@@ -446,6 +476,27 @@ public class LessAction implements Action, SignalListener {
         return sb.toString();
     }
 
+    void moveTo(int lineNumber) throws IOException {
+        offsetInLine = 0;
+        if (getLine(lineNumber) != null) {
+            firstLineToDisplay = Math.max(firstLineInMemory, lineNumber);
+        } else {
+            moveToEnd();
+        }
+    }
+
+    void moveToEnd() throws IOException {
+        // Jump close to the end so that only the last window is laid out
+        int count = getLineCount();
+        firstLineToDisplay = Math.max(firstLineToDisplay, count - terminal.getHeight());
+        offsetInLine = 0;
+        moveForward(Integer.MAX_VALUE);
+    }
+
+    void moveToPercent(int percent) throws IOException {
+        moveTo((int) ((long) getLineCount() * percent / 100));
+    }
+
     void moveForward(int lines) throws IOException {
         int width = terminal.getWidth() - (printLineNumbers ? 8 : 0);
         int height = terminal.getHeight();
@@ -618,7 +669,18 @@ public class LessAction implements Action, SignalListener {
         return AnsiSplitter.substring(curLine, begin, end, tabs);
     }
 
+    int getLineCount() throws IOException {
+        if (mapped != null) {
+            return mapped.getLineCount();
+        }
+        getLine(Integer.MAX_VALUE - 1);
+        return lines.size();
+    }
+
     String getLine(int line) throws IOException {
+        if (mapped != null) {
+            return mapped.getLine(line);
+        }
         while (line <= lines.size()) {
             String str = reader.readLine();
             if (str != null) {
@@ -819,6 +881,9 @@ public class LessAction implements Action, SignalListener {
         map.bind(">", Operation.GO_TO_LAST_LINE_OR_N);
         map.bind("\033>", Operation.GO_TO_LAST_LINE_OR_N);
 
+        map.bind("p", Operation.GO_TO_PERCENT_OR_N);
+        map.bind("%", Operation.GO_TO_PERCENT_OR_N);
+
         for (char c : "-/0123456789?".toCharArray()) {
             map.bind("" + c, c);
         }
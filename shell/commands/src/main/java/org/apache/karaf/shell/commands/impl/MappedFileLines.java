@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lines of a file, read from a memory mapping of the file.
+ *
+ * The offsets of the lines are indexed in the background, keeping one
+ * offset every {@link #INDEX_STEP} lines, so that the heap used does not
+ * grow with the content of the file.  A line is found by scanning forward
+ * from the closest indexed offset.
+ *
+ * The content is copied in bulk into small buffers to be scanned, and the
+ * mapping is released when closed, so that the file can be deleted or
+ * rotated right away.
+ */
+class MappedFileLines implements Closeable {
+
+    static final int INDEX_STEP = 64;
+
+    static final int SEARCH_CHUNK = 4096;
+
+    static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private static final int LINE_BUFFER_SIZE = 512;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileLines.class);
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long size;
+    private final ByteBuffer[] segments;
+    // Held while reading the mapping, which can not be accessed once released
+    private final ReadWriteLock access = new ReentrantReadWriteLock();
+
+    private final Object lock = new Object();
+    private volatile long[] checkpoints = new long[1024];
+    private volatile int indexedLines;
+    private volatile boolean indexed;
+    private volatile boolean closed;
+    private IOException error;
+
+    MappedFileLines(Path file, Charset charset) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.charset = charset;
+        this.size = channel.size();
+        int nb = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        this.segments = new ByteBuffer[nb];
+        for (int i = 0; i < nb; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+        }
+    }
+
+    /**
+     * Start indexing the lines in the background.
+     */
+    void startIndexing() {
+        Runnable indexer = new Runnable() {
+            @Override
+            public void run() {
+                index();
+            }
+        };
+        try {
+            SessionExecutor.getInstance().execute(indexer, "Karaf less indexer");
+        } catch (RejectedExecutionException e) {
+            Thread thread = new Thread(indexer, "Karaf less indexer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void index() {
+        try {
+            long[] offsets = checkpoints;
+            int lines = 0;
+            long start = 0;
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            for (long pos = 0; pos < size && !closed; ) {
+                int read = read(pos, buffer, buffer.length);
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        if (lines % INDEX_STEP == 0) {
+                            offsets = checkpoint(offsets, lines, start);
+                        }
+                        lines++;
+                        start = pos + i + 1;
+                        if (lines % SEARCH_CHUNK == 0) {
+                            publish(lines, false);
+                        }
+                    }
+                }
+                pos += read;
+            }
+            if (start < size) {
+                // Last line without a trailing new line
+                if (lines % INDEX_STEP == 0) {
+                    checkpoint(offsets, lines, start);
+                }
+                lines++;
+            }
+            publish(lines, true);
+        } catch (Throwable t) {
+            // Reading a mapping of a file truncated meanwhile raises an InternalError
+            synchronized (lock) {
+                error = new IOException("Unable to index file", t);
+            }
+        } finally {
+            // Always wake up the readers, even on a failure
+            if (!indexed) {
+                publish(indexedLines, true);
+            }
+        }
+    }
+
+    private long[] checkpoint(long[] offsets, int line, long start) {
+        int idx = line / INDEX_STEP;
+        if (idx >= offsets.length) {
+            long[] newOffsets = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+            offsets = newOffsets;
+            checkpoints = offsets;
+        }
+        offsets[idx] = start;
+        return offsets;
+    }
+
+    private void publish(int lines, boolean done) {
+        synchronized (lock) {
+            indexedLines = lines;
+            indexed = done;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until the given line has been indexed.
+     *
+     * @return <code>true</code> if the line exists.
+     */
+    private boolean awaitLine(int line) throws IOException {
+        if (line < indexedLines) {
+            return true;
+        }
+        synchronized (lock) {
+            while (line >= indexedLines && !indexed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return line < indexedLines;
+        }
+    }
+
+    /**
+     * @return the number of lines in the file, waiting for the indexing to complete.
+     */
+    int getLineCount() throws IOException {
+        awaitLine(Integer.MAX_VALUE);
+        return indexedLines;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return the line, or <code>null</code> if the file has less lines.
+     */
+    String getLine(int line) throws IOException {
+        if (line < 0 || !awaitLine(line)) {
+            return null;
+        }
+        long start = getLineStart(line);
+        return decode(start, getLineEnd(start));
+    }
+
+    private long getLineStart(int line) {
+        long start = checkpoints[line / INDEX_STEP];
+        byte[] buffer = new byte[LINE_BUFFER_SIZE];
+        for (int i = line % INDEX_STEP; i > 0; i--) {
+            start = getLineEnd(start, buffer) + 1;
+        }
+        return start;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the position of the new line ending the line at the given position, or the size of the file.
+     */
+    long getLineEnd(long start) {
+        return getLineEnd(start, new byte[LINE_BUFFER_SIZE]);
+    }
+
+    private long getLineEnd(long start, byte[] buffer) {
+        long pos = start;
+        while (pos < size) {
+            int read = read(pos, buffer, buffer.length);
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return pos + i;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return the start of the line preceding the line starting at the given position, or <code>-1</code>.
+     */
+    long getPreviousLineStart(long start) {
+        if (start <= 0) {
+            return -1;
+        }
+        // Scan backward from the new line ending the previous line
+        long end = start - 1;
+        byte[] buffer = new byte[LINE_BUFFER_SIZE];
+        while (end > 0) {
+            int len = (int) Math.min(buffer.length, end);
+            long pos = end - len;
+            read(pos, buffer, len);
+            for (int i = len - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            end = pos;
+        }
+        return 0;
+    }
+
+    String decode(long start, long end) {
+        if (end > start && get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[(int) Math.min(end - start, Integer.MAX_VALUE)];
+        read(start, bytes, bytes.length);
+        return new String(bytes, charset);
+    }
+
+    byte get(long pos) {
+        access.readLock().lock();
+        try {
+            // Absolute gets do not modify the buffer, so they are safe to use concurrently
+            return segment(pos).get((int) (pos & SEGMENT_MASK));
+        } finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the content of the file at the given position.
+     *
+     * @return the number of bytes copied, less than <code>len</code> only at the end of the file.
+     */
+    int read(long pos, byte[] buffer, int len) {
+        access.readLock().lock();
+        try {
+            int count = 0;
+            while (count < len && pos < size) {
+                // Each reader uses its own view of the segment, as relative gets move its position
+                ByteBuffer view = segment(pos).duplicate();
+                view.position((int) (pos & SEGMENT_MASK));
+                int n = Math.min(len - count, view.remaining());
+                view.get(buffer, count, n);
+                count += n;
+                pos += n;
+            }
+            return count;
+        } finally {
+            access.readLock().unlock();
+        }
+    }
+
+    private ByteBuffer segment(long pos) {
+        ByteBuffer segment = segments[(int) (pos >>> SEGMENT_SHIFT)];
+        if (segment == null) {
+            throw new IllegalStateException("File closed");
+        }
+        return segment;
+    }
+
+    /**
+     * Find the closest line matching the given pattern.
+     *
+     * The lines are split in chunks of {@link #SEARCH_CHUNK} lines and
+     * one chunk per processor is searched in parallel, until a chunk
+     * contains a match.
+     *
+     * @param pattern the pattern to search for.
+     * @param from the first line to search.
+     * @param forward the search direction.
+     * @return the matching line, or <code>-1</code> if no line matches.
+     */
+    int find(final Pattern pattern, int from, final boolean forward) throws IOException {
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkStart = from;
+        while (forward ? awaitLine(chunkStart) : chunkStart >= 0) {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                final int first = forward ? chunkStart : Math.max(0, chunkStart - SEARCH_CHUNK + 1);
+                final int last = forward ? chunkStart + SEARCH_CHUNK - 1 : chunkStart;
+                if (forward ? !awaitLine(first) : last < 0) {
+                    break;
+                }
+                futures.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        return findInChunk(pattern, first, last, forward);
+                    }
+                }));
+                chunkStart = forward ? last + 1 : first - 1;
+            }
+            // Chunks are in search order, so the first match found is the closest
+            for (Future<Integer> future : futures) {
+                int line;
+                try {
+                    line = future.get();
+                } catch (InterruptedException e) {
+                    cancel(futures);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    cancel(futures);
+                    throw new IOException("Error searching file", e.getCause());
+                }
+                if (line >= 0) {
+                    cancel(futures);
+                    return line;
+                }
+            }
+            if (futures.isEmpty()) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private void cancel(List<Future<Integer>> futures) {
+        for (Future<Integer> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private int findInChunk(Pattern pattern, int first, int last, boolean forward) throws IOException {
+        if (forward) {
+            long start = getLineStart(first);
+            for (int line = first; line <= last && awaitLine(line); line++) {
+                long end = getLineEnd(start);
+                if (pattern.matcher(decode(start, end)).find()) {
+                    return line;
+                }
+                start = end + 1;
+            }
+        } else {
+            awaitLine(last);
+            long[] starts = new long[last - first + 1];
+            long start = getLineStart(first);
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = start;
+                start = getLineEnd(start) + 1;
+            }
+            for (int line = last; line >= first; line--) {
+                long s = starts[line - first];
+                if (pattern.matcher(decode(s, getLineEnd(s))).find()) {
+                    return line;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        // Wait for the pending reads, the background indexing and searches may still be running
+        access.writeLock().lock();
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] != null) {
+                    unmap(segments[i]);
+                    segments[i] = null;
+                }
+            }
+        } finally {
+            access.writeLock().unlock();
+        }
+        channel.close();
+    }
+
+    /**
+     * Release a mapping right away instead of when it is garbage collected,
+     * which keeps the file locked on Windows.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buffer);
+                if (c != null) {
+                    c.getClass().getMethod("clean").invoke(c);
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.debug("Unable to unmap the file, it will be released when garbage collected", t);
+        }
+    }
+
+}
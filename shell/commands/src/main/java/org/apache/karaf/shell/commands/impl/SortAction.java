@@ -19,18 +19,26 @@
 package org.apache.karaf.shell.commands.impl;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +57,8 @@ import org.slf4j.LoggerFactory;
 @Service
 public class SortAction implements Action {
 
+    static final long DEFAULT_BUFFER_SIZE = 32 * 1024 * 1024;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     @Option(name = "-f", aliases = { "-ignore-case" }, description = "fold lower case to upper case characters", required = false, multiValued = false)
@@ -72,41 +82,48 @@ public class SortAction implements Action {
     @Option(name = "-n", aliases = { "--numeric-sort" }, description = "compare according to string numerical value", required = false, multiValued = false)
     private boolean numeric;
 
+    @Option(name = "-S", aliases = { "--buffer-size" }, description = "use SIZE of memory (with an optional k, m or g suffix) before sorting on disk (defaults to 32m)", required = false, multiValued = false)
+    private String bufferSize;
+
+    @Option(name = "-T", aliases = { "--temporary-directory" }, description = "use DIR for temporary files instead of java.io.tmpdir", required = false, multiValued = false)
+    private File tempDir;
+
     @Argument(index = 0, name = "files", description = "A list of files separated by whitespaces", required = false, multiValued = true)
     private List<String> paths;
 
     @Override
     public Object execute() throws Exception {
         if (paths != null && paths.size() > 0) {
-            List<String> lines = new ArrayList<String>();
-            for (String filename : paths) {
-                BufferedReader reader;
-
-                // First try a URL
-                try {
-                    URL url = new URL(filename);
-                    log.info("Printing URL: " + url);
-                    reader = new BufferedReader(new InputStreamReader(url.openStream()));
-                }
-                catch (MalformedURLException ignore) {
-                    // They try a file
-                    File file = new File(filename);
-                    log.info("Printing file: " + file);
-                    reader = new BufferedReader(new FileReader(file));
-                }
+            try (Sorter sorter = createSorter()) {
+                for (String filename : paths) {
+                    BufferedReader reader;
 
-                try {
-                    read(reader, lines);
-                }
-                finally {
+                    // First try a URL
                     try {
-                        reader.close();
-                    } catch (IOException e) {
-                        // Ignore
+                        URL url = new URL(filename);
+                        log.info("Printing URL: " + url);
+                        reader = new BufferedReader(new InputStreamReader(url.openStream()));
+                    }
+                    catch (MalformedURLException ignore) {
+                        // They try a file
+                        File file = new File(filename);
+                        log.info("Printing file: " + file);
+                        reader = new BufferedReader(new FileReader(file));
+                    }
+
+                    try {
+                        read(reader, sorter);
+                    }
+                    finally {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
                     }
                 }
+                sorter.write(System.out);
             }
-            sort(lines, System.out);
         }
         else {
             sort(System.in, System.out);
@@ -114,28 +131,223 @@ public class SortAction implements Action {
         return null;
     }
 
-    protected void read(BufferedReader r, List<String> lines) throws Exception {
+    protected void read(BufferedReader r, Sorter sorter) throws Exception {
         for (String s = r.readLine(); s != null; s = r.readLine()) {
-            lines.add(s);
+            sorter.add(s);
         }
     }
 
     protected void sort(InputStream input, PrintStream out) throws Exception {
-        List<String> strings = new ArrayList<String>();
-        BufferedReader r = new BufferedReader(new InputStreamReader(input));
-        read(r, strings);
-        sort(strings, out);
+        try (Sorter sorter = createSorter()) {
+            BufferedReader r = new BufferedReader(new InputStreamReader(input));
+            read(r, sorter);
+            sorter.write(out);
+        }
     }
 
     protected void sort(List<String> strings, PrintStream out) throws Exception {
+        try (Sorter sorter = createSorter()) {
+            for (String s : strings) {
+                sorter.add(s);
+            }
+            sorter.write(out);
+        }
+    }
+
+    protected Sorter createSorter() {
         char sep = (separator == null || separator.length() == 0) ? '\0' : separator.charAt(0);
-        Collections.sort(strings, new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields));
-        String last = null;
-        for (String s : strings) {
-            if (!unique || last == null || !s.equals(last)) {
-                out.println(s);
+        SortComparator comparator = new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields);
+        long size = bufferSize != null ? parseSize(bufferSize) : DEFAULT_BUFFER_SIZE;
+        return new Sorter(comparator, size, tempDir, unique);
+    }
+
+    static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long factor = 1;
+        if (s.endsWith("k")) {
+            factor = 1024;
+        } else if (s.endsWith("m")) {
+            factor = 1024 * 1024;
+        } else if (s.endsWith("g")) {
+            factor = 1024 * 1024 * 1024;
+        }
+        if (factor > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            long value = Long.parseLong(s) * factor;
+            if (value <= 0) {
+                throw new IllegalArgumentException("Invalid buffer size: " + size);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+    }
+
+    /**
+     * Sorts lines within a memory budget.
+     *
+     * Lines are decorated with their sort keys when added, so that fields and
+     * numbers are only parsed once per line.  When the estimated size of the
+     * pending lines exceeds the budget, they are sorted and spilled to a
+     * temporary file, and the sorted runs are merged when writing the result.
+     */
+    public static class Sorter implements Closeable {
+
+        private final SortComparator comparator;
+        private final long bufferSize;
+        private final File tempDir;
+        private final boolean unique;
+        private final List<SortComparator.SortKey> lines = new ArrayList<SortComparator.SortKey>();
+        private final List<File> runs = new ArrayList<File>();
+        private long size;
+        private String last;
+
+        public Sorter(SortComparator comparator, long bufferSize, File tempDir, boolean unique) {
+            this.comparator = comparator;
+            this.bufferSize = bufferSize;
+            this.tempDir = tempDir;
+            this.unique = unique;
+        }
+
+        public void add(String line) throws IOException {
+            SortComparator.SortKey key = comparator.createSortKey(line);
+            lines.add(key);
+            size += key.size();
+            if (size > bufferSize) {
+                spill();
+            }
+        }
+
+        public int getRunCount() {
+            return runs.size();
+        }
+
+        public void write(PrintStream out) throws IOException {
+            SortComparator.SortKey[] sorted = sortLines();
+            if (runs.isEmpty()) {
+                for (SortComparator.SortKey key : sorted) {
+                    print(out, key.getLine());
+                }
+            } else {
+                merge(sorted, out);
+            }
+        }
+
+        private SortComparator.SortKey[] sortLines() {
+            SortComparator.SortKey[] sorted = lines.toArray(new SortComparator.SortKey[lines.size()]);
+            lines.clear();
+            size = 0;
+            // Stable, and split across the common pool for large arrays
+            Arrays.parallelSort(sorted);
+            return sorted;
+        }
+
+        private void spill() throws IOException {
+            SortComparator.SortKey[] sorted = sortLines();
+            File run = File.createTempFile("karaf-sort", ".run", tempDir);
+            runs.add(run);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8))) {
+                for (SortComparator.SortKey key : sorted) {
+                    writer.write(key.getLine());
+                    writer.write('\n');
+                }
+            }
+        }
+
+        private void merge(SortComparator.SortKey[] remaining, PrintStream out) throws IOException {
+            List<Run> readers = new ArrayList<Run>();
+            try {
+                PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1);
+                for (File file : runs) {
+                    Run run = new Run(readers.size(), file);
+                    readers.add(run);
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+                Run memory = new Run(readers.size(), remaining);
+                if (memory.next()) {
+                    queue.add(memory);
+                }
+                while (!queue.isEmpty()) {
+                    Run run = queue.poll();
+                    print(out, run.current.getLine());
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+            } finally {
+                for (Run run : readers) {
+                    run.close();
+                }
+            }
+        }
+
+        private void print(PrintStream out, String line) {
+            if (!unique || last == null || !line.equals(last)) {
+                out.println(line);
+            }
+            last = line;
+        }
+
+        @Override
+        public void close() {
+            lines.clear();
+            for (File run : runs) {
+                if (!run.delete()) {
+                    run.deleteOnExit();
+                }
+            }
+            runs.clear();
+        }
+
+        /**
+         * A sorted run, read back from disk or from the lines still in memory.
+         * Equal lines are ordered by run index to keep the sort stable.
+         */
+        private class Run implements Comparable<Run>, Closeable {
+            private final int index;
+            private final BufferedReader reader;
+            private final SortComparator.SortKey[] keys;
+            private int position;
+            SortComparator.SortKey current;
+
+            Run(int index, File file) throws IOException {
+                this.index = index;
+                this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+                this.keys = null;
+            }
+
+            Run(int index, SortComparator.SortKey[] keys) {
+                this.index = index;
+                this.reader = null;
+                this.keys = keys;
+            }
+
+            boolean next() throws IOException {
+                if (reader != null) {
+                    String line = reader.readLine();
+                    current = line != null ? comparator.createSortKey(line) : null;
+                } else {
+                    current = position < keys.length ? keys[position++] : null;
+                }
+                return current != null;
+            }
+
+            @Override
+            public int compareTo(Run o) {
+                int res = current.compareTo(o.current);
+                return res != 0 ? res : Integer.compare(index, o.index);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (reader != null) {
+                    reader.close();
+                }
             }
-            last = s;
         }
     }
 
@@ -179,19 +391,41 @@ public class SortAction implements Action {
         }
 
         public int compare(String o1, String o2) {
-            int res = 0;
+            return createSortKey(o1).compareTo(createSortKey(o2));
+        }
 
-            List<Integer> fi1 = getFieldIndexes(o1);
-            List<Integer> fi2 = getFieldIndexes(o2);
-            for (Key key : sortKeys) {
-                int[] k1 = getSortKey(o1, fi1, key);
-                int[] k2 = getSortKey(o2, fi2, key);
+        /**
+         * Compute the sort key regions of a line, and parse its numeric keys,
+         * so that they can be compared without being computed again.
+         */
+        public SortKey createSortKey(String line) {
+            List<Integer> fields = getFieldIndexes(line);
+            int[] regions = new int[sortKeys.size() * 2];
+            double[] numbers = null;
+            for (int i = 0; i < sortKeys.size(); i++) {
+                Key key = sortKeys.get(i);
+                int[] k = getSortKey(line, fields, key);
+                regions[i * 2] = k[0];
+                regions[i * 2 + 1] = k[1];
                 if (key.numeric) {
-                    Double d1 = getDouble(o1, k1[0], k1[1]);
-                    Double d2 = getDouble(o2, k2[0], k2[1]);
-                    res = d1.compareTo(d2);
+                    if (numbers == null) {
+                        numbers = new double[sortKeys.size()];
+                    }
+                    numbers[i] = getDouble(line, k[0], k[1]);
+                }
+            }
+            return new SortKey(line, regions, numbers);
+        }
+
+        protected int compareKeys(SortKey s1, SortKey s2) {
+            int res = 0;
+            for (int i = 0; i < sortKeys.size(); i++) {
+                Key key = sortKeys.get(i);
+                if (key.numeric) {
+                    res = Double.compare(s1.numbers[i], s2.numbers[i]);
                 } else {
-                    res = compareRegion(o1, k1[0], k1[1], o2, k2[0], k2[1], key.caseInsensitive);
+                    res = compareRegion(s1.line, s1.regions[i * 2], s1.regions[i * 2 + 1],
+                                        s2.line, s2.regions[i * 2], s2.regions[i * 2 + 1], key.caseInsensitive);
                 }
                 if (res != 0) {
                     if (key.reverse) {
@@ -206,7 +440,7 @@ public class SortAction implements Action {
         protected Double getDouble(String s, int start, int end) {
             Matcher m = fpPattern.matcher(s.substring(start, end));
             m.find();
-            return new Double(s.substring(0, m.end(1)));
+            return new Double(s.substring(start, start + m.end(1)));
         }
 
         protected int compareRegion(String s1, int start1, int end1, String s2, int start2, int end2, boolean caseInsensitive) {
@@ -299,6 +533,37 @@ public class SortAction implements Action {
             return fields;
         }
 
+        /**
+         * A line decorated with its precomputed sort keys.
+         */
+        public class SortKey implements Comparable<SortKey> {
+            private final String line;
+            private final int[] regions;
+            private final double[] numbers;
+
+            SortKey(String line, int[] regions, double[] numbers) {
+                this.line = line;
+                this.regions = regions;
+                this.numbers = numbers;
+            }
+
+            public String getLine() {
+                return line;
+            }
+
+            /**
+             * @return an estimate of the memory used by this key, in bytes.
+             */
+            long size() {
+                return 96 + 2L * line.length() + 4L * regions.length + (numbers != null ? 8L * numbers.length : 0);
+            }
+
+            @Override
+            public int compareTo(SortKey o) {
+                return compareKeys(this, o);
+            }
+        }
+
         public class Key {
             int startField;
             int startChar;
@@ -17,13 +17,29 @@
 package org.apache.karaf.shell.commands.impl;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Argument;
@@ -43,6 +59,8 @@ public class TailAction implements Action {
 
     private static final int DEFAULT_SLEEP_INTERVAL = 200;
 
+    private static final int BLOCK_SIZE = 8192;
+
     @Option(name = "-n", aliases = {}, description = "The number of lines to display, starting at 1.", required = false, multiValued = false)
     private int numberOfLines;
 
@@ -57,6 +75,12 @@ public class TailAction implements Action {
 
     @Override
     public Object execute() throws Exception {
+        if (numberOfLines < 1) {
+            numberOfLines = DEFAULT_NUMBER_OF_LINES;
+        }
+        if (sleepInterval < 1) {
+            sleepInterval = DEFAULT_SLEEP_INTERVAL;
+        }
         //If no paths provided assume standar input
         if (path == null || path.trim().length() == 0) {
             if (log.isDebugEnabled()) {
@@ -80,7 +104,8 @@ public class TailAction implements Action {
                 if (log.isDebugEnabled()) {
                     log.debug("Tailing file: " + file);
                 }
-                reader = new BufferedReader(new FileReader(file));
+                tail(file.toPath(), System.out);
+                return null;
             }
 
             try {
@@ -104,15 +129,7 @@ public class TailAction implements Action {
      * @throws IOException
      */
     private void tail(final BufferedReader reader) throws InterruptedException, IOException {
-        
-        if (numberOfLines < 1) {
-            numberOfLines = DEFAULT_NUMBER_OF_LINES;
-        }
-        if (sleepInterval < 1) {
-            sleepInterval = DEFAULT_SLEEP_INTERVAL;
-        }
-        
-        LinkedList<String> lines = new LinkedList<String>();
+        ArrayDeque<String> lines = new ArrayDeque<String>(numberOfLines + 1);
         String line;
         while ((line = reader.readLine()) != null) {
             lines.add(line);
@@ -133,4 +150,224 @@ public class TailAction implements Action {
             }
         }
     }
+
+    /**
+     * Prints the tail of a local file.
+     *
+     * The last lines are located by scanning the file backwards from its end,
+     * so that the time taken does not depend on the size of the file.  When
+     * following, the directory of the file is watched for changes, and the
+     * file is re-opened when it is rotated or truncated.  The file is checked
+     * at least every sleep interval, as changes are not always reported.  An
+     * unterminated last line is printed once it has not changed for an interval.
+     */
+    void tail(Path file, PrintStream out) throws InterruptedException, IOException {
+        try (TailedFile tailed = new TailedFile(file)) {
+            tailed.open();
+            tailed.seek(findLastLines(tailed.channel, tailed.channel.size(), numberOfLines));
+            tailed.print(out);
+            if (!continuous) {
+                tailed.flush(out);
+                return;
+            }
+            follow(tailed, out);
+        }
+    }
+
+    private void follow(TailedFile tailed, PrintStream out) throws InterruptedException, IOException {
+        WatchService watcher = null;
+        try {
+            Path dir = tailed.path.toAbsolutePath().getParent();
+            watcher = dir.getFileSystem().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                  StandardWatchEventKinds.ENTRY_MODIFY,
+                                  StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Unable to watch " + tailed.path + ", polling for changes", e);
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+        }
+        try {
+            while (continuous) {
+                if (watcher != null) {
+                    // Events are not always reported (network file systems), so check the file anyway
+                    WatchKey key = watcher.poll(sleepInterval, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(sleepInterval);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                if (tailed.checkRotation()) {
+                    System.err.println("tail: " + tailed.path + " has been replaced or truncated; following new content");
+                }
+                if (!tailed.print(out)) {
+                    tailed.flush(out);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException();
+        } finally {
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+    }
+
+    /**
+     * Find the position of the last lines of a file by scanning it backwards.
+     *
+     * @param channel the file channel.
+     * @param size the size of the file.
+     * @param lines the number of lines to find.
+     * @return the position of the first of the last lines.
+     */
+    static long findLastLines(FileChannel channel, long size, int lines) throws IOException {
+        if (lines <= 0) {
+            return size;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        long position = size;
+        int count = 0;
+        while (position > 0) {
+            int len = (int) Math.min(BLOCK_SIZE, position);
+            position -= len;
+            buffer.clear();
+            buffer.limit(len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                // The trailing new line terminates the last line
+                if (buffer.get(i) == '\n' && position + i != size - 1) {
+                    if (++count == lines) {
+                        return position + i + 1;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A file being tailed, only complete lines are printed until flushed.
+     */
+    private static class TailedFile implements Closeable {
+
+        private final Path path;
+        private final Charset charset = Charset.defaultCharset();
+        private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private FileChannel channel;
+        private Object fileKey;
+        private long position;
+
+        TailedFile(Path path) {
+            this.path = path;
+        }
+
+        void open() throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            position = 0;
+            pending.reset();
+        }
+
+        void seek(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Re-open the file if it has been replaced, or rewind it if it has been truncated.
+         *
+         * @return <code>true</code> if the file has been rotated.
+         */
+        boolean checkRotation() throws IOException {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // Rotation in progress, keep the old file until the new one is created
+                return false;
+            }
+            if (attrs.fileKey() != null && !Objects.equals(attrs.fileKey(), fileKey)) {
+                channel.close();
+                open();
+                return true;
+            }
+            if (channel.size() < position) {
+                position = 0;
+                pending.reset();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Print the complete lines appended since the last call.
+         *
+         * @return <code>true</code> if data has been read.
+         */
+        boolean print(PrintStream out) throws IOException {
+            boolean read = false;
+            while (true) {
+                buffer.clear();
+                int nb = channel.read(buffer, position);
+                if (nb <= 0) {
+                    break;
+                }
+                read = true;
+                position += nb;
+                byte[] data = buffer.array();
+                int start = 0;
+                for (int i = 0; i < nb; i++) {
+                    if (data[i] == '\n') {
+                        pending.write(data, start, i - start);
+                        printLine(out);
+                        start = i + 1;
+                    }
+                }
+                pending.write(data, start, nb - start);
+            }
+            if (read) {
+                out.flush();
+            }
+            return read;
+        }
+
+        /**
+         * Print the last line if it is not terminated.
+         */
+        void flush(PrintStream out) {
+            if (pending.size() > 0) {
+                printLine(out);
+            }
+            out.flush();
+        }
+
+        private void printLine(PrintStream out) {
+            byte[] line = pending.toByteArray();
+            int len = line.length;
+            if (len > 0 && line[len - 1] == '\r') {
+                len--;
+            }
+            out.println(new String(line, 0, len, charset));
+            pending.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
 }
@@ -19,11 +19,16 @@
 package org.apache.karaf.shell.commands.impl;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 
 import junit.framework.TestCase;
 import org.apache.karaf.shell.impl.action.command.DefaultActionPreparator;
+import org.fusesource.jansi.Ansi;
 
 public class GrepTest extends TestCase {
 
@@ -41,4 +46,42 @@ public class GrepTest extends TestCase {
             System.setIn(input);
         }
     }
+
+    public void testGrepFiles() throws Exception {
+        Path dir = Files.createTempDirectory("grep");
+        Files.write(dir.resolve("a.log"), "1\n2\n3 ERROR\n4\n5\n6\n7 ERROR\n".getBytes());
+        Files.write(dir.resolve("b.log"), "ERROR\n".getBytes());
+        Files.write(dir.resolve("c.txt"), "ERROR\n".getBytes());
+        PrintStream out = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(baos));
+            GrepAction grep = new GrepAction();
+            DefaultActionPreparator preparator = new DefaultActionPreparator();
+            preparator.prepare(grep, null, Arrays.<Object>asList("-n", "-C", "1", "--color", "never", "ERROR", dir.resolve("a.log").toString()));
+            grep.execute();
+            grep = new GrepAction();
+            preparator.prepare(grep, null, Arrays.<Object>asList("-c", "ERR", dir.resolve("*.log").toString()));
+            grep.execute();
+        } finally {
+            System.setOut(out);
+        }
+        String reset = Ansi.ansi().reset().toString();
+        String newLine = System.getProperty("line.separator");
+        String expected = "     2  2" + newLine
+                + "     3  3 ERROR" + reset + newLine
+                + "     4  4" + newLine
+                + "--" + newLine
+                + "     6  6" + newLine
+                + "     7  7 ERROR" + reset + newLine
+                + dir.resolve("a.log") + ":2" + newLine
+                + dir.resolve("b.log") + ":1" + newLine;
+        assertEquals(expected, new String(baos.toByteArray()));
+    }
+
+    public void testIsLiteral() {
+        assertTrue(GrepAction.isLiteral("ERROR foo"));
+        assertFalse(GrepAction.isLiteral("ERR.R"));
+        assertFalse(GrepAction.isLiteral("a\\b"));
+    }
 }
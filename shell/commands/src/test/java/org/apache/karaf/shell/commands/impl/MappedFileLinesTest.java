@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class MappedFileLinesTest extends TestCase {
+
+    public void testLinesAndSearch() throws Exception {
+        Path file = Files.createTempFile("less", ".log");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("line ").append(i).append("\r\n");
+        }
+        sb.append("last");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        try (MappedFileLines lines = new MappedFileLines(file, StandardCharsets.UTF_8)) {
+            lines.index();
+            assertTrue(lines.isIndexed());
+            assertEquals(20001, lines.getLineCount());
+            assertEquals("line 0", lines.getLine(0));
+            assertEquals("line " + (MappedFileLines.INDEX_STEP + 1), lines.getLine(MappedFileLines.INDEX_STEP + 1));
+            assertEquals("last", lines.getLine(20000));
+            assertNull(lines.getLine(20001));
+
+            Pattern pattern = Pattern.compile("line 7777$");
+            assertEquals(7777, lines.find(pattern, 0, true));
+            assertEquals(7777, lines.find(pattern, 19000, false));
+            assertEquals(-1, lines.find(pattern, 7778, true));
+            assertEquals(-1, lines.find(pattern, 7776, false));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testLongLines() throws Exception {
+        Path file = Files.createTempFile("less", ".log");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            sb.append(i);
+            for (int j = 0; j < 3000; j++) {
+                sb.append('a');
+            }
+            sb.append('\n');
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        try (MappedFileLines lines = new MappedFileLines(file, StandardCharsets.UTF_8)) {
+            lines.index();
+            assertEquals(3, lines.getLineCount());
+            assertEquals(3001, lines.getLine(2).length());
+            assertTrue(lines.getLine(2).startsWith("2a"));
+            long start = 2 * 3002;
+            assertEquals(start + 3001, lines.getLineEnd(start));
+            assertEquals(3002, lines.getPreviousLineStart(start));
+            assertEquals(0, lines.getPreviousLineStart(3002));
+            assertEquals(-1, lines.getPreviousLineStart(0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testClosedMapping() throws Exception {
+        Path file = Files.createTempFile("less", ".log");
+        Files.write(file, "line\n".getBytes(StandardCharsets.UTF_8));
+        MappedFileLines lines = new MappedFileLines(file, StandardCharsets.UTF_8);
+        lines.close();
+        // The mapping has been released
+        Files.delete(file);
+        try {
+            lines.getLineEnd(0);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testFileTruncatedWhileMapped() throws Exception {
+        Path file = Files.createTempFile("less", ".log");
+        byte[] data = new byte[4 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 80 == 79 ? '\n' : 'a');
+        }
+        Files.write(file, data);
+        try (MappedFileLines lines = new MappedFileLines(file, StandardCharsets.UTF_8)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+            } catch (IOException e) {
+                // The file can not be truncated while mapped on this platform
+                return;
+            }
+            lines.index();
+            assertTrue(lines.isIndexed());
+            try {
+                lines.getLineCount();
+                fail("Expected an IOException");
+            } catch (IOException e) {
+                assertEquals("Unable to index file", e.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
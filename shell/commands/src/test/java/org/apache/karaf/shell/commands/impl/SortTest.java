@@ -22,9 +22,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
+import java.util.Random;
 
 import org.apache.karaf.shell.commands.impl.SortAction;
 
@@ -88,4 +90,41 @@ public class SortTest extends TestCase {
         assertEquals(outputString, new String(baos.toByteArray()));
     }
 
+    public void testNumericSortOnField() {
+        List<String> strings = Arrays.asList("a 10", "b 9", "c 100");
+        Collections.sort(strings, new SortAction.SortComparator(false, false, false, false, '\0', Arrays.asList("2n")));
+        assertEquals(Arrays.asList("b 9", "a 10", "c 100"), strings);
+    }
+
+    public void testExternalSort() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', null);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (SortAction.Sorter sorter = new SortAction.Sorter(comparator, 4096, null, false)) {
+            Random random = new Random(0);
+            for (int i = 0; i < 2000; i++) {
+                String line = "line " + random.nextInt(1000);
+                sorter.add(line);
+                expected.add(line);
+            }
+            assertTrue(sorter.getRunCount() > 1);
+            sorter.write(new PrintStream(baos));
+        }
+        Collections.sort(expected, comparator);
+        String newLine = System.getProperty("line.separator");
+        assertEquals(expected, Arrays.asList(new String(baos.toByteArray()).split(newLine)));
+    }
+
+    public void testParseSize() {
+        assertEquals(512, SortAction.parseSize("512"));
+        assertEquals(64 * 1024, SortAction.parseSize("64k"));
+        assertEquals(32 * 1024 * 1024, SortAction.parseSize("32M"));
+        try {
+            SortAction.parseSize("0");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.commands.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.apache.karaf.shell.impl.action.command.DefaultActionPreparator;
+
+public class TailTest extends TestCase {
+
+    public void testFindLastLines() throws Exception {
+        Path file = Files.createTempFile("tail", ".log");
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                sb.append("line ").append(i).append('\n');
+            }
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                assertEquals(size - "line 9999\n".length(), TailAction.findLastLines(channel, size, 1));
+                assertEquals(size - "line 9998\nline 9999\n".length(), TailAction.findLastLines(channel, size, 2));
+                assertEquals(0, TailAction.findLastLines(channel, size, 20000));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testTailFile() throws Exception {
+        Path file = Files.createTempFile("tail", ".log");
+        try {
+            Files.write(file, "a\r\nb\nc\nd".getBytes(StandardCharsets.UTF_8));
+            TailAction tail = new TailAction();
+            new DefaultActionPreparator().prepare(tail, null, Arrays.<Object>asList("-n", "3"));
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            tail.tail(file, new PrintStream(baos));
+            String newLine = System.getProperty("line.separator");
+            assertEquals("b" + newLine + "c" + newLine + "d" + newLine, new String(baos.toByteArray()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testFollowFile() throws Exception {
+        final Path file = Files.createTempFile("tail", ".log");
+        try {
+            Files.write(file, "a\nb".getBytes(StandardCharsets.UTF_8));
+            final TailAction tail = new TailAction();
+            new DefaultActionPreparator().prepare(tail, null, Arrays.<Object>asList("-f", "-n", "1", "-s", "50"));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        tail.tail(file, new PrintStream(baos));
+                    } catch (Exception e) {
+                        // interrupted
+                    }
+                }
+            };
+            thread.start();
+            String newLine = System.getProperty("line.separator");
+            try {
+                // The unterminated last line is printed once it does not change
+                awaitOutput(baos, "b" + newLine);
+                Files.write(file, "c\nd".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                awaitOutput(baos, "b" + newLine + "c" + newLine + "d" + newLine);
+            } finally {
+                thread.interrupt();
+                thread.join(5000);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void awaitOutput(ByteArrayOutputStream baos, String expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!expected.equals(new String(baos.toByteArray())) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, new String(baos.toByteArray()));
+    }
+
+}
@@ -21,7 +21,6 @@ package org.apache.karaf.shell.impl.action.command;
 import java.util.List;
 
 import org.apache.karaf.shell.api.action.Action;
-import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Parsing;
 import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Completer;
@@ -32,10 +31,12 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
 
     private final ManagerImpl manager;
     private final Class<? extends Action> actionClass;
+    private final ActionMetadata metadata;
 
     public ActionCommand(ManagerImpl manager, Class<? extends Action> actionClass) {
         this.manager = manager;
         this.actionClass = actionClass;
+        this.metadata = manager.getMetadata(actionClass);
     }
 
     public Class<? extends Action> getActionClass() {
@@ -44,17 +45,17 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
 
     @Override
     public String getScope() {
-        return actionClass.getAnnotation(Command.class).scope();
+        return metadata.getCommand().scope();
     }
 
     @Override
     public String getName() {
-        return actionClass.getAnnotation(Command.class).name();
+        return metadata.getCommand().name();
     }
 
     @Override
     public String getDescription() {
-        return actionClass.getAnnotation(Command.class).description();
+        return metadata.getCommand().description();
     }
 
     @Override
@@ -79,7 +80,7 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
     public Object execute(Session session, List<Object> arguments) throws Exception {
         Action action = createNewAction(session);
         try {
-            if (new DefaultActionPreparator().prepare(action, session, arguments)) {
+            if (new DefaultActionPreparator().prepare(action, metadata, session, arguments)) {
                 return action.execute();
             }
         } finally {
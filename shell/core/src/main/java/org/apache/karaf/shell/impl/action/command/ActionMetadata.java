@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Destroy;
+import org.apache.karaf.shell.api.action.lifecycle.Init;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.converter.DefaultConverter;
+import org.apache.karaf.shell.support.converter.GenericType;
+
+/**
+ * Metadata of a class managed by the {@link ManagerImpl}, computed once
+ * when the class is registered so that creating, injecting and preparing
+ * an instance does not require to introspect the class again.
+ *
+ * For actions, this includes the option and argument tables along with
+ * the setters and converters used to inject their values.
+ */
+public class ActionMetadata {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<ActionMetadata> METADATA = new ClassValue<ActionMetadata>() {
+        @Override
+        protected ActionMetadata computeValue(Class<?> type) {
+            return new ActionMetadata(type);
+        }
+    };
+
+    private final Class<?> clazz;
+    private final boolean service;
+    private final MethodHandle constructor;
+    private final List<ReferenceInjector> references = new ArrayList<>();
+    private final List<MethodHandle> initMethods = new ArrayList<>();
+    private final List<MethodHandle> destroyMethods = new ArrayList<>();
+
+    private final Command command;
+    private final Map<Option, Field> options = new LinkedHashMap<>();
+    private final Map<String, Option> optionsByName = new HashMap<>();
+    private final Map<Argument, Field> arguments = new LinkedHashMap<>();
+    private final List<Argument> orderedArguments = new ArrayList<>();
+    private final Map<Field, FieldInjector> injectors = new HashMap<>();
+    private final RuntimeException error;
+
+    public ActionMetadata(Class<?> clazz) {
+        this.clazz = clazz;
+        this.service = clazz.getAnnotation(Service.class) != null;
+        this.command = clazz.getAnnotation(Command.class);
+        this.constructor = findConstructor(clazz);
+        DefaultConverter converter = new DefaultConverter(clazz.getClassLoader());
+        RuntimeException error = null;
+        for (Class<?> cl = clazz; cl != null && cl != Object.class; cl = cl.getSuperclass()) {
+            for (Field field : cl.getDeclaredFields()) {
+                Reference ref = field.getAnnotation(Reference.class);
+                if (ref != null) {
+                    references.add(new ReferenceInjector(field, ref));
+                }
+                if (!Action.class.isAssignableFrom(clazz)) {
+                    continue;
+                }
+                Option option = field.getAnnotation(Option.class);
+                if (option != null) {
+                    options.put(option, field);
+                    // Subclasses are processed first and win over their superclasses
+                    optionsByName.putIfAbsent(option.name(), option);
+                    for (String alias : option.aliases()) {
+                        optionsByName.putIfAbsent(alias, option);
+                    }
+                    injectors.put(field, new FieldInjector(field, converter));
+                }
+                Argument argument = field.getAnnotation(Argument.class);
+                if (argument != null) {
+                    argument = replaceDefaultArgument(field, argument);
+                    arguments.put(argument, field);
+                    injectors.put(field, new FieldInjector(field, converter));
+                    int index = argument.index();
+                    while (orderedArguments.size() <= index) {
+                        orderedArguments.add(null);
+                    }
+                    if (orderedArguments.get(index) != null && error == null) {
+                        error = new IllegalArgumentException("Duplicate argument index: " + index + " on Action " + clazz.getName());
+                    }
+                    orderedArguments.set(index, argument);
+                }
+            }
+        }
+        for (int i = 0; i < orderedArguments.size() && error == null; i++) {
+            if (orderedArguments.get(i) == null) {
+                error = new IllegalArgumentException("Missing argument for index: " + i + " on Action " + clazz.getName());
+            }
+        }
+        // Invalid actions can still be registered, the error is reported when executed
+        this.error = error;
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
+                if (method.getAnnotation(Init.class) != null) {
+                    initMethods.add(unreflect(method));
+                }
+                if (method.getAnnotation(Destroy.class) != null) {
+                    destroyMethods.add(unreflect(method));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the metadata of the given class, computed once per class.
+     */
+    public static ActionMetadata forClass(Class<?> clazz) {
+        return METADATA.get(clazz);
+    }
+
+    public Class<?> getType() {
+        return clazz;
+    }
+
+    public boolean isService() {
+        return service;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Check that the options and arguments of the action are consistent.
+     *
+     * @throws IllegalArgumentException if the argument indexes are invalid.
+     */
+    public void validate() {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public Map<Option, Field> getOptions() {
+        return Collections.unmodifiableMap(options);
+    }
+
+    public Option getOption(String name) {
+        return optionsByName.get(name);
+    }
+
+    public Map<Argument, Field> getArguments() {
+        return Collections.unmodifiableMap(arguments);
+    }
+
+    public List<Argument> getOrderedArguments() {
+        return Collections.unmodifiableList(orderedArguments);
+    }
+
+    public FieldInjector getInjector(Field field) {
+        return injectors.get(field);
+    }
+
+    public List<ReferenceInjector> getReferences() {
+        return Collections.unmodifiableList(references);
+    }
+
+    public Object newInstance() throws Exception {
+        if (constructor == null) {
+            return clazz.newInstance();
+        }
+        try {
+            return constructor.invoke();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    public void init(Object instance) throws Exception {
+        invokeAll(initMethods, instance);
+    }
+
+    public void destroy(Object instance) throws Exception {
+        invokeAll(destroyMethods, instance);
+    }
+
+    private static void invokeAll(List<MethodHandle> methods, Object instance) throws Exception {
+        for (MethodHandle method : methods) {
+            try {
+                method.invoke(instance);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> cons = clazz.getDeclaredConstructor();
+            if (Modifier.isAbstract(clazz.getModifiers())) {
+                return null;
+            }
+            cons.setAccessible(true);
+            return LOOKUP.unreflectConstructor(cons).asType(MethodType.methodType(Object.class));
+        } catch (Exception e) {
+            // Let Class.newInstance() report the problem
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method).asType(MethodType.methodType(void.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to access method " + method, e);
+        }
+    }
+
+    private static Argument replaceDefaultArgument(Field field, Argument argument) {
+        if (Argument.DEFAULT.equals(argument.name())) {
+            final Argument delegate = argument;
+            final String name = field.getName();
+            argument = new Argument() {
+                public String name() {
+                    return name;
+                }
+
+                public String description() {
+                    return delegate.description();
+                }
+
+                public boolean required() {
+                    return delegate.required();
+                }
+
+                public int index() {
+                    return delegate.index();
+                }
+
+                public boolean multiValued() {
+                    return delegate.multiValued();
+                }
+
+                public String valueToShowInHelp() {
+                    return delegate.valueToShowInHelp();
+                }
+
+                public Class<? extends Annotation> annotationType() {
+                    return delegate.annotationType();
+                }
+            };
+        }
+        return argument;
+    }
+
+    /**
+     * Converts and sets the value of a field.
+     */
+    public static class FieldInjector {
+
+        private final Field field;
+        private final Type type;
+        private final DefaultConverter converter;
+        private final MethodHandle setter;
+
+        FieldInjector(Field field, DefaultConverter converter) {
+            this.field = field;
+            this.type = field.getGenericType();
+            this.converter = type == String.class ? null : converter;
+            MethodHandle setter = null;
+            try {
+                field.setAccessible(true);
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    setter = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+                }
+            } catch (Exception e) {
+                // Fall back to reflection
+            }
+            this.setter = setter;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Object convert(Object value) throws Exception {
+            if (converter == null) {
+                return value != null ? value.toString() : null;
+            }
+            return converter.convert(value, type);
+        }
+
+        public void set(Object target, Object value) throws Exception {
+            if (setter == null || (value == null && field.getType().isPrimitive())) {
+                field.set(target, value);
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    /**
+     * Injects a {@link Reference} field.
+     */
+    public static class ReferenceInjector extends FieldInjector {
+
+        private final Reference reference;
+        private final Class<?> serviceType;
+        private final boolean list;
+
+        ReferenceInjector(Field field, Reference reference) {
+            super(field, null);
+            this.reference = reference;
+            GenericType type = new GenericType(field.getGenericType());
+            this.list = type.getRawClass() == List.class;
+            this.serviceType = list ? type.getActualTypeArgument(0).getRawClass() : type.getRawClass();
+        }
+
+        public Reference getReference() {
+            return reference;
+        }
+
+        public Class<?> getServiceType() {
+            return serviceType;
+        }
+
+        public boolean isList() {
+            return list;
+        }
+    }
+
+}
@@ -24,11 +24,9 @@ import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringWriter;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -57,36 +55,22 @@ import static org.apache.karaf.shell.support.ansi.SimpleAnsi.INTENSITY_NORMAL;
 
 public class DefaultActionPreparator {
 
-    public boolean prepare(Action action, Session session, List<Object> params) throws Exception {
-
-        Command command = action.getClass().getAnnotation(Command.class);
-        Map<Option, Field> options = new HashMap<Option, Field>();
-        Map<Argument, Field> arguments = new HashMap<Argument, Field>();
-        List<Argument> orderedArguments = new ArrayList<Argument>();
+    /**
+     * Whether a subclass overrides {@link #convert(Action, Object, Type)}, in which case
+     * it is used instead of the converters of the {@link ActionMetadata}.
+     */
+    private final boolean customConvert = isConvertOverridden(getClass());
 
-        for (Class<?> type = action.getClass(); type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    options.put(option, field);
-                }
+    public boolean prepare(Action action, Session session, List<Object> params) throws Exception {
+        return prepare(action, ActionMetadata.forClass(action.getClass()), session, params);
+    }
 
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    argument = replaceDefaultArgument(field, argument);
-                    arguments.put(argument, field);
-                    int index = argument.index();
-                    while (orderedArguments.size() <= index) {
-                        orderedArguments.add(null);
-                    }
-                    if (orderedArguments.get(index) != null) {
-                        throw new IllegalArgumentException("Duplicate argument index: " + index + " on Action " + action.getClass().getName());
-                    }
-                    orderedArguments.set(index, argument);
-                }
-            }
-        }
-        assertIndexesAreCorrect(action.getClass(), orderedArguments);
+    public boolean prepare(Action action, ActionMetadata metadata, Session session, List<Object> params) throws Exception {
+        metadata.validate();
+        Command command = metadata.getCommand();
+        Map<Option, Field> options = metadata.getOptions();
+        Map<Argument, Field> arguments = metadata.getArguments();
+        List<Argument> orderedArguments = metadata.getOrderedArguments();
 
         String commandErrorSt = COLOR_RED + "Error executing command " + command.scope() + ":" + INTENSITY_BOLD + command.name() + INTENSITY_NORMAL + COLOR_DEFAULT + ": ";
         for (Iterator<Object> it = params.iterator(); it.hasNext(); ) {
@@ -117,13 +101,7 @@ public class DefaultActionPreparator {
                 } else {
                     name = (String) param;
                 }
-                Option option = null;
-                for (Option opt : options.keySet()) {
-                    if (name.equals(opt.name()) || Arrays.asList(opt.aliases()).contains(name)) {
-                        option = opt;
-                        break;
-                    }
-                }
+                Option option = metadata.getOption(name);
                 if (option == null) {
                     throw new CommandException(commandErrorSt
                                 + "undefined option " + INTENSITY_BOLD + param + INTENSITY_NORMAL + "\n"
@@ -200,9 +178,10 @@ public class DefaultActionPreparator {
         // Convert and inject values
         for (Map.Entry<Option, Object> entry : optionValues.entrySet()) {
             Field field = options.get(entry.getKey());
+            ActionMetadata.FieldInjector injector = metadata.getInjector(field);
             Object value;
             try {
-                value = convert(action, entry.getValue(), field.getGenericType());
+                value = convert(action, injector, entry.getValue());
             } catch (Exception e) {
                     throw new CommandException(commandErrorSt +
                             "unable to convert option " + INTENSITY_BOLD + entry.getKey().name() + INTENSITY_NORMAL + " with value '"
@@ -212,14 +191,14 @@ public class DefaultActionPreparator {
                             e
                     );
             }
-            field.setAccessible(true);
-            field.set(action, value);
+            injector.set(action, value);
         }
         for (Map.Entry<Argument, Object> entry : argumentValues.entrySet()) {
             Field field = arguments.get(entry.getKey());
+            ActionMetadata.FieldInjector injector = metadata.getInjector(field);
             Object value;
             try {
-                value = convert(action, entry.getValue(), field.getGenericType());
+                value = convert(action, injector, entry.getValue());
             } catch (Exception e) {
                     throw new CommandException(commandErrorSt +
                             "unable to convert argument " + INTENSITY_BOLD + entry.getKey().name() + INTENSITY_NORMAL + " with value '"
@@ -229,12 +208,18 @@ public class DefaultActionPreparator {
                             e
                     );
             }
-            field.setAccessible(true);
-            field.set(action, value);
+            injector.set(action, value);
         }
         return true;
     }
 
+    private Object convert(Action action, ActionMetadata.FieldInjector injector, Object value) throws Exception {
+        if (customConvert) {
+            return convert(action, value, injector.getField().getGenericType());
+        }
+        return injector.convert(value);
+    }
+
     protected Object convert(Action action, Object value, Type toType) throws Exception {
         if (toType == String.class) {
             return value != null ? value.toString() : null;
@@ -242,49 +227,16 @@ public class DefaultActionPreparator {
         return new DefaultConverter(action.getClass().getClassLoader()).convert(value, toType);
     }
 
-    private Argument replaceDefaultArgument(Field field, Argument argument) {
-        if (Argument.DEFAULT.equals(argument.name())) {
-            final Argument delegate = argument;
-            final String name = field.getName();
-            argument = new Argument() {
-                public String name() {
-                    return name;
-                }
-
-                public String description() {
-                    return delegate.description();
-                }
-
-                public boolean required() {
-                    return delegate.required();
-                }
-
-                public int index() {
-                    return delegate.index();
-                }
-
-                public boolean multiValued() {
-                    return delegate.multiValued();
-                }
-
-                public String valueToShowInHelp() {
-                    return delegate.valueToShowInHelp();
-                }
-
-                public Class<? extends Annotation> annotationType() {
-                    return delegate.annotationType();
-                }
-            };
-        }
-        return argument;
-    }
-
-    private void assertIndexesAreCorrect(Class<? extends Action> actionClass, List<Argument> orderedArguments) {
-        for (int i = 0; i < orderedArguments.size(); i++) {
-            if (orderedArguments.get(i) == null) {
-                throw new IllegalArgumentException("Missing argument for index: " + i + " on Action " + actionClass.getName());
+    private static boolean isConvertOverridden(Class<?> clazz) {
+        for (Class<?> cl = clazz; cl != DefaultActionPreparator.class; cl = cl.getSuperclass()) {
+            try {
+                cl.getDeclaredMethod("convert", Action.class, Object.class, Type.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not overridden at this level
             }
         }
+        return false;
     }
 
     public void printUsage(Action action, Map<Option, Field> options, Map<Argument, Field> arguments, PrintStream out, boolean globalScope, int termWidth) {
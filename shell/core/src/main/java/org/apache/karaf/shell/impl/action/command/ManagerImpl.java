@@ -18,32 +18,27 @@
  */
 package org.apache.karaf.shell.impl.action.command;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
-import org.apache.karaf.shell.api.action.lifecycle.Destroy;
-import org.apache.karaf.shell.api.action.lifecycle.Init;
 import org.apache.karaf.shell.api.action.lifecycle.Manager;
-import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.apache.karaf.shell.api.console.Completer;
 import org.apache.karaf.shell.api.console.Parser;
 import org.apache.karaf.shell.api.console.Registry;
-import org.apache.karaf.shell.support.converter.GenericType;
 
 public class ManagerImpl implements Manager {
 
     private final Registry dependencies;
     private final Registry registrations;
     private final Map<Class<?>, Object> instances = new HashMap<Class<?>, Object>();
+    private final Map<Class<?>, ActionMetadata> metadata = new ConcurrentHashMap<Class<?>, ActionMetadata>();
     private final boolean allowCustomServices;
 
     public ManagerImpl(Registry dependencies, Registry registrations) {
@@ -61,66 +56,52 @@ public class ManagerImpl implements Manager {
     }
 
     public <T> T instantiate(Class<? extends T> clazz, Registry registry) throws Exception {
-        if (!allowCustomServices) {
-            Service reg = clazz.getAnnotation(Service.class);
-            if (reg == null) {
-                throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
-            }
+        ActionMetadata metadata = getMetadata(clazz);
+        if (!allowCustomServices && !metadata.isService()) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
         }
-        T instance = clazz.newInstance();
+        @SuppressWarnings("unchecked")
+        T instance = (T) metadata.newInstance();
         // Inject services
-        for (Class<?> cl = clazz; cl != Object.class; cl = cl.getSuperclass()) {
-            for (Field field : cl.getDeclaredFields()) {
-                Reference ref = field.getAnnotation(Reference.class);
-                if (ref != null) {
-                    GenericType type = new GenericType(field.getGenericType());
-                    Object value;
-                    if (type.getRawClass() == List.class) {
-                        Set<Object> set = new HashSet<Object>();
-                        set.addAll(registry.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        if (registry != this.dependencies) {
-                            set.addAll(this.dependencies.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        }
-                        value = new ArrayList<Object>(set);
-                    } else {
-                        value = registry.getService(type.getRawClass());
-                        if (value == null && registry != this.dependencies) {
-                            value = this.dependencies.getService(type.getRawClass());
-                        }
-                    }
-                    if (!allowCustomServices && value == null && !ref.optional()) {
-                        throw new IllegalStateException("No service matching " + field.getType().getName());
-                    }
-                    field.setAccessible(true);
-                    field.set(instance, value);
+        for (ActionMetadata.ReferenceInjector ref : metadata.getReferences()) {
+            Object value;
+            if (ref.isList()) {
+                Set<Object> set = new HashSet<Object>();
+                set.addAll(registry.getServices(ref.getServiceType()));
+                if (registry != this.dependencies) {
+                    set.addAll(this.dependencies.getServices(ref.getServiceType()));
+                }
+                value = new ArrayList<Object>(set);
+            } else {
+                value = registry.getService(ref.getServiceType());
+                if (value == null && registry != this.dependencies) {
+                    value = this.dependencies.getService(ref.getServiceType());
                 }
             }
-        }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Init ann = method.getAnnotation(Init.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
+            if (!allowCustomServices && value == null && !ref.getReference().optional()) {
+                throw new IllegalStateException("No service matching " + ref.getField().getType().getName());
             }
+            ref.set(instance, value);
         }
+        metadata.init(instance);
         return instance;
     }
 
     public void release(Object instance) throws Exception {
-        Class<?> clazz = instance.getClass();
-        if (!allowCustomServices) {
-            Service reg = clazz.getAnnotation(Service.class);
-            if (reg == null) {
-                throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
-            }
-        }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Destroy ann = method.getAnnotation(Destroy.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
-            }
+        ActionMetadata metadata = getMetadata(instance.getClass());
+        if (!allowCustomServices && !metadata.isService()) {
+            throw new IllegalArgumentException("Class " + instance.getClass().getName() + " is not annotated with @Service");
         }
+        metadata.destroy(instance);
+    }
+
+    /**
+     * Get the metadata for the given class.  The metadata of registered
+     * classes is computed once at registration time.
+     */
+    public ActionMetadata getMetadata(Class<?> clazz) {
+        ActionMetadata md = metadata.get(clazz);
+        return md != null ? md : ActionMetadata.forClass(clazz);
     }
 
     @Override
@@ -131,6 +112,7 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
             }
         }
+        metadata.put(clazz, ActionMetadata.forClass(clazz));
         if (Action.class.isAssignableFrom(clazz)) {
             final Command cmd = clazz.getAnnotation(Command.class);
             if (cmd == null) {
@@ -176,5 +158,6 @@ public class ManagerImpl implements Manager {
                 }
             }
         }
+        metadata.remove(clazz);
     }
 }
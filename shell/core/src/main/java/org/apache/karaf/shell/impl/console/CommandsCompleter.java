@@ -23,16 +23,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.karaf.shell.api.console.Command;
 import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Registry;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
 import org.apache.karaf.shell.support.completers.AggregateCompleter;
@@ -45,25 +44,23 @@ import org.apache.karaf.shell.support.completers.StringsCompleter;
 public class CommandsCompleter extends org.apache.karaf.shell.support.completers.CommandsCompleter {
 
     private final SessionFactory factory;
-    private final Map<String, Completer> globalCompleters = new HashMap<String, Completer>();
-    private final Map<String, Completer> localCompleters = new HashMap<String, Completer>();
     private final Completer aliasesCompleter = new SimpleCommandCompleter() {
         @Override
         protected Collection<String> getNames(Session session) {
             return getAliases(session);
         }
     };
-    private final List<Command> commands = new ArrayList<Command>();
+    private volatile CommandsIndex index;
 
     public CommandsCompleter(SessionFactory factory) {
         this.factory = factory;
     }
 
     public int complete(Session session, CommandLine commandLine, List<String> candidates) {
-        Map<String, Completer>[] allCompleters = checkData();
+        CommandsIndex index = checkData();
 
-        List<String> scopes = getCurrentScopes(session);
-        sort(allCompleters, scopes);
+        ScopeComparator comparator = new ScopeComparator(getCurrentScopes(session));
+        String prefix = getCommandPrefix(commandLine);
 
         String subShell = getCurrentSubShell(session);
         String completion = getCompletionType(session);
@@ -73,12 +70,7 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
             if (subShell.isEmpty()) {
                 subShell = Session.SCOPE_GLOBAL;
             }
-            List<Completer> completers = new ArrayList<Completer>();
-            for (String name : allCompleters[1].keySet()) {
-                if (name.startsWith(subShell + ":")) {
-                    completers.add(allCompleters[1].get(name));
-                }
-            }
+            List<Completer> completers = getCompleters(index.getLocalCompleters(), index.getLocalKeys(subShell, prefix), comparator);
             if (!subShell.equals(Session.SCOPE_GLOBAL)) {
                 completers.add(new StringsCompleter(new String[] { "exit" }));
             }
@@ -90,12 +82,7 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
         // FIRST mode
         if (Session.COMPLETION_MODE_FIRST.equalsIgnoreCase(completion)) {
             if (!subShell.isEmpty()) {
-                List<Completer> completers = new ArrayList<Completer>();
-                for (String name : allCompleters[1].keySet()) {
-                    if (name.startsWith(subShell + ":")) {
-                        completers.add(allCompleters[1].get(name));
-                    }
-                }
+                List<Completer> completers = getCompleters(index.getLocalCompleters(), index.getLocalKeys(subShell, prefix), comparator);
                 int res = new AggregateCompleter(completers).complete(session, commandLine, candidates);
                 if (!candidates.isEmpty()) {
                     Collections.sort(candidates);
@@ -104,7 +91,7 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
             }
             List<Completer> compl = new ArrayList<Completer>();
             compl.add(aliasesCompleter);
-            compl.addAll(allCompleters[0].values());
+            compl.addAll(getCompleters(index.getGlobalCompleters(), index.getGlobalKeys(prefix), comparator));
             int res = new AggregateCompleter(compl).complete(session, commandLine, candidates);
             Collections.sort(candidates);
             return res;
@@ -112,21 +99,38 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
 
         List<Completer> compl = new ArrayList<Completer>();
         compl.add(aliasesCompleter);
-        compl.addAll(allCompleters[0].values());
+        compl.addAll(getCompleters(index.getGlobalCompleters(), index.getGlobalKeys(prefix), comparator));
         int res = new AggregateCompleter(compl).complete(session, commandLine, candidates);
         Collections.sort(candidates);
         return res;
     }
 
-    protected void sort(Map<String, Completer>[] completers, List<String> scopes) {
-        ScopeComparator comparator = new ScopeComparator(scopes);
-        for (int i = 0; i < completers.length; i++) {
-            Map<String, Completer> map = new TreeMap<String, Completer>(comparator);
-            map.putAll(completers[i]);
-            completers[i] = map;
+    /**
+     * Get the part of the command name a completer must match: the command
+     * name up to the cursor when completing the command name, or the whole
+     * command name when completing its arguments.
+     */
+    protected String getCommandPrefix(CommandLine commandLine) {
+        String[] args = commandLine.getArguments();
+        int argIndex = commandLine.getCursorArgumentIndex();
+        if (args == null || args.length == 0) {
+            return "";
+        } else if (argIndex == 0) {
+            return args[0].substring(0, Math.min(commandLine.getArgumentPosition(), args[0].length()));
+        } else {
+            return args[0];
         }
     }
 
+    private List<Completer> getCompleters(Map<String, Completer> completers, List<String> keys, ScopeComparator comparator) {
+        Collections.sort(keys, comparator);
+        List<Completer> result = new ArrayList<Completer>(keys.size() + 1);
+        for (String key : keys) {
+            result.add(completers.get(key));
+        }
+        return result;
+    }
+
     protected static class ScopeComparator implements Comparator<String> {
         private final List<String> scopes;
         public ScopeComparator(List<String> scopes) {
@@ -191,55 +195,39 @@ public class CommandsCompleter extends org.apache.karaf.shell.support.completers
         return index > 0 ? name.substring(index + 1) : name;
     }
 
-    @SuppressWarnings("unchecked")
-    protected Map<String, Completer>[] checkData() {
-        // Copy the set to avoid concurrent modification exceptions
-        // TODO: fix that in gogo instead
-        Collection<Command> commands;
-        boolean update;
-        synchronized (this) {
-            commands = factory.getRegistry().getCommands();
-            update = !commands.equals(this.commands);
+    /**
+     * Get the completion index for the current commands.
+     *
+     * When the registry is versioned, the index is only rebuilt when the
+     * registry changes, and the index built by a session is reused by the
+     * others if they see the same commands.  Otherwise, the commands are
+     * compared with the ones of the last index.
+     */
+    CommandsIndex checkData() {
+        Registry registry = factory.getRegistry();
+        long version = registry instanceof RegistryImpl ? ((RegistryImpl) registry).getVersion() : -1;
+        CommandsIndex index = this.index;
+        if (version >= 0 && index != null && index.getVersion() == version) {
+            return index;
         }
-        if (update) {
-            // get command aliases
-            Map<String, Completer> global = new HashMap<String, Completer>();
-            Map<String, Completer> local = new HashMap<String, Completer>();
-
-            // add argument completers for each command
-            for (Command command : commands) {
-                String key = command.getScope() + ":" + command.getName();
-                Completer cg = command.getCompleter(false);
-                Completer cl = command.getCompleter(true);
-                if (cg == null) {
-                    if (Session.SCOPE_GLOBAL.equals(command.getScope())) {
-                        cg = new FixedSimpleCommandCompleter(Arrays.asList(command.getName()));
-                    } else {
-                        cg = new FixedSimpleCommandCompleter(Arrays.asList(key, command.getName()));
-                    }
-                }
-                if (cl == null) {
-                    cl = new FixedSimpleCommandCompleter(Arrays.asList(command.getName()));
-                }
-                global.put(key, cg);
-                local.put(key, cl);
-            }
-
-            synchronized (this) {
-                this.commands.clear();
-                this.globalCompleters.clear();
-                this.localCompleters.clear();
-                this.commands.addAll(commands);
-                this.globalCompleters.putAll(global);
-                this.localCompleters.putAll(local);
+        // The version is read before the commands, so that a concurrent change
+        // results in a stale version, and the index being rebuilt on next use
+        List<Command> commands = registry.getCommands();
+        SessionFactoryImpl shared = factory instanceof SessionFactoryImpl ? (SessionFactoryImpl) factory : null;
+        if (index == null || !index.getCommands().equals(commands)) {
+            index = shared != null ? shared.getCommandsIndex() : null;
+            if (index == null || !index.getCommands().equals(commands)) {
+                index = new CommandsIndex(version, commands);
             }
         }
-        synchronized (this) {
-            return new Map[] {
-                    new HashMap<String, Completer>(this.globalCompleters),
-                    new HashMap<String, Completer>(this.localCompleters)
-            };
+        if (index.getVersion() != version) {
+            index = index.withVersion(version);
+        }
+        if (shared != null && version >= 0) {
+            shared.setCommandsIndex(index);
         }
+        this.index = index;
+        return index;
     }
 
     /**
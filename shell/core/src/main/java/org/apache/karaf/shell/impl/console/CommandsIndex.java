@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Session;
+
+/**
+ * Immutable snapshot of the command completers, indexed by command name.
+ *
+ * The global completers are indexed by the names they complete (the command
+ * name, and the qualified name for scoped commands), kept sorted so that the
+ * completers matching a prefix are found with a binary search.  The local
+ * completers are indexed by scope.
+ *
+ * A snapshot is built for a given version of the registry and can be shared
+ * by any number of sessions without locking.
+ */
+final class CommandsIndex {
+
+    private final long version;
+    private final List<Command> commands;
+    private final Map<String, Completer> globalCompleters;
+    private final Map<String, Completer> localCompleters;
+    private final String[] names;
+    private final String[][] keys;
+    private final Map<String, List<String>> scopes;
+
+    CommandsIndex(long version, Collection<Command> commands) {
+        this.version = version;
+        this.commands = Collections.unmodifiableList(new ArrayList<Command>(commands));
+
+        Map<String, Completer> global = new HashMap<String, Completer>();
+        Map<String, Completer> local = new HashMap<String, Completer>();
+        TreeMap<String, List<String>> byName = new TreeMap<String, List<String>>();
+        Map<String, List<String>> byScope = new HashMap<String, List<String>>();
+        for (Command command : commands) {
+            String key = command.getScope() + ":" + command.getName();
+            Completer cg = command.getCompleter(false);
+            Completer cl = command.getCompleter(true);
+            if (cg == null) {
+                if (Session.SCOPE_GLOBAL.equals(command.getScope())) {
+                    cg = new CommandsCompleter.FixedSimpleCommandCompleter(Arrays.asList(command.getName()));
+                } else {
+                    cg = new CommandsCompleter.FixedSimpleCommandCompleter(Arrays.asList(key, command.getName()));
+                }
+            }
+            if (cl == null) {
+                cl = new CommandsCompleter.FixedSimpleCommandCompleter(Arrays.asList(command.getName()));
+            }
+            global.put(key, cg);
+            local.put(key, cl);
+
+            add(byName, command.getName(), key);
+            if (!Session.SCOPE_GLOBAL.equals(command.getScope())) {
+                add(byName, key, key);
+            }
+            add(byScope, command.getScope(), key);
+        }
+        this.globalCompleters = Collections.unmodifiableMap(global);
+        this.localCompleters = Collections.unmodifiableMap(local);
+        this.names = byName.keySet().toArray(new String[byName.size()]);
+        this.keys = new String[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            List<String> k = byName.get(names[i]);
+            keys[i] = k.toArray(new String[k.size()]);
+        }
+        this.scopes = byScope;
+    }
+
+    private CommandsIndex(long version, CommandsIndex index) {
+        this.version = version;
+        this.commands = index.commands;
+        this.globalCompleters = index.globalCompleters;
+        this.localCompleters = index.localCompleters;
+        this.names = index.names;
+        this.keys = index.keys;
+        this.scopes = index.scopes;
+    }
+
+    /**
+     * Get a copy of this index for another version of the registry with the same commands.
+     */
+    CommandsIndex withVersion(long version) {
+        return new CommandsIndex(version, this);
+    }
+
+    private static void add(Map<String, List<String>> map, String name, String key) {
+        List<String> list = map.get(name);
+        if (list == null) {
+            list = new ArrayList<String>(1);
+            map.put(name, list);
+        }
+        if (!list.contains(key)) {
+            list.add(key);
+        }
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    List<Command> getCommands() {
+        return commands;
+    }
+
+    Map<String, Completer> getGlobalCompleters() {
+        return globalCompleters;
+    }
+
+    Map<String, Completer> getLocalCompleters() {
+        return localCompleters;
+    }
+
+    /**
+     * Get the keys (<code>scope:name</code>) of the commands having a name
+     * or a qualified name starting with the given prefix.
+     */
+    List<String> getGlobalKeys(String prefix) {
+        Set<String> result = new LinkedHashSet<String>();
+        int index = Arrays.binarySearch(names, prefix);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (; index < names.length && names[index].startsWith(prefix); index++) {
+            result.addAll(Arrays.asList(keys[index]));
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /**
+     * Get the keys (<code>scope:name</code>) of the commands of the given
+     * scope having a name starting with the given prefix.
+     */
+    List<String> getLocalKeys(String scope, String prefix) {
+        List<String> result = new ArrayList<String>();
+        List<String> keys = scopes.get(scope);
+        if (keys != null) {
+            int offset = scope.length() + 1;
+            for (String key : keys) {
+                if (key.startsWith(prefix, offset)) {
+                    result.add(key);
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.karaf.shell.impl.console;
 
+import java.io.ByteArrayInputStream;
 import java.io.CharArrayWriter;
 import java.io.Closeable;
 import java.io.File;
@@ -26,14 +27,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +58,7 @@ import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
 import org.apache.karaf.shell.api.console.Terminal;
 import org.apache.karaf.shell.impl.console.parsing.CommandLineParser;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
 import org.apache.karaf.shell.support.ShellUtil;
 import org.apache.karaf.shell.support.completers.FileCompleter;
 import org.apache.karaf.shell.support.completers.FileOrUriCompleter;
@@ -70,11 +75,14 @@ public class ConsoleSessionImpl implements Session {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConsoleSessionImpl.class);
 
+    private static final int PIPE_BUFFER_SIZE = 8192;
+
     // Input stream
-    final BlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(1024);
+    final InputBuffer buffer = new InputBuffer(PIPE_BUFFER_SIZE);
     final ConsoleInputStream console = new ConsoleInputStream();
     final Pipe pipe = new Pipe();
     volatile boolean running;
+    volatile boolean closed;
     volatile boolean eof;
 
     final SessionFactory factory;
@@ -218,9 +226,10 @@ public class ConsoleSessionImpl implements Session {
     }
 
     public void close() {
-        if (!running) {
+        if (closed) {
             return;
         }
+        closed = true;
         out.println();
         if (reader.getHistory() instanceof PersistentHistory) {
             try {
@@ -230,8 +239,9 @@ public class ConsoleSessionImpl implements Session {
             }
         }
         running = false;
+        buffer.wakeUp();
         pipe.interrupt();
-        if (thread != Thread.currentThread()) {
+        if (thread != null && thread != Thread.currentThread()) {
             thread.interrupt();
         }
         reader.shutdown();
@@ -253,8 +263,8 @@ public class ConsoleSessionImpl implements Session {
         try {
             threadIO.setStreams(session.getKeyboard(), out, err);
             thread = Thread.currentThread();
-            running = true;
-            pipe.start();
+            running = !closed;
+            startPipe();
             Properties brandingProps = Branding.loadBrandingProperties(terminal);
             welcome(brandingProps);
             setSessionProperties(brandingProps);
@@ -290,9 +300,24 @@ public class ConsoleSessionImpl implements Session {
         }
     }
 
+    private void startPipe() {
+        if (isInterruptible(in)) {
+            try {
+                SessionExecutor.getInstance().execute(pipe, "Karaf shell pipe thread");
+                return;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Unable to run the pipe on the session executor, using a dedicated thread", e);
+            }
+        }
+        // A blocked read on a non interruptible stream outlives the session, do not hold a shared thread
+        Thread pipeThread = new Thread(pipe, "Karaf shell pipe thread");
+        pipeThread.setDaemon(true);
+        pipeThread.start();
+    }
+
     @Override
     public Object execute(CharSequence commandline) throws Exception {
-        String command = CommandLineParser.parse(this, commandline.toString());
+        String command = CommandLineParser.parse(this, commandline);
         return session.execute(command);
     }
 
@@ -499,34 +524,12 @@ public class ConsoleSessionImpl implements Session {
     }
 
     private class ConsoleInputStream extends InputStream {
-        private int read(boolean wait) throws IOException {
-            if (!running) {
-                return -1;
-            }
-            checkInterrupt();
-            if (eof && queue.isEmpty()) {
-                return -1;
-            }
-            Integer i;
-            if (wait) {
-                try {
-                    i = queue.take();
-                } catch (InterruptedException e) {
-                    throw new InterruptedIOException();
-                }
-                checkInterrupt();
-            } else {
-                i = queue.poll();
-            }
-            if (i == null) {
-                return -1;
-            }
-            return i;
-        }
 
         @Override
         public int read() throws IOException {
-            return read(true);
+            byte[] b = new byte[1];
+            int nb = read(b, 0, 1);
+            return nb < 0 ? -1 : b[0] & 0xFF;
         }
 
         @Override
@@ -538,72 +541,194 @@ public class ConsoleSessionImpl implements Session {
             } else if (len == 0) {
                 return 0;
             }
-
-            int nb = 1;
-            int i = read(true);
-            if (i < 0) {
+            if (!running) {
                 return -1;
             }
-            b[off++] = (byte) i;
-            while (nb < len) {
-                i = read(false);
-                if (i < 0) {
-                    return nb;
-                }
-                b[off++] = (byte) i;
-                nb++;
+            checkInterrupt();
+            int nb;
+            try {
+                nb = buffer.read(b, off, len);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
             }
+            checkInterrupt();
             return nb;
         }
 
         @Override
         public int available() throws IOException {
-            return queue.size();
+            return buffer.available();
         }
     }
 
-    private class Pipe extends Thread {
-        public Pipe() {
-            super("Karaf shell pipe thread");
-            setDaemon(true);
+    /**
+     * Bounded byte buffer between the pipe and the console input stream.
+     */
+    private class InputBuffer {
+        private final byte[] data;
+        private int start;
+        private int count;
+
+        InputBuffer(int size) {
+            data = new byte[size];
         }
 
+        synchronized void write(byte[] b, int off, int len) throws InterruptedException {
+            while (len > 0) {
+                while (count == data.length && running) {
+                    wait();
+                }
+                if (!running) {
+                    return;
+                }
+                int end = (start + count) % data.length;
+                int nb = Math.min(len, Math.min(data.length - count, data.length - end));
+                System.arraycopy(b, off, data, end, nb);
+                count += nb;
+                off += nb;
+                len -= nb;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for some data to be available and read as much as possible.
+         *
+         * @return the number of bytes read or <code>-1</code> if the pipe is closed and empty.
+         */
+        synchronized int read(byte[] b, int off, int len) throws InterruptedException {
+            while (count == 0 && !eof && running) {
+                wait();
+            }
+            if (count == 0) {
+                return -1;
+            }
+            int nb = 0;
+            while (nb < len && count > 0) {
+                int n = Math.min(len - nb, Math.min(count, data.length - start));
+                System.arraycopy(data, start, b, off + nb, n);
+                start = (start + n) % data.length;
+                count -= n;
+                nb += n;
+            }
+            notifyAll();
+            return nb;
+        }
+
+        synchronized int available() {
+            return count;
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Streams, not available to this bundle, whose blocked reads return when the reading thread is interrupted.
+     */
+    private static final Set<String> INTERRUPTIBLE_STREAMS = new HashSet<>(Arrays.asList(
+            "org.apache.sshd.common.channel.ChannelPipedInputStream"
+    ));
+
+    /**
+     * Whether a blocked read on the given stream returns when the reading thread is interrupted.
+     * Only the streams known to be interruptible are accepted: the SSH channels, the piped and
+     * the in memory streams.  Reads on other streams, such as the process standard input or the
+     * native console streams, may ignore interrupts.
+     */
+    private static boolean isInterruptible(InputStream in) {
+        return in instanceof PipedInputStream
+                || in instanceof ByteArrayInputStream
+                || INTERRUPTIBLE_STREAMS.contains(in.getClass().getName());
+    }
+
+    /**
+     * Pumps the session input stream into the input buffer.
+     *
+     * Data is read by chunks using blocking reads, which are interrupted
+     * when the session is closed.  Control characters are handled here
+     * so that commands can be interrupted while they do not read the input.
+     * For streams known to be interruptible, the pipe runs on the
+     * {@link SessionExecutor}, so the thread is only interrupted while it
+     * is running the pipe.
+     *
+     * Reads on other streams, such as the process standard input, may ignore
+     * interrupts: for such streams the pipe runs on its own daemon thread,
+     * which stays blocked after the session is closed until the next input
+     * or the end of the stream, and then exits, discarding that input.
+     */
+    private class Pipe implements Runnable {
+
+        private Thread thread;
+        private boolean interrupted;
+
         public void run() {
-            boolean useAvailable = !System.getProperty("os.name").toLowerCase().contains("windows");
+            synchronized (this) {
+                if (interrupted) {
+                    eof = true;
+                    buffer.wakeUp();
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            byte[] buf = new byte[PIPE_BUFFER_SIZE];
             try {
                 while (running) {
-                    try {
-                        while (useAvailable && in.available() == 0) {
-                            if (!running) {
-                                return;
-                            }
-                            Thread.sleep(50);
-                        }
-                        int c = in.read();
-                        if (c == -1) {
-                            return;
-                        } else if (c == 4 && !ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS)) {
-                            err.print("^D");
-                            err.flush();
-                            ConsoleSessionImpl.this.interrupt();
-                            return;
-                        } else if (c == 3 && !ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS)) {
-                            err.println("^C");
-                            reader.getCursorBuffer().clear();
-                            ConsoleSessionImpl.this.interrupt();
-                        }
-                        queue.put(c);
-                    } catch (Throwable t) {
+                    int nb = in.read(buf);
+                    if (nb < 0 || !running) {
+                        return;
+                    }
+                    if (!process(buf, nb)) {
                         return;
                     }
                 }
+            } catch (Throwable t) {
+                // Ignore, the session is closing or the stream is broken
             } finally {
+                synchronized (this) {
+                    thread = null;
+                    // Clear a pending interrupt before returning the thread
+                    Thread.interrupted();
+                }
                 eof = true;
-                try {
-                    queue.put(-1);
-                } catch (InterruptedException e) {
+                buffer.wakeUp();
+            }
+        }
+
+        public synchronized void interrupt() {
+            interrupted = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private boolean process(byte[] buf, int len) throws InterruptedException {
+            int from = 0;
+            for (int i = 0; i < len; i++) {
+                int c = buf[i];
+                if (c != 3 && c != 4) {
+                    continue;
+                }
+                if (ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS)) {
+                    continue;
+                }
+                if (c == 4) {
+                    buffer.write(buf, from, i - from);
+                    err.print("^D");
+                    err.flush();
+                    ConsoleSessionImpl.this.interrupt();
+                    return false;
+                } else {
+                    buffer.write(buf, from, i - from);
+                    from = i;
+                    err.println("^C");
+                    reader.getCursorBuffer().clear();
+                    ConsoleSessionImpl.this.interrupt();
                 }
             }
+            buffer.write(buf, from, len - from);
+            return true;
         }
     }
 
@@ -86,7 +86,7 @@ public class HeadlessSessionImpl implements Session {
 
     @Override
     public Object execute(CharSequence commandline) throws Exception {
-        String command = CommandLineParser.parse(this, commandline.toString());
+        String command = CommandLineParser.parse(this, commandline);
         return session.execute(command);
     }
 
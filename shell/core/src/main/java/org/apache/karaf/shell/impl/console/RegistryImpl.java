@@ -33,6 +33,7 @@ public class RegistryImpl implements Registry {
     protected final Registry parent;
     protected final Map<Object, Object> services = new LinkedHashMap<Object, Object>();
     private final Map<String, List<Command>> commands = new HashMap<String, List<Command>>();
+    private volatile long version;
 
     public RegistryImpl(Registry parent) {
         this.parent = parent;
@@ -64,6 +65,7 @@ public class RegistryImpl implements Registry {
     public <T> void register(Callable<T> factory, Class<T> clazz) {
         synchronized (services) {
             services.put(factory, new Factory<T>(clazz, factory));
+            modified();
         }
     }
 
@@ -81,6 +83,7 @@ public class RegistryImpl implements Registry {
                 }
                 cmds.add(cmd);
             }
+            modified();
         }
     }
 
@@ -99,6 +102,7 @@ public class RegistryImpl implements Registry {
                     }
                 }
             }
+            modified();
         }
     }
 
@@ -184,6 +188,33 @@ public class RegistryImpl implements Registry {
         return true;
     }
 
+    /**
+     * Signal a change of the registered services or of their visibility.
+     */
+    protected void modified() {
+        synchronized (services) {
+            version++;
+        }
+    }
+
+    /**
+     * Get the version of this registry, which changes each time a service
+     * is registered or unregistered, so that data derived from the services
+     * can be cached until the next change.
+     *
+     * @return the version, or <code>-1</code> if the parent registry is not versioned.
+     */
+    public long getVersion() {
+        if (parent == null) {
+            return version;
+        } else if (parent instanceof RegistryImpl) {
+            long parentVersion = ((RegistryImpl) parent).getVersion();
+            return parentVersion >= 0 ? parentVersion + version : -1;
+        } else {
+            return -1;
+        }
+    }
+
     static class Factory<T> {
 
         final Class<T> clazz;
@@ -43,6 +43,7 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
     final ThreadIO threadIO;
     final Map<String, SubShellCommand> subshells = new HashMap<String, SubShellCommand>();
     boolean closed;
+    private volatile CommandsIndex commandsIndex;
 
     public SessionFactoryImpl(ThreadIO threadIO) {
         super(null);
@@ -61,6 +62,17 @@ public class SessionFactoryImpl extends RegistryImpl implements SessionFactory,
         return this;
     }
 
+    /**
+     * The last completion index built, shared by the sessions.
+     */
+    CommandsIndex getCommandsIndex() {
+        return commandsIndex;
+    }
+
+    void setCommandsIndex(CommandsIndex commandsIndex) {
+        this.commandsIndex = commandsIndex;
+    }
+
     @Override
     public void register(Object service) {
         synchronized (services) {
@@ -198,12 +198,15 @@ public class SecuredSessionFactoryImpl extends SessionFactoryImpl implements Con
         synchronized (scopes) {
             scopes.put(scope, config.getProperties());
         }
+        // the visibility of the commands may have changed
+        modified();
     }
 
     private void removeScopeConfig(String scope) {
         synchronized (scopes) {
             scopes.remove(scope);
         }
+        modified();
     }
 
     private Dictionary<String, Object> getScopeConfig(String scope) {
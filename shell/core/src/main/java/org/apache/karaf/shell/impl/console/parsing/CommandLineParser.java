@@ -18,14 +18,18 @@
  */
 package org.apache.karaf.shell.impl.console.parsing;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.karaf.shell.api.console.Command;
 import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Parser;
+import org.apache.karaf.shell.api.console.Registry;
 import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.impl.console.RegistryImpl;
 import org.apache.karaf.shell.support.parsing.DefaultParser;
 import org.apache.karaf.shell.support.parsing.GogoParser;
+import org.apache.karaf.shell.support.parsing.Script;
 
 public class CommandLineParser {
 
@@ -71,6 +75,26 @@ public class CommandLineParser {
         }
     }
 
+    /**
+     * Parse a command line, reusing the parsed form of a {@link Script} if it
+     * has been parsed with the same scope and version of the registry.
+     */
+    public static String parse(Session session, CharSequence commandline) {
+        Registry registry = session.getRegistry();
+        long version = registry instanceof RegistryImpl ? ((RegistryImpl) registry).getVersion() : -1;
+        if (!(commandline instanceof Script) || version < 0) {
+            return parse(session, commandline.toString());
+        }
+        Script script = (Script) commandline;
+        Object context = Arrays.asList(session.get(Session.SCOPE), version);
+        String parsed = script.getParsed(context);
+        if (parsed == null) {
+            parsed = parse(session, script.toString());
+            script.setParsed(context, parsed);
+        }
+        return parsed;
+    }
+
     public static String parse(Session session, String command) {
         StringBuilder parsed = new StringBuilder();
         int pos = 0;
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.executor;
+
+import java.lang.reflect.Method;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the shell sessions and their helper tasks (such as input pipes).
+ *
+ * Sessions run on virtual threads when the JVM supports them, or on a shared
+ * pool of daemon threads otherwise.  The execution model can be forced using the
+ * <code>karaf.shell.executor</code> system property (<code>virtual</code> or <code>pool</code>)
+ * and the size of the pool limited using <code>karaf.shell.executor.maxThreads</code>
+ * (unlimited by default, idle threads being reused).
+ * When the pool is exhausted, sessions and tasks run on a dedicated thread rather
+ * than being queued, as a queued session would never be able to read its input.
+ *
+ * The security context and the context class loader of the caller are propagated
+ * to the task, as they would be to a newly created thread.
+ */
+public final class SessionExecutor {
+
+    public static final String EXECUTOR_MODE = "karaf.shell.executor";
+    public static final String EXECUTOR_MAX_THREADS = "karaf.shell.executor.maxThreads";
+
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_POOL = "pool";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionExecutor.class);
+
+    private static final SessionExecutor INSTANCE = new SessionExecutor(
+            System.getProperty(EXECUTOR_MODE),
+            Integer.getInteger(EXECUTOR_MAX_THREADS, 0));
+
+    private final Method startVirtualThread;
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final AtomicLong startedSessions = new AtomicLong();
+    private final AtomicLong overflowThreads = new AtomicLong();
+    private final AtomicLong totalQueueingDelay = new AtomicLong();
+    private final AtomicLong maxQueueingDelay = new AtomicLong();
+    private final AtomicLong startedTasks = new AtomicLong();
+
+    SessionExecutor(String mode, int maxThreads) {
+        this(mode, maxThreads, findStartVirtualThread());
+    }
+
+    SessionExecutor(String mode, int maxThreads, Method startVirtualThread) {
+        Method method = null;
+        if (!MODE_POOL.equals(mode)) {
+            if (startVirtualThread != null && isSupported(startVirtualThread)) {
+                method = startVirtualThread;
+            } else if (MODE_VIRTUAL.equals(mode)) {
+                LOGGER.warn("Virtual threads are not supported by this JVM, using a thread pool for shell sessions");
+            }
+        }
+        this.startVirtualThread = method;
+        if (this.startVirtualThread == null) {
+            final ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Karaf shell executor " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            pool = new ThreadPoolExecutor(0, maxThreads > 0 ? maxThreads : Integer.MAX_VALUE,
+                    60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory,
+                    new RejectedExecutionHandler() {
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            overflowThreads.incrementAndGet();
+                            threadFactory.newThread(r).start();
+                        }
+                    });
+        } else {
+            pool = null;
+        }
+    }
+
+    private static Method findStartVirtualThread() {
+        try {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check that virtual threads can actually be started: on some JVMs the
+     * method exists, but fails as virtual threads are a preview feature.
+     */
+    private static boolean isSupported(Method startVirtualThread) {
+        try {
+            startVirtualThread.invoke(null, new Runnable() {
+                public void run() {
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            LOGGER.debug("Unable to start a virtual thread", e);
+            return false;
+        }
+    }
+
+    public static SessionExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start a session.
+     *
+     * @param session the session to run.
+     * @param name the name of the thread running the session.
+     * @throws RejectedExecutionException if no thread can be started.
+     */
+    public void startSession(Runnable session, String name) {
+        submit(session, name, true);
+    }
+
+    /**
+     * Execute a helper task of a session.
+     *
+     * @param task the task to run.
+     * @param name the name of the thread running the task.
+     * @throws RejectedExecutionException if no thread can be started.
+     */
+    public void execute(Runnable task, String name) {
+        submit(task, name, false);
+    }
+
+    private void submit(final Runnable task, final String name, final boolean session) {
+        final AccessControlContext acc = AccessController.getContext();
+        final ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        final long submitted = System.nanoTime();
+        Runnable wrapper = new Runnable() {
+            public void run() {
+                recordDelay(System.nanoTime() - submitted);
+                Thread thread = Thread.currentThread();
+                String oldName = thread.getName();
+                ClassLoader oldTccl = thread.getContextClassLoader();
+                thread.setName(name);
+                thread.setContextClassLoader(tccl);
+                (session ? activeSessions : activeTasks).incrementAndGet();
+                try {
+                    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                        public Object run() {
+                            task.run();
+                            return null;
+                        }
+                    }, acc);
+                } finally {
+                    (session ? activeSessions : activeTasks).decrementAndGet();
+                    thread.setContextClassLoader(oldTccl);
+                    thread.setName(oldName);
+                }
+            }
+        };
+        try {
+            if (startVirtualThread != null) {
+                startVirtualThread.invoke(null, wrapper);
+            } else {
+                pool.execute(wrapper);
+            }
+        } catch (Exception e) {
+            throw new RejectedExecutionException("Unable to start " + name, e);
+        }
+        (session ? startedSessions : startedTasks).incrementAndGet();
+    }
+
+    private void recordDelay(long delay) {
+        totalQueueingDelay.addAndGet(delay);
+        long max;
+        while (delay > (max = maxQueueingDelay.get())) {
+            if (maxQueueingDelay.compareAndSet(max, delay)) {
+                break;
+            }
+        }
+    }
+
+    public String getMode() {
+        return startVirtualThread != null ? MODE_VIRTUAL : MODE_POOL;
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    public long getStartedSessions() {
+        return startedSessions.get();
+    }
+
+    /**
+     * @return the number of dedicated threads started as the pool was exhausted.
+     */
+    public long getOverflowThreads() {
+        return overflowThreads.get();
+    }
+
+    /**
+     * @return the maximum number of pooled threads, or <code>-1</code> when using virtual threads.
+     */
+    public int getMaxThreads() {
+        return pool != null ? pool.getMaximumPoolSize() : -1;
+    }
+
+    /**
+     * @return the number of pooled threads, or <code>-1</code> when using virtual threads.
+     */
+    public int getPoolSize() {
+        return pool != null ? pool.getPoolSize() : -1;
+    }
+
+    /**
+     * @return the average delay between the submission and the start of sessions and tasks, in microseconds.
+     */
+    public long getAverageQueueingDelay() {
+        long count = startedSessions.get() + startedTasks.get();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMicros(totalQueueingDelay.get() / count) : 0;
+    }
+
+    /**
+     * @return the maximum delay between the submission and the start of sessions and tasks, in microseconds.
+     */
+    public long getMaxQueueingDelay() {
+        return TimeUnit.NANOSECONDS.toMicros(maxQueueingDelay.get());
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.support.parsing;
+
+/**
+ * A script which keeps its parsed form.
+ *
+ * When a script is given to {@link org.apache.karaf.shell.api.console.Session#execute(CharSequence)},
+ * the session reuses the parsed form as long as it was parsed in the same context (the
+ * scope of the session and the version of its registry), so that a script executed by each
+ * new session, such as an init script, is only parsed once.
+ */
+public class Script implements CharSequence {
+
+    private final String source;
+    private volatile Parsed parsed;
+
+    public Script(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Get the parsed script.
+     *
+     * @param context the context of the session executing the script.
+     * @return the parsed script, or <code>null</code> if it has not been parsed in this context.
+     */
+    public String getParsed(Object context) {
+        Parsed parsed = this.parsed;
+        return parsed != null && parsed.context.equals(context) ? parsed.text : null;
+    }
+
+    public void setParsed(Object context, String text) {
+        this.parsed = new Parsed(context, text);
+    }
+
+    @Override
+    public int length() {
+        return source.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return source.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static class Parsed {
+        final Object context;
+        final String text;
+
+        Parsed(Object context, String text) {
+            this.context = context;
+            this.text = text;
+        }
+    }
+
+}
@@ -24,6 +24,8 @@ public class AnsiColumn extends Col {
 
     private Ansi.Color color;
     private boolean bold;
+    private String prefix;
+    private String suffix;
 
     public AnsiColumn(String header, Ansi.Color color, boolean bold) {
         super(header);
@@ -35,20 +37,22 @@ public class AnsiColumn extends Col {
     public String getContent(String content) {
         String in = super.getContent(content);
 
-        Ansi ansi = Ansi.ansi();
-        ansi.fg(color);
-
-        if (bold)
-            ansi.a(Ansi.Attribute.INTENSITY_BOLD);
-
-        ansi.a(in);
-
-        if (bold)
-            ansi.a(Ansi.Attribute.INTENSITY_BOLD_OFF);
-
-        ansi.fg(Ansi.Color.DEFAULT);
-
-        return ansi.toString();
+        // The escape sequences do not depend on the content, so build them once
+        if (prefix == null) {
+            Ansi ansi = Ansi.ansi();
+            ansi.fg(color);
+            if (bold)
+                ansi.a(Ansi.Attribute.INTENSITY_BOLD);
+            prefix = ansi.toString();
+
+            ansi = Ansi.ansi();
+            if (bold)
+                ansi.a(Ansi.Attribute.INTENSITY_BOLD_OFF);
+            ansi.fg(Ansi.Color.DEFAULT);
+            suffix = ansi.toString();
+        }
+
+        return prefix + in + suffix;
     }
 
 }
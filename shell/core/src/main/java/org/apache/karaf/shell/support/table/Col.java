@@ -41,6 +41,16 @@ public class Col {
     
     int size = 0;
 
+    /**
+     * Whether the size of the column is fixed, which is the case once a streamed table starts printing rows.
+     */
+    boolean frozen;
+
+    /**
+     * Whether content wider than the column is printed entirely instead of being cut.
+     */
+    boolean overflow;
+
     boolean wrap;
     boolean bold;
     boolean cyan;
@@ -51,6 +61,9 @@ public class Col {
      */
     private HAlign align = HAlign.left;
 
+    private Pattern wrapPattern;
+    private int wrapPatternSize = -1;
+
     public Col(String header) {
         this.header = header;
     }
@@ -80,6 +93,18 @@ public class Col {
         return this;
     }
 
+    /**
+     * Set the minimum size of this column, which is useful when streaming
+     * a table whose widest values may not be in the first rows.
+     *
+     * @param minSize the minimum size.
+     * @return the column.
+     */
+    public Col minSize(int minSize) {
+        this.size = Math.max(this.size, minSize);
+        return this;
+    }
+
     public Col wrap() {
         return wrap(true);
     }
@@ -130,7 +155,9 @@ public class Col {
             return "";
         }
         String finalContent = cut(fullContent, getClippedSize(fullContent.length()));
-        updateSize(finalContent.length());
+        if (!frozen) {
+            updateSize(finalContent.length());
+        }
         return finalContent;
     }
 
@@ -153,7 +180,7 @@ public class Col {
             if (sb.length() > 0) {
                 sb.append("\n");
             }
-            line = this.align.position(cut(line, size), this.size);
+            line = this.align.position(cut(line, overflow ? Math.max(size, line.length()) : size), this.size);
             if (bold) {
                 line = SimpleAnsi.INTENSITY_BOLD + line + SimpleAnsi.INTENSITY_NORMAL;
             }
@@ -175,7 +202,11 @@ public class Col {
 
     protected List<String> wrap(String str) {
         List<String> result = new ArrayList<>();
-        Pattern wrap = Pattern.compile("(\\S\\S{" + size + ",}|.{1," + size + "})(\\s+|$)");
+        if (wrapPatternSize != size) {
+            wrapPattern = Pattern.compile("(\\S\\S{" + size + ",}|.{1," + size + "})(\\s+|$)");
+            wrapPatternSize = size;
+        }
+        Pattern wrap = wrapPattern;
         int cur = 0;
         while (cur >= 0) {
             int lst = str.indexOf('\n', cur);
@@ -23,6 +23,11 @@ import java.util.List;
 
 public class ShellTable {
 
+    /**
+     * Default number of rows used to compute the width of the columns when streaming.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
     private List<Col> cols = new ArrayList<Col>();
     private List<Row> rows = new ArrayList<Row>();
     boolean showHeaders = true;
@@ -30,6 +35,12 @@ public class ShellTable {
     private int size;
     private String emptyTableText;
 
+    private PrintStream streamOut;
+    private boolean streamFormat;
+    private int sampleSize;
+    private boolean streaming;
+    private int rowCount;
+
     public ShellTable() {
 
     }
@@ -60,9 +71,62 @@ public class ShellTable {
         return col;
     }
 
+    /**
+     * Print the rows while they are added rather than when the table is printed.
+     *
+     * @param out the stream to print the table to.
+     * @return the shell table.
+     * @see #stream(PrintStream, boolean, int)
+     */
+    public ShellTable stream(PrintStream out) {
+        return stream(out, true);
+    }
+
+    /**
+     * Print the rows while they are added rather than when the table is printed.
+     *
+     * @param out the stream to print the table to.
+     * @param format whether the table should be formatted.
+     * @return the shell table.
+     * @see #stream(PrintStream, boolean, int)
+     */
+    public ShellTable stream(PrintStream out, boolean format) {
+        return stream(out, format, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Print the rows while they are added rather than when the table is printed.
+     *
+     * The width of the columns is computed from the headers and the first
+     * <code>sampleSize</code> rows, which are kept until the sample is complete.
+     * The following rows are printed as soon as the next row is added, and
+     * values wider than their column overflow instead of being cut, unless the
+     * column has a maximum size or is the one resized to the size of the table.
+     * {@link #print(PrintStream, boolean)} must be called to print the remaining rows.
+     *
+     * @param out the stream to print the table to.
+     * @param format whether the table should be formatted.
+     * @param sampleSize the number of rows used to compute the width of the columns.
+     * @return the shell table.
+     */
+    public ShellTable stream(PrintStream out, boolean format, int sampleSize) {
+        this.streamOut = out;
+        this.streamFormat = format;
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
     public Row addRow() {
+        if (streamOut != null) {
+            if (streaming) {
+                printRows(streamOut, streamFormat);
+            } else if (rows.size() >= sampleSize) {
+                startStreaming();
+            }
+        }
         Row row = new Row();
         rows.add(row);
+        rowCount++;
         return row;
     }
 
@@ -81,19 +145,60 @@ public class ShellTable {
         print(out, true);
     }
 
+    /**
+     * Print the table.  When streaming, the rows already printed went to the
+     * stream given to {@link #stream(PrintStream, boolean, int)}, and the
+     * remaining rows, with the headers if the sample was not complete yet,
+     * are printed to the given stream.
+     *
+     * @param out the stream to print the table to.
+     * @param format whether the table should be formatted.
+     */
     public void print(PrintStream out, boolean format)  {
+        if (streamOut != null) {
+            streamOut = out;
+            streamFormat = format;
+            if (!streaming) {
+                startStreaming();
+            }
+            printRows(out, format);
+            printEmptyTableText(out, format);
+            return;
+        }
 
         // "normal" table rendering, with borders
+        Row headerRow = formatAll();
+        if (size > 0) {
+            adjustSize();
+        }
+        printHeaders(out, format, headerRow);
+        printRows(out, format);
+        printEmptyTableText(out, format);
+    }
+
+    private void startStreaming() {
+        Row headerRow = formatAll();
+        Col resized = size > 0 ? adjustSize() : null;
+        for (Col col : cols) {
+            col.frozen = true;
+            col.overflow = col != resized && col.maxSize == -1;
+        }
+        printHeaders(streamOut, streamFormat, headerRow);
+        printRows(streamOut, streamFormat);
+        rows.clear();
+        streaming = true;
+    }
+
+    private Row formatAll() {
         Row headerRow = new Row(cols);
         headerRow.formatContent(cols);
         for (Row row : rows) {
             row.formatContent(cols);
         }
+        return headerRow;
+    }
 
-        if (size > 0) {
-            adjustSize();
-        }
-
+    private void printHeaders(PrintStream out, boolean format, Row headerRow) {
         if (format && showHeaders) {
             String headerLine = headerRow.getContent(cols, separator);
             out.println(headerLine);
@@ -102,8 +207,13 @@ public class ShellTable {
             }
             out.println(underline((cols.size() - 1) * 3));
         }
+    }
 
+    private void printRows(PrintStream out, boolean format) {
         for (Row row : rows) {
+            if (streaming) {
+                row.formatContent(cols);
+            }
             if (!format) {
                 if (separator == null || separator.equals(" | "))
                     out.println(row.getContent(cols, "\t"));
@@ -112,13 +222,19 @@ public class ShellTable {
                 out.println(row.getContent(cols, separator));
             }
         }
+        if (streaming) {
+            rows.clear();
+            out.flush();
+        }
+    }
 
-        if (format && rows.size() == 0 && emptyTableText != null) {
+    private void printEmptyTableText(PrintStream out, boolean format) {
+        if (format && rowCount == 0 && emptyTableText != null) {
             out.println(emptyTableText);
         }
     }
 
-    private void adjustSize() {
+    private Col adjustSize() {
         int currentSize = 0;
         for (Col col : cols) {
             currentSize += col.size + separator.length();
@@ -130,10 +246,10 @@ public class ShellTable {
             Col col = cols.get(i);
             if (col.maxSize == -1) {
                 col.size = Math.max(0, col.size + sizeToGrow);
-                return;
+                return col;
             }
         }
-
+        return null;
     }
 
     private String underline(int length) {
@@ -17,8 +17,13 @@ package org.apache.karaf.shell.support.table;
 
 class StringUtil {
 
+    private static final String SPACES = String.format("%256s", "");
+
     /**
      * Returns length of the string.
+     *
+     * The escape sequences of the colored columns are only added once the
+     * content is padded, so this is also the display width of the content.
      * 
      * @param string String.
      * @return Length.
@@ -38,6 +43,10 @@ class StringUtil {
         if (times <= 0) {
             return "";
         }
+        else if (times <= SPACES.length() && " ".equals(string)) {
+            // padding is by far the most common use
+            return SPACES.substring(0, times);
+        }
         else if (times % 2 == 0) {
             return repeat(string+string, times/2);
         }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ActionMetadataTest {
+
+    @Test
+    public void testPrepare() throws Exception {
+        ActionMetadata metadata = new ActionMetadata(MyAction.class);
+        assertEquals(2, metadata.getOptions().size());
+        assertSame(metadata.getOption("-c"), metadata.getOption("--count"));
+        assertEquals("name", metadata.getOrderedArguments().get(0).name());
+
+        MyAction action = (MyAction) metadata.newInstance();
+        List<Object> params = Arrays.<Object>asList("-c", "3", "--verbose", "foo", "a", "b");
+        assertTrue(new DefaultActionPreparator().prepare(action, metadata, null, params));
+        assertEquals(3, action.count);
+        assertTrue(action.verbose);
+        assertEquals("foo", action.name);
+        assertEquals(Arrays.asList("a", "b"), action.values);
+
+        // Metadata can be reused
+        MyAction other = (MyAction) metadata.newInstance();
+        assertTrue(new DefaultActionPreparator().prepare(other, metadata, null, Arrays.<Object>asList("bar")));
+        assertEquals(0, other.count);
+        assertEquals("bar", other.name);
+    }
+
+    @Test
+    public void testCachedPerClass() throws Exception {
+        ActionMetadata metadata = ActionMetadata.forClass(MyAction.class);
+        assertSame(metadata, ActionMetadata.forClass(MyAction.class));
+        assertSame(metadata, new ManagerImpl(null, null).getMetadata(MyAction.class));
+
+        // the legacy prepare uses the cached metadata
+        MyAction action = new MyAction();
+        assertTrue(new DefaultActionPreparator().prepare(action, null, Arrays.<Object>asList("-c", "2", "foo")));
+        assertEquals(2, action.count);
+        assertEquals("foo", action.name);
+    }
+
+    @Test
+    public void testInvalidAction() throws Exception {
+        ActionMetadata metadata = new ActionMetadata(InvalidAction.class);
+        assertNotNull(metadata.getCommand());
+        try {
+            new DefaultActionPreparator().prepare(new InvalidAction(), metadata, null, Arrays.<Object>asList("foo"));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Missing argument for index: 0 on Action " + InvalidAction.class.getName(), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSubclassOptionWins() throws Exception {
+        ActionMetadata metadata = new ActionMetadata(SubAction.class);
+        SubAction action = new SubAction();
+        assertTrue(new DefaultActionPreparator().prepare(action, metadata, null, Arrays.<Object>asList("-c", "3", "foo")));
+        assertEquals("3", action.sub);
+        assertEquals(0, action.getCount());
+    }
+
+    @Test
+    public void testConvertOverride() throws Exception {
+        DefaultActionPreparator preparator = new DefaultActionPreparator() {
+            @Override
+            protected Object convert(Action action, Object value, Type toType) throws Exception {
+                return toType == int.class ? 42 : super.convert(action, value, toType);
+            }
+        };
+        MyAction action = new MyAction();
+        assertTrue(preparator.prepare(action, new ActionMetadata(MyAction.class), null, Arrays.<Object>asList("-c", "3", "foo")));
+        assertEquals(42, action.count);
+        assertEquals("foo", action.name);
+    }
+
+    @Command(scope = "test", name = "my")
+    static class MyAction implements Action {
+
+        @Option(name = "-c", aliases = "--count")
+        private int count;
+
+        @Option(name = "--verbose")
+        boolean verbose;
+
+        @Argument(index = 0, required = true)
+        String name;
+
+        @Argument(index = 1, multiValued = true)
+        List<String> values;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+    @Command(scope = "test", name = "sub")
+    static class SubAction extends MyAction {
+
+        @Option(name = "-c")
+        String sub;
+
+        int getCount() {
+            return super.count;
+        }
+    }
+
+    @Command(scope = "test", name = "invalid")
+    static class InvalidAction implements Action {
+
+        @Argument(index = 1)
+        String name;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.api.console.Command;
+import org.apache.karaf.shell.api.console.Completer;
+import org.apache.karaf.shell.api.console.Parser;
+import org.apache.karaf.shell.api.console.Session;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommandsIndexTest {
+
+    @Test
+    public void testPrefixLookup() {
+        CommandsIndex index = new CommandsIndex(1, Arrays.asList(
+                command("bundle", "list"),
+                command("bundle", "install"),
+                command("feature", "list"),
+                command("*", "echo")));
+
+        assertEquals(4, index.getGlobalKeys("").size());
+        assertEquals(Arrays.asList("bundle:list", "feature:list"), sorted(index.getGlobalKeys("li")));
+        assertEquals(Arrays.asList("bundle:install", "bundle:list"), sorted(index.getGlobalKeys("bundle:")));
+        assertEquals(Collections.singletonList("bundle:list"), index.getGlobalKeys("bundle:list"));
+        assertEquals(Collections.singletonList("*:echo"), index.getGlobalKeys("e"));
+        assertTrue(index.getGlobalKeys("*:").isEmpty());
+        assertTrue(index.getGlobalKeys("x").isEmpty());
+
+        assertEquals(Collections.singletonList("bundle:install"), index.getLocalKeys("bundle", "i"));
+        assertEquals(2, index.getLocalKeys("bundle", "").size());
+        assertTrue(index.getLocalKeys("bundle", "bundle:").isEmpty());
+        assertTrue(index.getLocalKeys("shell", "").isEmpty());
+
+        assertEquals(4, index.getGlobalCompleters().size());
+        assertEquals(4, index.getLocalCompleters().size());
+    }
+
+    @Test
+    public void testRegistryVersion() {
+        RegistryImpl parent = new RegistryImpl(null);
+        RegistryImpl registry = new RegistryImpl(parent);
+        long version = registry.getVersion();
+        Command command = command("bundle", "list");
+        parent.register(command);
+        assertNotEquals(version, registry.getVersion());
+        version = registry.getVersion();
+        registry.unregister(command);
+        assertNotEquals(version, registry.getVersion());
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private static Command command(final String scope, final String name) {
+        return new Command() {
+            @Override
+            public String getScope() {
+                return scope;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getDescription() {
+                return null;
+            }
+
+            @Override
+            public Completer getCompleter(boolean scoped) {
+                return null;
+            }
+
+            @Override
+            public Parser getParser() {
+                return null;
+            }
+
+            @Override
+            public Object execute(Session session, List<Object> arguments) throws Exception {
+                return null;
+            }
+        };
+    }
+
+}
@@ -38,9 +38,12 @@ import org.apache.karaf.shell.impl.console.SessionFactoryImpl;
 import org.apache.karaf.shell.support.parsing.CommandLineImpl;
 import org.apache.karaf.shell.support.parsing.DefaultParser;
 import org.apache.karaf.shell.support.parsing.GogoParser;
+import org.apache.karaf.shell.support.parsing.Script;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class ParsingTest {
 
@@ -90,6 +93,32 @@ public class ParsingTest {
         assertEquals("echo a\necho b", parsed);
     }
 
+    @Test
+    public void testScriptParsedOnce() {
+
+        SessionFactoryImpl sessionFactory = new SessionFactoryImpl(new ThreadIOImpl());
+        ManagerImpl manager = new ManagerImpl(sessionFactory, sessionFactory);
+        sessionFactory.getRegistry().register(new ActionCommand(manager, AnotherCommand.class));
+        sessionFactory.getRegistry().register(new CustomParser());
+        Session session = new HeadlessSessionImpl(sessionFactory, sessionFactory.getCommandProcessor(),
+                new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+        );
+        Session other = new HeadlessSessionImpl(sessionFactory, sessionFactory.getCommandProcessor(),
+                new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+        );
+
+        Script script = new Script("echo a; another command with spaces");
+        String parsed = CommandLineParser.parse(session, script);
+        assertEquals("echo a ; another \"command with spaces\"", parsed);
+        assertSame(parsed, CommandLineParser.parse(other, script));
+
+        // The script is parsed again when the commands change
+        sessionFactory.getRegistry().register(new ActionCommand(manager, FooCommand.class));
+        String reparsed = CommandLineParser.parse(session, script);
+        assertEquals(parsed, reparsed);
+        assertNotSame(parsed, reparsed);
+    }
+
     @Command(scope = "scope", name = "foo")
     static class FooCommand implements Action {
         @Override
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.executor;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionExecutorTest {
+
+    @Test
+    public void testContextPropagation() throws Exception {
+        SessionExecutor executor = new SessionExecutor(SessionExecutor.MODE_POOL, 0);
+        assertEquals(SessionExecutor.MODE_POOL, executor.getMode());
+
+        final ClassLoader loader = new URLClassLoader(new URL[0]);
+        final AtomicReference<ClassLoader> tccl = new AtomicReference<>();
+        final AtomicReference<String> name = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(loader);
+        try {
+            executor.startSession(new Runnable() {
+                public void run() {
+                    tccl.set(Thread.currentThread().getContextClassLoader());
+                    name.set(Thread.currentThread().getName());
+                    done.countDown();
+                }
+            }, "test session");
+        } finally {
+            Thread.currentThread().setContextClassLoader(old);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(loader, tccl.get());
+        assertEquals("test session", name.get());
+        assertEquals(1, executor.getStartedSessions());
+    }
+
+    @Test
+    public void testDedicatedThreadWhenExhausted() throws Exception {
+        SessionExecutor executor = new SessionExecutor(SessionExecutor.MODE_POOL, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> name = new AtomicReference<>();
+        try {
+            executor.startSession(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }, "blocking session");
+            executor.startSession(new Runnable() {
+                public void run() {
+                    name.set(Thread.currentThread().getName());
+                    done.countDown();
+                }
+            }, "overflow session");
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        assertEquals("overflow session", name.get());
+        assertEquals(2, executor.getStartedSessions());
+        assertEquals(1, executor.getOverflowThreads());
+        assertEquals(1, executor.getPoolSize());
+    }
+
+    @Test
+    public void testUnboundedByDefault() throws Exception {
+        SessionExecutor executor = new SessionExecutor(SessionExecutor.MODE_POOL, 0);
+        assertEquals(Integer.MAX_VALUE, executor.getMaxThreads());
+    }
+
+    @Test
+    public void testFallbackWhenVirtualThreadsFail() throws Exception {
+        Method start = SessionExecutorTest.class.getDeclaredMethod("unsupportedStart", Runnable.class);
+        SessionExecutor executor = new SessionExecutor(SessionExecutor.MODE_VIRTUAL, 2, start);
+        assertEquals(SessionExecutor.MODE_POOL, executor.getMode());
+        assertEquals(2, executor.getMaxThreads());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.startSession(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        }, "test session");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    public static Thread unsupportedStart(Runnable task) {
+        // Thread.startVirtualThread when virtual threads are a disabled preview feature
+        throw new UnsupportedOperationException("Preview Features not enabled");
+    }
+
+}
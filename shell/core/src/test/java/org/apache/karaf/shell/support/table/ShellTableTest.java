@@ -66,4 +66,66 @@ public class ShellTableTest {
                 "                     |quite long"), baos.toString());
     }
 
+    @Test
+    public void testStreaming() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable();
+        table.separator("|");
+        table.column("ID").alignRight();
+        table.column("Name");
+        PrintStream out = new PrintStream(baos);
+        table.stream(out, true, 2);
+        table.addRow().addContent(1, "a");
+        table.addRow().addContent(2, "bb");
+        assertEquals("", baos.toString());
+        table.addRow().addContent(100, "c");
+        // The width of the columns is computed from the sample
+        assertEquals(String.format("%s%n%s%n%s%n%s%n", "ID|Name", "---------", " 1|a", " 2|bb"), baos.toString());
+        table.addRow().addContent(4, "dddddd");
+        table.print(out);
+        assertEquals(String.format("%s%n%s%n%s%n%s%n%s%n%s%n", "ID|Name", "---------", " 1|a", " 2|bb", "100|c", " 4|dddddd"), baos.toString());
+    }
+
+    @Test
+    public void testStreamingEmptyTable() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable();
+        table.column("ID");
+        table.emptyTableText("No rows");
+        PrintStream out = new PrintStream(baos);
+        table.stream(out);
+        table.print(out);
+        assertEquals(String.format("%s%n%s%n%s%n", "ID", "--", "No rows"), baos.toString());
+    }
+
+    @Test
+    public void testStreamingPrintArguments() {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable();
+        table.column("ID");
+        table.column("Name");
+        table.stream(new PrintStream(streamed), true, 1);
+        table.addRow().addContent(1, "a");
+        table.addRow().addContent(2, "b");
+        table.addRow().addContent(3, "c");
+        table.print(new PrintStream(printed), false);
+        assertEquals(String.format("%s%n%s%n%s%n%s%n", "ID | Name", "---------", "1  | a", "2  | b"), streamed.toString());
+        // The remaining row is printed to the given stream, without formatting
+        assertEquals(String.format("%s%n", "3 \tc"), printed.toString());
+    }
+
+    @Test
+    public void testStreamingIncompleteSample() {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ShellTable table = new ShellTable();
+        table.column("ID");
+        table.stream(new PrintStream(streamed), true, 10);
+        table.addRow().addContent(1);
+        table.print(new PrintStream(printed), false);
+        assertEquals("", streamed.toString());
+        assertEquals(String.format("%s%n", "1"), printed.toString());
+    }
+
 }
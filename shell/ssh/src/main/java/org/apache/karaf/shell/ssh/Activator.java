@@ -59,6 +59,7 @@ public class Activator extends BaseActivator implements ManagedService {
     KarafAgentFactory agentFactory;
     SessionFactory sessionFactory;
     SshServer server;
+    ExecSessionPool execSessionPool;
 
     @Override
     protected void doOpen() throws Exception {
@@ -135,6 +136,10 @@ public class Activator extends BaseActivator implements ManagedService {
             }
             server = null;
         }
+        if (execSessionPool != null) {
+            execSessionPool.close();
+            execSessionPool = null;
+        }
         super.doStop();
     }
 
@@ -151,6 +156,7 @@ public class Activator extends BaseActivator implements ManagedService {
         String macs           = getString("macs", "hmac-sha1");
         String ciphers        = getString("ciphers", "aes256-ctr,aes192-ctr,aes128-ctr,arcfour256");
         String welcomeBanner  = getString("welcomeBanner", null);
+        boolean execPrewarm   = getBoolean("sshExecPrewarm", true);
 
         AbstractGeneratorHostKeyProvider keyPairProvider;
         if ("simple".equalsIgnoreCase(hostKeyFormat)) {
@@ -182,7 +188,8 @@ public class Activator extends BaseActivator implements ManagedService {
         server.setMacFactories(SshUtils.buildMacs(macs));
         server.setCipherFactories(SshUtils.buildCiphers(ciphers));
         server.setShellFactory(new ShellFactoryImpl(sessionFactory));
-        server.setCommandFactory(new ScpCommandFactory(new ShellCommandFactory(sessionFactory)));
+        execSessionPool = execPrewarm ? new ExecSessionPool(sessionFactory) : null;
+        server.setCommandFactory(new ScpCommandFactory(new ShellCommandFactory(sessionFactory, execSessionPool)));
         server.setSubsystemFactories(Arrays.<NamedFactory<org.apache.sshd.server.Command>>asList(new SftpSubsystem.Factory()));
         server.setKeyPairProvider(keyPairProvider);
         server.setPasswordAuthenticator(authenticator);
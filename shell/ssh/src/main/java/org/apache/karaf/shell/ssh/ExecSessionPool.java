@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.Principal;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.security.auth.Subject;
+
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
+import org.apache.karaf.shell.support.parsing.Script;
+import org.apache.karaf.util.jaas.JaasHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sessions of the exec commands, prepared ahead of time.
+ *
+ * Creating a session and executing the init script takes most of the time of
+ * a short command.  Once a user has executed a command, a spare session is
+ * created and initialized in the background for the same subject and
+ * environment, and the next command of the user takes it instead of creating
+ * a new one.  A session is only used by a single command, so commands never
+ * share their variables.  A spare session is discarded when the init script
+ * changes or when it has not been used during {@link #SPARE_TIMEOUT}.
+ */
+class ExecSessionPool {
+
+    static final long SPARE_TIMEOUT = 60000;
+
+    static final int MAX_SPARES = 32;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecSessionPool.class);
+
+    private final SessionFactory sessionFactory;
+    private final ConcurrentMap<Key, Spare> spares = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    ExecSessionPool(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Take the session prepared for the given subject and environment.
+     *
+     * @return the session, writing to the given streams, or <code>null</code> if none is ready.
+     */
+    Session take(Subject subject, Map<String, String> env, InputStream in, OutputStream out, OutputStream err) throws IOException {
+        Key key = new Key(subject, env);
+        Spare spare = spares.get(key);
+        if (spare == null || !spare.ready || !spares.remove(key, spare)) {
+            return null;
+        }
+        if (spare.isExpired() || spare.script != ShellCommand.loadInitScript()) {
+            spare.discard();
+            return null;
+        }
+        return spare.attach(in, out, err);
+    }
+
+    /**
+     * Prepare a session in the background for the next command with the given
+     * subject and environment, unless one is already prepared.
+     */
+    void prepare(final Subject subject, Map<String, String> env) {
+        purge();
+        if (closed || spares.size() >= MAX_SPARES) {
+            return;
+        }
+        final Key key = new Key(subject, env);
+        final Spare spare = new Spare();
+        if (spares.putIfAbsent(key, spare) != null) {
+            return;
+        }
+        try {
+            SessionExecutor.getInstance().execute(new Runnable() {
+                public void run() {
+                    try {
+                        spare.init(sessionFactory, subject, key.env);
+                    } catch (Exception e) {
+                        LOGGER.debug("Unable to prepare an exec session", e);
+                        spares.remove(key, spare);
+                        spare.discard();
+                        return;
+                    }
+                    if (closed) {
+                        spares.remove(key, spare);
+                        spare.discard();
+                    }
+                }
+            }, "Karaf ssh exec preparation");
+        } catch (RejectedExecutionException e) {
+            spares.remove(key, spare);
+        }
+    }
+
+    /**
+     * Discard the sessions which have not been used in time.
+     */
+    private void purge() {
+        for (Map.Entry<Key, Spare> entry : spares.entrySet()) {
+            Spare spare = entry.getValue();
+            if (spare.ready && spare.isExpired() && spares.remove(entry.getKey(), spare)) {
+                spare.discard();
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        // Spares still being initialized are discarded once ready
+        for (Map.Entry<Key, Spare> entry : spares.entrySet()) {
+            Spare spare = entry.getValue();
+            if (spare.ready && spares.remove(entry.getKey(), spare)) {
+                spare.discard();
+            }
+        }
+    }
+
+    int size() {
+        return spares.size();
+    }
+
+    /**
+     * The principals of the user and the environment of the channel, sessions are only shared when both are equal.
+     */
+    private static final class Key {
+        final Set<Principal> principals;
+        final Map<String, String> env;
+
+        Key(Subject subject, Map<String, String> env) {
+            this.principals = subject != null
+                    ? new HashSet<Principal>(subject.getPrincipals()) : Collections.<Principal>emptySet();
+            this.env = new HashMap<String, String>(env);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return principals.equals(key.principals) && env.equals(key.env);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * principals.hashCode() + env.hashCode();
+        }
+    }
+
+    /**
+     * A session which has executed the init script, its output is kept until
+     * it is attached to the streams of a channel.
+     */
+    private static final class Spare {
+        final SwitchInputStream in = new SwitchInputStream();
+        final SwitchOutputStream out = new SwitchOutputStream();
+        final SwitchOutputStream err = new SwitchOutputStream();
+        Session session;
+        Script script;
+        long readyTime;
+        volatile boolean ready;
+        private boolean discarded;
+
+        void init(SessionFactory sessionFactory, Subject subject, Map<String, String> env) throws Exception {
+            session = sessionFactory.create(in, new PrintStream(out), new PrintStream(err));
+            for (Map.Entry<String, String> e : env.entrySet()) {
+                session.put(e.getKey(), e.getValue());
+            }
+            script = ShellCommand.loadInitScript();
+            if (subject != null) {
+                JaasHelper.doAs(subject, new PrivilegedAction<Object>() {
+                    public Object run() {
+                        ShellCommand.executeInitScript(session, script);
+                        return null;
+                    }
+                });
+            } else {
+                ShellCommand.executeInitScript(session, script);
+            }
+            readyTime = System.currentTimeMillis();
+            ready = true;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - readyTime > SPARE_TIMEOUT;
+        }
+
+        Session attach(InputStream in, OutputStream out, OutputStream err) throws IOException {
+            this.in.attach(in);
+            this.out.attach(out);
+            this.err.attach(err);
+            return session;
+        }
+
+        synchronized void discard() {
+            if (!discarded && session != null) {
+                discarded = true;
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * An input stream which is empty until attached to the input of a channel.
+     */
+    static final class SwitchInputStream extends InputStream {
+        private volatile InputStream target;
+
+        void attach(InputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            InputStream in = target;
+            return in != null ? in.read() : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            InputStream in = target;
+            return in != null ? in.read(b, off, len) : -1;
+        }
+
+        @Override
+        public int available() throws IOException {
+            InputStream in = target;
+            return in != null ? in.available() : 0;
+        }
+    }
+
+    /**
+     * An output stream which keeps the data written until attached to the output of a channel.
+     */
+    static final class SwitchOutputStream extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+
+        synchronized void attach(OutputStream target) throws IOException {
+            buffer.writeTo(target);
+            buffer.reset();
+            this.target = target;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            (target != null ? target : buffer).write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            (target != null ? target : buffer).write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+    }
+
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.karaf.shell.ssh;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,12 +32,16 @@ import java.io.Reader;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.security.auth.Subject;
 
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
 import org.apache.karaf.shell.support.ShellUtil;
+import org.apache.karaf.shell.support.parsing.Script;
 import org.apache.karaf.util.StreamUtils;
 import org.apache.karaf.util.jaas.JaasHelper;
 import org.apache.sshd.server.Command;
@@ -51,8 +57,17 @@ public class ShellCommand implements Command, Runnable, SessionAware {
     public static final String SHELL_INIT_SCRIPT = "karaf.shell.init.script";
     public static final String EXEC_INIT_SCRIPT = "karaf.exec.init.script";
 
+    /**
+     * Exec command switching the channel to batch mode: commands are read
+     * from the channel input and executed one after the other in the same session.
+     */
+    public static final String BATCH_COMMAND = "#!batch";
+    public static final String BATCH_DELIMITER = "#!end";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(ShellCommand.class);
 
+    private static final Map<String, CachedScript> SCRIPTS = new ConcurrentHashMap<>();
+
     private static final Class[] SECURITY_BUGFIX = {
                     JaasHelper.class,
                     JaasHelper.OsgiSubjectDomainCombiner.class,
@@ -66,11 +81,17 @@ public class ShellCommand implements Command, Runnable, SessionAware {
     private ExitCallback callback;
     private ServerSession session;
     private SessionFactory sessionFactory;
+    private ExecSessionPool pool;
     private Environment env;
 
     public ShellCommand(SessionFactory sessionFactory, String command) {
+        this(sessionFactory, command, null);
+    }
+
+    ShellCommand(SessionFactory sessionFactory, String command, ExecSessionPool pool) {
         this.sessionFactory = sessionFactory;
         this.command = command;
+        this.pool = pool;
     }
 
     public void setInputStream(InputStream in) {
@@ -95,46 +116,48 @@ public class ShellCommand implements Command, Runnable, SessionAware {
 
     public void start(final Environment env) throws IOException {
         this.env = env;
-        new Thread(this).start();
+        try {
+            SessionExecutor.getInstance().startSession(this, "Karaf ssh exec");
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Unable to start command", e);
+        }
     }
 
     public void run() {
         int exitStatus = 0;
         try {
-            final Session session = sessionFactory.create(in, new PrintStream(out), new PrintStream(err));
-            for (Map.Entry<String,String> e : env.getEnv().entrySet()) {
-                session.put(e.getKey(), e.getValue());
+            final boolean batch = BATCH_COMMAND.equals(command.trim());
+            final PrintStream pout = new PrintStream(out);
+            final Subject subject = this.session != null ? this.session.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
+            Session prepared = null;
+            if (pool != null && !batch) {
+                prepared = pool.take(subject, env.getEnv(), in, out, err);
+                pool.prepare(subject, env.getEnv());
             }
+            final Session session;
+            if (prepared != null) {
+                session = prepared;
+            } else {
+                session = sessionFactory.create(batch ? new ByteArrayInputStream(new byte[0]) : in, pout, new PrintStream(err));
+                for (Map.Entry<String,String> e : env.getEnv().entrySet()) {
+                    session.put(e.getKey(), e.getValue());
+                }
+            }
+            // A prepared session has already executed the init script
+            final boolean init = prepared == null;
             try {
-                Subject subject = this.session != null ? this.session.getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
-                Object result;
                 if (subject != null) {
                     try {
-                        result = JaasHelper.doAs(subject, new PrivilegedExceptionAction<Object>() {
-                            public Object run() throws Exception {
-                                String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
-                                if (scriptFileName == null) {
-                                    scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
-                                }
-                                executeScript(scriptFileName, session);
-                                return session.execute(command);
+                        exitStatus = JaasHelper.doAs(subject, new PrivilegedExceptionAction<Integer>() {
+                            public Integer run() throws Exception {
+                                return execute(session, pout, batch, init);
                             }
                         });
                     } catch (PrivilegedActionException e) {
                         throw e.getException();
                     }
                 } else {
-                    String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
-                    if (scriptFileName == null) {
-                        scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
-                    }
-                    executeScript(scriptFileName, session);
-                    result = session.execute(command);
-                }
-                if (result != null)
-                {
-                    // TODO: print the result of the command ?
-//                    session.getConsole().println(session.format(result, Converter.INSPECT));
+                    exitStatus = execute(session, pout, batch, init);
                 }
             } catch (Throwable t) {
                 exitStatus = 1;
@@ -149,34 +172,130 @@ public class ShellCommand implements Command, Runnable, SessionAware {
         }
     }
 
+    private int execute(Session session, PrintStream pout, boolean batch, boolean init) throws Exception {
+        if (init) {
+            executeInitScript(session, loadInitScript());
+        }
+        if (batch) {
+            return executeBatch(session, pout);
+        }
+        Object result = session.execute(command);
+        if (result != null)
+        {
+            // TODO: print the result of the command ?
+//            session.getConsole().println(session.format(result, Converter.INSPECT));
+        }
+        return 0;
+    }
+
+    /**
+     * Execute the commands read from the channel input, one per line, in a single session.
+     * After each command, a <code>#!end &lt;index&gt; &lt;status&gt;</code> line is written
+     * on the output so that clients can split the results.
+     */
+    private int executeBatch(Session session, PrintStream pout) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        int exitStatus = 0;
+        int index = 0;
+        String cmd = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.endsWith("\\")) {
+                cmd = (cmd != null ? cmd : "") + line.substring(0, line.length() - 1);
+                continue;
+            }
+            cmd = cmd != null ? cmd + line : line;
+            if (cmd.trim().isEmpty()) {
+                cmd = null;
+                continue;
+            }
+            int status = 0;
+            try {
+                session.execute(cmd);
+            } catch (Throwable t) {
+                status = 1;
+                exitStatus = 1;
+                ShellUtil.logException(session, t);
+            }
+            session.getConsole().flush();
+            pout.println(BATCH_DELIMITER + " " + index++ + " " + status);
+            pout.flush();
+            cmd = null;
+        }
+        return exitStatus;
+    }
+
     public void destroy() {
 	}
 
-    private void executeScript(String scriptFileName, Session session) {
+    /**
+     * Load the init script of the exec commands.
+     *
+     * @return the script, or <code>null</code> if there is none or it can not be read.
+     */
+    static Script loadInitScript() {
+        String scriptFileName = System.getProperty(EXEC_INIT_SCRIPT);
+        if (scriptFileName == null) {
+            scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
+        }
         if (scriptFileName != null) {
-            Reader r = null;
             try {
-                File scriptFile = new File(scriptFileName);
-                r = new InputStreamReader(new FileInputStream(scriptFile));
-                CharArrayWriter w = new CharArrayWriter();
-                int n;
-                char[] buf = new char[8192];
-                while ((n = r.read(buf)) > 0) {
-                    w.write(buf, 0, n);
-                }
-                session.execute(new String(w.toCharArray()));
+                return loadScript(scriptFileName);
+            } catch (IOException e) {
+                LOGGER.debug("Error in initialization script", e);
+            }
+        }
+        return null;
+    }
+
+    static void executeInitScript(Session session, Script script) {
+        if (script != null) {
+            try {
+                session.execute(script);
             } catch (Exception e) {
                 LOGGER.debug("Error in initialization script", e);
-            } finally {
-                if (r != null) {
-                    try {
-                        r.close();
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                }
             }
         }
     }
 
+    /**
+     * Load an init script, reusing the cached script if the file has not changed.
+     * The cached script keeps its parsed form, so that it is not parsed again by
+     * each new session.
+     */
+    static Script loadScript(String scriptFileName) throws IOException {
+        File scriptFile = new File(scriptFileName);
+        long lastModified = scriptFile.lastModified();
+        long length = scriptFile.length();
+        CachedScript cached = SCRIPTS.get(scriptFileName);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.script;
+        }
+        try (
+            Reader r = new InputStreamReader(new FileInputStream(scriptFile))
+        ) {
+            CharArrayWriter w = new CharArrayWriter();
+            int n;
+            char[] buf = new char[8192];
+            while ((n = r.read(buf)) > 0) {
+                w.write(buf, 0, n);
+            }
+            Script script = new Script(new String(w.toCharArray()));
+            SCRIPTS.put(scriptFileName, new CachedScript(script, lastModified, length));
+            return script;
+        }
+    }
+
+    static class CachedScript {
+        final Script script;
+        final long lastModified;
+        final long length;
+
+        CachedScript(Script script, long lastModified, long length) {
+            this.script = script;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
 }
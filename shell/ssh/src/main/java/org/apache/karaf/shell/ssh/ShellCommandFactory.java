@@ -25,13 +25,19 @@ import org.apache.sshd.server.CommandFactory;
 public class ShellCommandFactory implements CommandFactory {
 
     private SessionFactory sessionFactory;
+    private ExecSessionPool pool;
 
     public ShellCommandFactory(SessionFactory sessionFactory) {
+        this(sessionFactory, null);
+    }
+
+    ShellCommandFactory(SessionFactory sessionFactory, ExecSessionPool pool) {
         this.sessionFactory = sessionFactory;
+        this.pool = pool;
     }
 
     public Command createCommand(String command) {
-        return new ShellCommand(sessionFactory, command);
+        return new ShellCommand(sessionFactory, command, pool);
     }
 
 }
@@ -33,6 +33,7 @@ import javax.security.auth.Subject;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
 import org.apache.karaf.shell.api.console.Terminal;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
 import org.apache.karaf.shell.support.ShellUtil;
 import org.apache.karaf.util.jaas.JaasHelper;
 import org.apache.sshd.common.Factory;
@@ -91,6 +92,7 @@ public class ShellFactoryImpl implements Factory<Command> {
         }
 
         public void start(final Environment env) throws IOException {
+            Session created = null;
             try {
                 final Subject subject = ShellImpl.this.session != null ? ShellImpl.this.session
                         .getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
@@ -103,16 +105,21 @@ public class ShellFactoryImpl implements Factory<Command> {
                 String encoding = getEncoding();
                 final Session session = sessionFactory.create(in,
                         lfToCrLfPrintStream(out), lfToCrLfPrintStream(err), terminal, encoding, destroyCallback);
+                created = session;
                 for (Map.Entry<String, String> e : env.getEnv().entrySet()) {
                     session.put(e.getKey(), e.getValue());
                 }
                 JaasHelper.doAs(subject, new PrivilegedAction<Object>() {
                     public Object run() {
-                        new Thread(session, "Karaf ssh console user " + ShellUtil.getCurrentUserName()).start();
+                        SessionExecutor.getInstance().startSession(session, "Karaf ssh console user " + ShellUtil.getCurrentUserName());
                         return null;
                     }
                 });
             } catch (Exception e) {
+                if (created != null) {
+                    // closes the terminal and the streams of the client through the destroy callback
+                    created.close();
+                }
                 throw (IOException) new IOException("Unable to start shell").initCause(e);
             }
         }
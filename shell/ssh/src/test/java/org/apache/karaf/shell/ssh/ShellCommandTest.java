@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.support.parsing.Script;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShellCommandTest {
+
+    @Test
+    public void testInitScriptCache() throws Exception {
+        File script = File.createTempFile("shell", ".script");
+        script.deleteOnExit();
+        Files.write(script.toPath(), "a = { echo a } ;".getBytes(StandardCharsets.UTF_8));
+
+        Script content = ShellCommand.loadScript(script.getPath());
+        Assert.assertEquals("a = { echo a } ;", content.toString());
+        Assert.assertSame(content, ShellCommand.loadScript(script.getPath()));
+
+        Files.write(script.toPath(), "b = { echo bb } ;".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("b = { echo bb } ;", ShellCommand.loadScript(script.getPath()).toString());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final List<String> executed = new ArrayList<>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintStream console = new PrintStream(new ByteArrayOutputStream());
+        final Session session = proxy(Session.class, (method, args) -> {
+            if (method.getName().equals("execute")) {
+                String cmd = args[0].toString();
+                executed.add(cmd);
+                if (cmd.equals("fail")) {
+                    throw new IllegalStateException("failed");
+                }
+            } else if (method.getName().equals("getConsole")) {
+                return console;
+            }
+            return null;
+        });
+        SessionFactory factory = proxy(SessionFactory.class, (method, args) -> session);
+        Environment env = proxy(Environment.class, (method, args) -> new HashMap<String, String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger status = new AtomicInteger(-1);
+        ExitCallback callback = proxy(ExitCallback.class, (method, args) -> {
+            status.set((Integer) args[0]);
+            done.countDown();
+            return null;
+        });
+
+        ShellCommand command = new ShellCommand(factory, ShellCommand.BATCH_COMMAND);
+        command.setInputStream(new ByteArrayInputStream("first a\\\n b\n\nfail\nlast\n".getBytes(StandardCharsets.UTF_8)));
+        command.setOutputStream(out);
+        command.setErrorStream(new ByteArrayOutputStream());
+        command.setExitCallback(callback);
+        command.start(env);
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, status.get());
+        Assert.assertEquals(Arrays.asList("first a b", "fail", "last"), executed);
+        Assert.assertEquals("#!end 0 0\n#!end 1 1\n#!end 2 0\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    public void testExecSessionPool() throws Exception {
+        File script = File.createTempFile("exec", ".script");
+        script.deleteOnExit();
+        Files.write(script.toPath(), "init = true ;".getBytes(StandardCharsets.UTF_8));
+        String previous = System.setProperty(ShellCommand.EXEC_INIT_SCRIPT, script.getPath());
+        try {
+            final List<Map<String, Object>> created = new ArrayList<>();
+            final AtomicInteger closed = new AtomicInteger();
+            SessionFactory factory = proxy(SessionFactory.class, (method, args) -> {
+                final PrintStream console = (PrintStream) args[1];
+                final Map<String, Object> variables = new HashMap<>();
+                synchronized (created) {
+                    created.add(variables);
+                }
+                return proxy(Session.class, (m, a) -> {
+                    if (m.getName().equals("put")) {
+                        variables.put((String) a[0], a[1]);
+                    } else if (m.getName().equals("execute")) {
+                        console.print(a[0]);
+                        console.flush();
+                    } else if (m.getName().equals("close")) {
+                        closed.incrementAndGet();
+                    }
+                    return null;
+                });
+            });
+            Map<String, String> env = Collections.singletonMap("TERM", "dumb");
+            ExecSessionPool pool = new ExecSessionPool(factory);
+            Assert.assertNull(pool.take(null, env, null, null, null));
+
+            pool.prepare(null, env);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Session session = null;
+            long deadline = System.currentTimeMillis() + 10000;
+            while (session == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                session = pool.take(null, env, new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream());
+            }
+            Assert.assertNotNull(session);
+            // The output of the init script is kept until the session is taken
+            Assert.assertEquals("init = true ;", new String(out.toByteArray(), StandardCharsets.UTF_8));
+            Assert.assertEquals(1, created.size());
+            Assert.assertEquals("dumb", created.get(0).get("TERM"));
+            // A session is only taken once
+            Assert.assertNull(pool.take(null, env, null, null, null));
+            Assert.assertEquals(0, pool.size());
+
+            // A session prepared with a previous init script is discarded
+            pool.prepare(null, env);
+            deadline = System.currentTimeMillis() + 10000;
+            while (created.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Files.write(script.toPath(), "init = false ;".getBytes(StandardCharsets.UTF_8));
+            deadline = System.currentTimeMillis() + 10000;
+            while (closed.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                Assert.assertNull(pool.take(null, env, null, null, null));
+            }
+            Assert.assertEquals(1, closed.get());
+            Assert.assertEquals(0, pool.size());
+            pool.close();
+        } finally {
+            if (previous != null) {
+                System.setProperty(ShellCommand.EXEC_INIT_SCRIPT, previous);
+            } else {
+                System.clearProperty(ShellCommand.EXEC_INIT_SCRIPT);
+            }
+        }
+    }
+
+    interface Handler {
+        Object invoke(Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, final Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> handler.invoke(method, args));
+    }
+
+}
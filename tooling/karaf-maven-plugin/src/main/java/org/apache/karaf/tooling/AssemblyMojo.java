@@ -176,6 +176,35 @@ public class AssemblyMojo extends MojoSupport {
     @Parameter
     protected boolean installAllFeaturesByDefault = true;
 
+    /**
+     * Generate a boot image (etc/features-boot-image.json) with the resolution of the boot
+     * features and a cache of the boot repositories, used by the features service to skip
+     * the resolution on first boot. No image is generated when the boot features are staged
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean generateBootImage;
+
+    /**
+     * Prefetch the artifacts of all stages concurrently and zero-copy them
+     * instead of downloading and copying them stage by stage
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean pipelinedAssembly;
+
+    /**
+     * Hard link the artifacts of the local repository into the assembly instead of copying them.
+     * The files of the assembly then share their content with the local repository, so they
+     * must not be modified in place
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean hardLinkArtifacts;
+
+    /**
+     * Number of threads used to download artifacts
+     */
+    @Parameter(defaultValue = "8")
+    protected int downloadThreads;
+
     @Parameter
     protected Builder.KarafVersion karafVersion = Builder.KarafVersion.v4x;
 
@@ -393,7 +422,11 @@ public class AssemblyMojo extends MojoSupport {
         builder.karafVersion(karafVersion)
                .useReferenceUrls(useReferenceUrls)
                .defaultAddAll(installAllFeaturesByDefault)
-               .ignoreDependencyFlag(ignoreDependencyFlag);
+               .ignoreDependencyFlag(ignoreDependencyFlag)
+               .bootImage(generateBootImage)
+               .pipelined(pipelinedAssembly)
+               .hardLinks(hardLinkArtifacts)
+               .downloadThreads(downloadThreads);
         if (profilesUri != null) {
             builder.profilesUris(profilesUri);
         }
@@ -30,7 +30,6 @@ import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -43,7 +42,12 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
@@ -144,6 +148,13 @@ public class VerifyMojo extends MojoSupport {
     @Parameter(property = "verify-transitive")
     protected boolean verifyTransitive = false;
 
+    /**
+     * Number of features resolutions to verify concurrently.
+     * Defaults to the number of available processors.
+     */
+    @Parameter(property = "threads", defaultValue = "0")
+    protected int threads;
+
     @Parameter(defaultValue = "${project}", readonly = true)
     protected MavenProject project;
 
@@ -284,14 +295,84 @@ public class VerifyMojo extends MojoSupport {
         for (String fmk : framework) {
             properties.put("feature.framework." + fmk, fmk);
         }
-        List<Exception> failures = new ArrayList<>();
+        // The download manager, the system bundle and the bundle manifests
+        // are shared by all the verifications
+        final Hashtable<String, String> systemHeaders;
+        try {
+            systemHeaders = getSystemBundleHeaders(getMetadata(properties, "metadata#"));
+        } catch (MojoFailureException | MojoExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Unable to build the system bundle", e);
+        }
+        final Map<String, Hashtable<String, String>> headersCache = new ConcurrentHashMap<>();
+
+        // Build the list of verifications in a deterministic order
+        List<Verification> verifications = new ArrayList<>();
         for (Feature feature : featuresToTest) {
-            try {
-                String id = feature.getName() + "/" + feature.getVersion();
-                verifyResolution(new CustomDownloadManager(resolver, executor),
-                                 repositories, Collections.singleton(id), properties);
-                getLog().info("Verification of feature " + id + " succeeded");
-            } catch (Exception e) {
+            verifications.add(new Verification(feature, null));
+            for (Conditional cond : feature.getConditional()) {
+                verifications.add(new Verification(feature, cond));
+            }
+        }
+
+        int nbThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        getLog().info("Verifying " + verifications.size() + " feature resolutions using " + nbThreads + " thread(s)");
+        try {
+            verify(verifications, nbThreads, new Verifier() {
+                @Override
+                public void verify(Verification verification) throws MojoExecutionException {
+                    verifyResolution(manager, repositories, verification.ids, systemHeaders, headersCache);
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run the verifications concurrently and report their outcome in order,
+     * so that the output and the failure modes do not depend on the number of threads.
+     */
+    void verify(List<Verification> verifications, int nbThreads, final Verifier verifier) throws MojoExecutionException {
+        ExecutorService verifyExecutor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<Exception>> results = new ArrayList<>();
+        try {
+            for (final Verification verification : verifications) {
+                results.add(verifyExecutor.submit(new Callable<Exception>() {
+                    @Override
+                    public Exception call() throws Exception {
+                        try {
+                            verifier.verify(verification);
+                            return null;
+                        } catch (MojoExecutionException e) {
+                            return e;
+                        }
+                    }
+                }));
+            }
+            // Report in order
+            List<Exception> failures = new ArrayList<>();
+            for (int i = 0; i < verifications.size(); i++) {
+                Verification verification = verifications.get(i);
+                Exception e;
+                try {
+                    e = results.get(i).get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Verification interrupted", ie);
+                } catch (ExecutionException ee) {
+                    e = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                }
+                if (e == null) {
+                    getLog().info("Verification of feature " + verification.name() + " succeeded");
+                    continue;
+                }
+                if (verification.isIgnored(e)) {
+                    getLog().warn("Feature resolution failed for " + verification.ids
+                            + "\nMessage: " + e.getCause().getMessage());
+                    continue;
+                }
                 if (e.getCause() instanceof ResolutionException) {
                     getLog().warn(e.getMessage());
                 } else {
@@ -299,52 +380,66 @@ public class VerifyMojo extends MojoSupport {
                 }
                 failures.add(e);
                 if ("first".equals(fail)) {
-                    throw e;
+                    if (e instanceof MojoExecutionException) {
+                        throw (MojoExecutionException) e;
+                    }
+                    throw new MojoExecutionException(e.getMessage(), e);
                 }
             }
-            for (Conditional cond : feature.getConditional()) {
-                Set<String> ids = new LinkedHashSet<>();
+            if ("end".equals(fail) && !failures.isEmpty()) {
+                throw new MojoExecutionException("Verification failures", new MultiException("Verification failures", failures));
+            }
+        } finally {
+            verifyExecutor.shutdownNow();
+        }
+    }
+
+    interface Verifier {
+        void verify(Verification verification) throws MojoExecutionException;
+    }
+
+    /**
+     * A single resolution to verify: either a feature alone,
+     * or a feature along with the features of one of its conditionals.
+     */
+    class Verification {
+        final Conditional conditional;
+        final Set<String> ids = new LinkedHashSet<>();
+
+        Verification(Feature feature, Conditional conditional) {
+            this.conditional = conditional;
+            if (conditional == null) {
+                ids.add(feature.getName() + "/" + feature.getVersion());
+            } else {
                 ids.add(feature.getId());
-                ids.addAll(cond.getCondition());
-                try {
-                    verifyResolution(manager, repositories, ids, properties);
-                    getLog().info("Verification of feature " + ids + " succeeded");
-                } catch (Exception e) {
-                    if (ignoreMissingConditions && e.getCause() instanceof ResolutionException) {
-                        boolean ignore = true;
-                        Collection<Requirement> requirements = ((ResolutionException) e.getCause()).getUnresolvedRequirements();
-                        for (Requirement req : requirements) {
-                            ignore &= (IdentityNamespace.IDENTITY_NAMESPACE.equals(req.getNamespace())
-                                    && ResourceUtils.TYPE_FEATURE.equals(req.getAttributes().get("type"))
-                                    && cond.getCondition().contains(req.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE).toString()));
-                        }
-                        if (ignore) {
-                            getLog().warn("Feature resolution failed for " + ids
-                                    + "\nMessage: " + e.getCause().getMessage());
-                            continue;
-                        }
-                    }
-                    if (e.getCause() instanceof ResolutionException) {
-                        getLog().warn(e.getMessage());
-                    } else {
-                        getLog().warn(e);
-                    }
-                    failures.add(e);
-                    if ("first".equals(fail)) {
-                        throw e;
-                    }
-                }
+                ids.addAll(conditional.getCondition());
             }
         }
-        if ("end".equals(fail) && !failures.isEmpty()) {
-            throw new MojoExecutionException("Verification failures", new MultiException("Verification failures", failures));
+
+        String name() {
+            return conditional == null ? ids.iterator().next() : ids.toString();
+        }
+
+        boolean isIgnored(Exception e) {
+            if (conditional == null || !ignoreMissingConditions || !(e.getCause() instanceof ResolutionException)) {
+                return false;
+            }
+            boolean ignore = true;
+            Collection<Requirement> requirements = ((ResolutionException) e.getCause()).getUnresolvedRequirements();
+            for (Requirement req : requirements) {
+                ignore &= (IdentityNamespace.IDENTITY_NAMESPACE.equals(req.getNamespace())
+                        && ResourceUtils.TYPE_FEATURE.equals(req.getAttributes().get("type"))
+                        && conditional.getCondition().contains(req.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE).toString()));
+            }
+            return ignore;
         }
     }
 
-    private void verifyResolution(DownloadManager manager, final Map<String, Features> repositories, Set<String> features, Hashtable<String, String> properties) throws MojoExecutionException {
+    private void verifyResolution(DownloadManager manager, final Map<String, Features> repositories, Set<String> features,
+                                  Hashtable<String, String> systemHeaders, Map<String, Hashtable<String, String>> headersCache) throws MojoExecutionException {
         try {
-            Bundle systemBundle = getSystemBundle(getMetadata(properties, "metadata#"));
-            DummyDeployCallback callback = new DummyDeployCallback(systemBundle, repositories.values());
+            Bundle systemBundle = new FakeBundleRevision(systemHeaders, "system-bundle", 0l).getBundle();
+            DummyDeployCallback callback = new DummyDeployCallback(systemBundle, repositories.values(), headersCache);
             Deployer deployer = new Deployer(manager, new ResolverImpl(new MavenResolverLog()), callback);
 
 
@@ -442,7 +537,7 @@ public class VerifyMojo extends MojoSupport {
         return sb.toString();
     }
 
-    private Bundle getSystemBundle(Map<String, Map<VersionRange, Map<String, String>>> metadata) throws Exception {
+    private Hashtable<String, String> getSystemBundleHeaders(Map<String, Map<VersionRange, Map<String, String>>> metadata) throws Exception {
         URL configPropURL;
         if (configuration != null) {
             configPropURL = new URL(configuration);
@@ -491,9 +586,7 @@ public class VerifyMojo extends MojoSupport {
         for (Map.Entry attr : attributes.entrySet()) {
             headers.put(attr.getKey().toString(), attr.getValue().toString());
         }
-
-        final FakeBundleRevision resource = new FakeBundleRevision(headers, "system-bundle", 0l);
-        return resource.getBundle();
+        return headers;
     }
 
 
@@ -680,9 +773,16 @@ public class VerifyMojo extends MojoSupport {
         private final Bundle systemBundle;
         private final Deployer.DeploymentState dstate;
         private final AtomicLong nextBundleId = new AtomicLong(0);
+        private final Map<String, Hashtable<String, String>> headersCache;
 
         public DummyDeployCallback(Bundle sysBundle, Collection<Features> repositories) throws Exception {
+            this(sysBundle, repositories, new HashMap<String, Hashtable<String, String>>());
+        }
+
+        public DummyDeployCallback(Bundle sysBundle, Collection<Features> repositories,
+                                   Map<String, Hashtable<String, String>> headersCache) throws Exception {
             systemBundle = sysBundle;
+            this.headersCache = headersCache;
             dstate = new Deployer.DeploymentState();
             dstate.bundles = new HashMap<>();
             dstate.features = new HashMap<>();
@@ -727,16 +827,20 @@ public class VerifyMojo extends MojoSupport {
         @Override
         public Bundle installBundle(String region, String uri, InputStream is) throws BundleException {
             try {
-                Hashtable<String, String> headers = new Hashtable<>();
-                ZipInputStream zis = new ZipInputStream(is);
-                ZipEntry entry;
-                while ((entry = zis.getNextEntry()) != null) {
-                    if (MANIFEST_NAME.equals(entry.getName())) {
-                        Attributes attributes = new Manifest(zis).getMainAttributes();
-                        for (Map.Entry attr : attributes.entrySet()) {
-                            headers.put(attr.getKey().toString(), attr.getValue().toString());
+                Hashtable<String, String> headers = headersCache.get(uri);
+                if (headers == null) {
+                    headers = new Hashtable<>();
+                    ZipInputStream zis = new ZipInputStream(is);
+                    ZipEntry entry;
+                    while ((entry = zis.getNextEntry()) != null) {
+                        if (MANIFEST_NAME.equals(entry.getName())) {
+                            Attributes attributes = new Manifest(zis).getMainAttributes();
+                            for (Map.Entry attr : attributes.entrySet()) {
+                                headers.put(attr.getKey().toString(), attr.getValue().toString());
+                            }
                         }
                     }
+                    headersCache.put(uri, headers);
                 }
                 BundleRevision revision = new FakeBundleRevision(headers, uri, nextBundleId.incrementAndGet());
                 Bundle bundle = revision.getBundle();
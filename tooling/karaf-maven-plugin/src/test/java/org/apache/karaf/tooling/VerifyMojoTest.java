@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.karaf.tooling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.karaf.features.internal.model.Feature;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VerifyMojoTest {
+
+    @Test
+    public void testFailuresAtEnd() throws Exception {
+        Outcome sequential = verify("end", 1);
+        Outcome concurrent = verify("end", 4);
+
+        // all the failures are aggregated, in the order of the features
+        assertEquals(Arrays.asList("f2/1.0", "f5/1.0"), sequential.failures);
+        assertEquals(sequential.failures, concurrent.failures);
+        assertEquals(sequential.log, concurrent.log);
+        assertEquals(8, sequential.log.size());
+        assertEquals("info: Verification of feature f1/1.0 succeeded", sequential.log.get(0));
+        assertEquals("warn: Feature resolution failed for f2/1.0", sequential.log.get(1));
+    }
+
+    @Test
+    public void testFailFirst() throws Exception {
+        Outcome sequential = verify("first", 1);
+        Outcome concurrent = verify("first", 4);
+
+        // the first failure in the order of the features is reported, even if another one happened before
+        assertEquals(Collections.singletonList("f2/1.0"), sequential.failures);
+        assertEquals(sequential.failures, concurrent.failures);
+        assertEquals(sequential.log, concurrent.log);
+        assertEquals(2, sequential.log.size());
+    }
+
+    @Test
+    public void testFailNone() throws Exception {
+        Outcome outcome = verify("none", 4);
+        assertTrue(outcome.failures.isEmpty());
+        assertEquals(8, outcome.log.size());
+    }
+
+    private Outcome verify(String fail, int threads) throws Exception {
+        final Outcome outcome = new Outcome();
+        VerifyMojo mojo = new VerifyMojo();
+        mojo.fail = fail;
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                outcome.log.add("info: " + content);
+            }
+
+            @Override
+            public void warn(CharSequence content) {
+                outcome.log.add("warn: " + content);
+            }
+
+            @Override
+            public void warn(Throwable error) {
+                outcome.log.add("warn: " + error.getMessage());
+            }
+        });
+        List<VerifyMojo.Verification> verifications = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            verifications.add(mojo.new Verification(new Feature("f" + i, "1.0"), null));
+        }
+        final Random random = new Random();
+        try {
+            mojo.verify(verifications, threads, new VerifyMojo.Verifier() {
+                @Override
+                public void verify(VerifyMojo.Verification verification) throws MojoExecutionException {
+                    String id = verification.name();
+                    try {
+                        // complete in a random order, the later failure usually first
+                        Thread.sleep(id.equals("f5/1.0") ? 0 : random.nextInt(20));
+                    } catch (InterruptedException e) {
+                        throw new MojoExecutionException("Interrupted", e);
+                    }
+                    if (id.equals("f2/1.0") || id.equals("f5/1.0")) {
+                        throw new MojoExecutionException("Feature resolution failed for " + id);
+                    }
+                }
+            });
+        } catch (MojoExecutionException e) {
+            if (e.getCause() != null) {
+                assertEquals("Verification failures", e.getMessage());
+                for (Throwable t : e.getCause().getSuppressed()) {
+                    outcome.failures.add(t.getMessage().substring("Feature resolution failed for ".length()));
+                }
+            } else {
+                outcome.failures.add(e.getMessage().substring("Feature resolution failed for ".length()));
+            }
+            return outcome;
+        }
+        if (!outcome.failures.isEmpty()) {
+            fail("Failures should have been reported");
+        }
+        return outcome;
+    }
+
+    static class Outcome {
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+}
@@ -31,6 +31,7 @@ import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.util.zip.GZIPOutputStream;
@@ -44,6 +45,7 @@ import org.apache.felix.webconsole.AbstractWebConsolePlugin;
 import org.apache.karaf.jaas.boot.principal.UserPrincipal;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.impl.executor.SessionExecutor;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,14 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
     public static final String LABEL = "Gogo";
     public static final int TERM_WIDTH = 120;
     public static final int TERM_HEIGHT = 39;
+    /**
+     * Maximum time a poll request waits for the screen to change, in milliseconds.
+     */
+    public static final long POLL_TIMEOUT = 20000;
+    /**
+     * Responses smaller than this size are not compressed.
+     */
+    public static final int GZIP_THRESHOLD = 1024;
 
     private BundleContext bundleContext;
     private SessionFactory sessionFactory;
@@ -149,6 +159,34 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
             request.getSession().setAttribute("terminal", st);
         }
         String str = request.getParameter("k");
+        String s = request.getParameter("s");
+        if (s != null) {
+            // Incremental update: only the rows which changed since the given version are sent
+            long epoch;
+            long since;
+            try {
+                epoch = Long.parseLong(request.getParameter("e"));
+                since = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                epoch = 0;
+                since = 0;
+            }
+            boolean poll = request.getParameter("p") != null;
+            String rows = st.handle(str, epoch, since, poll ? POLL_TIMEOUT : 10);
+            if (rows != null) {
+                byte[] data = rows.getBytes(StandardCharsets.UTF_8);
+                response.setContentType("text/plain;charset=UTF-8");
+                if (supportsGzip && data.length > GZIP_THRESHOLD) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    GZIPOutputStream gzos = new GZIPOutputStream(response.getOutputStream());
+                    gzos.write(data);
+                    gzos.close();
+                } else {
+                    response.getOutputStream().write(data);
+                }
+            }
+            return;
+        }
         String f = request.getParameter("f");
         String dump = st.handle(str, f != null && f.length() > 0);
         if (dump != null) {
@@ -192,7 +230,7 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
                         new WebTerminal(TERM_WIDTH, TERM_HEIGHT),
                         null,
                         null);
-                new Thread(session, "Karaf web console user " + getCurrentUserName()).start();
+                SessionExecutor.getInstance().startSession(session, "Karaf web console user " + getCurrentUserName());
             } catch (IOException e) {
                 e.printStackTrace();
                 throw e;
@@ -200,7 +238,7 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
                 e.printStackTrace();
                 throw (IOException) new IOException().initCause(e);
             }
-            new Thread(this).start();
+            SessionExecutor.getInstance().execute(this, "Karaf web console terminal " + getCurrentUserName());
         }
         
         private String getCurrentUserName() {
@@ -218,23 +256,38 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
         }
 
         public String handle(String str, boolean forceDump) throws IOException {
+            send(str);
+            try {
+                return terminal.dump(10, forceDump);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        /**
+         * Send the given keys and get the rows of the screen which changed
+         * after the given version, waiting for a change if needed.
+         */
+        public String handle(String str, long epoch, long since, long timeout) throws IOException {
+            send(str);
+            try {
+                return terminal.dump(epoch, since, timeout);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        private void send(String str) throws IOException {
             try {
                 if (str != null && str.length() > 0) {
                     String d = terminal.pipe(str);
-                    for (byte b : d.getBytes()) {
-                        in.write(b);
-                    }
+                    in.write(d.getBytes());
                     in.flush();
                 }
             } catch (IOException e) {
                 closed = true;
                 throw e;
             }
-            try {
-                return terminal.dump(10, forceDump);
-            } catch (InterruptedException e) {
-                throw new InterruptedIOException(e.toString());
-            }
         }
 
         public void run() {
@@ -33,9 +33,13 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Terminal {
 
+    // Seeded with the time, so that the epochs stay unique across restarts
+    private static final AtomicLong EPOCHS = new AtomicLong(System.currentTimeMillis());
+
     enum State {
         None,
         Esc,
@@ -98,6 +102,18 @@ public class Terminal {
 
     private AtomicBoolean dirty = new AtomicBoolean(true);
 
+    // Incremental rendering: the rows modified since the last refresh,
+    // the last rendered rows and the version at which they last changed
+    private boolean[] dirty_rows;
+    private String[] rows;
+    private long[] rows_version;
+    private long version;
+    private final long epoch = EPOCHS.incrementAndGet();
+    private int rendered_cx = -1;
+    private int rendered_cy = -1;
+    private boolean rendered_cursor;
+    private boolean rendered_inverse;
+
     public Terminal() {
         this(80, 24);
     }
@@ -175,6 +191,12 @@ public class Terminal {
         Arrays.fill(screen, attr | 0x0020);
         screen2 = new int[width * height];
         Arrays.fill(screen2, attr | 0x0020);
+        // Rendered rows
+        dirty_rows = new boolean[height];
+        Arrays.fill(dirty_rows, true);
+        rows = new String[height];
+        rows_version = new long[height];
+        rendered_cy = -1;
         // Scroll parameters
         scroll_area_y0 = 0;
         scroll_area_y1 = height;
@@ -259,7 +281,7 @@ public class Terminal {
 
     private void poke(int y, int x, int[] s) {
         System.arraycopy(s, 0, screen, width * y + x, s.length);
-        setDirty();
+        setDirty(y, y + (x + s.length + width - 1) / width);
     }
 
     private void fill(int y0, int x0, int y1, int x1, int c) {
@@ -267,7 +289,7 @@ public class Terminal {
         int d1 = width * (y1 - 1) + x1;
         if (d0 <= d1) {
             Arrays.fill(screen, width * y0 + x0, width * (y1 - 1) + x1, c);
-            setDirty();
+            setDirty(y0, y1);
         }
     }
 
@@ -581,6 +603,7 @@ public class Terminal {
                     int[] s = screen;
                     screen = screen2;
                     screen2 = s;
+                    setDirty(0, height);
                     Map<String, Object> map = vt100_saved;
                     vt100_saved = vt100_saved2;
                     vt100_saved2 = map;
@@ -1536,6 +1559,11 @@ public class Terminal {
         notifyAll();
     }
 
+    private void setDirty(int y0, int y1) {
+        Arrays.fill(dirty_rows, Math.max(0, y0), Math.min(height, Math.max(y0, y1)), true);
+        setDirty();
+    }
+
     //
     // External interface
     //
@@ -1745,77 +1773,168 @@ public class Terminal {
             wait(timeout);
         }
         if (dirty.compareAndSet(true, false) || forceDump) {
+            refresh();
             StringBuilder sb = new StringBuilder();
-            int prev_attr = -1;
-            int cx = Math.min(this.cx, width - 1);
-            int cy = this.cy;
             sb.append("<div><pre class='term'>");
             for (int y = 0; y < height; y++) {
-                int wx = 0;
-                for (int x = 0; x < width; x++) {
-                    int d = screen[y * width + x];
-                    int c = d & 0xffff;
-                    int a = d >> 16;
-                    if (cy == y && cx == x && vt100_mode_cursor) {
-                        a = a & 0xfff0 | 0x000c;
-                    }
-                    if (a != prev_attr) {
-                        if (prev_attr != -1) {
-                            sb.append("</span>");
-                        }
-                        int bg = a & 0x000f;
-                        int fg = (a & 0x00f0) >> 4;
-                        boolean inv = (a & 0x0200) != 0;
-                        boolean inv2 = vt100_mode_inverse;
-                        if (inv && !inv2 || inv2 && !inv) {
-                            int i = fg;
-                            fg = bg;
-                            bg = i;
-                        }
-                        if ((a & 0x0400) != 0) {
-                            fg = 0x0c;
-                        }
-                        String ul;
-                        if ((a & 0x0100) != 0) {
-                            ul = " ul";
-                        } else {
-                            ul = "";
-                        }
-                        String b;
-                        if ((a & 0x0800) != 0) {
-                            b = " b";
-                        } else {
-                            b = "";
-                        }
-                        sb.append("<span class='f").append(fg).append(" b").append(bg).append(ul).append(b).append("'>");
-                        prev_attr = a;
-                    }
-                    switch (c) {
-                        case '&':
-                            sb.append("&amp;");
-                            break;
-                        case '<':
-                            sb.append("&lt;");
-                            break;
-                        case '>':
-                            sb.append("&gt;");
-                            break;
-                        default:
-                            wx += utf8_charwidth(c);
-                            if (wx <= width) {
-                                sb.append((char) c);
-                            }
-                            break;
-                    }
-                }
-                sb.append("\n");
+                sb.append(rows[y]).append("\n");
             }
-            sb.append("</span></pre></div>");
+            sb.append("</pre></div>");
             return sb.toString();
         }
         return null;
     }
 
+    /**
+     * @return the epoch of this terminal, which identifies its versions.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Dump the rows which changed after the given version.
+     *
+     * The first line contains the epoch of the terminal, the current version
+     * and the size of the screen, and is followed by one line per changed row,
+     * made of the index of the row, a tab and the html content of the row.
+     * The versions are only meaningful within an epoch, so all the rows are
+     * dumped if the given epoch is not the one of this terminal, or if the
+     * given version is unknown.
+     *
+     * @param epoch the epoch of the terminal known by the client.
+     * @param since the version of the screen known by the client.
+     * @param timeout the maximum time to wait for a change, in milliseconds.
+     * @return the changed rows, or <code>null</code> if nothing changed.
+     */
+    public synchronized String dump(long epoch, long since, long timeout) throws InterruptedException {
+        refresh();
+        if (epoch != this.epoch || since < 0 || since > version) {
+            since = 0;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while (version <= since) {
+            long delay = deadline - System.currentTimeMillis();
+            if (delay <= 0) {
+                return null;
+            }
+            wait(delay);
+            refresh();
+        }
+        dirty.set(false);
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.epoch).append(' ').append(version).append(' ').append(width).append(' ').append(height).append('\n');
+        for (int y = 0; y < height; y++) {
+            if (rows_version[y] > since) {
+                sb.append(y).append('\t').append(rows[y]).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Render the dirty rows, and the rows whose rendering depends on a
+     * cursor or mode change.  The version is increased if a row changed.
+     */
+    private void refresh() {
+        int cx = Math.min(this.cx, width - 1);
+        int cy = this.cy;
+        if (rendered_inverse != vt100_mode_inverse) {
+            Arrays.fill(dirty_rows, true);
+            rendered_inverse = vt100_mode_inverse;
+        }
+        if (rendered_cx != cx || rendered_cy != cy || rendered_cursor != vt100_mode_cursor) {
+            if (rendered_cy >= 0 && rendered_cy < height) {
+                dirty_rows[rendered_cy] = true;
+            }
+            dirty_rows[cy] = true;
+            rendered_cx = cx;
+            rendered_cy = cy;
+            rendered_cursor = vt100_mode_cursor;
+        }
+        boolean changed = false;
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < height; y++) {
+            if (dirty_rows[y]) {
+                dirty_rows[y] = false;
+                sb.setLength(0);
+                render(sb, y, cx, cy);
+                String row = sb.toString();
+                if (!row.equals(rows[y])) {
+                    if (!changed) {
+                        version++;
+                        changed = true;
+                    }
+                    rows[y] = row;
+                    rows_version[y] = version;
+                }
+            }
+        }
+    }
+
+    private void render(StringBuilder sb, int y, int cx, int cy) {
+        int prev_attr = -1;
+        int wx = 0;
+        for (int x = 0; x < width; x++) {
+            int d = screen[y * width + x];
+            int c = d & 0xffff;
+            int a = d >> 16;
+            if (cy == y && cx == x && vt100_mode_cursor) {
+                a = a & 0xfff0 | 0x000c;
+            }
+            if (a != prev_attr) {
+                if (prev_attr != -1) {
+                    sb.append("</span>");
+                }
+                int bg = a & 0x000f;
+                int fg = (a & 0x00f0) >> 4;
+                boolean inv = (a & 0x0200) != 0;
+                boolean inv2 = vt100_mode_inverse;
+                if (inv && !inv2 || inv2 && !inv) {
+                    int i = fg;
+                    fg = bg;
+                    bg = i;
+                }
+                if ((a & 0x0400) != 0) {
+                    fg = 0x0c;
+                }
+                String ul;
+                if ((a & 0x0100) != 0) {
+                    ul = " ul";
+                } else {
+                    ul = "";
+                }
+                String b;
+                if ((a & 0x0800) != 0) {
+                    b = " b";
+                } else {
+                    b = "";
+                }
+                sb.append("<span class='f").append(fg).append(" b").append(bg).append(ul).append(b).append("'>");
+                prev_attr = a;
+            }
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                default:
+                    wx += utf8_charwidth(c);
+                    if (wx <= width) {
+                        // keep the rows on a single line
+                        sb.append(c < 0x20 ? ' ' : (char) c);
+                    }
+                    break;
+            }
+        }
+        sb.append("</span>");
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int y = 0; y < height; y++) {
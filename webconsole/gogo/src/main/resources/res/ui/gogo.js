@@ -25,19 +25,21 @@ gogo = { };
 gogo.Terminal_ctor = function(div, width, height) {
 
    var query0 = "w=" + width + "&h=" + height;
-   var query1 = query0 + "&k=";
-   var buf = "";
-   var timeout;
+   var epoch = 0;
+   var version = 0;
+   var retry;
    var error_timeout;
    var keybuf = [];
    var sending = 0;
-   var rmax = 1;
-   var force = 1;
+   var polling = 0;
+   var rmax = 100;
 
    var dstat = document.createElement('pre');
    var sled = document.createElement('span');
    var sdebug = document.createElement('span');
    var dterm = document.createElement('div');
+   var pterm = document.createElement('pre');
+   var rows = [];
 
    function debug(s) {
        sdebug.innerHTML = s;
@@ -48,53 +50,110 @@ gogo.Terminal_ctor = function(div, width, height) {
        debug("Connection lost timeout ts:" + ((new Date).getTime()));
    }
 
+   // Apply the rows which changed since the known version of the screen.
+   // The first line holds the epoch of the terminal, the version, the width and
+   // the height of the screen, and is followed by one line per changed row:
+   // its index, a tab and its content.
+   function apply(text) {
+       var lines = text.split("\n");
+       var header = lines[0].split(" ");
+       var e = parseInt(header[0]);
+       var v = parseInt(header[1]);
+       var h = parseInt(header[3]);
+       // lines also holds the header and the empty string after the last new line
+       var full = lines.length - 2 >= h;
+       if (e != epoch || v < version && full) {
+           // A new terminal, or a full dump going back in versions: start again from it
+           epoch = e;
+           version = 0;
+           rows = [];
+       } else if (v <= version) {
+           // An answer overtaken by a more recent one
+           return;
+       }
+       if (rows.length != h) {
+           pterm.innerHTML = "";
+           rows = [];
+           for (var i = 0; i < h; i++) {
+               var row = document.createElement('div');
+               pterm.appendChild(row);
+               rows.push(row);
+           }
+       }
+       for (var i = 1; i < lines.length; i++) {
+           var t = lines[i].indexOf("\t");
+           if (t > 0) {
+               var y = parseInt(lines[i].substring(0, t));
+               if (y < rows.length) {
+                   rows[y].innerHTML = lines[i].substring(t + 1);
+               }
+           }
+       }
+       version = v;
+   }
+
+   function request(query, callback) {
+       var r = new XMLHttpRequest();
+       r.open("POST", "gogo", true);
+       r.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
+       r.onreadystatechange = function () {
+           if (r.readyState == 4) {
+               if (r.status == 200) {
+                   if (r.responseText.length > 0) {
+                       apply(r.responseText);
+                   }
+                   callback(true);
+               } else {
+                   debug("Connection error status:" + r.status);
+                   callback(false);
+               }
+           }
+       }
+       r.send(query0 + "&e=" + epoch + "&s=" + version + query);
+   }
+
+   // Wait for changes of the screen, the server answers as soon as the screen changes
+   function poll() {
+       if (polling == 0) {
+           polling = 1;
+           request("&p=1", function(ok) {
+               polling = 0;
+               if (ok) {
+                   rmax = 100;
+                   poll();
+               } else {
+                   sled.className = 'off';
+                   rmax = Math.min(rmax * 2, 5000);
+                   retry = window.setTimeout(poll, rmax);
+               }
+           });
+       }
+   }
+
+   // Send the pending keys in one request
    function update() {
-       if (sending == 0) {
+       if (sending == 0 && keybuf.length > 0) {
            sending = 1;
            sled.className = 'on';
-           var r = new XMLHttpRequest();
            var send = "";
            while (keybuf.length > 0) {
                send += keybuf.pop();
            }
-           var query = query1 + send;
-           if (force) {
-               query = query + "&f=1";
-               force = 0;
-           }
-           r.open("POST", "gogo", true);
-           r.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
-           r.onreadystatechange = function () {
-               if (r.readyState == 4) {
-                   if (r.status == 200) {
-                       window.clearTimeout(error_timeout);
-                       if (r.responseText.length > 0) {
-                           dterm.innerHTML = r.responseText;
-                           rmax = 100;
-                       } else {
-                           rmax *= 2;
-                           if (rmax > 2000)
-                               rmax = 2000;
-                       }
-                       sending=0;
-                       sled.className = 'off';
-                       timeout = window.setTimeout(update, rmax);
-                   } else {
-                       debug("Connection error status:" + r.status);
-                   }
-               }
-           }
            error_timeout = window.setTimeout(error, 5000);
-           r.send(query);
+           request("&k=" + send, function(ok) {
+               window.clearTimeout(error_timeout);
+               sending = 0;
+               if (ok) {
+                   sled.className = 'off';
+                   update();
+               }
+           });
        }
    }
 
    function queue(s) {
        keybuf.unshift(s);
-       if (sending == 0) {
-           window.clearTimeout(timeout);
-           timeout = window.setTimeout(update, 1);
-       }
+       update();
    }
 
    function keypress(ev, fromkeydown) {
@@ -227,12 +286,14 @@ gogo.Terminal_ctor = function(div, width, height) {
        dstat.appendChild(sdebug);
        dstat.className = 'stat';
        div.appendChild(dstat);
+       pterm.className = 'term';
+       dterm.appendChild(pterm);
        var d = document.createElement('div');
        d.appendChild(dterm);
        div.appendChild(d);
        document.onkeypress = keypress;
        document.onkeydown = keydown;
-       timeout = window.setTimeout(update, 100);
+       window.setTimeout(poll, 100);
    }
 
    init();
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.webconsole.gogo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TerminalTest {
+
+    @Test
+    public void testIncrementalDump() throws Exception {
+        Terminal terminal = new Terminal(10, 4);
+        // An unknown epoch gets all the rows
+        String[] full = terminal.dump(0, 0, 0).split("\n");
+        String[] header = full[0].split(" ");
+        assertEquals(String.valueOf(terminal.getEpoch()), header[0]);
+        assertEquals("10", header[2]);
+        assertEquals("4", header[3]);
+        assertEquals(5, full.length);
+        long version = Long.parseLong(header[1]);
+
+        // Nothing changed
+        assertNull(terminal.dump(terminal.getEpoch(), version, 0));
+
+        // Only the changed row is sent
+        terminal.write("\u001b[3;1Hab");
+        String[] diff = terminal.dump(terminal.getEpoch(), version, 0).split("\n");
+        long next = Long.parseLong(diff[0].split(" ")[1]);
+        assertTrue(next > version);
+        // the cursor moved from the first row to the third one
+        assertEquals(3, diff.length);
+        assertTrue(diff[1].startsWith("0\t"));
+        assertTrue(diff[2].startsWith("2\t<span class='f15 b14'>ab</span>"));
+    }
+
+    @Test
+    public void testUnknownVersionOrEpoch() throws Exception {
+        Terminal terminal = new Terminal(10, 4);
+        long version = Long.parseLong(terminal.dump(0, 0, 0).split("\n")[0].split(" ")[1]);
+
+        // A version ahead of the terminal gets all the rows
+        assertEquals(5, terminal.dump(terminal.getEpoch(), version + 10, 0).split("\n").length);
+
+        // A new terminal restarts the versions, but in a new epoch
+        Terminal other = new Terminal(10, 4);
+        assertNotEquals(terminal.getEpoch(), other.getEpoch());
+        String[] full = other.dump(terminal.getEpoch(), version, 0).split("\n");
+        assertEquals(String.valueOf(other.getEpoch()), full[0].split(" ")[0]);
+        assertEquals(5, full.length);
+    }
+
+    @Test
+    public void testDumpWaitsForChange() throws Exception {
+        final Terminal terminal = new Terminal(10, 4);
+        long version = Long.parseLong(terminal.dump(0, 0, 0).split("\n")[0].split(" ")[1]);
+
+        long start = System.currentTimeMillis();
+        assertNull(terminal.dump(terminal.getEpoch(), version, 100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                terminal.write("x");
+            }
+        };
+        writer.start();
+        start = System.currentTimeMillis();
+        String diff = terminal.dump(terminal.getEpoch(), version, 10000);
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(Long.parseLong(diff.split("\n")[0].split(" ")[1]) > version);
+        writer.join();
+    }
+
+}